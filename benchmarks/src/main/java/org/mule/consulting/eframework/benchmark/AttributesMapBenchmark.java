@@ -0,0 +1,115 @@
+package org.mule.consulting.eframework.benchmark;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the original TreeMap copies of put/putAll/createAttributes with
+ * AttributesMap. Run with -prof gc to see the per-event allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributesMapBenchmark {
+
+	@Param({ "5", "20", "100" })
+	public int size;
+
+	private Map<String, String> treeMap;
+	private AttributesMap attributesMap;
+	private Map<String, String> newProperties;
+
+	@Setup
+	public void setup() {
+		treeMap = BenchmarkData.transactionProperties(size);
+		attributesMap = AttributesMap.copyOf(treeMap);
+		newProperties = new TreeMap<String, String>();
+		newProperties.put("x-record-id", "42");
+		newProperties.put("stage", "READ");
+	}
+
+	/*
+	 * five chained put operations, each copying the previous map
+	 */
+	@Benchmark
+	public Map<String, String> putChainTreeMap() {
+		Map<String, String> map = treeMap;
+		for (int i = 0; i < 5; i++) {
+			Map<String, String> tempMap = new TreeMap<String, String>();
+			tempMap.putAll(map);
+			tempMap.put(BenchmarkData.PUT_KEYS[i], "value");
+			map = tempMap;
+		}
+		return map;
+	}
+
+	@Benchmark
+	public Map<String, String> putChainAttributesMap() {
+		AttributesMap map = attributesMap;
+		for (int i = 0; i < 5; i++) {
+			map = map.with(BenchmarkData.PUT_KEYS[i], "value");
+		}
+		return map;
+	}
+
+	@Benchmark
+	public Map<String, String> putAllTreeMap() {
+		Map<String, String> tempMap = new TreeMap<String, String>();
+		tempMap.putAll(treeMap);
+		tempMap.putAll(newProperties);
+		return tempMap;
+	}
+
+	@Benchmark
+	public Map<String, String> putAllAttributesMap() {
+		return attributesMap.withAll(newProperties);
+	}
+
+	/*
+	 * the attribute copy done by createAttributes before the message is
+	 * formatted
+	 */
+	@Benchmark
+	public Map<String, String> createAttributesTreeMap() {
+		TreeMap<String, String> tempMap = new TreeMap<String, String>();
+		for (String item : treeMap.keySet()) {
+			tempMap.put(item, treeMap.get(item));
+		}
+		tempMap.put("event.flow", "main-flow");
+		tempMap.put("event.fileName", "main.xml");
+		tempMap.put("event.lineNumber", "42");
+		tempMap.put("applicationId", "appId");
+		tempMap.put("transactionType", "ORDER");
+		tempMap.put("transactionStatus", "RECEIVED");
+		return tempMap;
+	}
+
+	@Benchmark
+	public Map<String, String> createAttributesAttributesMap() {
+		AttributesMap.Builder builder = AttributesMap.builder();
+		builder.put("event.flow", "main-flow");
+		builder.put("event.fileName", "main.xml");
+		builder.put("event.lineNumber", "42");
+		builder.put("applicationId", "appId");
+		builder.put("transactionType", "ORDER");
+		builder.put("transactionStatus", "RECEIVED");
+		return attributesMap.withAll(builder.build());
+	}
+}
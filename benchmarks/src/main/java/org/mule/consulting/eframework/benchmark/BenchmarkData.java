@@ -0,0 +1,27 @@
+package org.mule.consulting.eframework.benchmark;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds representative transactionProperties maps for the benchmarks.
+ */
+final class BenchmarkData {
+
+	private static final String[] WELL_KNOWN_KEYS = { "x-transaction-id", "x-correlation-id", "x-job-id",
+			"x-record-id", "transactionType" };
+
+	static final String[] PUT_KEYS = { "x-record-id", "customerId", "orderId", "stage", "batchId" };
+
+	private BenchmarkData() {
+	}
+
+	static Map<String, String> transactionProperties(int size) {
+		Map<String, String> map = new TreeMap<String, String>();
+		for (int i = 0; i < size; i++) {
+			String key = i < WELL_KNOWN_KEYS.length ? WELL_KNOWN_KEYS[i] : "property" + i;
+			map.put(key, "value-" + i + "-0123456789abcdef");
+		}
+		return map;
+	}
+}
@@ -0,0 +1,35 @@
+package org.mule.consulting.eframework.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the first argument (all by default) at 1, 4
+ * and 16 threads with the gc profiler, writing one JSON result file per
+ * thread count to the working directory.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar org.mule.consulting.eframework.benchmark.BenchmarkRunner Operations
+ */
+public final class BenchmarkRunner {
+
+	private static final int[] THREADS = { 1, 4, 16 };
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : ".*";
+		for (int threads : THREADS) {
+			new Runner(new OptionsBuilder()
+					.include(include)
+					.threads(threads)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result("jmh-result-" + threads + "-threads.json")
+					.build()).run();
+		}
+	}
+}
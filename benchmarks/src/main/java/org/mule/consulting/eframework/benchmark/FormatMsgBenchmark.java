@@ -0,0 +1,82 @@
+package org.mule.consulting.eframework.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.consulting.eframework.internal.attributes.AttributesEncoder;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.attributes.LazyMessageAttributes;
+import org.mule.consulting.eframework.internal.attributes.MessageFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the original formatMsg (new ObjectMapper per call) with the shared
+ * MessageFormatter, and with the Smile encoding of the same attributes that
+ * encodeAttributes returns. attributesFormatter formats an AttributesMap in
+ * which one entry changes per event, as in the events of a transaction. Run
+ * with -prof gc to see the per-event allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatMsgBenchmark {
+
+	@Param({ "5", "20", "100" })
+	public int size;
+
+	private Map<String, String> transactionProperties;
+	private AttributesMap attributes;
+	private long counter;
+
+	@Setup
+	public void setup() {
+		transactionProperties = BenchmarkData.transactionProperties(size);
+		attributes = AttributesMap.copyOf(transactionProperties);
+	}
+
+	@Benchmark
+	public String objectMapperPerCall() throws JsonProcessingException {
+		ObjectMapper mapper = new ObjectMapper();
+		String payload = mapper.writeValueAsString(transactionProperties);
+		StringBuilder sb = new StringBuilder();
+		sb.append("AUDIT: ").append(" ").append(payload);
+		return sb.toString();
+	}
+
+	@Benchmark
+	public String sharedFormatter() {
+		return MessageFormatter.format("AUDIT: ", transactionProperties);
+	}
+
+	@Benchmark
+	public String attributesFormatter() {
+		return MessageFormatter.format("AUDIT: ", attributes.with("transactionStatus", String.valueOf(counter++)));
+	}
+
+	@Benchmark
+	public int sharedFormatterBytes() {
+		return MessageFormatter.format("AUDIT: ", transactionProperties).getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	@Benchmark
+	public byte[] smileEncoder() {
+		return AttributesEncoder.encode(new LazyMessageAttributes(attributes, "transactionMsg", "AUDIT: "));
+	}
+}
@@ -0,0 +1,176 @@
+package org.mule.consulting.eframework.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.consulting.eframework.api.EventRecord;
+import org.mule.consulting.eframework.internal.EframeworkConfiguration;
+import org.mule.consulting.eframework.internal.EframeworkOperations;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.attributes.LocationTemplates;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.core.api.event.CoreEvent;
+import org.mule.runtime.extension.api.runtime.parameter.CorrelationInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The per-message paths of EframeworkOperations as a Mule application calls
+ * them, against a stub Registry and handler flow: put/putAll, the location
+ * attributes (built per event, or from the cached LocationTemplates) and an
+ * audit event end to end (attributes, lazily formatted transactionMsg,
+ * flow lookup and dispatch) in blocking and non-blocking mode, one by one,
+ * with the properties taken from the correlation context, and through
+ * sendAuditEvents. The handler flow reads transactionMsg, of
+ * every record of a bulk event, as a logging flow would. The bulk and loop
+ * benchmarks report the time per record.
+ *
+ * Run at several thread counts with the gc profiler through BenchmarkRunner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationsBenchmark {
+
+	private static final int RECORDS = 100;
+
+	@Param({ "5", "20", "100" })
+	public int size;
+
+	private EframeworkOperations operations;
+	private EframeworkConfiguration config;
+	private ComponentLocation location;
+	private Map<String, String> transactionProperties;
+	private Map<String, String> newProperties;
+	private List<Map<String, Object>> records;
+	private CorrelationInfo correlationInfo;
+	private volatile Object lastMessage;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Map<String, Flow> flows = new HashMap<String, Flow>();
+		flows.put(EframeworkOperations.AUDIT_FLOWNAME,
+				StubRuntime.flow(EframeworkOperations.AUDIT_FLOWNAME, this::readMessages));
+		config = StubRuntime.configuration(flows);
+		operations = new EframeworkOperations();
+		location = StubRuntime.location();
+		transactionProperties = AttributesMap.copyOf(BenchmarkData.transactionProperties(size));
+		newProperties = new TreeMap<String, String>();
+		newProperties.put("x-record-id", "42");
+		newProperties.put("stage", "READ");
+		correlationInfo = StubRuntime.correlationInfo("benchmark-correlation");
+		config.getCorrelationContexts().merge("benchmark-correlation", transactionProperties);
+		records = new ArrayList<Map<String, Object>>(RECORDS);
+		for (int i = 0; i < RECORDS; i++) {
+			Map<String, Object> record = new HashMap<String, Object>();
+			record.put("attributes", Collections.singletonMap("x-record-id", String.valueOf(i)));
+			record.put("content", "payload");
+			records.add(record);
+		}
+	}
+
+	private void readMessages(CoreEvent event) {
+		Object payload = event.getMessage().getPayload().getValue();
+		if (payload instanceof List) {
+			for (Object record : (List<?>) payload) {
+				lastMessage = ((EventRecord) record).getAttributes().get("transactionMsg");
+			}
+		} else {
+			lastMessage = ((Map<?, ?>) event.getMessage().getAttributes().getValue()).get("transactionMsg");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		config.stop();
+	}
+
+	@Benchmark
+	public Map<String, String> put() {
+		return operations.put("customerId", "value", transactionProperties, location);
+	}
+
+	@Benchmark
+	public Map<String, String> putAll() {
+		return operations.putAll(newProperties, transactionProperties, location);
+	}
+
+	/*
+	 * the location attributes built for every event, as addLocation did
+	 */
+	@Benchmark
+	public AttributesMap addLocation() {
+		return LocationTemplates.create("benchmark", location)
+				.with("transactionType", "ORDER", "transactionStatus", "RECEIVED");
+	}
+
+	@Benchmark
+	public AttributesMap locationTemplate() {
+		return config.getLocationTemplates().template(location)
+				.with("transactionType", "ORDER", "transactionStatus", "RECEIVED");
+	}
+
+	@Benchmark
+	public void auditBlocking(Blackhole blackhole) {
+		operations.generateAuditEvent("ORDER", "RECEIVED", "AUDIT: ", transactionProperties, false, "payload",
+				location, null, config);
+		blackhole.consume(lastMessage);
+	}
+
+	@Benchmark
+	public void auditBlockingFromContext(Blackhole blackhole) {
+		operations.generateAuditEvent("ORDER", "RECEIVED", "AUDIT: ", AttributesMap.EMPTY, false, "payload",
+				location, correlationInfo, config);
+		blackhole.consume(lastMessage);
+	}
+
+	@Benchmark
+	public void auditNonBlocking(Blackhole blackhole) {
+		operations.generateAuditEvent("ORDER", "RECEIVED", "AUDIT: ", transactionProperties, true, "payload",
+				location, null, config);
+		blackhole.consume(lastMessage);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public void auditLoopBlocking(Blackhole blackhole) {
+		for (Map<String, Object> record : records) {
+			@SuppressWarnings("unchecked")
+			Map<String, String> attributes = AttributesMap.copyOf(transactionProperties)
+					.withAll((Map<String, String>) record.get("attributes"));
+			operations.generateAuditEvent("ORDER", "RECEIVED", "AUDIT: ", attributes, false, record.get("content"),
+					location, null, config);
+		}
+		blackhole.consume(lastMessage);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public void auditBulkBlocking(Blackhole blackhole) {
+		operations.generateAuditEvents("ORDER", "RECEIVED", "AUDIT: ", transactionProperties, records, 1000, false,
+				location, null, config);
+		blackhole.consume(lastMessage);
+	}
+}
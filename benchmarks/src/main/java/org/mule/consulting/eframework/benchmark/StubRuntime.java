@@ -0,0 +1,158 @@
+package org.mule.consulting.eframework.benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.mule.consulting.eframework.internal.EframeworkConfiguration;
+import org.mule.consulting.eframework.internal.breaker.CircuitBreakerSettings;
+import org.mule.consulting.eframework.internal.context.CorrelationContextSettings;
+import org.mule.consulting.eframework.internal.dispatch.BatchingSettings;
+import org.mule.consulting.eframework.internal.dispatch.DispatcherSettings;
+import org.mule.consulting.eframework.internal.execution.BlockingExecutionSettings;
+import org.mule.consulting.eframework.internal.execution.BulkheadSettings;
+import org.mule.consulting.eframework.internal.payload.PayloadSettings;
+import org.mule.consulting.eframework.internal.policy.DeduplicationSettings;
+import org.mule.consulting.eframework.internal.policy.EventPolicySettings;
+import org.mule.consulting.eframework.internal.progress.ProgressAggregationSettings;
+import org.mule.consulting.eframework.internal.retry.RetrySettings;
+import org.mule.consulting.eframework.internal.routing.RoutingSettings;
+import org.mule.consulting.eframework.internal.spool.SpoolSettings;
+import org.mule.runtime.api.artifact.Registry;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.event.Event;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.core.api.event.CoreEvent;
+import org.mule.runtime.extension.api.runtime.parameter.CorrelationInfo;
+
+/**
+ * Stand-ins for the Mule runtime, built with java.lang.reflect.Proxy, so the
+ * operations can be benchmarked outside of a Mule application.
+ */
+final class StubRuntime {
+
+	private StubRuntime() {
+	}
+
+	/**
+	 * @param flows
+	 *            handler flows the registry knows, keyed by name
+	 * @return an initialised and started configuration with default settings
+	 */
+	static EframeworkConfiguration configuration(Map<String, Flow> flows) throws Exception {
+		EframeworkConfiguration config = new EframeworkConfiguration();
+		config.setApplicationId("benchmark");
+		set(config, "missingFlowRetryInterval", 60000L);
+		set(config, "dispatcherSettings", new DispatcherSettings());
+		set(config, "blockingExecutionSettings", new BlockingExecutionSettings());
+		set(config, "bulkheadSettings", new BulkheadSettings());
+		CorrelationContextSettings correlationContextSettings = new CorrelationContextSettings();
+		correlationContextSettings.setCorrelationContextTtl(300000);
+		correlationContextSettings.setMaxCorrelationContexts(100000);
+		set(config, "correlationContextSettings", correlationContextSettings);
+		set(config, "routingSettings", new RoutingSettings());
+		set(config, "spoolSettings", new SpoolSettings());
+		set(config, "batchingSettings", new BatchingSettings());
+		set(config, "circuitBreakerSettings", new CircuitBreakerSettings());
+		set(config, "retrySettings", new RetrySettings());
+		set(config, "payloadSettings", new PayloadSettings());
+		set(config, "eventPolicySettings", new EventPolicySettings());
+		set(config, "deduplicationSettings", new DeduplicationSettings());
+		set(config, "progressAggregationSettings", new ProgressAggregationSettings());
+		set(config, "muleRegistry", registry(flows));
+		config.initialise();
+		config.start();
+		return config;
+	}
+
+	/**
+	 * @param name
+	 * @param consumer
+	 *            receives every event the flow processes
+	 * @return a flow that completes immediately
+	 */
+	static Flow flow(String name, java.util.function.Consumer<CoreEvent> consumer) {
+		return (Flow) Proxy.newProxyInstance(Flow.class.getClassLoader(), new Class<?>[] { Flow.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getName":
+						return name;
+					case "process":
+						consumer.accept((CoreEvent) args[0]);
+						return args[0];
+					case "execute":
+						consumer.accept((CoreEvent) args[0]);
+						return CompletableFuture.<Event>completedFuture((Event) args[0]);
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "Flow " + name;
+					default:
+						return null;
+					}
+				});
+	}
+
+	static ComponentLocation location() {
+		return (ComponentLocation) Proxy.newProxyInstance(ComponentLocation.class.getClassLoader(),
+				new Class<?>[] { ComponentLocation.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getRootContainerName":
+						return "main-flow";
+					case "getLocation":
+						return "main-flow/processors/3";
+					case "getFileName":
+						return Optional.of("main.xml");
+					case "getLineInFile":
+						return Optional.of(42);
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * @param correlationId
+	 * @return the correlation of an event whose event id is its correlation id
+	 */
+	static CorrelationInfo correlationInfo(String correlationId) {
+		return (CorrelationInfo) Proxy.newProxyInstance(CorrelationInfo.class.getClassLoader(),
+				new Class<?>[] { CorrelationInfo.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getCorrelationId":
+					case "getEventId":
+						return correlationId;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+
+	private static Registry registry(Map<String, Flow> flows) {
+		return (Registry) Proxy.newProxyInstance(Registry.class.getClassLoader(), new Class<?>[] { Registry.class },
+				(proxy, method, args) -> {
+					if ("lookupByName".equals(method.getName())) {
+						return Optional.ofNullable(flows.get((String) args[0]));
+					}
+					return null;
+				});
+	}
+
+	private static void set(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+		Field field = target.getClass().getDeclaredField(fieldName);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+}
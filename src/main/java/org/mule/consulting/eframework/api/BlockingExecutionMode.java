@@ -0,0 +1,10 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * Where the handler flow of a blocking event runs: on the thread of the
+ * calling operation (CALLER), or on a virtual thread the caller waits for
+ * (VIRTUAL_THREADS), which needs a Java 21 runtime.
+ */
+public enum BlockingExecutionMode {
+	CALLER, VIRTUAL_THREADS
+}
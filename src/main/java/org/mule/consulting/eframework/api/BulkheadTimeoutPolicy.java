@@ -0,0 +1,14 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * What a blocking operation does when its handler flow is rejected by a full
+ * bulkhead, or gets no virtual thread, or misses its deadline (the timeout of
+ * its bulkhead or blockingTimeout): return without the event (SKIP), raise
+ * FLOW_TIMEOUT or BULKHEAD_FULL (ERROR), or send an event that did not start
+ * to its flow in non-blocking mode instead (ASYNC). ASYNC leaves a flow that
+ * missed its deadline running in the background rather than sending the
+ * event again.
+ */
+public enum BulkheadTimeoutPolicy {
+	SKIP, ERROR, ASYNC
+}
@@ -0,0 +1,10 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * Where circuit breaker state is kept: in the eframework.circuitbreaker-* flows
+ * of the application (FLOWS), or in the connector itself (NATIVE), in which
+ * case those flows are only notified of state changes.
+ */
+public enum CircuitBreakerMode {
+	FLOWS, NATIVE
+}
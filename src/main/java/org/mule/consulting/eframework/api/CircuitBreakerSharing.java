@@ -0,0 +1,10 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * Where native circuit breaker state is shared with the other nodes of a
+ * cluster: not at all (NONE), in a Mule object store (OBJECT_STORE) or in a
+ * file on a shared file system (FILE).
+ */
+public enum CircuitBreakerSharing {
+	NONE, OBJECT_STORE, FILE
+}
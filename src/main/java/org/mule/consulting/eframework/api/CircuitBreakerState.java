@@ -0,0 +1,5 @@
+package org.mule.consulting.eframework.api;
+
+public enum CircuitBreakerState {
+	CLOSED, OPEN, HALF_OPEN
+}
@@ -0,0 +1,11 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * Which events share a correlation context: only the event that put the
+ * properties (EVENT, keyed by event id), or every event with the same
+ * correlation id (CORRELATION_ID), which clients can set and concurrent
+ * requests may share.
+ */
+public enum CorrelationContextScope {
+	EVENT, CORRELATION_ID
+}
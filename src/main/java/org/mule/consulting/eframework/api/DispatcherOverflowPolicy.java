@@ -0,0 +1,8 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * What the non-blocking dispatcher does with an event when its queue is full.
+ */
+public enum DispatcherOverflowPolicy {
+	BLOCK, DROP_OLDEST, DROP_NEWEST, SYNCHRONOUS
+}
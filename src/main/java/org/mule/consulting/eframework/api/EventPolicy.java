@@ -0,0 +1,149 @@
+package org.mule.consulting.eframework.api;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.Objects;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Sampling and rate limit applied to the progress and system events that
+ * match eventType, stage and status ("*" matches anything). Failures are
+ * always emitted unless alwaysEmitFailures is false.
+ */
+public class EventPolicy {
+
+	@Parameter
+	@Optional(defaultValue = "PROGRESS")
+	@Expression(NOT_SUPPORTED)
+	@Summary("eventType the policy applies to, PROGRESS for progress events")
+	private String eventType;
+
+	@Parameter
+	@Optional(defaultValue = "*")
+	@Expression(NOT_SUPPORTED)
+	@Summary("ProgressStage the policy applies to")
+	private String stage;
+
+	@Parameter
+	@Optional(defaultValue = "*")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Event status the policy applies to")
+	private String status;
+
+	@Parameter
+	@Optional(defaultValue = "1")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Emit 1 in sampleRate events, 1 emits every event")
+	private int sampleRate;
+
+	@Parameter
+	@Optional(defaultValue = "COUNT")
+	@Expression(NOT_SUPPORTED)
+	private SamplingStrategy sampleBy;
+
+	@Parameter
+	@Optional(defaultValue = "0")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Maximum events emitted per second, 0 is unlimited")
+	private double rateLimit;
+
+	@Parameter
+	@Optional(defaultValue = "0")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Events that may be emitted at once above the rate limit")
+	private int burst;
+
+	@Parameter
+	@Optional(defaultValue = "true")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Emit events with a FAILURE or ERROR status regardless of sampling and rate limit")
+	private boolean alwaysEmitFailures;
+
+	public String getEventType() {
+		return eventType;
+	}
+
+	public String getStage() {
+		return stage;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public SamplingStrategy getSampleBy() {
+		return sampleBy;
+	}
+
+	public double getRateLimit() {
+		return rateLimit;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	public boolean isAlwaysEmitFailures() {
+		return alwaysEmitFailures;
+	}
+
+	public void setEventType(String eventType) {
+		this.eventType = eventType;
+	}
+
+	public void setStage(String stage) {
+		this.stage = stage;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	public void setSampleBy(SamplingStrategy sampleBy) {
+		this.sampleBy = sampleBy;
+	}
+
+	public void setRateLimit(double rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+
+	public void setBurst(int burst) {
+		this.burst = burst;
+	}
+
+	public void setAlwaysEmitFailures(boolean alwaysEmitFailures) {
+		this.alwaysEmitFailures = alwaysEmitFailures;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof EventPolicy)) {
+			return false;
+		}
+		EventPolicy other = (EventPolicy) o;
+		return sampleRate == other.sampleRate && Double.compare(rateLimit, other.rateLimit) == 0
+				&& burst == other.burst && alwaysEmitFailures == other.alwaysEmitFailures
+				&& Objects.equals(eventType, other.eventType) && Objects.equals(stage, other.stage)
+				&& Objects.equals(status, other.status) && sampleBy == other.sampleBy;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(eventType, stage, status, sampleRate, sampleBy, rateLimit, burst, alwaysEmitFailures);
+	}
+}
@@ -0,0 +1,27 @@
+package org.mule.consulting.eframework.api;
+
+import java.util.Map;
+
+/**
+ * One event of a batch delivered to a handler flow when batching is enabled:
+ * the attributes and payload the flow would otherwise have received as a
+ * single event.
+ */
+public class EventRecord {
+
+	private final Map<String, String> attributes;
+	private final Object content;
+
+	public EventRecord(Map<String, String> attributes, Object content) {
+		this.attributes = attributes;
+		this.content = content;
+	}
+
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	public Object getContent() {
+		return content;
+	}
+}
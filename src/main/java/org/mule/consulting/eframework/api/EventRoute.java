@@ -0,0 +1,94 @@
+package org.mule.consulting.eframework.api;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.Map;
+import java.util.Objects;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.NullSafe;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Sends the events for flowName ("*" matches any handler flow) whose
+ * attributes meet every condition to targetFlows as well, or instead when
+ * includeDefault is false.
+ */
+public class EventRoute {
+
+	@Parameter
+	@Optional(defaultValue = "*")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Handler flow whose events the route applies to, for instance eframework.errorTransactionFlow")
+	private String flowName = "*";
+
+	@Parameter
+	@Optional
+	@NullSafe
+	@Expression(NOT_SUPPORTED)
+	@Summary("Attribute name to the comma separated values it must have (* for any value), every condition must hold")
+	private Map<String, String> conditions;
+
+	@Parameter
+	@Expression(NOT_SUPPORTED)
+	@Summary("Comma separated names of the flows that receive the matching events")
+	private String targetFlows;
+
+	@Parameter
+	@Optional(defaultValue = "true")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Still send the matching events to flowName")
+	private boolean includeDefault = true;
+
+	public String getFlowName() {
+		return flowName;
+	}
+
+	public Map<String, String> getConditions() {
+		return conditions;
+	}
+
+	public String getTargetFlows() {
+		return targetFlows;
+	}
+
+	public boolean isIncludeDefault() {
+		return includeDefault;
+	}
+
+	public void setFlowName(String flowName) {
+		this.flowName = flowName;
+	}
+
+	public void setConditions(Map<String, String> conditions) {
+		this.conditions = conditions;
+	}
+
+	public void setTargetFlows(String targetFlows) {
+		this.targetFlows = targetFlows;
+	}
+
+	public void setIncludeDefault(boolean includeDefault) {
+		this.includeDefault = includeDefault;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof EventRoute)) {
+			return false;
+		}
+		EventRoute other = (EventRoute) o;
+		return includeDefault == other.includeDefault && Objects.equals(flowName, other.flowName)
+				&& Objects.equals(conditions, other.conditions) && Objects.equals(targetFlows, other.targetFlows);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(flowName, conditions, targetFlows, includeDefault);
+	}
+}
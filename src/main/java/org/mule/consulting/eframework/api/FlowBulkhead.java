@@ -0,0 +1,106 @@
+package org.mule.consulting.eframework.api;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.Objects;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Limits the blocking calls of flowName: at most maxConcurrentCalls run at
+ * the same time, at most maxQueuedCalls wait for them, and a call that has
+ * not completed within timeout is handled according to timeoutPolicy.
+ */
+public class FlowBulkhead {
+
+	@Parameter
+	@Expression(NOT_SUPPORTED)
+	@Summary("Handler flow the bulkhead applies to, for instance eframework.circuitbreaker-check-breaker")
+	private String flowName;
+
+	@Parameter
+	@Optional(defaultValue = "10")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Maximum number of blocking calls of the flow running at the same time")
+	private int maxConcurrentCalls = 10;
+
+	@Parameter
+	@Optional(defaultValue = "0")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Maximum number of calls waiting for a running one to complete, further calls are rejected")
+	private int maxQueuedCalls;
+
+	@Parameter
+	@Optional(defaultValue = "10000")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Milliseconds a call may wait and run before the operation gives up on it, 0 for no deadline")
+	private long timeout = 10000;
+
+	@Parameter
+	@Optional(defaultValue = "SKIP")
+	@Expression(NOT_SUPPORTED)
+	@Summary("What the operation does with a rejected or timed out call")
+	private BulkheadTimeoutPolicy timeoutPolicy = BulkheadTimeoutPolicy.SKIP;
+
+	public String getFlowName() {
+		return flowName;
+	}
+
+	public int getMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	public int getMaxQueuedCalls() {
+		return maxQueuedCalls;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public BulkheadTimeoutPolicy getTimeoutPolicy() {
+		return timeoutPolicy;
+	}
+
+	public void setFlowName(String flowName) {
+		this.flowName = flowName;
+	}
+
+	public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+		this.maxConcurrentCalls = maxConcurrentCalls;
+	}
+
+	public void setMaxQueuedCalls(int maxQueuedCalls) {
+		this.maxQueuedCalls = maxQueuedCalls;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public void setTimeoutPolicy(BulkheadTimeoutPolicy timeoutPolicy) {
+		this.timeoutPolicy = timeoutPolicy;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof FlowBulkhead)) {
+			return false;
+		}
+		FlowBulkhead other = (FlowBulkhead) o;
+		return maxConcurrentCalls == other.maxConcurrentCalls && maxQueuedCalls == other.maxQueuedCalls
+				&& timeout == other.timeout && timeoutPolicy == other.timeoutPolicy
+				&& Objects.equals(flowName, other.flowName);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(flowName, maxConcurrentCalls, maxQueuedCalls, timeout, timeoutPolicy);
+	}
+}
@@ -0,0 +1,10 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * What logRequestPayload/logResponsePayload pass to the payload log flows: the
+ * payload itself (FULL), or a bounded preview of it with its size and hash
+ * (PREVIEW), which never buffers or consumes the caller's stream.
+ */
+public enum PayloadCaptureMode {
+	FULL, PREVIEW
+}
@@ -0,0 +1,123 @@
+package org.mule.consulting.eframework.api;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.Objects;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Backoff of the retry events of the transactionType it matches ("*" matches
+ * anything): attempt n is delivered after
+ * min(maxDelay, initialDelay * multiplier^(n-1)) milliseconds, less a random
+ * fraction of up to jitter of that delay. A new instance holds the defaults,
+ * which also apply to a transactionType no policy matches.
+ */
+public class RetryPolicy {
+
+	@Parameter
+	@Optional(defaultValue = "*")
+	@Expression(NOT_SUPPORTED)
+	@Summary("transactionType the policy applies to")
+	private String transactionType = "*";
+
+	@Parameter
+	@Optional(defaultValue = "5")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Attempts after which the event goes to the error flow instead")
+	private int maxAttempts = 5;
+
+	@Parameter
+	@Optional(defaultValue = "1000")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Milliseconds before the first attempt")
+	private long initialDelay = 1000;
+
+	@Parameter
+	@Optional(defaultValue = "2")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Factor applied to the delay after every attempt")
+	private double multiplier = 2;
+
+	@Parameter
+	@Optional(defaultValue = "300000")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Maximum milliseconds between two attempts")
+	private long maxDelay = 300000;
+
+	@Parameter
+	@Optional(defaultValue = "0.2")
+	@Expression(NOT_SUPPORTED)
+	@Summary("Fraction of the delay, between 0 and 1, that is randomly taken off so retries do not all fire at once")
+	private double jitter = 0.2;
+
+	public String getTransactionType() {
+		return transactionType;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	public double getJitter() {
+		return jitter;
+	}
+
+	public void setTransactionType(String transactionType) {
+		this.transactionType = transactionType;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public void setInitialDelay(long initialDelay) {
+		this.initialDelay = initialDelay;
+	}
+
+	public void setMultiplier(double multiplier) {
+		this.multiplier = multiplier;
+	}
+
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	public void setJitter(double jitter) {
+		this.jitter = jitter;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof RetryPolicy)) {
+			return false;
+		}
+		RetryPolicy other = (RetryPolicy) o;
+		return maxAttempts == other.maxAttempts && initialDelay == other.initialDelay
+				&& Double.compare(multiplier, other.multiplier) == 0 && maxDelay == other.maxDelay
+				&& Double.compare(jitter, other.jitter) == 0 && Objects.equals(transactionType, other.transactionType);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(transactionType, maxAttempts, initialDelay, multiplier, maxDelay, jitter);
+	}
+}
@@ -0,0 +1,10 @@
+package org.mule.consulting.eframework.api;
+
+/**
+ * How an EventPolicy picks the 1 in sampleRate events it keeps: by counting
+ * events (COUNT), or by hashing the recordDescriptor (RECORD_DESCRIPTOR), which
+ * keeps every stage of the same sampled records.
+ */
+public enum SamplingStrategy {
+	COUNT, RECORD_DESCRIPTOR
+}
@@ -0,0 +1,26 @@
+package org.mule.consulting.eframework.api.error;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.mule.runtime.extension.api.annotation.error.ErrorTypeProvider;
+import org.mule.runtime.extension.api.error.ErrorTypeDefinition;
+
+/**
+ * The errors of operations that may process their handler flow in blocking
+ * mode, raised with timeoutPolicy or blockingTimeoutPolicy ERROR, and by a
+ * failed flow with raiseFlowErrors
+ */
+public class BlockingFlowErrorProvider implements ErrorTypeProvider {
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Set<ErrorTypeDefinition> getErrorTypes() {
+        HashSet<ErrorTypeDefinition> errors = new HashSet<>();
+        errors.add(EframeworkErrors.FlowTimeout);
+        errors.add(EframeworkErrors.BulkheadFull);
+        errors.add(EframeworkErrors.FlowFailed);
+        return errors;
+	}
+
+}
@@ -0,0 +1,12 @@
+package org.mule.consulting.eframework.api.error;
+
+import org.mule.runtime.extension.api.exception.ModuleException;
+
+@SuppressWarnings("serial")
+public class BulkheadFullException extends ModuleException {
+
+	public BulkheadFullException(String message) {
+		super(message, EframeworkErrors.BulkheadFull);
+	}
+
+}
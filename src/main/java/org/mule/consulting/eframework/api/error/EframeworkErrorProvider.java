@@ -13,6 +13,7 @@ public class EframeworkErrorProvider implements ErrorTypeProvider {
 	public Set<ErrorTypeDefinition> getErrorTypes() {
         HashSet<ErrorTypeDefinition> errors = new HashSet<>();
         errors.add(EframeworkErrors.CircuitBreakerOpen);
+        errors.addAll(new BlockingFlowErrorProvider().getErrorTypes());
         return errors;
 	}
 
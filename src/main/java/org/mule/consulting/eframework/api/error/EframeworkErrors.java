@@ -3,5 +3,5 @@ package org.mule.consulting.eframework.api.error;
 import org.mule.runtime.extension.api.error.ErrorTypeDefinition;
 
 public enum EframeworkErrors implements ErrorTypeDefinition<EframeworkErrors> {
-	CircuitBreakerOpen
+	CircuitBreakerOpen, FlowTimeout, BulkheadFull, FlowFailed
 }
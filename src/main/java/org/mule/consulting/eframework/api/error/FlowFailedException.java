@@ -0,0 +1,12 @@
+package org.mule.consulting.eframework.api.error;
+
+import org.mule.runtime.extension.api.exception.ModuleException;
+
+@SuppressWarnings("serial")
+public class FlowFailedException extends ModuleException {
+
+	public FlowFailedException(String message, Throwable cause) {
+		super(message, EframeworkErrors.FlowFailed, cause);
+	}
+
+}
@@ -1,8 +1,68 @@
 package org.mule.consulting.eframework.internal;
 
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.mule.consulting.eframework.api.CircuitBreakerMode;
+import org.mule.consulting.eframework.internal.attributes.LocationTemplates;
+import org.mule.consulting.eframework.internal.breaker.CircuitBreakerSettings;
+import org.mule.consulting.eframework.internal.breaker.CircuitBreakers;
+import org.mule.consulting.eframework.internal.breaker.FileSharedStateStore;
+import org.mule.consulting.eframework.internal.breaker.ObjectStoreSharedStateStore;
+import org.mule.consulting.eframework.internal.breaker.SharedStateStore;
+import org.mule.consulting.eframework.internal.breaker.SharedStateSynchronizer;
+import org.mule.consulting.eframework.internal.context.CorrelationContextSettings;
+import org.mule.consulting.eframework.internal.context.CorrelationContexts;
+import org.mule.consulting.eframework.internal.dispatch.BatchingSettings;
+import org.mule.consulting.eframework.internal.dispatch.DispatcherSettings;
+import org.mule.consulting.eframework.internal.dispatch.EventBatcher;
+import org.mule.consulting.eframework.internal.dispatch.EventDispatcher;
+import org.mule.consulting.eframework.internal.execution.BlockingExecutionSettings;
+import org.mule.consulting.eframework.internal.execution.BlockingExecutor;
+import org.mule.consulting.eframework.internal.execution.BulkheadSettings;
+import org.mule.consulting.eframework.internal.execution.FlowBulkheads;
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.consulting.eframework.internal.flow.FlowResolver;
+import org.mule.consulting.eframework.internal.metrics.EframeworkMetrics;
+import org.mule.consulting.eframework.internal.payload.PayloadCapture;
+import org.mule.consulting.eframework.internal.payload.PayloadSettings;
+import org.mule.consulting.eframework.internal.policy.DeduplicationSettings;
+import org.mule.consulting.eframework.internal.policy.EventDeduplicator;
+import org.mule.consulting.eframework.internal.policy.EventPolicies;
+import org.mule.consulting.eframework.internal.policy.EventPolicySettings;
+import org.mule.consulting.eframework.internal.progress.ProgressAggregationSettings;
+import org.mule.consulting.eframework.internal.progress.ProgressAggregator;
+import org.mule.consulting.eframework.internal.retry.RetryScheduler;
+import org.mule.consulting.eframework.internal.retry.RetrySettings;
+import org.mule.consulting.eframework.internal.routing.EventRouter;
+import org.mule.consulting.eframework.internal.routing.RoutingSettings;
+import org.mule.consulting.eframework.internal.spool.EventSpool;
+import org.mule.consulting.eframework.internal.spool.SpoolSettings;
+import org.mule.runtime.api.artifact.Registry;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.exception.MuleException;
+import org.mule.runtime.api.lifecycle.Initialisable;
+import org.mule.runtime.api.lifecycle.InitialisationException;
+import org.mule.runtime.api.lifecycle.Startable;
+import org.mule.runtime.api.lifecycle.Stoppable;
+import org.mule.runtime.api.lock.LockFactory;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.api.store.ObjectStore;
+import org.mule.runtime.api.store.ObjectStoreManager;
+import org.mule.runtime.api.store.ObjectStoreSettings;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.extension.api.annotation.Expression;
 import org.mule.runtime.extension.api.annotation.Operations;
-import org.mule.runtime.extension.api.annotation.connectivity.ConnectionProviders;
+import org.mule.runtime.extension.api.annotation.param.Optional;
 import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.ParameterGroup;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
 
 /**
  * This class represents an extension configuration, values set in this class
@@ -10,11 +70,233 @@ import org.mule.runtime.extension.api.annotation.param.Parameter;
  * core from the extension.
  */
 @Operations(EframeworkOperations.class)
-public class EframeworkConfiguration {
-	
+public class EframeworkConfiguration implements Initialisable, Startable, Stoppable {
+
 	@Parameter
 	private String applicationId;
 
+	@Parameter
+	@Optional(defaultValue = "60000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = Placement.ADVANCED_TAB)
+	@Summary("Milliseconds before a handler flow that was not found is looked up again")
+	private long missingFlowRetryInterval;
+
+	@ParameterGroup(name = "Dispatcher")
+	private DispatcherSettings dispatcherSettings;
+
+	@ParameterGroup(name = "Blocking Execution")
+	private BlockingExecutionSettings blockingExecutionSettings;
+
+	@ParameterGroup(name = "Bulkheads")
+	private BulkheadSettings bulkheadSettings;
+
+	@ParameterGroup(name = "Correlation Context")
+	private CorrelationContextSettings correlationContextSettings;
+
+	@ParameterGroup(name = "Routing")
+	private RoutingSettings routingSettings;
+
+	@ParameterGroup(name = "Spool")
+	private SpoolSettings spoolSettings;
+
+	@ParameterGroup(name = "Batching")
+	private BatchingSettings batchingSettings;
+
+	@ParameterGroup(name = "Circuit Breaker")
+	private CircuitBreakerSettings circuitBreakerSettings;
+
+	@ParameterGroup(name = "Retry")
+	private RetrySettings retrySettings;
+
+	@ParameterGroup(name = "Payload Logging")
+	private PayloadSettings payloadSettings;
+
+	@ParameterGroup(name = "Event Policies")
+	private EventPolicySettings eventPolicySettings;
+
+	@ParameterGroup(name = "Deduplication")
+	private DeduplicationSettings deduplicationSettings;
+
+	@ParameterGroup(name = "Progress Aggregation")
+	private ProgressAggregationSettings progressAggregationSettings;
+
+	@Inject
+	private Registry muleRegistry;
+
+	@Inject
+	private SchedulerService schedulerService;
+
+	@Inject
+	private ObjectStoreManager objectStoreManager;
+
+	@Inject
+	private LockFactory lockFactory;
+
+	private FlowResolver flowResolver;
+
+	private LocationTemplates locationTemplates;
+
+	private BlockingExecutor blockingExecutor;
+
+	private FlowBulkheads flowBulkheads;
+
+	private CorrelationContexts correlationContexts;
+
+	private EventRouter eventRouter;
+
+	private EventSpool eventSpool;
+
+	private EventDispatcher eventDispatcher;
+
+	private EventBatcher eventBatcher;
+
+	private CircuitBreakers circuitBreakers;
+
+	private RetryScheduler retryScheduler;
+
+	private PayloadCapture payloadCapture;
+
+	private EventPolicies eventPolicies;
+
+	private EventDeduplicator eventDeduplicator;
+
+	private ProgressAggregator progressAggregator;
+
+	private final EframeworkMetrics metrics = new EframeworkMetrics();
+
+	@Override
+	public void initialise() throws InitialisationException {
+		flowResolver = new FlowResolver(muleRegistry, missingFlowRetryInterval);
+		locationTemplates = new LocationTemplates(applicationId);
+		blockingExecutor = new BlockingExecutor(blockingExecutionSettings);
+		flowBulkheads = new FlowBulkheads(bulkheadSettings);
+		correlationContexts = new CorrelationContexts(correlationContextSettings);
+		eventRouter = new EventRouter(routingSettings);
+		eventSpool = createEventSpool();
+		eventDispatcher = createEventDispatcher();
+		eventBatcher = new EventBatcher(batchingSettings, eventDispatcher);
+		circuitBreakers = new CircuitBreakers(circuitBreakerSettings, createSharedStateSynchronizer());
+		retryScheduler = new RetryScheduler(retrySettings, EframeworkOperations.RETRY_FLOWNAME,
+				EframeworkOperations.ERROR_FLOWNAME);
+		payloadCapture = new PayloadCapture(payloadSettings);
+		eventPolicies = new EventPolicies(eventPolicySettings, applicationId);
+		eventDeduplicator = new EventDeduplicator(deduplicationSettings);
+		progressAggregator = new ProgressAggregator(progressAggregationSettings, applicationId,
+				EframeworkOperations.PROGRESS_EVENT_FLOWNAME);
+	}
+
+	@Override
+	public void start() throws MuleException {
+		metrics.register(applicationId);
+		flowResolver.invalidate();
+		blockingExecutor.start();
+		flowBulkheads.start(schedulerService, blockingExecutor);
+		correlationContexts.start(schedulerService);
+		eventRouter.start(schedulerService);
+		eventSpool.start(schedulerService, flowResolver);
+		eventDispatcher.start(schedulerService);
+		eventBatcher.start(schedulerService);
+		circuitBreakers.start(schedulerService);
+		retryScheduler.start(schedulerService, flowResolver, this::emit);
+		eventPolicies.start(schedulerService, this::emit);
+		eventDeduplicator.start(schedulerService, this::emit);
+		progressAggregator.start(schedulerService, this::emit);
+	}
+
+	@Override
+	public void stop() throws MuleException {
+		circuitBreakers.stop();
+		retryScheduler.stop();
+		progressAggregator.stop();
+		eventPolicies.stop();
+		eventDeduplicator.stop();
+		eventBatcher.stop();
+		eventDispatcher.stop();
+		eventSpool.stop();
+		eventRouter.stop();
+		correlationContexts.stop();
+		flowBulkheads.stop();
+		blockingExecutor.stop();
+		flowResolver.invalidate();
+		metrics.unregister();
+	}
+
+	/*
+	 * Events generated by the connector itself are routed like the others and
+	 * go through the dispatcher
+	 */
+	private void emit(String flowName, Map<String, String> attributes, Object content, ComponentLocation location) {
+		for (String target : eventRouter.route(flowName, attributes)) {
+			Flow flow = flowResolver.lookup(target);
+			if (flow != null) {
+				eventDispatcher.dispatch(flow, FlowEvents.create(flow, attributes, content, location));
+				metrics.flow(target).emitted();
+			} else {
+				metrics.flow(target).missing();
+			}
+		}
+	}
+
+	/*
+	 * The spool directory is only needed when the spool is enabled
+	 */
+	private EventSpool createEventSpool() throws InitialisationException {
+		String directory = spoolSettings.getSpoolDirectory();
+		boolean missing = directory == null || directory.trim().isEmpty();
+		if (spoolSettings.isSpoolEnabled() && missing) {
+			throw new InitialisationException(
+					new IllegalArgumentException("spoolDirectory is required when spoolEnabled is true"), this);
+		}
+		try {
+			return new EventSpool(spoolSettings, missing ? null : Paths.get(directory.trim()));
+		} catch (IOException e) {
+			throw new InitialisationException(e, this);
+		}
+	}
+
+	/*
+	 * An enabled dispatcher needs workers to drain its queue and room in it
+	 */
+	private EventDispatcher createEventDispatcher() throws InitialisationException {
+		try {
+			return new EventDispatcher(dispatcherSettings, eventSpool);
+		} catch (IllegalArgumentException e) {
+			throw new InitialisationException(e, this);
+		}
+	}
+
+	/*
+	 * Native breakers share their state only when circuitBreakerSharing is set
+	 */
+	private SharedStateSynchronizer createSharedStateSynchronizer() throws InitialisationException {
+		if (circuitBreakerSettings.getCircuitBreakerMode() != CircuitBreakerMode.NATIVE) {
+			return null;
+		}
+		SharedStateStore store;
+		switch (circuitBreakerSettings.getCircuitBreakerSharing()) {
+		case OBJECT_STORE:
+			String storeName = "eframework-circuit-breakers-" + applicationId;
+			ObjectStore<String> objectStore = objectStoreManager.getOrCreateObjectStore(storeName,
+					ObjectStoreSettings.builder().persistent(true).build());
+			store = new ObjectStoreSharedStateStore(objectStore, lockFactory, storeName + ":");
+			break;
+		case FILE:
+			String file = circuitBreakerSettings.getSharedStateFile();
+			if (file == null || file.trim().isEmpty()) {
+				throw new InitialisationException(
+						new IllegalArgumentException("sharedStateFile is required when circuitBreakerSharing is FILE"),
+						this);
+			}
+			store = new FileSharedStateStore(Paths.get(file.trim()));
+			break;
+		case NONE:
+		default:
+			return null;
+		}
+		return new SharedStateSynchronizer(store, circuitBreakerSettings.getSharedStateRefreshInterval());
+	}
+
 	public String getApplicationId() {
 		return applicationId;
 	}
@@ -22,4 +304,68 @@ public class EframeworkConfiguration {
 	public void setApplicationId(String applicationId) {
 		this.applicationId = applicationId;
 	}
+
+	public FlowResolver getFlowResolver() {
+		return flowResolver;
+	}
+
+	public LocationTemplates getLocationTemplates() {
+		return locationTemplates;
+	}
+
+	public BlockingExecutor getBlockingExecutor() {
+		return blockingExecutor;
+	}
+
+	public FlowBulkheads getFlowBulkheads() {
+		return flowBulkheads;
+	}
+
+	public CorrelationContexts getCorrelationContexts() {
+		return correlationContexts;
+	}
+
+	public EventRouter getEventRouter() {
+		return eventRouter;
+	}
+
+	public EventSpool getEventSpool() {
+		return eventSpool;
+	}
+
+	public EventDispatcher getEventDispatcher() {
+		return eventDispatcher;
+	}
+
+	public EventBatcher getEventBatcher() {
+		return eventBatcher;
+	}
+
+	public CircuitBreakers getCircuitBreakers() {
+		return circuitBreakers;
+	}
+
+	public RetryScheduler getRetryScheduler() {
+		return retryScheduler;
+	}
+
+	public PayloadCapture getPayloadCapture() {
+		return payloadCapture;
+	}
+
+	public EventPolicies getEventPolicies() {
+		return eventPolicies;
+	}
+
+	public EventDeduplicator getEventDeduplicator() {
+		return eventDeduplicator;
+	}
+
+	public ProgressAggregator getProgressAggregator() {
+		return progressAggregator;
+	}
+
+	public EframeworkMetrics getMetrics() {
+		return metrics;
+	}
 }
@@ -2,22 +2,45 @@ package org.mule.consulting.eframework.internal;
 
 import static org.mule.runtime.extension.api.annotation.param.MediaType.ANY;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-
-import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
 
+import org.mule.consulting.eframework.api.CircuitBreakerState;
+import org.mule.consulting.eframework.api.EventRecord;
 import org.mule.consulting.eframework.api.ProgressStage;
 import org.mule.consulting.eframework.api.ProgressStatus;
+import org.mule.consulting.eframework.api.error.BlockingFlowErrorProvider;
+import org.mule.consulting.eframework.api.error.BulkheadFullException;
 import org.mule.consulting.eframework.api.error.CircuitBreakerOpenException;
 import org.mule.consulting.eframework.api.error.EframeworkErrorProvider;
-import org.mule.runtime.api.artifact.Registry;
+import org.mule.consulting.eframework.api.error.FlowFailedException;
+import org.mule.consulting.eframework.api.error.FlowTimeoutException;
+import org.mule.consulting.eframework.internal.attributes.AttributesEncoder;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.attributes.LazyMessageAttributes;
+import org.mule.consulting.eframework.internal.breaker.CircuitBreaker;
+import org.mule.consulting.eframework.internal.breaker.CircuitBreakers;
+import org.mule.consulting.eframework.internal.context.CorrelationContexts;
+import org.mule.consulting.eframework.internal.execution.BlockingExecutor;
+import org.mule.consulting.eframework.internal.execution.Bulkhead;
+import org.mule.consulting.eframework.internal.flow.BulkRecords;
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.consulting.eframework.internal.payload.PayloadCapture;
+import org.mule.consulting.eframework.internal.payload.PayloadPreview;
+import org.mule.consulting.eframework.internal.policy.EventDeduplicator;
+import org.mule.consulting.eframework.internal.progress.ProgressAggregator;
+import org.mule.consulting.eframework.internal.retry.RetryScheduler;
+import org.mule.consulting.eframework.internal.routing.EventRouter;
 import org.mule.runtime.api.component.location.ComponentLocation;
 import org.mule.runtime.api.exception.MuleException;
-import org.mule.runtime.api.message.Message;
 import org.mule.runtime.core.api.construct.Flow;
 import org.mule.runtime.core.api.event.CoreEvent;
-import org.mule.runtime.core.api.event.EventContextFactory;
 import org.mule.runtime.extension.api.annotation.Alias;
 import org.mule.runtime.extension.api.annotation.dsl.xml.ParameterDsl;
 import org.mule.runtime.extension.api.annotation.error.Throws;
@@ -25,12 +48,10 @@ import org.mule.runtime.extension.api.annotation.param.Config;
 import org.mule.runtime.extension.api.annotation.param.Content;
 import org.mule.runtime.extension.api.annotation.param.MediaType;
 import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.runtime.parameter.CorrelationInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * This class is a container for operations, every public method in this class
  * will be taken as an extension operation.
@@ -59,9 +80,6 @@ public class EframeworkOperations {
 	
 	private final Logger LOGGER = LoggerFactory.getLogger(EframeworkOperations.class);
 
-	@Inject
-	private Registry muleRegistry;	
-	
 	
 	/*----------------Utilities------------------*/
 
@@ -79,12 +97,7 @@ public class EframeworkOperations {
 	public Map<String, String> put(String key, String value,
 			@Optional Map<String, String> transactionProperties, ComponentLocation location) {
 
-		Map<String, String> tempMap = new TreeMap<String, String>();
-		if (transactionProperties != null) {
-			tempMap.putAll(transactionProperties);
-		}
-		tempMap.put(key, value);
-		return tempMap;
+		return AttributesMap.copyOf(transactionProperties).with(key, value);
 	}
 
 	/**
@@ -100,18 +113,112 @@ public class EframeworkOperations {
 	public Map<String, String> putAll(Map<String, String> newProperties,
 			@Optional Map<String, String> transactionProperties, ComponentLocation location) {
 
-		Map<String, String> tempMap = new TreeMap<String, String>();
-		if (transactionProperties != null) {
-			tempMap.putAll(transactionProperties);
-		}
-		tempMap.putAll(newProperties);
-		return tempMap;
+		return AttributesMap.copyOf(transactionProperties).withAll(newProperties);
+	}
+
+	/**
+	 * Add a key/value pair to the correlation context of the current
+	 * transaction. Event operations add the context to their attributes, so
+	 * the properties need not be passed to each of them.
+	 * 
+	 * @param key
+	 * @param value
+	 * @param correlationInfo
+	 *            is injected
+	 * @param config
+	 * @return the properties of the correlation context
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, String> correlationContextPut(String key, String value, CorrelationInfo correlationInfo,
+			@Config EframeworkConfiguration config) {
+
+		CorrelationContexts contexts = config.getCorrelationContexts();
+		return contexts.merge(contexts.key(correlationInfo), AttributesMap.EMPTY.with(key, value));
+	}
+
+	/**
+	 * Add all the newProperties key/value pairs to the correlation context of
+	 * the current transaction
+	 * 
+	 * @param newProperties
+	 * @param correlationInfo
+	 *            is injected
+	 * @param config
+	 * @return the properties of the correlation context
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, String> correlationContextPutAll(Map<String, String> newProperties,
+			CorrelationInfo correlationInfo, @Config EframeworkConfiguration config) {
+
+		CorrelationContexts contexts = config.getCorrelationContexts();
+		return contexts.merge(contexts.key(correlationInfo), newProperties);
+	}
+
+	/**
+	 * Return the properties of the correlation context of the current
+	 * transaction
+	 * 
+	 * @param correlationInfo
+	 *            is injected
+	 * @param config
+	 * @return
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, String> correlationContextGet(CorrelationInfo correlationInfo,
+			@Config EframeworkConfiguration config) {
+
+		CorrelationContexts contexts = config.getCorrelationContexts();
+		return contexts.get(contexts.key(correlationInfo));
+	}
+
+	/**
+	 * Drop the correlation context of the current transaction, once its last
+	 * event is sent. Contexts that are not cleared are evicted
+	 * correlationContextTtl after their last use.
+	 * 
+	 * @param correlationInfo
+	 *            is injected
+	 * @param config
+	 */
+	public void correlationContextClear(CorrelationInfo correlationInfo, @Config EframeworkConfiguration config) {
+		CorrelationContexts contexts = config.getCorrelationContexts();
+		contexts.clear(contexts.key(correlationInfo));
+	}
+
+	/**
+	 * Encode event attributes as Smile (binary JSON), for instance in a
+	 * handler flow that ships events to a log pipeline. transactionMsg or
+	 * eventMsg holds the message text only, its JSON is not formatted since
+	 * the properties are the other entries.
+	 * 
+	 * @param attributes
+	 * @return
+	 */
+	@MediaType(value = AttributesEncoder.MEDIA_TYPE, strict = false)
+	public InputStream encodeAttributes(
+			@Optional(defaultValue = "#[attributes]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes) {
+		return new ByteArrayInputStream(AttributesEncoder.encode(attributes));
+	}
+
+	/**
+	 * Return the queue depth and delivery counters of the non-blocking
+	 * dispatcher
+	 * 
+	 * @param config
+	 * @return
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, Long> dispatcherStatistics(@Config EframeworkConfiguration config) {
+		return config.getEventDispatcher().getStatistics();
 	}
 	
 	/*----------------Events------------------*/
 
 	/**
-	 * Generate a progress event.
+	 * Generate a progress event. The event may be sampled out or rate limited by
+	 * the eventPolicies of the configuration. When progress aggregation is
+	 * enabled the event is counted, and only events that did not succeed (or
+	 * were not skipped) still reach the progress flow one by one.
 	 * 
 	 * @param eventType
 	 * @param eventStatus
@@ -122,7 +229,10 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	@Alias("progress")
 	public void generateProgressEvent(@Optional(defaultValue = "MILESTONE") ProgressStage stage,
 			@Optional(defaultValue = "SUCCESS") ProgressStatus eventStatus,
@@ -130,21 +240,159 @@ public class EframeworkOperations {
 			@Optional(defaultValue = "none") String recordDescriptor,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		TreeMap<String, String> tempMap = createEventAttributes("PROGRESS", eventStatus.toString(),
-				"Progress " + detailText, attributes, location, config);
-		tempMap.put("stage", stage.toString());
-		tempMap.put("detailText", detailText);
-		tempMap.put("recordDescriptor", recordDescriptor);
-		if (nonBlockingMode) {
-			nonblockingExecuteFlow(PROGRESS_EVENT_FLOWNAME, tempMap, content, location, config);
-		} else {
-			blockingProcessFlow(PROGRESS_EVENT_FLOWNAME, tempMap, content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			ProgressAggregator aggregator = config.getProgressAggregator();
+			if (aggregator.isEnabled()) {
+				aggregator.record(stage, eventStatus, recordDescriptor, location);
+				if (eventStatus == ProgressStatus.SUCCESS || eventStatus == ProgressStatus.SKIPPED) {
+					return;
+				}
+			}
+			if (!config.getEventPolicies().admit(PROGRESS_EVENT_FLOWNAME, "PROGRESS", stage.toString(),
+					eventStatus.toString(), recordDescriptor, location)) {
+				return;
+			}
+			attributes = withContext(attributes, correlationInfo, config);
+			Map<String, String> tempMap = createEventAttributes("PROGRESS", eventStatus.toString(),
+					"Progress " + detailText, attributes, location, config);
+			tempMap.put("stage", stage.toString());
+			tempMap.put("detailText", detailText);
+			tempMap.put("recordDescriptor", recordDescriptor);
+			if (nonBlockingMode) {
+				nonblockingExecuteFlow(PROGRESS_EVENT_FLOWNAME, tempMap, content, location, config);
+			} else {
+				blockingProcessFlow(PROGRESS_EVENT_FLOWNAME, tempMap, content, location, config);
+			}
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("progress").completed(System.nanoTime() - start, raised);
+		}
+	}
+
+	/**
+	 * Generate the progress events of many records in one call. Each record
+	 * is a Map with optional attributes, content, eventStatus, detailText and
+	 * recordDescriptor entries, the operation parameters apply to the records
+	 * without them. A record eventStatus is matched ignoring case, an unknown
+	 * one is logged and replaced by eventStatus. Records go through progress aggregation and the
+	 * eventPolicies like single progress events; the remaining ones reach the
+	 * progress flow chunkSize at a time, as one event whose payload is a List
+	 * of EventRecord.
+	 * 
+	 * @param stage
+	 * @param eventStatus
+	 * @param detailText
+	 * @param attributes
+	 *            shared by every record, record attributes win
+	 * @param records
+	 * @param chunkSize
+	 * @param nonBlockingMode
+	 * @param location
+	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
+	 */
+	@Throws(BlockingFlowErrorProvider.class)
+	@Alias("progressBulk")
+	public void generateProgressEvents(@Optional(defaultValue = "MILESTONE") ProgressStage stage,
+			@Optional(defaultValue = "SUCCESS") ProgressStatus eventStatus,
+			@Optional(defaultValue = "none") String detailText,
+			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
+			@Content List<Map<String, Object>> records,
+			@Optional(defaultValue = "1000") int chunkSize,
+			@Optional(defaultValue = "true") boolean nonBlockingMode,
+			ComponentLocation location, CorrelationInfo correlationInfo,
+			@Config EframeworkConfiguration config) {
+		
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			ProgressAggregator aggregator = config.getProgressAggregator();
+			AttributesMap template = AttributesMap.copyOf(attributes);
+			AttributesMap locationTemplate = config.getLocationTemplates().template(location);
+			AttributesMap[] bases = new AttributesMap[ProgressStatus.values().length];
+			List<EventRecord> events = new ArrayList<EventRecord>(records.size());
+			for (Map<String, Object> record : records) {
+				ProgressStatus status = BulkRecords.constant(record, "eventStatus", ProgressStatus.class, eventStatus);
+				String recordDetail = BulkRecords.field(record, "detailText", detailText);
+				String recordDescriptor = BulkRecords.field(record, "recordDescriptor", "none");
+				if (aggregator.isEnabled()) {
+					aggregator.record(stage, status, recordDescriptor, location);
+					if (status == ProgressStatus.SUCCESS || status == ProgressStatus.SKIPPED) {
+						continue;
+					}
+				}
+				if (!config.getEventPolicies().admit(PROGRESS_EVENT_FLOWNAME, "PROGRESS", stage.toString(),
+						status.toString(), recordDescriptor, location)) {
+					continue;
+				}
+				AttributesMap base = bases[status.ordinal()];
+				if (base == null) {
+					base = locationTemplate.with("eventType", "PROGRESS", "eventStatus", status.toString())
+							.with("stage", stage.toString());
+					bases[status.ordinal()] = base;
+				}
+				AttributesMap tempMap = template.withAll(BulkRecords.attributes(record)).withAll(base)
+						.with("detailText", recordDetail, "recordDescriptor", recordDescriptor);
+				events.add(new EventRecord(new LazyMessageAttributes(tempMap, "eventMsg", "Progress " + recordDetail),
+						BulkRecords.content(record, nonBlockingMode)));
+			}
+			bulkCallFlow(PROGRESS_EVENT_FLOWNAME, events, chunkSize, nonBlockingMode, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("progressBulk").completed(System.nanoTime() - start, raised);
 		}
 	}
 
+	/**
+	 * Return the eframework metrics: per operation, the number of calls,
+	 * errors raised and their latency; per handler flow, the number of events
+	 * emitted, batched and processed, calls to a flow that does not exist,
+	 * errors swallowed on blocking calls and the latency of blocking calls,
+	 * with the dispatcher, spool and retry counters. The per operation and per
+	 * flow metrics are also available through JMX.
+	 * 
+	 * @param config
+	 * @return
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, Object> metricsSnapshot(@Config EframeworkConfiguration config) {
+		Map<String, Object> snapshot = config.getMetrics().snapshot();
+		snapshot.put("dispatcher", config.getEventDispatcher().getStatistics());
+		snapshot.put("spool", config.getEventSpool().getStatistics());
+		snapshot.put("retries", config.getRetryScheduler().getStatistics());
+		snapshot.put("deduplication", config.getEventDeduplicator().getStatistics());
+		snapshot.put("routing", config.getEventRouter().getStatistics());
+		snapshot.put("correlationContexts", config.getCorrelationContexts().getStatistics());
+		snapshot.put("blockingExecution", config.getBlockingExecutor().getStatistics());
+		snapshot.put("bulkheads", config.getFlowBulkheads().getStatistics());
+		snapshot.put("suppressedFlowWarnings", config.getFlowResolver().getSuppressedWarningCount());
+		return snapshot;
+	}
+
+	/**
+	 * Send the progress counted since the last summary to the progress flow
+	 * now, for instance when a job completes, and return it. Only meaningful
+	 * when progress aggregation is enabled.
+	 * 
+	 * @param config
+	 * @return one summary per flow
+	 */
+	@MediaType(value = ANY, strict = false)
+	public List<Map<String, Object>> progressSummary(@Config EframeworkConfiguration config) {
+		return config.getProgressAggregator().summarize();
+	}
+
 	/**
 	 * Generate a business event.
 	 * 
@@ -157,21 +405,35 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	@Alias("businessEvent")
 	public void generateBusinessEvent(String eventType, String eventStatus,
 			@Optional(defaultValue = "BUSINESS EVENT: ") String eventMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		createEventAttributesCallFlow(BUSINESS_EVENT_FLOWNAME, eventType, eventStatus, eventMsg, attributes, nonBlockingMode,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			createEventAttributesCallFlow(BUSINESS_EVENT_FLOWNAME, eventType, eventStatus, eventMsg, attributes, nonBlockingMode,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("businessEvent").completed(System.nanoTime() - start, raised);
+		}
 	}
 
 	/**
-	 * Generate a system event.
+	 * Generate a system event. The event may be sampled out or rate limited by
+	 * the eventPolicies of the configuration.
 	 * 
 	 * @param eventType
 	 * @param eventStatus
@@ -182,17 +444,33 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	@Alias("systemEvent")
 	public void generateSystemEvent(String eventType, String eventStatus,
 			@Optional(defaultValue = "SYSTEM EVENT: ") String eventMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		createEventAttributesCallFlow(SYSTEM_EVENT_FLOWNAME, eventType, eventStatus, eventMsg, attributes, nonBlockingMode,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			if (!config.getEventPolicies().admit(SYSTEM_EVENT_FLOWNAME, eventType, null, eventStatus, null, location)) {
+				return;
+			}
+			attributes = withContext(attributes, correlationInfo, config);
+			createEventAttributesCallFlow(SYSTEM_EVENT_FLOWNAME, eventType, eventStatus, eventMsg, attributes, nonBlockingMode,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("systemEvent").completed(System.nanoTime() - start, raised);
+		}
 	}
 
 	/**
@@ -207,17 +485,30 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	@Alias("sendNotificationEvent")
 	public void generateNotificationEvent(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "NOTIFICATION: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(NOTIFICATION_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			createAttributesCallFlow(NOTIFICATION_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("sendNotificationEvent").completed(System.nanoTime() - start, raised);
+		}
 	}
 
 	/**
@@ -232,21 +523,37 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	@Alias("sendErrorEvent")
 	public void generateErrorEvent(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "ERROR: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(ERROR_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			createAttributesCallFlow(ERROR_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("sendErrorEvent").completed(System.nanoTime() - start, raised);
+		}
 	}
 
 	/**
-	 * Generate a retry event.
+	 * Generate a retry event. With retry scheduling enabled, the event is
+	 * always delivered asynchronously: after the backoff of its RetryPolicy,
+	 * and again while the retry flow fails, up to maxAttempts, after which it
+	 * goes to the error flow.
 	 * 
 	 * @param transactionType
 	 * @param transactionStatus
@@ -257,17 +564,51 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	@Alias("sendRetryEvent")
 	public void generateRetryEvent(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "RETRY: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(RETRY_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			RetryScheduler retryScheduler = config.getRetryScheduler();
+			if (retryScheduler.isEnabled()) {
+				Map<String, String> tempMap = createAttributes(transactionType, transactionStatus,
+						transactionMsg, attributes, location, config);
+				if (!retryScheduler.schedule(transactionType, tempMap, content, location)) {
+					nonblockingExecuteFlow(RETRY_FLOWNAME, tempMap, content, location, config);
+				}
+				return;
+			}
+			createAttributesCallFlow(RETRY_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("sendRetryEvent").completed(System.nanoTime() - start, raised);
+		}
+	}
+
+	/**
+	 * Return the pending retries, per transactionType, and the retry counters
+	 * of the retry scheduler
+	 * 
+	 * @param config
+	 * @return
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, Object> retryStatistics(@Config EframeworkConfiguration config) {
+		return config.getRetryScheduler().getStatistics();
 	}
 
 	/**
@@ -282,17 +623,75 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	@Alias("sendAuditEvent")
 	public void generateAuditEvent(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "AUDIT: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(AUDIT_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			createAttributesCallFlow(AUDIT_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, nonBlockingMode,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("sendAuditEvent").completed(System.nanoTime() - start, raised);
+		}
+	}
+
+	/**
+	 * Generate the audit events of many records in one call. Each record is a
+	 * Map with optional attributes and content entries. Attributes are built
+	 * once per record on top of the shared attributes and location data, and
+	 * the records reach the audit flow chunkSize at a time, as one event whose
+	 * payload is a List of EventRecord.
+	 * 
+	 * @param transactionType
+	 * @param transactionStatus
+	 * @param transactionMsg
+	 * @param attributes
+	 *            shared by every record, record attributes win
+	 * @param records
+	 * @param chunkSize
+	 * @param nonBlockingMode
+	 * @param location
+	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
+	 */
+	@Throws(BlockingFlowErrorProvider.class)
+	@Alias("sendAuditEvents")
+	public void generateAuditEvents(String transactionType, String transactionStatus,
+			@Optional(defaultValue = "AUDIT: ") String transactionMsg,
+			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
+			@Content List<Map<String, Object>> records,
+			@Optional(defaultValue = "1000") int chunkSize,
+			@Optional(defaultValue = "true") boolean nonBlockingMode,
+			ComponentLocation location, CorrelationInfo correlationInfo,
+			@Config EframeworkConfiguration config) {
+		
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			bulkAttributesCallFlow(AUDIT_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes,
+					records, chunkSize, nonBlockingMode, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("sendAuditEvents").completed(System.nanoTime() - start, raised);
+		}
 	}
 	
 	/*----------------PayloadLogging------------------*/
@@ -309,22 +708,31 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	public void logResponsePayload(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "RESPONSE Payload: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		TreeMap<String, String> tempMap = createAttributes(transactionType, transactionStatus,
-				transactionMsg, attributes, location, config);
-		tempMap.put("transactionMsg", transactionMsg); //formatted msg is too long
-		tempMap.put("payloadType", "RESPONSE");
-		if (nonBlockingMode) {
-			nonblockingExecuteFlow(RESPONSE_PAYLOAD_FLOWNAME, tempMap, content, location, config);
-		} else {
-			blockingProcessFlow(RESPONSE_PAYLOAD_FLOWNAME, tempMap, content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			AttributesMap tempMap = createBaseAttributes(transactionType, transactionStatus,
+					attributes, location, config)
+					.with("transactionMsg", transactionMsg) //formatted msg is too long
+					.with("payloadType", "RESPONSE");
+			payloadCallFlow(RESPONSE_PAYLOAD_FLOWNAME, tempMap, nonBlockingMode, content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("logResponsePayload").completed(System.nanoTime() - start, raised);
 		}
 	}
 
@@ -340,22 +748,55 @@ public class EframeworkOperations {
 	 *            is the inbound payload
 	 * @param location
 	 *            is injected
+	 * @param correlationInfo
+	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	public void logRequestPayload(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "REQUEST Payload: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Optional(defaultValue = "true") boolean nonBlockingMode,
-			@Content Object content, ComponentLocation location,
+			@Content Object content, ComponentLocation location, CorrelationInfo correlationInfo,
 			@Config EframeworkConfiguration config) {
 		
-		TreeMap<String, String> tempMap = createAttributes(transactionType, transactionStatus,
-				transactionMsg, attributes, location, config);
-		tempMap.put("transactionMsg", transactionMsg); //formatted msg is too long
-		tempMap.put("payloadType", "REQUEST");
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			attributes = withContext(attributes, correlationInfo, config);
+			AttributesMap tempMap = createBaseAttributes(transactionType, transactionStatus,
+					attributes, location, config)
+					.with("transactionMsg", transactionMsg) //formatted msg is too long
+					.with("payloadType", "REQUEST");
+			payloadCallFlow(REQUEST_PAYLOAD_FLOWNAME, tempMap, nonBlockingMode, content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("logRequestPayload").completed(System.nanoTime() - start, raised);
+		}
+	}
+	
+	/*
+	 * In PREVIEW mode the flow gets a bounded preview, size and hash instead of the payload
+	 */
+	private void payloadCallFlow(String flowName, AttributesMap attributes, boolean nonBlockingMode,
+			Object content, ComponentLocation location, EframeworkConfiguration config) {
+		Object payload = content;
+		PayloadCapture capture = config.getPayloadCapture();
+		if (capture.isEnabled()) {
+			PayloadPreview preview = capture.capture(content);
+			payload = preview.getPreview();
+			attributes = attributes
+					.with("payloadSize", String.valueOf(preview.getSize()))
+					.with("payloadTruncated", String.valueOf(preview.isTruncated()));
+			if (preview.getHash() != null) {
+				attributes = attributes.with("payloadHash", preview.getHash());
+			}
+		}
 		if (nonBlockingMode) {
-			nonblockingExecuteFlow(REQUEST_PAYLOAD_FLOWNAME, tempMap, content, location, config);
+			nonblockingExecuteFlow(flowName, attributes, payload, location, config);
 		} else {
-			blockingProcessFlow(REQUEST_PAYLOAD_FLOWNAME, tempMap, content, location, config);
+			blockingProcessFlow(flowName, attributes, payload, location, config);
 		}
 	}
 	
@@ -380,7 +821,7 @@ public class EframeworkOperations {
 			@Content Object content, ComponentLocation location,
 			@Config EframeworkConfiguration config) {
 		
-		TreeMap<String, String> tempMap = createAttributes(transactionType, transactionStatus,
+		Map<String, String> tempMap = createAttributes(transactionType, transactionStatus,
 				transactionMsg, attributes, location, config);
 		throw new CircuitBreakerOpenException(tempMap.get("transactionMsg"));
 	}
@@ -397,14 +838,30 @@ public class EframeworkOperations {
 	 * @param location
 	 *            is injected
 	 */
+	@Throws(EframeworkErrorProvider.class)
 	public void circuitBreakerCheck(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "Check Circuit Breaker: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Content Object content, ComponentLocation location,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(CIRCUIT_BREAKER_CHECK_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			CircuitBreakers breakers = config.getCircuitBreakers();
+			if (breakers.isNative()) {
+				checkNativeCircuitBreaker(breakers.manual(transactionType), transactionStatus, transactionMsg,
+						attributes, location, config);
+				return;
+			}
+			createAttributesCallFlow(CIRCUIT_BREAKER_CHECK_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("circuitBreakerCheck").completed(System.nanoTime() - start, raised);
+		}
 	}
 
 	/**
@@ -427,11 +884,25 @@ public class EframeworkOperations {
 			@Content Object content, ComponentLocation location,
 			@Config EframeworkConfiguration config) {
 		
-		TreeMap<String, String> tempMap = createAttributes(transactionType, transactionStatus,
-				transactionMsg, attributes, location, config);
-		blockingProcessFlow(CIRCUIT_BREAKER_TRIP_FLOWNAME, tempMap, content, location, config);
-		if (throwError) {
-			throw new CircuitBreakerOpenException(tempMap.get("transactionMsg"));
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			Map<String, String> tempMap = createAttributes(transactionType, transactionStatus,
+					transactionMsg, attributes, location, config);
+			CircuitBreakers breakers = config.getCircuitBreakers();
+			if (!breakers.isNative()) {
+				blockingProcessFlow(CIRCUIT_BREAKER_TRIP_FLOWNAME, tempMap, content, location, config);
+			} else if (breakers.manual(transactionType).open(System.nanoTime())) {
+				nonblockingExecuteFlow(CIRCUIT_BREAKER_TRIP_FLOWNAME, tempMap, content, location, config);
+			}
+			if (throwError) {
+				throw new CircuitBreakerOpenException(tempMap.get("transactionMsg"));
+			}
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("circuitBreakerTrip").completed(System.nanoTime() - start, raised);
 		}
 	}
 
@@ -447,14 +918,32 @@ public class EframeworkOperations {
 	 * @param location
 	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	public void circuitBreakerReset(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "Reset Circuit Breaker: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Content Object content, ComponentLocation location,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(CIRCUIT_BREAKER_RESET_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			CircuitBreakers breakers = config.getCircuitBreakers();
+			if (breakers.isNative()) {
+				if (breakers.manual(transactionType).close()) {
+					createAttributesCallFlow(CIRCUIT_BREAKER_RESET_FLOWNAME, transactionType, transactionStatus, transactionMsg,
+							attributes, true, content, location, config);
+				}
+				return;
+			}
+			createAttributesCallFlow(CIRCUIT_BREAKER_RESET_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("circuitBreakerReset").completed(System.nanoTime() - start, raised);
+		}
 	}
 
 	/**
@@ -469,14 +958,30 @@ public class EframeworkOperations {
 	 * @param location
 	 *            is injected
 	 */
+	@Throws(EframeworkErrorProvider.class)
 	public void circuitBreakerAutoCheck(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "Check Auto Circuit Breaker: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Content Object content, ComponentLocation location,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(CIRCUIT_BREAKER_AUTO_CHECK_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			CircuitBreakers breakers = config.getCircuitBreakers();
+			if (breakers.isNative()) {
+				checkNativeCircuitBreaker(breakers.automatic(transactionType), transactionStatus, transactionMsg,
+						attributes, location, config);
+				return;
+			}
+			createAttributesCallFlow(CIRCUIT_BREAKER_AUTO_CHECK_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("circuitBreakerAutoCheck").completed(System.nanoTime() - start, raised);
+		}
 	}
 
 	/**
@@ -499,11 +1004,31 @@ public class EframeworkOperations {
 			@Content Object content, ComponentLocation location,
 			@Config EframeworkConfiguration config) {
 		
-		TreeMap<String, String> tempMap = createAttributes(transactionType, transactionStatus,
-				transactionMsg, attributes, location, config);
-		blockingProcessFlow(CIRCUIT_BREAKER_AUTO_TRIP_FLOWNAME, tempMap, content, location, config);
-		if (throwError) {
-			throw new CircuitBreakerOpenException(tempMap.get("transactionMsg"));
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			Map<String, String> tempMap = createAttributes(transactionType, transactionStatus,
+					transactionMsg, attributes, location, config);
+			CircuitBreakers breakers = config.getCircuitBreakers();
+			if (!breakers.isNative()) {
+				blockingProcessFlow(CIRCUIT_BREAKER_AUTO_TRIP_FLOWNAME, tempMap, content, location, config);
+			} else {
+				CircuitBreaker breaker = breakers.automatic(transactionType);
+				if (breaker.recordFailure(System.nanoTime())) {
+					nonblockingExecuteFlow(CIRCUIT_BREAKER_AUTO_TRIP_FLOWNAME, tempMap, content, location, config);
+				}
+				if (breaker.getState() != CircuitBreakerState.OPEN) {
+					return; // failure recorded, threshold not reached
+				}
+			}
+			if (throwError) {
+				throw new CircuitBreakerOpenException(tempMap.get("transactionMsg"));
+			}
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("circuitBreakerAutoTrip").completed(System.nanoTime() - start, raised);
 		}
 	}
 
@@ -519,25 +1044,153 @@ public class EframeworkOperations {
 	 * @param location
 	 *            is injected
 	 */
+	@Throws(BlockingFlowErrorProvider.class)
 	public void circuitBreakerAutoReset(String transactionType, String transactionStatus,
 			@Optional(defaultValue = "Reset Auto Circuit Breaker: ") String transactionMsg,
 			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
 			@Content Object content, ComponentLocation location,
 			@Config EframeworkConfiguration config) {
 		
-		createAttributesCallFlow(CIRCUIT_BREAKER_AUTO_RESET_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
-				content, location, config);
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			CircuitBreakers breakers = config.getCircuitBreakers();
+			if (breakers.isNative()) {
+				if (breakers.automatic(transactionType).close()) {
+					createAttributesCallFlow(CIRCUIT_BREAKER_AUTO_RESET_FLOWNAME, transactionType, transactionStatus,
+							transactionMsg, attributes, true, content, location, config);
+				}
+				return;
+			}
+			breakers.automatic(transactionType).close(); // the outcome window trips again after a reset
+			createAttributesCallFlow(CIRCUIT_BREAKER_AUTO_RESET_FLOWNAME, transactionType, transactionStatus, transactionMsg, attributes, false,
+					content, location, config);
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("circuitBreakerAutoReset").completed(System.nanoTime() - start, raised);
+		}
+	}
+	
+	/**
+	 * Record the outcome of a call guarded by the automatic circuit breaker.
+	 * The breaker opens when the failure rate or latency percentile over its
+	 * rolling window crosses the configured threshold, and a successful probe
+	 * closes a half open breaker. The auto-trip and auto-reset flows are
+	 * invoked when this changes the breaker state, blocking in FLOWS mode (they
+	 * hold the state) and non-blocking in NATIVE mode.
+	 * 
+	 * @param transactionType
+	 * @param success
+	 * @param durationMillis
+	 *            duration of the guarded call, -1 if unknown
+	 * @param transactionStatus
+	 * @param transactionMsg
+	 * @param attributes
+	 * @param content
+	 *            is the inbound payload
+	 * @param location
+	 *            is injected
+	 */
+	@Throws(BlockingFlowErrorProvider.class)
+	public void circuitBreakerRecordOutcome(String transactionType, boolean success,
+			@Optional(defaultValue = "-1") long durationMillis,
+			@Optional(defaultValue = "THRESHOLD") String transactionStatus,
+			@Optional(defaultValue = "Auto Circuit Breaker Outcome: ") String transactionMsg,
+			@Optional(defaultValue = "#[{}]") @ParameterDsl(allowInlineDefinition = false) Map<String, String> attributes,
+			@Content Object content, ComponentLocation location,
+			@Config EframeworkConfiguration config) {
+		
+		long start = System.nanoTime();
+		boolean raised = false;
+		try {
+			CircuitBreakers breakers = config.getCircuitBreakers();
+			long durationNanos = durationMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(durationMillis);
+			CircuitBreakerState newState = breakers.automatic(transactionType).recordOutcome(success, durationNanos,
+					System.nanoTime());
+			if (newState != null) {
+				String flowName = newState == CircuitBreakerState.OPEN ? CIRCUIT_BREAKER_AUTO_TRIP_FLOWNAME
+						: CIRCUIT_BREAKER_AUTO_RESET_FLOWNAME;
+				createAttributesCallFlow(flowName, transactionType, transactionStatus, transactionMsg, attributes,
+						breakers.isNative(), content, location, config);
+			}
+		} catch (RuntimeException e) {
+			raised = true;
+			throw e;
+		} finally {
+			config.getMetrics().operation("circuitBreakerRecordOutcome").completed(System.nanoTime() - start, raised);
+		}
+	}
+
+	/**
+	 * Return the state and rolling window statistics (calls, failures, slow
+	 * calls, failure rate, latency percentile) of the automatic circuit
+	 * breaker for transactionType
+	 * 
+	 * @param transactionType
+	 * @param config
+	 * @return
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, Object> circuitBreakerStatistics(String transactionType,
+			@Config EframeworkConfiguration config) {
+		return config.getCircuitBreakers().getStatistics(transactionType);
+	}
+
+	/**
+	 * Return the state of every native circuit breaker, keyed by
+	 * transactionType
+	 * 
+	 * @param automatic
+	 *            return the automatic instead of the manual circuit breakers
+	 * @param config
+	 * @return
+	 */
+	@MediaType(value = ANY, strict = false)
+	public Map<String, String> circuitBreakerStates(@Optional(defaultValue = "false") boolean automatic,
+			@Config EframeworkConfiguration config) {
+		return config.getCircuitBreakers().getStates(automatic);
 	}
 	
 	/*----------------private------------------*/
 	
+	/*
+	 * Raise CircuitBreakerOpen if the native breaker does not allow the call,
+	 * attributes are only built when the error is raised
+	 */
+	private void checkNativeCircuitBreaker(CircuitBreaker breaker, String transactionStatus, String transactionMsg,
+			Map<String, String> attributes, ComponentLocation location, EframeworkConfiguration config) {
+		if (!breaker.tryAcquire(System.nanoTime())) {
+			Map<String, String> tempMap = createAttributes(breaker.getName(), transactionStatus,
+					transactionMsg, attributes, location, config);
+			throw new CircuitBreakerOpenException(tempMap.get("transactionMsg"));
+		}
+	}
+	
+	/*
+	 * The correlation context of the event, if any, under the attributes
+	 * passed to the operation
+	 */
+	private Map<String, String> withContext(Map<String, String> attributes, CorrelationInfo correlationInfo,
+			EframeworkConfiguration config) {
+		if (correlationInfo == null) {
+			return attributes;
+		}
+		CorrelationContexts contexts = config.getCorrelationContexts();
+		return contexts.withContext(contexts.key(correlationInfo), attributes);
+	}
+
 	private void createAttributesCallFlow(String flowName, String transactionType, String transactionStatus,
 			String transactionMsg, Map<String, String> attributes, boolean nonBlockingMode, Object content,
 			ComponentLocation location,
 			EframeworkConfiguration config) {
 
-		TreeMap<String, String> tempMap = createAttributes(transactionType, transactionStatus,
+		Map<String, String> tempMap = createAttributes(transactionType, transactionStatus,
 				transactionMsg, attributes, location, config);
+		if (!config.getEventDeduplicator().admit(flowName, tempMap, location)) {
+			return;
+		}
 		if (nonBlockingMode) {
 			nonblockingExecuteFlow(flowName, tempMap, content, location, config);
 		} else {
@@ -545,26 +1198,114 @@ public class EframeworkOperations {
 		}
 	}
 
-	private TreeMap<String, String> createAttributes(String transactionType, String transactionStatus,
-			String transactionMsg, Map<String, String> attributes,
-			ComponentLocation location,
+	/*
+	 * The location template and shared attributes are merged once, records
+	 * without attributes use that map as-is
+	 */
+	private void bulkAttributesCallFlow(String flowName, String transactionType, String transactionStatus,
+			String transactionMsg, Map<String, String> attributes, List<Map<String, Object>> records,
+			int chunkSize, boolean nonBlockingMode, ComponentLocation location,
 			EframeworkConfiguration config) {
 
-		TreeMap<String, String> tempMap = new TreeMap<String, String>();
-		if (attributes != null) {
-			for (String item : attributes.keySet()) {
-				tempMap.put(item, attributes.get(item));
+		AttributesMap template = AttributesMap.copyOf(attributes);
+		AttributesMap base = config.getLocationTemplates().template(location)
+				.with("transactionType", transactionType, "transactionStatus", transactionStatus);
+		AttributesMap shared = template.withAll(base);
+		EventDeduplicator deduplicator = config.getEventDeduplicator();
+		List<EventRecord> events = new ArrayList<EventRecord>(records.size());
+		for (Map<String, Object> record : records) {
+			AttributesMap recordAttributes = BulkRecords.attributes(record);
+			AttributesMap tempMap = recordAttributes.isEmpty() ? shared
+					: template.withAll(recordAttributes).withAll(base);
+			Map<String, String> eventAttributes = new LazyMessageAttributes(tempMap, "transactionMsg", transactionMsg);
+			if (deduplicator.admit(flowName, eventAttributes, location)) {
+				events.add(new EventRecord(eventAttributes, BulkRecords.content(record, nonBlockingMode)));
 			}
 		}
+		bulkCallFlow(flowName, events, chunkSize, nonBlockingMode, location, config);
+	}
 
-		addLocation(tempMap, location);
-		tempMap.put("applicationId", config.getApplicationId());
-		tempMap.put("transactionType", transactionType);
-		tempMap.put("transactionStatus", transactionStatus);
-		String strMsg = formatMsg(transactionMsg, tempMap);
-		tempMap.put("transactionMsg", strMsg);
-		
-		return tempMap;
+	/*
+	 * Records are delivered chunkSize at a time as one event, like a batch,
+	 * without going through the batcher. Routes match the attributes of each
+	 * record, a chunk only holds records routed to the same flows.
+	 */
+	private void bulkCallFlow(String flowName, List<EventRecord> records, int chunkSize, boolean nonBlockingMode,
+			ComponentLocation location, EframeworkConfiguration config) {
+
+		if (records.isEmpty()) {
+			return;
+		}
+		int size = Math.max(1, chunkSize);
+		for (Map.Entry<List<String>, List<EventRecord>> routed : routeRecords(flowName, records, config).entrySet()) {
+			List<String> targets = routed.getKey();
+			List<EventRecord> group = routed.getValue();
+			for (int from = 0; from < group.size(); from += size) {
+				List<EventRecord> chunk = group.size() <= size ? group
+						: new ArrayList<EventRecord>(group.subList(from, Math.min(group.size(), from + size)));
+				AttributesMap attributes = AttributesMap.builder()
+						.put("batchSize", String.valueOf(chunk.size()))
+						.build();
+				if (!nonBlockingMode) {
+					blockingProcessTargets(targets, attributes, chunk, location, config);
+					continue;
+				}
+				for (String target : targets) {
+					Flow flow = lookupFlow(target, config);
+					if (flow != null) {
+						config.getEventDispatcher().dispatch(flow, FlowEvents.create(flow, attributes, chunk, location));
+						config.getMetrics().flow(target).batched(chunk.size());
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Each record is routed on its own attributes, the records going to the
+	 * same flows are chunked together in their original order
+	 */
+	private Map<List<String>, List<EventRecord>> routeRecords(String flowName, List<EventRecord> records,
+			EframeworkConfiguration config) {
+		EventRouter router = config.getEventRouter();
+		if (!router.isEnabled()) {
+			return Collections.singletonMap(router.route(flowName, AttributesMap.EMPTY), records);
+		}
+		Map<List<String>, List<EventRecord>> groups = new LinkedHashMap<List<String>, List<EventRecord>>();
+		for (EventRecord record : records) {
+			List<String> targets = router.route(flowName, record.getAttributes());
+			List<EventRecord> group = groups.get(targets);
+			if (group == null) {
+				group = new ArrayList<EventRecord>();
+				groups.put(targets, group);
+			}
+			group.add(record);
+		}
+		return groups;
+	}
+
+	/*
+	 * The transactionMsg entry is formatted lazily, only when the handler flow
+	 * reads it
+	 */
+	private Map<String, String> createAttributes(String transactionType, String transactionStatus,
+			String transactionMsg, Map<String, String> attributes,
+			ComponentLocation location,
+			EframeworkConfiguration config) {
+
+		AttributesMap tempMap = createBaseAttributes(transactionType, transactionStatus,
+				attributes, location, config);
+		return new LazyMessageAttributes(tempMap, "transactionMsg", transactionMsg);
+	}
+
+	private AttributesMap createBaseAttributes(String transactionType, String transactionStatus,
+			Map<String, String> attributes,
+			ComponentLocation location,
+			EframeworkConfiguration config) {
+
+		AttributesMap base = config.getLocationTemplates().template(location)
+				.with("transactionType", transactionType, "transactionStatus", transactionStatus);
+		return AttributesMap.copyOf(attributes).withAll(base);
 	}
 	
 	private void createEventAttributesCallFlow(String flowName, String eventType, String eventStatus,
@@ -572,7 +1313,7 @@ public class EframeworkOperations {
 			ComponentLocation location,
 			EframeworkConfiguration config) {
 
-		TreeMap<String, String> tempMap = createEventAttributes(eventType, eventStatus,
+		Map<String, String> tempMap = createEventAttributes(eventType, eventStatus,
 				eventMsg, attributes, location, config);
 		if (nonBlockingMode) {
 			nonblockingExecuteFlow(flowName, tempMap, content, location, config);
@@ -581,104 +1322,159 @@ public class EframeworkOperations {
 		}
 	}
 
-	private TreeMap<String, String> createEventAttributes(String eventType, String eventStatus,
+	/*
+	 * The eventMsg entry is formatted lazily, only when the handler flow reads
+	 * it
+	 */
+	private Map<String, String> createEventAttributes(String eventType, String eventStatus,
 			String eventMsg, Map<String, String> attributes,
 			ComponentLocation location,
 			EframeworkConfiguration config) {
 
-		TreeMap<String, String> tempMap = new TreeMap<String, String>();
-		if (attributes != null) {
-			for (String item : attributes.keySet()) {
-				tempMap.put(item, attributes.get(item));
-			}
-		}
+		AttributesMap base = config.getLocationTemplates().template(location)
+				.with("eventType", eventType, "eventStatus", eventStatus);
+		AttributesMap tempMap = AttributesMap.copyOf(attributes).withAll(base);
+		return new LazyMessageAttributes(tempMap, "eventMsg", eventMsg);
+	}
 
-		addLocation(tempMap, location);
-		tempMap.put("applicationId", config.getApplicationId());
-		tempMap.put("eventType", eventType);
-		tempMap.put("eventStatus", eventStatus);
-		String strMsg = formatMsg(eventMsg, tempMap);
-		tempMap.put("eventMsg", strMsg);
-		
-		return tempMap;
+	/*
+	 * An event routed to several flows is dispatched once per flow, streamed
+	 * content is read first so every flow gets it
+	 */
+	private void nonblockingExecuteFlow(String flowName, Map<String, String> tempMap, Object content,
+			ComponentLocation location,
+			EframeworkConfiguration config) {
+
+		List<String> targets = config.getEventRouter().route(flowName, tempMap);
+		if (targets.size() == 1) {
+			nonblockingExecuteTarget(targets.get(0), tempMap, content, location, config);
+			return;
+		}
+		Object value = FlowEvents.materialize(content);
+		for (String target : targets) {
+			nonblockingExecuteTarget(target, tempMap, value, location, config);
+		}
 	}
 
-	private void nonblockingExecuteFlow(String flowName, TreeMap<String, String> tempMap, Object content,
+	private void nonblockingExecuteTarget(String flowName, Map<String, String> tempMap, Object content,
 			ComponentLocation location,
 			EframeworkConfiguration config) {
 
-		Flow flow = lookupFlow(flowName);
+		Flow flow = lookupFlow(flowName, config);
 		if (flow != null) {
-			Message msg = Message.builder().value(content).attributesValue(tempMap).build();
+			if (config.getEventBatcher().isBatched(flowName)) {
+				config.getEventBatcher().add(flow, tempMap, content, location);
+				config.getMetrics().flow(flowName).batched();
+				return;
+			}
+			CoreEvent event = FlowEvents.create(flow, tempMap, content, location);
 
-			CoreEvent event = CoreEvent.builder(EventContextFactory.create(flow, location)).message(msg).build();
+			config.getEventDispatcher().dispatch(flow, event);
+			config.getMetrics().flow(flowName).emitted();
+		}
+	}
 
-			flow.execute(event);
-		} else {
-			LOGGER.warn(flowName + " does not exist: ");
+	/*
+	 * An event routed to several flows is processed by all of them in
+	 * parallel, streamed content is read first so every flow gets it
+	 */
+	private void blockingProcessFlow(String flowName, Map<String, String> tempMap, Object content,
+			ComponentLocation location,
+			EframeworkConfiguration config) {
+
+		blockingProcessTargets(config.getEventRouter().route(flowName, tempMap), tempMap, content, location, config);
+	}
+
+	private void blockingProcessTargets(List<String> targets, Map<String, String> tempMap, Object content,
+			ComponentLocation location,
+			EframeworkConfiguration config) {
+
+		if (targets.size() == 1) {
+			blockingProcessTarget(targets.get(0), tempMap, content, location, config);
+			return;
 		}
+		Object value = FlowEvents.materialize(content);
+		config.getEventRouter().fanOut(targets,
+				target -> blockingProcessTarget(target, tempMap, value, location, config));
 	}
 
-	private void blockingProcessFlow(String flowName, TreeMap<String, String> tempMap, Object content,
+	/*
+	 * Flows with a bulkhead are called within its limits, the others through
+	 * the blocking executor. A flow error is logged, or raised as FlowFailed
+	 * with raiseFlowErrors
+	 */
+	private void blockingProcessTarget(String flowName, Map<String, String> tempMap, Object content,
 			ComponentLocation location,
 			EframeworkConfiguration config) {
 
+		Flow flow = lookupFlow(flowName, config);
+		if (flow == null) {
+			return;
+		}
+		Bulkhead bulkhead = config.getFlowBulkheads().get(flowName);
+		long start = System.nanoTime();
+		boolean success = false;
+		Bulkhead.Outcome outcome = Bulkhead.Outcome.COMPLETED;
 		try {
-			Flow flow = lookupFlow(flowName);
-			if (flow != null) {
-				Message msg = Message.builder().value(content).attributesValue(tempMap).build();
-
-				CoreEvent event = CoreEvent.builder(EventContextFactory.create(flow, location)).message(msg).build();
+			CoreEvent event = FlowEvents.create(flow, tempMap, content, location);
 
-				flow.process(event);
+			if (bulkhead == null) {
+				outcome = config.getBlockingExecutor().execute(flowName, () -> flow.process(event));
 			} else {
-				LOGGER.warn(flowName + " does not exist: ");
+				outcome = bulkhead.execute(() -> flow.process(event));
 			}
+			success = outcome == Bulkhead.Outcome.COMPLETED;
 		} catch (MuleException ex) {
+			if (config.getBlockingExecutor().isRaiseFlowErrors()) {
+				throw new FlowFailedException(flowName + " failed: " + ex.getMessage(), ex);
+			}
 			LOGGER.error("Error during " + tempMap.get("transactionType"), ex);
+		} finally {
+			config.getMetrics().flow(flowName).processed(System.nanoTime() - start, success);
+		}
+		if (outcome != Bulkhead.Outcome.COMPLETED) {
+			flowNotCompleted(flowName, bulkhead, outcome, tempMap, content, location, config);
 		}
 	}
 
 	/*
-	 * Add component location values to the transactionProperties
-	 */
-	private void addLocation(Map<String, String> transactionProperties, ComponentLocation location) {
-		if (location != null) {			
-			/* add the current location */
-			java.util.Optional<String> fileName = location.getFileName();
-			java.util.Optional<Integer> lineNumber = location.getLineInFile();
-			transactionProperties.put("event.flow", location.getRootContainerName());
-			if (fileName.isPresent()) {
-				transactionProperties.put("event.fileName", fileName.get());
+	 * Apply the timeoutPolicy of the bulkhead, or the blockingTimeoutPolicy of
+	 * the blocking executor, to a call that did not complete. The flow of a
+	 * timed out call keeps running, which is all ASYNC does for it
+	 */
+	private void flowNotCompleted(String flowName, Bulkhead bulkhead, Bulkhead.Outcome outcome,
+			Map<String, String> tempMap, Object content, ComponentLocation location, EframeworkConfiguration config) {
+		BlockingExecutor executor = config.getBlockingExecutor();
+		switch (bulkhead != null ? bulkhead.getTimeoutPolicy() : executor.getTimeoutPolicy()) {
+		case ERROR:
+			if (outcome == Bulkhead.Outcome.REJECTED) {
+				throw new BulkheadFullException(bulkhead != null ? "The bulkhead of " + flowName + " is full"
+						: "No virtual thread available for " + flowName + " within " + executor.getTimeout() + " ms");
 			}
-			if (lineNumber.isPresent()) {
-				transactionProperties.put("event.lineNumber", lineNumber.get().toString());
+			throw new FlowTimeoutException(flowName + " did not complete within "
+					+ (bulkhead != null ? bulkhead.getTimeout() : executor.getTimeout()) + " ms");
+		case ASYNC:
+			if (bulkhead != null ? bulkhead.downgrade(outcome) : outcome != Bulkhead.Outcome.TIMEOUT) {
+				nonblockingExecuteTarget(flowName, tempMap, content, location, config);
+			}
+			break;
+		case SKIP:
+		default:
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Skipped " + tempMap.get("transactionType") + " for " + flowName + ": " + outcome);
 			}
-		} else {
-			LOGGER.debug("Missing location information");
 		}
 	}
 
 	/*
-	 * Create a message by adding the transactionProperties to the message as a
-	 * JSON payload
+	 * Resolve the handler flow through the configuration's flow cache, missing
+	 * flows are reported by the cache rather than on every event
 	 */
-	private String formatMsg(String msg, Map<String, String> transactionProperties) {
-		ObjectMapper mapper = new ObjectMapper();
-		String payload = "";
-		try {
-			if (transactionProperties != null) {
-				payload = mapper.writeValueAsString(transactionProperties);
-			}
-		} catch (JsonProcessingException e) {
-			e.printStackTrace();
+	private Flow lookupFlow(String flowName, EframeworkConfiguration config) {
+		Flow flow = config.getFlowResolver().lookup(flowName);
+		if (flow == null) {
+			config.getMetrics().flow(flowName).missing();
 		}
-		StringBuilder sb = new StringBuilder();
-		sb.append(msg).append(" ").append(payload);
-		return sb.toString();
-	}
-
-	private Flow lookupFlow(String flowName) {
-		return (Flow) muleRegistry.lookupByName(flowName).orElse(null);
+		return flow;
 	}
 }
@@ -0,0 +1,112 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Encodes event attributes as a Smile object, the binary form of JSON that
+ * any Jackson based consumer reads without a schema.
+ *
+ * Attributes built by the operations are encoded with transactionMsg (or
+ * eventMsg) holding the message text only: the properties its JSON would
+ * repeat are the other entries of the object, so the JSON string is never
+ * formatted. The encoding is memoized per event by LazyMessageAttributes.
+ */
+public final class AttributesEncoder {
+
+	public static final String MEDIA_TYPE = "application/x-jackson-smile";
+
+	private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+	private static final ObjectReader SMILE_READER = SMILE_MAPPER
+			.readerFor(new TypeReference<Map<String, String>>() {
+			});
+	private static final ObjectWriter SMILE_WRITER = SMILE_MAPPER.writer();
+
+	private AttributesEncoder() {
+	}
+
+	/**
+	 * @param attributes
+	 * @return the attributes as a Smile object, empty if attributes is null
+	 */
+	public static byte[] encode(Map<String, String> attributes) {
+		if (attributes instanceof LazyMessageAttributes) {
+			return ((LazyMessageAttributes) attributes).encoded();
+		}
+		return write(attributes, null, null);
+	}
+
+	/**
+	 * @param bytes
+	 *            as returned by encode()
+	 * @return
+	 * @throws IOException
+	 *             if bytes is not a Smile object of Strings
+	 */
+	public static Map<String, String> decode(byte[] bytes) throws IOException {
+		return SMILE_READER.readValue(bytes);
+	}
+
+	/*
+	 * Write every entry, rawKey is written with rawValue without reading the
+	 * entry's value
+	 */
+	static byte[] write(Map<String, String> attributes, String rawKey, String rawValue) {
+		try {
+			return SMILE_WRITER.writeValueAsBytes(new Entries(attributes, rawKey, rawValue));
+		} catch (JsonProcessingException e) {
+			// not thrown when writing Strings to a byte array
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * Streams the entries to the generator of the shared writer, which
+	 * recycles its buffers, rather than copying them to a map first
+	 */
+	private static final class Entries extends JsonSerializable.Base {
+		private final Map<String, String> attributes;
+		private final String rawKey;
+		private final String rawValue;
+
+		private Entries(Map<String, String> attributes, String rawKey, String rawValue) {
+			this.attributes = attributes;
+			this.rawKey = rawKey;
+			this.rawValue = rawValue;
+		}
+
+		@Override
+		public void serialize(JsonGenerator generator, SerializerProvider serializers) throws IOException {
+			generator.writeStartObject();
+			if (attributes != null) {
+				for (Map.Entry<String, String> entry : attributes.entrySet()) {
+					String value = entry.getKey().equals(rawKey) ? rawValue : entry.getValue();
+					generator.writeFieldName(entry.getKey());
+					if (value == null) {
+						generator.writeNull();
+					} else {
+						generator.writeString(value);
+					}
+				}
+			}
+			generator.writeEndObject();
+		}
+
+		@Override
+		public void serializeWithType(JsonGenerator generator, SerializerProvider serializers,
+				TypeSerializer typeSerializer) throws IOException {
+			serialize(generator, serializers);
+		}
+	}
+}
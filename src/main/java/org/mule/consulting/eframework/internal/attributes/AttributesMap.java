@@ -0,0 +1,378 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable transactionProperties/attributes map backed by two parallel arrays
+ * sorted by key, so it iterates in the same order as the TreeMap it replaces.
+ *
+ * Updates return a new map: with() copies the arrays once (and shares the key
+ * array when only a value changes), withAll() merges two sorted maps in a
+ * single pass, and maps that already are an AttributesMap are never copied.
+ * Well-known keys are canonicalized so maps built for different events share
+ * the same key instances.
+ */
+public final class AttributesMap extends AbstractMap<String, String> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final AttributesMap EMPTY = new AttributesMap(new String[0], new String[0]);
+
+	private static final String[] WELL_KNOWN_KEYS = { "applicationId", "event.flow", "event.fileName",
+			"event.lineNumber", "transactionType", "transactionStatus", "transactionMsg", "eventType", "eventStatus",
+			"eventMsg", "stage", "detailText", "recordDescriptor", "payloadType", "x-transaction-id",
+			"x-correlation-id", "x-job-id", "x-record-id" };
+
+	private static final Map<String, String> CANONICAL_KEYS = new HashMap<String, String>();
+
+	static {
+		for (String key : WELL_KNOWN_KEYS) {
+			CANONICAL_KEYS.put(key, key);
+		}
+	}
+
+	private final String[] keys;
+	private final String[] values;
+
+	private AttributesMap(String[] keys, String[] values) {
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * Return an AttributesMap with the same entries as map, without copying if
+	 * map already is one
+	 *
+	 * @param map
+	 *            may be null, which is treated as empty, values that are not
+	 *            Strings (numbers or booleans from DataWeave) are converted
+	 * @return
+	 */
+	public static AttributesMap copyOf(Map<String, String> map) {
+		if (map instanceof AttributesMap) {
+			return (AttributesMap) map;
+		}
+		if (map == null || map.isEmpty()) {
+			return EMPTY;
+		}
+		int size = map.size();
+		String[] keys = new String[size];
+		String[] values = new String[size];
+		Map<?, ?> raw = map;
+		if (map instanceof SortedMap && ((SortedMap<String, String>) map).comparator() == null) {
+			int i = 0;
+			for (Map.Entry<?, ?> entry : raw.entrySet()) {
+				keys[i] = canonicalKey(String.valueOf(entry.getKey()));
+				values[i++] = string(entry.getValue());
+			}
+		} else {
+			map.keySet().toArray(keys);
+			Arrays.sort(keys);
+			for (int i = 0; i < size; i++) {
+				values[i] = string(raw.get(keys[i]));
+				keys[i] = canonicalKey(keys[i]);
+			}
+		}
+		return new AttributesMap(keys, values);
+	}
+
+	/*
+	 * Attribute maps built by DataWeave may hold other values despite their
+	 * type
+	 */
+	private static String string(Object value) {
+		return value == null ? null : String.valueOf(value);
+	}
+
+	/**
+	 * @return a builder for maps with a handful of entries
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Return a map with key set to value, this map is returned as-is if it
+	 * already holds that entry
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public AttributesMap with(String key, String value) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			if (Objects.equals(values[index], value)) {
+				return this;
+			}
+			String[] newValues = values.clone();
+			newValues[index] = value;
+			return new AttributesMap(keys, newValues);
+		}
+		int insertAt = -(index + 1);
+		int size = keys.length;
+		String[] newKeys = new String[size + 1];
+		String[] newValues = new String[size + 1];
+		System.arraycopy(keys, 0, newKeys, 0, insertAt);
+		System.arraycopy(values, 0, newValues, 0, insertAt);
+		newKeys[insertAt] = canonicalKey(key);
+		newValues[insertAt] = value;
+		System.arraycopy(keys, insertAt, newKeys, insertAt + 1, size - insertAt);
+		System.arraycopy(values, insertAt, newValues, insertAt + 1, size - insertAt);
+		return new AttributesMap(newKeys, newValues);
+	}
+
+	/**
+	 * Return a map with both entries set in a single copy, value2 wins if the
+	 * keys are the same
+	 *
+	 * @param key1
+	 * @param value1
+	 * @param key2
+	 * @param value2
+	 * @return
+	 */
+	public AttributesMap with(String key1, String value1, String key2, String value2) {
+		key1 = canonicalKey(key1);
+		key2 = canonicalKey(key2);
+		int cmp = compareKeys(key1, key2);
+		if (cmp == 0) {
+			return with(key2, value2);
+		}
+		if (cmp < 0) {
+			return merge(new String[] { key1, key2 }, new String[] { value1, value2 });
+		}
+		return merge(new String[] { key2, key1 }, new String[] { value2, value1 });
+	}
+
+	/**
+	 * Return a map with every entry of other added, entries of other win over
+	 * entries of this map
+	 *
+	 * @param other
+	 * @return
+	 */
+	public AttributesMap withAll(Map<String, String> other) {
+		AttributesMap right = copyOf(other);
+		if (right.keys.length == 0) {
+			return this;
+		}
+		if (keys.length == 0) {
+			return right;
+		}
+		return merge(right.keys, right.values);
+	}
+
+	/*
+	 * Single pass merge with sorted arrays, whose entries win
+	 */
+	private AttributesMap merge(String[] rightKeys, String[] rightValues) {
+		String[] mergedKeys = new String[keys.length + rightKeys.length];
+		String[] mergedValues = new String[mergedKeys.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < keys.length && j < rightKeys.length) {
+			int cmp = compareKeys(keys[i], rightKeys[j]);
+			if (cmp < 0) {
+				mergedKeys[k] = keys[i];
+				mergedValues[k++] = values[i++];
+			} else {
+				mergedKeys[k] = rightKeys[j];
+				mergedValues[k++] = rightValues[j++];
+				if (cmp == 0) {
+					i++;
+				}
+			}
+		}
+		while (i < keys.length) {
+			mergedKeys[k] = keys[i];
+			mergedValues[k++] = values[i++];
+		}
+		while (j < rightKeys.length) {
+			mergedKeys[k] = rightKeys[j];
+			mergedValues[k++] = rightValues[j++];
+		}
+		if (k == keys.length) {
+			// no new keys, keep sharing this key array
+			return new AttributesMap(keys, Arrays.copyOf(mergedValues, k));
+		}
+		if (k < mergedKeys.length) {
+			mergedKeys = Arrays.copyOf(mergedKeys, k);
+			mergedValues = Arrays.copyOf(mergedValues, k);
+		}
+		return new AttributesMap(mergedKeys, mergedValues);
+	}
+
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int index = indexOf((String) key);
+		return index >= 0 ? values[index] : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && indexOf((String) key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return keys.length == 0;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new Iterator<Map.Entry<String, String>>() {
+					private int index;
+
+					@Override
+					public boolean hasNext() {
+						return index < keys.length;
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						if (index >= keys.length) {
+							throw new NoSuchElementException();
+						}
+						Map.Entry<String, String> entry = new SimpleImmutableEntry<String, String>(keys[index],
+								values[index]);
+						index++;
+						return entry;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.length;
+			}
+		};
+	}
+
+	/*
+	 * Entry access in key order, for MessageFormatter
+	 */
+	String keyAt(int index) {
+		return keys[index];
+	}
+
+	String valueAt(int index) {
+		return values[index];
+	}
+
+	private int indexOf(String key) {
+		int low = 0;
+		int high = keys.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareKeys(keys[mid], key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private static int compareKeys(String left, String right) {
+		return left == right ? 0 : left.compareTo(right);
+	}
+
+	private static String canonicalKey(String key) {
+		String canonical = CANONICAL_KEYS.get(key);
+		return canonical != null ? canonical : Objects.requireNonNull(key);
+	}
+
+	/*
+	 * Serialize as a plain TreeMap so consumers on other nodes or persistent
+	 * queues do not need this class
+	 */
+	private Object writeReplace() {
+		return new TreeMap<String, String>(this);
+	}
+
+	/**
+	 * Collects a few entries and sorts them once on build(), later puts of the
+	 * same key win.
+	 */
+	public static final class Builder {
+
+		private String[] keys = new String[8];
+		private String[] values = new String[8];
+		private int size;
+
+		private Builder() {
+		}
+
+		public Builder put(String key, String value) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			keys[size] = canonicalKey(key);
+			values[size++] = value;
+			return this;
+		}
+
+		public AttributesMap build() {
+			if (size == 0) {
+				return EMPTY;
+			}
+			String[] sortedKeys = Arrays.copyOf(keys, size);
+			String[] sortedValues = Arrays.copyOf(values, size);
+			// stable insertion sort, the builder only ever holds a handful of entries
+			for (int i = 1; i < size; i++) {
+				String key = sortedKeys[i];
+				String value = sortedValues[i];
+				int j = i - 1;
+				while (j >= 0 && compareKeys(sortedKeys[j], key) > 0) {
+					sortedKeys[j + 1] = sortedKeys[j];
+					sortedValues[j + 1] = sortedValues[j];
+					j--;
+				}
+				sortedKeys[j + 1] = key;
+				sortedValues[j + 1] = value;
+			}
+			int unique = 0;
+			for (int i = 0; i < size; i++) {
+				if (unique > 0 && compareKeys(sortedKeys[unique - 1], sortedKeys[i]) == 0) {
+					sortedValues[unique - 1] = sortedValues[i];
+				} else {
+					sortedKeys[unique] = sortedKeys[i];
+					sortedValues[unique++] = sortedValues[i];
+				}
+			}
+			if (unique < size) {
+				sortedKeys = Arrays.copyOf(sortedKeys, unique);
+				sortedValues = Arrays.copyOf(sortedValues, unique);
+			}
+			return new AttributesMap(sortedKeys, sortedValues);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+/**
+ * Direct mapped cache of the JSON encoding of attribute entries,
+ * "key":"value", keyed by the identity of the key and value Strings.
+ *
+ * The events of a transaction share most of their key and value instances:
+ * keys are canonicalized by AttributesMap, and the location template, the
+ * correlation context and the transactionProperties an application passes
+ * along hand the same value Strings to every event. Only the entries that
+ * changed are escaped, the others are copied from the cache. A colliding
+ * entry replaces the slot. Slots hold immutable Fragments, so they are
+ * published without locking, and values longer than MAX_CACHED_VALUE are
+ * never cached to bound the memory the cache retains.
+ *
+ * Escaping matches Jackson's defaults: quote, backslash and control
+ * characters, the latter as \b \t \n \f \r or \\u00XX.
+ */
+final class JsonFragments {
+
+	private static final int SLOTS = 2048;
+	private static final int MAX_CACHED_VALUE = 512;
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final Fragment[] slots = new Fragment[SLOTS];
+
+	/**
+	 * @param key
+	 * @param value
+	 *            may be null
+	 * @return "key":"value" as JSON
+	 */
+	String fragment(String key, String value) {
+		if (value != null && value.length() > MAX_CACHED_VALUE) {
+			return encode(key, value);
+		}
+		int index = (31 * System.identityHashCode(key) + System.identityHashCode(value)) & (SLOTS - 1);
+		Fragment fragment = slots[index];
+		if (fragment != null && fragment.key == key && fragment.value == value) {
+			return fragment.json;
+		}
+		String json = encode(key, value);
+		slots[index] = new Fragment(key, value, json);
+		return json;
+	}
+
+	static String encode(String key, String value) {
+		StringBuilder json = new StringBuilder(key.length() + (value == null ? 4 : value.length()) + 8);
+		appendString(json, key);
+		json.append(':');
+		if (value == null) {
+			json.append("null");
+		} else {
+			appendString(json, value);
+		}
+		return json.toString();
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+			json.append(value, start, i);
+			start = i + 1;
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\b':
+				json.append("\\b");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\f':
+				json.append("\\f");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			default:
+				json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+			}
+		}
+		json.append(value, start, length).append('"');
+	}
+
+	private static final class Fragment {
+		private final String key;
+		private final String value;
+		private final String json;
+
+		private Fragment(String key, String value, String json) {
+			this.key = key;
+			this.value = value;
+			this.json = json;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Event attributes whose formatted message entry (transactionMsg or eventMsg)
+ * is only serialized when a consumer reads it, and is then memoized.
+ *
+ * The message is formatted from the base attributes exactly as they were when
+ * this map was created. Entries put afterwards (stage, detailText, ...) are
+ * visible to consumers but, as before, are not part of the formatted message.
+ * Iteration is in sorted key order, like the TreeMap it replaces.
+ *
+ * The Smile encoding of AttributesEncoder is memoized the same way, until an
+ * entry is put.
+ */
+public class LazyMessageAttributes extends AbstractMap<String, String> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final AttributesMap base;
+	private final String msgKey;
+	private final String msg;
+	private AttributesMap overlay = AttributesMap.EMPTY;
+	private volatile String formattedMsg;
+	private volatile byte[] encoded;
+
+	/**
+	 * @param base
+	 *            attributes the message is formatted from
+	 * @param msgKey
+	 *            the key the formatted message is exposed under
+	 * @param msg
+	 *            the message text that prefixes the JSON attributes
+	 */
+	public LazyMessageAttributes(AttributesMap base, String msgKey, String msg) {
+		this.base = base;
+		this.msgKey = msgKey;
+		this.msg = msg;
+	}
+
+	/**
+	 * @return true once the formatted message has been computed
+	 */
+	public boolean isMessageFormatted() {
+		return formattedMsg != null;
+	}
+
+	/**
+	 * @return the attributes encoded by AttributesEncoder, with the message key
+	 *         holding the message text unless it was put
+	 */
+	public byte[] encoded() {
+		byte[] result = encoded;
+		if (result == null) {
+			result = AttributesEncoder.write(this, overlay.containsKey(msgKey) ? null : msgKey, msg);
+			encoded = result;
+		}
+		return result;
+	}
+
+	@Override
+	public String get(Object key) {
+		if (overlay.containsKey(key)) {
+			return overlay.get(key);
+		}
+		if (msgKey.equals(key)) {
+			return formattedMsg();
+		}
+		return base.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return msgKey.equals(key) || base.containsKey(key) || overlay.containsKey(key);
+	}
+
+	/**
+	 * Add or replace an entry without affecting the formatted message. The
+	 * previous value of the message key is only returned if it has already
+	 * been formatted.
+	 */
+	@Override
+	public String put(String key, String value) {
+		boolean overridden = overlay.containsKey(key);
+		String previous = overlay.get(key);
+		overlay = overlay.with(key, value);
+		encoded = null;
+		if (overridden) {
+			return previous;
+		}
+		return msgKey.equals(key) ? formattedMsg : base.get(key);
+	}
+
+	@Override
+	public int size() {
+		int size = base.containsKey(msgKey) ? base.size() : base.size() + 1;
+		for (String key : overlay.keySet()) {
+			if (!key.equals(msgKey) && !base.containsKey(key)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new MergingIterator();
+			}
+
+			@Override
+			public int size() {
+				return LazyMessageAttributes.this.size();
+			}
+		};
+	}
+
+	private String formattedMsg() {
+		String result = formattedMsg;
+		if (result == null) {
+			result = MessageFormatter.format(msg, base);
+			formattedMsg = result;
+		}
+		return result;
+	}
+
+	/*
+	 * Serialize as a plain TreeMap so consumers on other nodes or persistent
+	 * queues do not need this class
+	 */
+	private Object writeReplace() {
+		return new TreeMap<String, String>(this);
+	}
+
+	/*
+	 * Merges the base entries, the message entry and the overlay in key order,
+	 * overlay entries win over both of the others
+	 */
+	private class MergingIterator implements Iterator<Map.Entry<String, String>> {
+
+		private final Iterator<Map.Entry<String, String>> baseIterator = base.entrySet().iterator();
+		private final Iterator<Map.Entry<String, String>> overlayIterator = overlay.entrySet().iterator();
+		private Map.Entry<String, String> nextBase = advance(baseIterator);
+		private Map.Entry<String, String> nextOverlay = advance(overlayIterator);
+		private boolean msgPending = true;
+
+		@Override
+		public boolean hasNext() {
+			return nextBase != null || nextOverlay != null || msgPending;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			String key = smallestKey();
+			if (key == null) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, String> result = null;
+			if (nextOverlay != null && nextOverlay.getKey().equals(key)) {
+				result = nextOverlay;
+				nextOverlay = advance(overlayIterator);
+			}
+			if (nextBase != null && nextBase.getKey().equals(key)) {
+				if (result == null && !key.equals(msgKey)) {
+					result = nextBase;
+				}
+				nextBase = advance(baseIterator);
+			}
+			if (msgPending && msgKey.equals(key)) {
+				msgPending = false;
+				if (result == null) {
+					result = new MessageEntry();
+				}
+			}
+			return result;
+		}
+
+		private String smallestKey() {
+			String key = msgPending ? msgKey : null;
+			if (nextBase != null && (key == null || nextBase.getKey().compareTo(key) < 0)) {
+				key = nextBase.getKey();
+			}
+			if (nextOverlay != null && (key == null || nextOverlay.getKey().compareTo(key) < 0)) {
+				key = nextOverlay.getKey();
+			}
+			return key;
+		}
+
+		private Map.Entry<String, String> advance(Iterator<Map.Entry<String, String>> iterator) {
+			return iterator.hasNext() ? iterator.next() : null;
+		}
+	}
+
+	/*
+	 * Entry for the message key, the value is formatted when it is read
+	 */
+	private class MessageEntry implements Map.Entry<String, String> {
+
+		@Override
+		public String getKey() {
+			return msgKey;
+		}
+
+		@Override
+		public String getValue() {
+			return formattedMsg();
+		}
+
+		@Override
+		public String setValue(String value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+			return msgKey.equals(other.getKey()) && getValue().equals(other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return msgKey.hashCode() ^ getValue().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return msgKey + "=" + getValue();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches, per component location, the attributes every event raised at that
+ * location starts with: event.flow, event.fileName, event.lineNumber and
+ * applicationId. They never change for a location, so building an event's
+ * attributes becomes a merge of the cached template with the few entries that
+ * vary per event.
+ *
+ * Templates are keyed by the location path, which is bounded by the number
+ * of processors in the application; past MAX_TEMPLATES (a location source
+ * that is not bounded) templates are built without being cached.
+ */
+public class LocationTemplates {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LocationTemplates.class);
+
+	private static final int MAX_TEMPLATES = 10000;
+
+	private final String applicationId;
+	private final AttributesMap withoutLocation;
+	private final ConcurrentHashMap<String, AttributesMap> templates = new ConcurrentHashMap<String, AttributesMap>();
+
+	public LocationTemplates(String applicationId) {
+		this.applicationId = applicationId;
+		this.withoutLocation = AttributesMap.builder().put("applicationId", applicationId).build();
+	}
+
+	/**
+	 * @param location
+	 *            may be null
+	 * @return the base attributes of events raised at location
+	 */
+	public AttributesMap template(ComponentLocation location) {
+		if (location == null) {
+			LOGGER.debug("Missing location information");
+			return withoutLocation;
+		}
+		String path = location.getLocation();
+		if (path == null) {
+			return create(applicationId, location);
+		}
+		AttributesMap template = templates.get(path);
+		if (template == null) {
+			template = templates.size() < MAX_TEMPLATES
+					? templates.computeIfAbsent(path, key -> create(applicationId, location))
+					: create(applicationId, location);
+		}
+		return template;
+	}
+
+	/**
+	 * Build the base attributes of events raised at location, without caching
+	 *
+	 * @param applicationId
+	 * @param location
+	 * @return
+	 */
+	public static AttributesMap create(String applicationId, ComponentLocation location) {
+		AttributesMap.Builder builder = AttributesMap.builder();
+		builder.put("event.flow", location.getRootContainerName());
+		Optional<String> fileName = location.getFileName();
+		if (fileName.isPresent()) {
+			builder.put("event.fileName", fileName.get());
+		}
+		Optional<Integer> lineNumber = location.getLineInFile();
+		if (lineNumber.isPresent()) {
+			builder.put("event.lineNumber", lineNumber.get().toString());
+		}
+		builder.put("applicationId", applicationId);
+		return builder.build();
+	}
+}
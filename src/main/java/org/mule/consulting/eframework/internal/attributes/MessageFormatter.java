@@ -0,0 +1,80 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Formats transactionMsg/eventMsg values: the caller's message followed by the
+ * transactionProperties as a JSON object.
+ * 
+ * The ObjectWriter is immutable and thread-safe, so a single pre-configured
+ * instance is shared by every event instead of building an ObjectMapper (and
+ * warming up its serializer caches) per call. AttributesMaps, which are
+ * already sorted, skip it: their JSON is spliced from the cached fragments of
+ * JsonFragments, so only the entries that differ from earlier events are
+ * encoded.
+ */
+public final class MessageFormatter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MessageFormatter.class);
+
+	private static final ObjectWriter JSON_WRITER = new ObjectMapper().writerFor(Map.class);
+
+	private static final JsonFragments FRAGMENTS = new JsonFragments();
+
+	private MessageFormatter() {
+	}
+
+	/**
+	 * Create a message by adding the transactionProperties to the message as a
+	 * JSON payload
+	 * 
+	 * @param msg
+	 * @param transactionProperties
+	 * @return
+	 */
+	public static String format(String msg, Map<String, String> transactionProperties) {
+		if (transactionProperties instanceof AttributesMap) {
+			return format(msg, (AttributesMap) transactionProperties);
+		}
+		String payload = "";
+		try {
+			if (transactionProperties != null) {
+				payload = JSON_WRITER.writeValueAsString(transactionProperties);
+			}
+		} catch (JsonProcessingException e) {
+			LOGGER.error("Unable to format transactionProperties", e);
+		}
+		String prefix = String.valueOf(msg);
+		return new StringBuilder(prefix.length() + 1 + payload.length()).append(prefix).append(' ')
+				.append(payload).toString();
+	}
+
+	/*
+	 * Same output as the ObjectWriter, sized exactly from the fragments
+	 */
+	private static String format(String msg, AttributesMap transactionProperties) {
+		String prefix = String.valueOf(msg);
+		int size = transactionProperties.size();
+		String[] fragments = new String[size];
+		int length = prefix.length() + 3 + Math.max(0, size - 1);
+		for (int i = 0; i < size; i++) {
+			fragments[i] = FRAGMENTS.fragment(transactionProperties.keyAt(i), transactionProperties.valueAt(i));
+			length += fragments[i].length();
+		}
+		StringBuilder sb = new StringBuilder(length).append(prefix).append(' ').append('{');
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(fragments[i]);
+		}
+		return sb.append('}').toString();
+	}
+}
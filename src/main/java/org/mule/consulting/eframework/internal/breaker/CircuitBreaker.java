@@ -0,0 +1,304 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mule.consulting.eframework.api.CircuitBreakerState;
+
+/**
+ * Lock-free circuit breaker for one transactionType.
+ *
+ * A manual breaker only changes state through open() and close(). An
+ * automatic breaker also opens when the outcomes recorded in its rolling
+ * window cross a threshold: failureThreshold failures on an explicit
+ * recordFailure(), or the failure rate / latency percentile on
+ * recordOutcome(). It moves to HALF_OPEN after openDuration and then lets up
+ * to halfOpenProbes concurrent calls through; halfOpenProbes successful
+ * outcomes close it and a failure opens it again. Probes that never report
+ * an outcome do not hold the breaker half open: a call rejected for lack of
+ * a probe permit openDuration after the breaker became half open opens it
+ * again. A check on a closed breaker is a single volatile read.
+ *
+ * Transitions to OPEN and CLOSED are reported to the StateListener, if any,
+ * and applyShared() takes over a more recent transition made on another node.
+ */
+public class CircuitBreaker {
+
+	private final String name;
+	private final boolean automatic;
+	private final CircuitBreakerSettings settings;
+	private final long openDurationNanos;
+	private final int halfOpenProbes;
+	private final long latencyThresholdNanos;
+	private final RollingWindow window;
+	private final StateListener listener;
+
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(Snapshot.CLOSED);
+	private final AtomicInteger probesInFlight = new AtomicInteger();
+	private final AtomicInteger probeSuccesses = new AtomicInteger();
+	private volatile long changedAt;
+
+	public CircuitBreaker(String name, boolean automatic, CircuitBreakerSettings settings) {
+		this(name, automatic, settings, null);
+	}
+
+	public CircuitBreaker(String name, boolean automatic, CircuitBreakerSettings settings, StateListener listener) {
+		this.name = name;
+		this.listener = listener;
+		this.automatic = automatic;
+		this.settings = settings;
+		this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(settings.getOpenDuration());
+		this.halfOpenProbes = Math.max(1, settings.getHalfOpenProbes());
+		this.latencyThresholdNanos = settings.getLatencyThreshold() > 0
+				? TimeUnit.MILLISECONDS.toNanos(settings.getLatencyThreshold())
+				: Long.MAX_VALUE;
+		this.window = automatic
+				? new RollingWindow(settings.getFailureWindow(), settings.getWindowBuckets(),
+						settings.getSlowCallDuration())
+				: null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isAutomatic() {
+		return automatic;
+	}
+
+	public CircuitBreakerState getState() {
+		return snapshot.get().state;
+	}
+
+	/**
+	 * Ask permission for a guarded call
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 * @return false if the call must not be made because the breaker is open
+	 */
+	public boolean tryAcquire(long now) {
+		Snapshot current = snapshot.get();
+		if (current.state == CircuitBreakerState.CLOSED) {
+			return true;
+		}
+		if (current.state == CircuitBreakerState.OPEN) {
+			if (!automatic || now - current.changedAt < openDurationNanos) {
+				return false;
+			}
+			if (snapshot.compareAndSet(current, Snapshot.halfOpen(now))) {
+				probesInFlight.set(0);
+				probeSuccesses.set(0);
+			}
+			current = snapshot.get();
+			if (current.state != CircuitBreakerState.HALF_OPEN) {
+				return current.state == CircuitBreakerState.CLOSED;
+			}
+		}
+		if (probesInFlight.incrementAndGet() <= halfOpenProbes) {
+			return true;
+		}
+		probesInFlight.decrementAndGet();
+		if (now - current.changedAt >= openDurationNanos && snapshot.compareAndSet(current, Snapshot.open(now))) {
+			changed(CircuitBreakerState.OPEN); // the probes did not report in time
+		}
+		return false;
+	}
+
+	/**
+	 * Record an explicit failure (circuit-breaker-auto-trip), the breaker
+	 * opens once failureThreshold failures are in the window
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 * @return true if this failure opened the breaker
+	 */
+	public boolean recordFailure(long now) {
+		if (!automatic) {
+			return false;
+		}
+		Snapshot current = snapshot.get();
+		if (current.state == CircuitBreakerState.HALF_OPEN) {
+			return snapshot.compareAndSet(current, Snapshot.open(now)) && changed(CircuitBreakerState.OPEN);
+		}
+		if (current.state == CircuitBreakerState.OPEN) {
+			return false;
+		}
+		window.record(false, -1, now);
+		if (window.statistics(now).getFailures() >= settings.getFailureThreshold()) {
+			return open(now);
+		}
+		return false;
+	}
+
+	/**
+	 * Record the outcome of a guarded call
+	 *
+	 * @param success
+	 * @param durationNanos
+	 *            duration of the call, negative if unknown
+	 * @param now
+	 *            System.nanoTime()
+	 * @return the new state if this outcome changed it, null otherwise
+	 */
+	public CircuitBreakerState recordOutcome(boolean success, long durationNanos, long now) {
+		if (!automatic) {
+			return null;
+		}
+		Snapshot current = snapshot.get();
+		if (current.state == CircuitBreakerState.HALF_OPEN) {
+			if (!success) {
+				return snapshot.compareAndSet(current, Snapshot.open(now)) && changed(CircuitBreakerState.OPEN)
+						? CircuitBreakerState.OPEN
+						: null;
+			}
+			if (probeSuccesses.incrementAndGet() >= halfOpenProbes) {
+				return close() ? CircuitBreakerState.CLOSED : null;
+			}
+			probesInFlight.decrementAndGet();
+			return null;
+		}
+		if (current.state == CircuitBreakerState.OPEN) {
+			return null;
+		}
+		boolean slow = window.record(success, durationNanos, now);
+		if (success && !slow && durationNanos < latencyThresholdNanos) {
+			return null; // a fast success cannot push a threshold up
+		}
+		RollingWindow.Statistics statistics = window.statistics(now);
+		if (statistics.getCalls() >= settings.getMinimumCalls() && exceedsThresholds(statistics)) {
+			return open(now) ? CircuitBreakerState.OPEN : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Open the breaker
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 * @return true if the breaker was not already open
+	 */
+	public boolean open(long now) {
+		Snapshot current;
+		do {
+			current = snapshot.get();
+			if (current.state == CircuitBreakerState.OPEN) {
+				return false;
+			}
+		} while (!snapshot.compareAndSet(current, Snapshot.open(now)));
+		return changed(CircuitBreakerState.OPEN);
+	}
+
+	/**
+	 * Close the breaker and forget recorded outcomes
+	 *
+	 * @return true if the breaker was not already closed
+	 */
+	public boolean close() {
+		if (window != null) {
+			window.clear();
+		}
+		return snapshot.getAndSet(Snapshot.CLOSED).state != CircuitBreakerState.CLOSED
+				&& changed(CircuitBreakerState.CLOSED);
+	}
+
+	/**
+	 * Take over a transition made on another node, if it is more recent than
+	 * the last transition of this breaker. The listener is not told.
+	 *
+	 * @param shared
+	 * @param now
+	 *            System.nanoTime()
+	 * @return true if the state of this breaker changed
+	 */
+	public boolean applyShared(SharedBreakerState shared, long now) {
+		if (shared.getChangedAt() <= changedAt) {
+			return false;
+		}
+		changedAt = shared.getChangedAt();
+		if (shared.getState() == CircuitBreakerState.OPEN) {
+			long elapsed = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - changedAt));
+			return snapshot.getAndSet(Snapshot.open(now - elapsed)).state != CircuitBreakerState.OPEN;
+		}
+		if (window != null) {
+			window.clear();
+		}
+		return snapshot.getAndSet(Snapshot.CLOSED).state != CircuitBreakerState.CLOSED;
+	}
+
+	/**
+	 * @param now
+	 *            System.nanoTime()
+	 * @return the state and window statistics of this breaker
+	 */
+	public Map<String, Object> getStatistics(long now) {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("state", getState().toString());
+		if (window != null) {
+			RollingWindow.Statistics windowStatistics = window.statistics(now);
+			statistics.put("calls", windowStatistics.getCalls());
+			statistics.put("failures", windowStatistics.getFailures());
+			statistics.put("slowCalls", windowStatistics.getSlowCalls());
+			statistics.put("failureRate", windowStatistics.getFailureRate());
+			statistics.put("latencyPercentile", windowStatistics.getLatencyPercentile(settings.getLatencyPercentile()));
+		}
+		return statistics;
+	}
+
+	/*
+	 * Stamp and report a transition, always returns true
+	 */
+	private boolean changed(CircuitBreakerState state) {
+		long time = Math.max(System.currentTimeMillis(), changedAt + 1);
+		changedAt = time;
+		if (listener != null) {
+			listener.stateChanged(this, new SharedBreakerState(state, time));
+		}
+		return true;
+	}
+
+	private boolean exceedsThresholds(RollingWindow.Statistics statistics) {
+		double failureRateThreshold = settings.getFailureRateThreshold();
+		if (failureRateThreshold > 0 && statistics.getFailureRate() >= failureRateThreshold) {
+			return true;
+		}
+		long latencyThreshold = settings.getLatencyThreshold();
+		return latencyThreshold > 0
+				&& statistics.getLatencyPercentile(settings.getLatencyPercentile()) >= latencyThreshold;
+	}
+
+	/**
+	 * Told about every local transition to OPEN or CLOSED
+	 */
+	public interface StateListener {
+		void stateChanged(CircuitBreaker breaker, SharedBreakerState state);
+	}
+
+	/*
+	 * Immutable state, replaced as a whole on every transition, changedAt is
+	 * the System.nanoTime() the breaker became OPEN or HALF_OPEN
+	 */
+	private static final class Snapshot {
+		private static final Snapshot CLOSED = new Snapshot(CircuitBreakerState.CLOSED, 0);
+
+		private final CircuitBreakerState state;
+		private final long changedAt;
+
+		private Snapshot(CircuitBreakerState state, long changedAt) {
+			this.state = state;
+			this.changedAt = changedAt;
+		}
+
+		private static Snapshot open(long now) {
+			return new Snapshot(CircuitBreakerState.OPEN, now);
+		}
+
+		private static Snapshot halfOpen(long now) {
+			return new Snapshot(CircuitBreakerState.HALF_OPEN, now);
+		}
+	}
+}
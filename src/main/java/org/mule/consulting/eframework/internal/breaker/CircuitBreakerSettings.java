@@ -0,0 +1,227 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.consulting.eframework.api.CircuitBreakerMode;
+import org.mule.consulting.eframework.api.CircuitBreakerSharing;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the native circuit breakers.
+ */
+public class CircuitBreakerSettings {
+
+	@Parameter
+	@Optional(defaultValue = "FLOWS")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 1)
+	@Summary("Keep circuit breaker state in the eframework.circuitbreaker-* flows or natively in the connector")
+	private CircuitBreakerMode circuitBreakerMode;
+
+	@Parameter
+	@Optional(defaultValue = "1")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 2)
+	@Summary("Failures within the failure window that open an automatic circuit breaker on circuit-breaker-auto-trip")
+	private int failureThreshold;
+
+	@Parameter
+	@Optional(defaultValue = "60000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 3)
+	@Summary("Milliseconds over which call outcomes are counted")
+	private long failureWindow;
+
+	@Parameter
+	@Optional(defaultValue = "10")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 6)
+	@Summary("Number of buckets the failure window is split in")
+	private int windowBuckets;
+
+	@Parameter
+	@Optional(defaultValue = "50")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 7)
+	@Summary("Failure percentage within the window that opens an automatic circuit breaker, 0 disables")
+	private double failureRateThreshold;
+
+	@Parameter
+	@Optional(defaultValue = "0")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 8)
+	@Summary("Milliseconds the latency percentile may reach before an automatic circuit breaker opens, 0 disables")
+	private long latencyThreshold;
+
+	@Parameter
+	@Optional(defaultValue = "99")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 9)
+	@Summary("Percentile of call durations compared with the latency threshold")
+	private double latencyPercentile;
+
+	@Parameter
+	@Optional(defaultValue = "5000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 10)
+	@Summary("Milliseconds after which a call is counted as slow")
+	private long slowCallDuration;
+
+	@Parameter
+	@Optional(defaultValue = "10")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 11)
+	@Summary("Calls within the window before the failure rate and latency thresholds apply")
+	private int minimumCalls;
+
+	@Parameter
+	@Optional(defaultValue = "30000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 4)
+	@Summary("Milliseconds an automatic circuit breaker stays open before it lets probe calls through")
+	private long openDuration;
+
+	@Parameter
+	@Optional(defaultValue = "1")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 5)
+	@Summary("Concurrent probe calls allowed while an automatic circuit breaker is half open")
+	private int halfOpenProbes;
+
+	@Parameter
+	@Optional(defaultValue = "NONE")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 12)
+	@Summary("Share native circuit breaker state with the other nodes of a cluster through an object store or a shared file")
+	private CircuitBreakerSharing circuitBreakerSharing;
+
+	@Parameter
+	@Optional
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 13)
+	@Summary("Path of the shared state file when circuitBreakerSharing is FILE")
+	private String sharedStateFile;
+
+	@Parameter
+	@Optional(defaultValue = "1000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Circuit Breaker", order = 14)
+	@Summary("Milliseconds between reads of the shared circuit breaker state")
+	private long sharedStateRefreshInterval;
+
+	public CircuitBreakerMode getCircuitBreakerMode() {
+		return circuitBreakerMode;
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	public long getFailureWindow() {
+		return failureWindow;
+	}
+
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	public int getHalfOpenProbes() {
+		return halfOpenProbes;
+	}
+
+	public int getWindowBuckets() {
+		return windowBuckets;
+	}
+
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public long getLatencyThreshold() {
+		return latencyThreshold;
+	}
+
+	public double getLatencyPercentile() {
+		return latencyPercentile;
+	}
+
+	public long getSlowCallDuration() {
+		return slowCallDuration;
+	}
+
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	public CircuitBreakerSharing getCircuitBreakerSharing() {
+		return circuitBreakerSharing;
+	}
+
+	public String getSharedStateFile() {
+		return sharedStateFile;
+	}
+
+	public long getSharedStateRefreshInterval() {
+		return sharedStateRefreshInterval;
+	}
+
+	public void setCircuitBreakerMode(CircuitBreakerMode circuitBreakerMode) {
+		this.circuitBreakerMode = circuitBreakerMode;
+	}
+
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	public void setFailureWindow(long failureWindow) {
+		this.failureWindow = failureWindow;
+	}
+
+	public void setOpenDuration(long openDuration) {
+		this.openDuration = openDuration;
+	}
+
+	public void setHalfOpenProbes(int halfOpenProbes) {
+		this.halfOpenProbes = halfOpenProbes;
+	}
+
+	public void setWindowBuckets(int windowBuckets) {
+		this.windowBuckets = windowBuckets;
+	}
+
+	public void setFailureRateThreshold(double failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	public void setLatencyThreshold(long latencyThreshold) {
+		this.latencyThreshold = latencyThreshold;
+	}
+
+	public void setLatencyPercentile(double latencyPercentile) {
+		this.latencyPercentile = latencyPercentile;
+	}
+
+	public void setSlowCallDuration(long slowCallDuration) {
+		this.slowCallDuration = slowCallDuration;
+	}
+
+	public void setMinimumCalls(int minimumCalls) {
+		this.minimumCalls = minimumCalls;
+	}
+
+	public void setCircuitBreakerSharing(CircuitBreakerSharing circuitBreakerSharing) {
+		this.circuitBreakerSharing = circuitBreakerSharing;
+	}
+
+	public void setSharedStateFile(String sharedStateFile) {
+		this.sharedStateFile = sharedStateFile;
+	}
+
+	public void setSharedStateRefreshInterval(long sharedStateRefreshInterval) {
+		this.sharedStateRefreshInterval = sharedStateRefreshInterval;
+	}
+}
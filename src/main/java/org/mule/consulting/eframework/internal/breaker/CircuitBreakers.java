@@ -0,0 +1,112 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mule.consulting.eframework.api.CircuitBreakerMode;
+import org.mule.runtime.api.scheduler.SchedulerService;
+
+/**
+ * The native circuit breakers of a configuration, keyed by transactionType.
+ * Manual breakers (circuitBreakerCheck/Trip/Reset) and automatic breakers
+ * (circuitBreakerAuto*) are kept apart, as they are in the flows. When a
+ * SharedStateSynchronizer is given, state changes are shared with the other
+ * nodes of the cluster.
+ */
+public class CircuitBreakers {
+
+	private static final String MANUAL_PREFIX = "manual:";
+	private static final String AUTOMATIC_PREFIX = "auto:";
+
+	private final CircuitBreakerSettings settings;
+	private final ConcurrentHashMap<String, CircuitBreaker> manual = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final ConcurrentHashMap<String, CircuitBreaker> automatic = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	private final SharedStateSynchronizer synchronizer;
+
+	public CircuitBreakers(CircuitBreakerSettings settings) {
+		this(settings, null);
+	}
+
+	public CircuitBreakers(CircuitBreakerSettings settings, SharedStateSynchronizer synchronizer) {
+		this.settings = settings;
+		this.synchronizer = synchronizer;
+		if (synchronizer != null) {
+			synchronizer.setBreakers(this);
+		}
+	}
+
+	/**
+	 * Start sharing state with the other nodes, if configured
+	 *
+	 * @param schedulerService
+	 */
+	public void start(SchedulerService schedulerService) {
+		if (synchronizer != null) {
+			synchronizer.start(schedulerService);
+		}
+	}
+
+	public void stop() {
+		if (synchronizer != null) {
+			synchronizer.stop();
+		}
+	}
+
+	/**
+	 * @return true if breaker state is kept in the connector
+	 */
+	public boolean isNative() {
+		return settings.getCircuitBreakerMode() == CircuitBreakerMode.NATIVE;
+	}
+
+	public CircuitBreaker manual(String transactionType) {
+		return manual.computeIfAbsent(transactionType, name -> new CircuitBreaker(name, false, settings, synchronizer));
+	}
+
+	public CircuitBreaker automatic(String transactionType) {
+		return automatic.computeIfAbsent(transactionType, name -> new CircuitBreaker(name, true, settings, synchronizer));
+	}
+
+	/**
+	 * @param breaker
+	 * @return the key under which the state of breaker is shared
+	 */
+	public static String key(CircuitBreaker breaker) {
+		return (breaker.isAutomatic() ? AUTOMATIC_PREFIX : MANUAL_PREFIX) + breaker.getName();
+	}
+
+	/**
+	 * @param key
+	 * @return the breaker shared under key, null if key is not a breaker key
+	 */
+	public CircuitBreaker forKey(String key) {
+		if (key.startsWith(AUTOMATIC_PREFIX)) {
+			return automatic(key.substring(AUTOMATIC_PREFIX.length()));
+		}
+		if (key.startsWith(MANUAL_PREFIX)) {
+			return manual(key.substring(MANUAL_PREFIX.length()));
+		}
+		return null;
+	}
+
+	/**
+	 * @return the state and window statistics of the automatic breaker for
+	 *         transactionType
+	 */
+	public Map<String, Object> getStatistics(String transactionType) {
+		return automatic(transactionType).getStatistics(System.nanoTime());
+	}
+
+	/**
+	 * @return the state of every breaker, keyed by transactionType
+	 */
+	public Map<String, String> getStates(boolean automaticBreakers) {
+		Map<String, String> states = new LinkedHashMap<String, String>();
+		for (CircuitBreaker breaker : (automaticBreakers ? automatic : manual).values()) {
+			states.put(breaker.getName(), breaker.getState().toString());
+		}
+		return states;
+	}
+}
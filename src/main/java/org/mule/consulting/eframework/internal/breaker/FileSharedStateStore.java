@@ -0,0 +1,82 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * SharedStateStore kept in a properties file, for nodes that share a file
+ * system. Writers serialize on a lock file and replace the state file
+ * atomically, so readers never need the lock.
+ */
+public class FileSharedStateStore implements SharedStateStore {
+
+	private final Path file;
+	private final Path lockFile;
+
+	public FileSharedStateStore(Path file) {
+		this.file = file;
+		this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+	}
+
+	@Override
+	public Map<String, SharedBreakerState> readAll() throws IOException {
+		Map<String, SharedBreakerState> states = new HashMap<String, SharedBreakerState>();
+		for (Map.Entry<Object, Object> entry : read().entrySet()) {
+			SharedBreakerState state = SharedBreakerState.decode((String) entry.getValue());
+			if (state != null) {
+				states.put((String) entry.getKey(), state);
+			}
+		}
+		return states;
+	}
+
+	@Override
+	public void mergeAll(Map<String, SharedBreakerState> updates) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			channel.lock(); // released when the channel is closed
+			Properties properties = read();
+			boolean changed = false;
+			for (Map.Entry<String, SharedBreakerState> entry : updates.entrySet()) {
+				SharedBreakerState stored = SharedBreakerState.decode(properties.getProperty(entry.getKey()));
+				if (entry.getValue().isNewerThan(stored)) {
+					properties.setProperty(entry.getKey(), entry.getValue().encode());
+					changed = true;
+				}
+			}
+			if (changed) {
+				write(properties);
+			}
+		}
+	}
+
+	private Properties read() throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		} catch (NoSuchFileException e) {
+			// nothing shared yet
+		}
+		return properties;
+	}
+
+	private void write(Properties properties) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			properties.store(out, "eframework circuit breakers");
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,27 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SharedStateStore kept in memory, for sharing state between configurations
+ * of the same JVM and for tests.
+ */
+public class InMemorySharedStateStore implements SharedStateStore {
+
+	private final ConcurrentHashMap<String, SharedBreakerState> states = new ConcurrentHashMap<String, SharedBreakerState>();
+
+	@Override
+	public Map<String, SharedBreakerState> readAll() {
+		return new HashMap<String, SharedBreakerState>(states);
+	}
+
+	@Override
+	public void mergeAll(Map<String, SharedBreakerState> updates) {
+		for (Map.Entry<String, SharedBreakerState> entry : updates.entrySet()) {
+			states.merge(entry.getKey(), entry.getValue(),
+					(stored, update) -> update.isNewerThan(stored) ? update : stored);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import org.mule.runtime.api.lock.LockFactory;
+import org.mule.runtime.api.store.ObjectStore;
+import org.mule.runtime.api.store.ObjectStoreException;
+
+/**
+ * SharedStateStore kept in a Mule object store, which is shared by the nodes
+ * of a cluster. States are stored as strings so that any node can read them
+ * regardless of its class loader. Each key is compared and replaced under a
+ * lock of its own from the LockFactory, which is cluster wide, so concurrent
+ * nodes neither fail on a key another node has just stored nor overwrite a
+ * newer state with an older one.
+ */
+public class ObjectStoreSharedStateStore implements SharedStateStore {
+
+	private final ObjectStore<String> objectStore;
+	private final LockFactory lockFactory;
+	private final String lockPrefix;
+
+	/**
+	 * @param objectStore
+	 * @param lockFactory
+	 * @param lockPrefix
+	 *            prepended to the key to name its lock, unique per object store
+	 */
+	public ObjectStoreSharedStateStore(ObjectStore<String> objectStore, LockFactory lockFactory, String lockPrefix) {
+		this.objectStore = objectStore;
+		this.lockFactory = lockFactory;
+		this.lockPrefix = lockPrefix;
+	}
+
+	@Override
+	public Map<String, SharedBreakerState> readAll() throws IOException {
+		try {
+			Map<String, SharedBreakerState> states = new HashMap<String, SharedBreakerState>();
+			for (Map.Entry<String, String> entry : objectStore.retrieveAll().entrySet()) {
+				SharedBreakerState state = SharedBreakerState.decode(entry.getValue());
+				if (state != null) {
+					states.put(entry.getKey(), state);
+				}
+			}
+			return states;
+		} catch (ObjectStoreException e) {
+			throw new IOException("Unable to read circuit breaker state", e);
+		}
+	}
+
+	@Override
+	public void mergeAll(Map<String, SharedBreakerState> updates) throws IOException {
+		try {
+			for (Map.Entry<String, SharedBreakerState> entry : updates.entrySet()) {
+				Lock lock = lockFactory.createLock(lockPrefix + entry.getKey());
+				lock.lock();
+				try {
+					merge(entry.getKey(), entry.getValue());
+				} finally {
+					lock.unlock();
+				}
+			}
+		} catch (ObjectStoreException e) {
+			throw new IOException("Unable to store circuit breaker state", e);
+		}
+	}
+
+	/*
+	 * Object stores have no replace, so a newer state is stored by removing
+	 * the older one first
+	 */
+	private void merge(String key, SharedBreakerState state) throws ObjectStoreException {
+		if (objectStore.contains(key)) {
+			if (!state.isNewerThan(SharedBreakerState.decode(objectStore.retrieve(key)))) {
+				return;
+			}
+			objectStore.remove(key);
+		}
+		objectStore.store(key, state.encode());
+	}
+}
@@ -0,0 +1,261 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time-bucketed ring buffer of call outcomes for one circuit breaker.
+ *
+ * The window is split in a fixed number of buckets that are reused as time
+ * moves on, so recording never allocates. Success/failure/slow counters are
+ * striped by thread to keep concurrent writers off the same cache line, and
+ * every bucket holds a log-linear latency histogram in milliseconds, every
+ * power of two split in 16 linear bins as in metrics/LatencyHistogram, so a
+ * percentile is estimated within about 6% of the recorded durations, up to
+ * about 35 minutes. A bucket that is
+ * recycled while another thread writes to it may lose that write, which only
+ * makes the statistics approximate.
+ */
+public class RollingWindow {
+
+	private static final int SUCCESS = 0;
+	private static final int FAILURE = 1;
+	private static final int SLOW = 2;
+	private static final int COUNTERS = 3;
+
+	private static final int STRIPES = 4;
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 20;
+	private static final int OVERFLOW_BIN = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	private static final int LATENCY_BINS = OVERFLOW_BIN + 1;
+
+	private final int buckets;
+	private final long bucketNanos;
+	private final long slowCallNanos;
+
+	private final AtomicLongArray epochs;
+	private final AtomicLongArray counters;
+	private final AtomicLongArray latencies;
+
+	/**
+	 * @param windowMillis
+	 *            length of the window
+	 * @param buckets
+	 *            number of buckets the window is split in
+	 * @param slowCallMillis
+	 *            calls that take at least this long are counted as slow
+	 */
+	public RollingWindow(long windowMillis, int buckets, long slowCallMillis) {
+		this.buckets = Math.max(1, buckets);
+		this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMillis) / this.buckets);
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+		this.epochs = new AtomicLongArray(this.buckets);
+		this.counters = new AtomicLongArray(this.buckets * STRIPES * COUNTERS);
+		this.latencies = new AtomicLongArray(this.buckets * LATENCY_BINS);
+		for (int i = 0; i < this.buckets; i++) {
+			epochs.set(i, Long.MIN_VALUE);
+		}
+	}
+
+	/**
+	 * Record the outcome of a call
+	 *
+	 * @param success
+	 * @param durationNanos
+	 *            duration of the call, negative if unknown
+	 * @param now
+	 *            System.nanoTime()
+	 * @return true if the call was slow
+	 */
+	public boolean record(boolean success, long durationNanos, long now) {
+		int bucket = currentBucket(now);
+		int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+		int base = (bucket * STRIPES + stripe) * COUNTERS;
+		counters.incrementAndGet(base + (success ? SUCCESS : FAILURE));
+		boolean slow = durationNanos >= 0 && slowCallNanos > 0 && durationNanos >= slowCallNanos;
+		if (slow) {
+			counters.incrementAndGet(base + SLOW);
+		}
+		if (durationNanos >= 0) {
+			latencies.incrementAndGet(bucket * LATENCY_BINS + latencyBin(durationNanos));
+		}
+		return slow;
+	}
+
+	/**
+	 * Sum the counters of the buckets that are still inside the window. The
+	 * latency histogram is only read when a percentile is asked for.
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 * @return
+	 */
+	public Statistics statistics(long now) {
+		long currentEpoch = Math.floorDiv(now, bucketNanos);
+		Statistics statistics = new Statistics(this, currentEpoch);
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			if (!isLive(bucket, currentEpoch)) {
+				continue;
+			}
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				int base = (bucket * STRIPES + stripe) * COUNTERS;
+				statistics.successes += counters.get(base + SUCCESS);
+				statistics.failures += counters.get(base + FAILURE);
+				statistics.slowCalls += counters.get(base + SLOW);
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Forget every recorded outcome
+	 */
+	public void clear() {
+		for (int i = 0; i < buckets; i++) {
+			epochs.set(i, Long.MIN_VALUE);
+		}
+	}
+
+	private boolean isLive(int bucket, long currentEpoch) {
+		long epoch = epochs.get(bucket);
+		return epoch != Long.MIN_VALUE && currentEpoch - epoch < buckets;
+	}
+
+	/*
+	 * Count of bin over the buckets inside the window
+	 */
+	private long latencyCount(int bin, long currentEpoch) {
+		long count = 0;
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			if (isLive(bucket, currentEpoch)) {
+				count += latencies.get(bucket * LATENCY_BINS + bin);
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Walks the histogram bins in place rather than copying them, so that
+	 * recording a failure or a slow call does not allocate them
+	 */
+	private long latencyPercentile(double percentile, long currentEpoch) {
+		long total = 0;
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			if (isLive(bucket, currentEpoch)) {
+				for (int bin = 0; bin < LATENCY_BINS; bin++) {
+					total += latencies.get(bucket * LATENCY_BINS + bin);
+				}
+			}
+		}
+		if (total == 0) {
+			return -1;
+		}
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		int highest = -1;
+		for (int bin = 0; bin < LATENCY_BINS; bin++) {
+			long count = latencyCount(bin, currentEpoch);
+			if (count > 0) {
+				seen += count;
+				highest = bin;
+				if (seen >= target) {
+					break;
+				}
+			}
+		}
+		// a bucket recycled during the walk leaves the target out of reach
+		return highest < 0 ? -1 : highest == OVERFLOW_BIN ? Long.MAX_VALUE : upperBound(highest);
+	}
+
+	private int currentBucket(long now) {
+		long epoch = Math.floorDiv(now, bucketNanos);
+		int bucket = (int) Math.floorMod(epoch, (long) buckets);
+		long previous = epochs.get(bucket);
+		if (previous != epoch && epochs.compareAndSet(bucket, previous, epoch)) {
+			int base = bucket * STRIPES * COUNTERS;
+			for (int i = 0; i < STRIPES * COUNTERS; i++) {
+				counters.set(base + i, 0);
+			}
+			for (int bin = 0; bin < LATENCY_BINS; bin++) {
+				latencies.set(bucket * LATENCY_BINS + bin, 0);
+			}
+		}
+		return bucket;
+	}
+
+	private static int latencyBin(long durationNanos) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		if (millis < SUB_BUCKETS) {
+			return (int) millis;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(millis);
+		if (exponent > MAX_EXPONENT) {
+			return OVERFLOW_BIN;
+		}
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((millis >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/*
+	 * Highest duration, in milliseconds, that falls in bin
+	 */
+	private static long upperBound(int bin) {
+		if (bin < SUB_BUCKETS) {
+			return bin;
+		}
+		int shift = bin / SUB_BUCKETS - 1;
+		long subBucket = bin % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Outcome totals over the window
+	 */
+	public static final class Statistics {
+		private final RollingWindow window;
+		private final long currentEpoch;
+		private long successes;
+		private long failures;
+		private long slowCalls;
+
+		private Statistics(RollingWindow window, long currentEpoch) {
+			this.window = window;
+			this.currentEpoch = currentEpoch;
+		}
+
+		public long getCalls() {
+			return successes + failures;
+		}
+
+		public long getFailures() {
+			return failures;
+		}
+
+		public long getSlowCalls() {
+			return slowCalls;
+		}
+
+		/**
+		 * @return failures as a percentage of all calls
+		 */
+		public double getFailureRate() {
+			long calls = getCalls();
+			return calls == 0 ? 0 : 100.0 * failures / calls;
+		}
+
+		/**
+		 * Estimate a latency percentile from the histogram, as it is when
+		 * called
+		 *
+		 * @param percentile
+		 *            between 0 and 100
+		 * @return highest duration in milliseconds of the histogram bin holding
+		 *         the percentile, -1 if no durations were recorded and
+		 *         Long.MAX_VALUE for the overflow bin
+		 */
+		public long getLatencyPercentile(double percentile) {
+			return window.latencyPercentile(percentile, currentEpoch);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import org.mule.consulting.eframework.api.CircuitBreakerState;
+
+/**
+ * The state of a breaker as published to the other nodes: OPEN or CLOSED and
+ * the wall-clock time of the transition. The most recent transition wins.
+ */
+public final class SharedBreakerState {
+
+	private final CircuitBreakerState state;
+	private final long changedAt;
+
+	public SharedBreakerState(CircuitBreakerState state, long changedAt) {
+		this.state = state;
+		this.changedAt = changedAt;
+	}
+
+	public CircuitBreakerState getState() {
+		return state;
+	}
+
+	/**
+	 * @return System.currentTimeMillis() of the transition
+	 */
+	public long getChangedAt() {
+		return changedAt;
+	}
+
+	public boolean isNewerThan(SharedBreakerState other) {
+		return other == null || changedAt > other.changedAt;
+	}
+
+	/**
+	 * @return the state as STATE:changedAt
+	 */
+	public String encode() {
+		return state + ":" + changedAt;
+	}
+
+	/**
+	 * @param encoded
+	 * @return the decoded state, null if encoded is not a valid state
+	 */
+	public static SharedBreakerState decode(String encoded) {
+		if (encoded == null) {
+			return null;
+		}
+		int separator = encoded.indexOf(':');
+		if (separator < 0) {
+			return null;
+		}
+		try {
+			return new SharedBreakerState(CircuitBreakerState.valueOf(encoded.substring(0, separator)),
+					Long.parseLong(encoded.substring(separator + 1)));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+}
@@ -0,0 +1,27 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Backend through which the nodes of a cluster share circuit breaker state.
+ * Keys identify a breaker (see CircuitBreakers.key), and a stored state is
+ * only replaced by a more recent one.
+ */
+public interface SharedStateStore {
+
+	/**
+	 * @return every stored breaker state, keyed by breaker
+	 * @throws IOException
+	 */
+	Map<String, SharedBreakerState> readAll() throws IOException;
+
+	/**
+	 * Store each state that is more recent than the one already stored
+	 *
+	 * @param states
+	 *            keyed by breaker
+	 * @throws IOException
+	 */
+	void mergeAll(Map<String, SharedBreakerState> states) throws IOException;
+}
@@ -0,0 +1,145 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the local circuit breakers in step with a SharedStateStore.
+ *
+ * Checks only ever read the local breakers. Local transitions are published
+ * in the background as soon as they happen, and every refresh interval the
+ * store is read and more recent transitions made by other nodes are applied
+ * locally, so a trip reaches every node within about one refresh interval.
+ * Transitions that could not be published are kept and retried on the next
+ * refresh.
+ */
+public class SharedStateSynchronizer implements CircuitBreaker.StateListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SharedStateSynchronizer.class);
+
+	private final SharedStateStore store;
+	private final long refreshInterval;
+	private final ConcurrentHashMap<String, SharedBreakerState> pending = new ConcurrentHashMap<String, SharedBreakerState>();
+	private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+	private CircuitBreakers breakers;
+	private volatile Scheduler scheduler;
+	private ScheduledFuture<?> refreshTask;
+	private boolean storeFailing;
+
+	public SharedStateSynchronizer(SharedStateStore store, long refreshInterval) {
+		this.store = store;
+		this.refreshInterval = Math.max(1, refreshInterval);
+	}
+
+	void setBreakers(CircuitBreakers breakers) {
+		this.breakers = breakers;
+	}
+
+	/**
+	 * Start refreshing from the store
+	 *
+	 * @param schedulerService
+	 */
+	public void start(SchedulerService schedulerService) {
+		scheduler = schedulerService.ioScheduler();
+		refreshTask = scheduler.scheduleAtFixedRate(this::refresh, 0, refreshInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop refreshing and publish the transitions still pending
+	 */
+	public void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		refreshTask.cancel(false);
+		scheduler.stop();
+		scheduler = null;
+		publish();
+	}
+
+	@Override
+	public void stateChanged(CircuitBreaker breaker, SharedBreakerState state) {
+		pending.merge(CircuitBreakers.key(breaker), state,
+				(queued, update) -> update.isNewerThan(queued) ? update : queued);
+		Scheduler current = scheduler;
+		if (current != null && publishScheduled.compareAndSet(false, true)) {
+			current.submit(this::publish);
+		}
+	}
+
+	/**
+	 * Publish pending local transitions, then apply the transitions of other
+	 * nodes
+	 */
+	public synchronized void refresh() {
+		publish();
+		try {
+			Map<String, SharedBreakerState> shared = store.readAll();
+			long now = System.nanoTime();
+			for (Map.Entry<String, SharedBreakerState> entry : shared.entrySet()) {
+				CircuitBreaker breaker = breakers.forKey(entry.getKey());
+				if (breaker != null && breaker.applyShared(entry.getValue(), now) && LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Circuit breaker " + entry.getKey() + " is now " + entry.getValue().getState());
+				}
+			}
+			recovered();
+		} catch (IOException | RuntimeException e) {
+			failed("read", e);
+		}
+	}
+
+	/*
+	 * Write the pending transitions to the store, re-queueing them on failure
+	 */
+	private synchronized void publish() {
+		publishScheduled.set(false);
+		if (pending.isEmpty()) {
+			return;
+		}
+		Map<String, SharedBreakerState> batch = new HashMap<String, SharedBreakerState>();
+		for (Map.Entry<String, SharedBreakerState> entry : pending.entrySet()) {
+			if (pending.remove(entry.getKey(), entry.getValue())) {
+				batch.put(entry.getKey(), entry.getValue());
+			}
+		}
+		try {
+			store.mergeAll(batch);
+			recovered();
+		} catch (IOException | RuntimeException e) {
+			for (Map.Entry<String, SharedBreakerState> entry : batch.entrySet()) {
+				pending.merge(entry.getKey(), entry.getValue(),
+						(queued, update) -> update.isNewerThan(queued) ? update : queued);
+			}
+			failed("publish", e);
+		}
+	}
+
+	/*
+	 * Log the first failure of a run, so an unavailable store does not flood the log
+	 */
+	private void failed(String action, Exception e) {
+		if (!storeFailing) {
+			storeFailing = true;
+			LOGGER.warn("Unable to " + action + " shared circuit breaker state, breakers continue on local state", e);
+		}
+	}
+
+	private void recovered() {
+		if (storeFailing) {
+			storeFailing = false;
+			LOGGER.info("Shared circuit breaker state is available again");
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.mule.consulting.eframework.internal.context;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.consulting.eframework.api.CorrelationContextScope;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the correlation contexts, the transactionProperties kept
+ * per event or per correlation id.
+ */
+public class CorrelationContextSettings {
+
+	@Parameter
+	@Optional(defaultValue = "300000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Correlation Context", order = 1)
+	@Summary("Milliseconds a correlation context is kept after it was last used")
+	private long correlationContextTtl;
+
+	@Parameter
+	@Optional(defaultValue = "100000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Correlation Context", order = 2)
+	@Summary("Maximum number of correlation contexts, the least recently used are dropped when it is reached")
+	private int maxCorrelationContexts;
+
+	@Parameter
+	@Optional(defaultValue = "EVENT")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Correlation Context", order = 3)
+	@Summary("EVENT keeps a context per event id, CORRELATION_ID shares it between the events of a correlation id")
+	private CorrelationContextScope correlationContextScope;
+
+	public long getCorrelationContextTtl() {
+		return correlationContextTtl;
+	}
+
+	public int getMaxCorrelationContexts() {
+		return maxCorrelationContexts;
+	}
+
+	public CorrelationContextScope getCorrelationContextScope() {
+		return correlationContextScope;
+	}
+
+	public void setCorrelationContextTtl(long correlationContextTtl) {
+		this.correlationContextTtl = correlationContextTtl;
+	}
+
+	public void setMaxCorrelationContexts(int maxCorrelationContexts) {
+		this.maxCorrelationContexts = maxCorrelationContexts;
+	}
+
+	public void setCorrelationContextScope(CorrelationContextScope correlationContextScope) {
+		this.correlationContextScope = correlationContextScope;
+	}
+}
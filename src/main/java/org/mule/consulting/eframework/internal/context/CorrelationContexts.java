@@ -0,0 +1,305 @@
+package org.mule.consulting.eframework.internal.context;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.api.CorrelationContextScope;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.extension.api.runtime.parameter.CorrelationInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The transactionProperties of each transaction in flight, so they are
+ * stored once instead of being passed to (and copied by) every operation.
+ * With the EVENT correlationContextScope a context is keyed by event id, so
+ * concurrent requests never see each other's properties even when a client
+ * sends them the same correlation id. With CORRELATION_ID every event of a
+ * correlation id shares its context. The EVENT scope follows the event id, and
+ * a child event context (an async scope, or a flow-ref to a flow) has an id of
+ * its own: properties put inside it are not visible to the parent event, nor
+ * those of the parent inside it.
+ *
+ * A context holds an immutable AttributesMap: a put merges the new entries
+ * into a new map, and readers get the current map without copying it. Since
+ * an operation is not told when its event completes, a context is evicted
+ * correlationContextTtl after it was last used, or when it is cleared. At
+ * most maxCorrelationContexts are kept: a put for a further key first drops
+ * the least recently used tenth of the contexts, with a warning at most once
+ * a minute since their properties are lost before their TTL. The eviction
+ * task is only started with the first context.
+ */
+public class CorrelationContexts {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CorrelationContexts.class);
+
+	private static final long WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final long ttlMillis;
+	private final long ttlNanos;
+	private final int maxContexts;
+	private final boolean perEvent;
+	private final ConcurrentHashMap<String, Context> contexts = new ConcurrentHashMap<String, Context>();
+
+	private final LongAdder created = new LongAdder();
+	private final LongAdder evicted = new LongAdder();
+	private final LongAdder displaced = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	private final AtomicBoolean displacing = new AtomicBoolean();
+	private long lastWarning;
+	private long unreported;
+
+	private SchedulerService schedulerService;
+	private volatile Scheduler scheduler;
+	private ScheduledFuture<?> evictionTask;
+
+	public CorrelationContexts(CorrelationContextSettings settings) {
+		this.ttlMillis = Math.max(1, settings.getCorrelationContextTtl());
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.maxContexts = settings.getMaxCorrelationContexts();
+		this.perEvent = settings.getCorrelationContextScope() != CorrelationContextScope.CORRELATION_ID;
+		this.lastWarning = System.nanoTime() - WARNING_INTERVAL_NANOS;
+	}
+
+	/**
+	 * Allow eviction, which starts with the first context
+	 *
+	 * @param schedulerService
+	 */
+	public void start(SchedulerService schedulerService) {
+		this.schedulerService = schedulerService;
+	}
+
+	/**
+	 * Stop evicting and drop every context
+	 */
+	public synchronized void stop() {
+		if (scheduler != null) {
+			evictionTask.cancel(false);
+			scheduler.stop();
+			scheduler = null;
+		}
+		schedulerService = null;
+		contexts.clear();
+	}
+
+	/**
+	 * @param correlationInfo
+	 *            of the event, may be null
+	 * @return the key of its context: the event id, or with the
+	 *         CORRELATION_ID scope its correlation id if it has one
+	 */
+	public String key(CorrelationInfo correlationInfo) {
+		if (correlationInfo == null) {
+			return null;
+		}
+		String correlationId = perEvent ? null : correlationInfo.getCorrelationId();
+		return correlationId != null ? correlationId : correlationInfo.getEventId();
+	}
+
+	/**
+	 * @param key
+	 * @return the properties of the context, empty if there is none
+	 */
+	public AttributesMap get(String key) {
+		Context context = key == null ? null : contexts.get(key);
+		if (context == null) {
+			return AttributesMap.EMPTY;
+		}
+		context.lastUsed = System.nanoTime();
+		return context.properties;
+	}
+
+	/**
+	 * Add properties to the context, creating it if needed
+	 *
+	 * @param key
+	 * @param properties
+	 *            win over the entries already in the context
+	 * @return the properties of the context
+	 */
+	public AttributesMap merge(String key, Map<String, String> properties) {
+		if (key == null) {
+			return AttributesMap.copyOf(properties);
+		}
+		long now = System.nanoTime();
+		Context context = contexts.computeIfPresent(key, (id, current) -> current.merge(properties, now));
+		if (context != null) {
+			return context.properties;
+		}
+		if (contexts.size() >= maxContexts) {
+			if (maxContexts < 1) {
+				rejected.increment();
+				return AttributesMap.copyOf(properties);
+			}
+			evictLeastRecentlyUsed(now);
+		}
+		context = contexts.compute(key, (id, current) -> {
+			if (current == null) {
+				created.increment();
+				current = new Context();
+			}
+			return current.merge(properties, now);
+		});
+		if (scheduler == null) {
+			startEviction();
+		}
+		return context.properties;
+	}
+
+	/**
+	 * Drop the context, for instance when its transaction completes
+	 *
+	 * @param key
+	 * @return true if there was one
+	 */
+	public boolean clear(String key) {
+		return key != null && contexts.remove(key) != null;
+	}
+
+	/**
+	 * @param key
+	 * @param attributes
+	 *            the attributes passed to an operation
+	 * @return the context properties with attributes added, attributes
+	 *         themselves if there is no context
+	 */
+	public Map<String, String> withContext(String key, Map<String, String> attributes) {
+		if (key == null || contexts.isEmpty()) {
+			return attributes;
+		}
+		Context context = contexts.get(key);
+		if (context == null) {
+			return attributes;
+		}
+		context.lastUsed = System.nanoTime();
+		return context.properties.withAll(attributes);
+	}
+
+	/**
+	 * @return the number of contexts and how many were created, evicted
+	 *         after correlationContextTtl, dropped because
+	 *         maxCorrelationContexts was reached and not kept at all
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("contexts", (long) contexts.size());
+		statistics.put("created", created.sum());
+		statistics.put("evicted", evicted.sum());
+		statistics.put("displaced", displaced.sum());
+		statistics.put("rejected", rejected.sum());
+		return statistics;
+	}
+
+	/**
+	 * Remove the contexts not used for correlationContextTtl, each one
+	 * atomically with respect to a concurrent merge
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 */
+	void evictIdle(long now) {
+		for (String key : contexts.keySet()) {
+			contexts.computeIfPresent(key, (id, context) -> {
+				if (now - context.lastUsed < ttlNanos) {
+					return context;
+				}
+				evicted.increment();
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Remove the least recently used tenth of the contexts, so a full map
+	 * costs one sort per maxContexts / 10 new contexts. Only one thread
+	 * sweeps; puts racing it may go past maxContexts until it is done.
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 */
+	void evictLeastRecentlyUsed(long now) {
+		if (!displacing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long[] ages = new long[contexts.size()];
+			int count = 0;
+			for (Context context : contexts.values()) {
+				if (count == ages.length) {
+					break;
+				}
+				ages[count++] = now - context.lastUsed;
+			}
+			if (count == 0) {
+				return;
+			}
+			Arrays.sort(ages, 0, count);
+			long oldest = ages[count - Math.max(1, Math.min(count, maxContexts / 10))];
+			long before = displaced.sum();
+			for (String key : contexts.keySet()) {
+				contexts.computeIfPresent(key, (id, context) -> {
+					if (now - context.lastUsed < oldest) {
+						return context;
+					}
+					displaced.increment();
+					return null;
+				});
+			}
+			warnDisplaced(displaced.sum() - before, now);
+		} finally {
+			displacing.set(false);
+		}
+	}
+
+	/*
+	 * Called by the sweeping thread only
+	 */
+	private void warnDisplaced(long count, long now) {
+		unreported += count;
+		if (now - lastWarning < WARNING_INTERVAL_NANOS) {
+			return;
+		}
+		LOGGER.warn("maxCorrelationContexts (" + maxContexts + ") reached, " + unreported
+				+ " correlation contexts were dropped before their correlationContextTtl since the last warning."
+				+ " Raise maxCorrelationContexts or lower correlationContextTtl");
+		lastWarning = now;
+		unreported = 0;
+	}
+
+	/*
+	 * Applications that never put a property do not get an eviction task
+	 */
+	private synchronized void startEviction() {
+		if (scheduler != null || schedulerService == null) {
+			return;
+		}
+		long period = Math.max(100, ttlMillis / 4);
+		scheduler = schedulerService.ioScheduler();
+		evictionTask = scheduler.scheduleAtFixedRate(() -> evictIdle(System.nanoTime()), period, period,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * Only replaced inside a compute of its own key, read without locking
+	 */
+	private static final class Context {
+		private volatile AttributesMap properties = AttributesMap.EMPTY;
+		private volatile long lastUsed;
+
+		private Context merge(Map<String, String> added, long now) {
+			properties = properties.withAll(added);
+			lastUsed = now;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.mule.consulting.eframework.internal.dispatch;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of micro-batching for nonBlockingMode events.
+ */
+public class BatchingSettings {
+
+	@Parameter
+	@Optional(defaultValue = "false")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Batching", order = 1)
+	@Summary("Deliver non-blocking events to the batched flows as lists of records")
+	private boolean batchingEnabled;
+
+	@Parameter
+	@Optional(defaultValue = "eframework.auditLogFlow,eframework.progressFlow,eframework.requestPayloadLogFlow,eframework.responsePayloadLogFlow")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Batching", order = 2)
+	@Summary("Comma separated names of the handler flows that receive batches")
+	private String batchedFlows;
+
+	@Parameter
+	@Optional(defaultValue = "500")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Batching", order = 3)
+	@Summary("Maximum number of events in a batch")
+	private int batchMaxSize;
+
+	@Parameter
+	@Optional(defaultValue = "1048576")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Batching", order = 4)
+	@Summary("Estimated size in bytes after which a batch is delivered")
+	private long batchMaxBytes;
+
+	@Parameter
+	@Optional(defaultValue = "1000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Batching", order = 5)
+	@Summary("Maximum milliseconds an event waits in a batch before it is delivered")
+	private long batchMaxLinger;
+
+	public boolean isBatchingEnabled() {
+		return batchingEnabled;
+	}
+
+	public String getBatchedFlows() {
+		return batchedFlows;
+	}
+
+	public int getBatchMaxSize() {
+		return batchMaxSize;
+	}
+
+	public long getBatchMaxBytes() {
+		return batchMaxBytes;
+	}
+
+	public long getBatchMaxLinger() {
+		return batchMaxLinger;
+	}
+
+	public void setBatchingEnabled(boolean batchingEnabled) {
+		this.batchingEnabled = batchingEnabled;
+	}
+
+	public void setBatchedFlows(String batchedFlows) {
+		this.batchedFlows = batchedFlows;
+	}
+
+	public void setBatchMaxSize(int batchMaxSize) {
+		this.batchMaxSize = batchMaxSize;
+	}
+
+	public void setBatchMaxBytes(long batchMaxBytes) {
+		this.batchMaxBytes = batchMaxBytes;
+	}
+
+	public void setBatchMaxLinger(long batchMaxLinger) {
+		this.batchMaxLinger = batchMaxLinger;
+	}
+}
@@ -0,0 +1,89 @@
+package org.mule.consulting.eframework.internal.dispatch;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.consulting.eframework.api.DispatcherOverflowPolicy;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the bounded dispatcher used for nonBlockingMode events.
+ */
+public class DispatcherSettings {
+
+	@Parameter
+	@Optional(defaultValue = "false")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Dispatcher", order = 1)
+	@Summary("Queue non-blocking events for a fixed pool of workers instead of starting every handler flow immediately")
+	private boolean dispatcherEnabled;
+
+	@Parameter
+	@Optional(defaultValue = "4")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Dispatcher", order = 2)
+	private int dispatcherWorkers;
+
+	@Parameter
+	@Optional(defaultValue = "1000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Dispatcher", order = 3)
+	private int dispatcherQueueCapacity;
+
+	@Parameter
+	@Optional(defaultValue = "BLOCK")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Dispatcher", order = 4)
+	@Summary("What to do with an event when the queue is full")
+	private DispatcherOverflowPolicy dispatcherOverflowPolicy;
+
+	@Parameter
+	@Optional(defaultValue = "30000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Dispatcher", order = 5)
+	@Summary("Milliseconds to wait for queued events to be delivered when the application stops")
+	private long dispatcherShutdownTimeout;
+
+	public boolean isDispatcherEnabled() {
+		return dispatcherEnabled;
+	}
+
+	public int getDispatcherWorkers() {
+		return dispatcherWorkers;
+	}
+
+	public int getDispatcherQueueCapacity() {
+		return dispatcherQueueCapacity;
+	}
+
+	public DispatcherOverflowPolicy getDispatcherOverflowPolicy() {
+		return dispatcherOverflowPolicy;
+	}
+
+	public long getDispatcherShutdownTimeout() {
+		return dispatcherShutdownTimeout;
+	}
+
+	public void setDispatcherEnabled(boolean dispatcherEnabled) {
+		this.dispatcherEnabled = dispatcherEnabled;
+	}
+
+	public void setDispatcherWorkers(int dispatcherWorkers) {
+		this.dispatcherWorkers = dispatcherWorkers;
+	}
+
+	public void setDispatcherQueueCapacity(int dispatcherQueueCapacity) {
+		this.dispatcherQueueCapacity = dispatcherQueueCapacity;
+	}
+
+	public void setDispatcherOverflowPolicy(DispatcherOverflowPolicy dispatcherOverflowPolicy) {
+		this.dispatcherOverflowPolicy = dispatcherOverflowPolicy;
+	}
+
+	public void setDispatcherShutdownTimeout(long dispatcherShutdownTimeout) {
+		this.dispatcherShutdownTimeout = dispatcherShutdownTimeout;
+	}
+}
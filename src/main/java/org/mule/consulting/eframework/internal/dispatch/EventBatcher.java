@@ -0,0 +1,202 @@
+package org.mule.consulting.eframework.internal.dispatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.consulting.eframework.api.EventRecord;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.core.api.construct.Flow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accumulates nonBlockingMode events per handler flow and delivers them as a
+ * single event whose payload is a List of EventRecord. A batch is delivered
+ * when it reaches batchMaxSize events or batchMaxBytes (estimated), when its
+ * oldest event has waited batchMaxLinger milliseconds, and on stop. Once
+ * stopped, an event is delivered as soon as it is added, in a batch of its
+ * own.
+ *
+ * Streamed content is read into memory when it is added to a batch, since the
+ * originating event (and its stream) completes before the batch is delivered.
+ */
+public class EventBatcher {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventBatcher.class);
+
+	private static final int ESTIMATED_ENTRY_BYTES = 64;
+	private static final int ESTIMATED_CONTENT_BYTES = 256;
+
+	private final BatchingSettings settings;
+	private final EventDispatcher dispatcher;
+	private final Set<String> batchedFlows;
+	private final long maxLingerNanos;
+	private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<String, Batch>();
+
+	private volatile boolean stopped;
+	private Scheduler scheduler;
+	private ScheduledFuture<?> lingerTask;
+
+	public EventBatcher(BatchingSettings settings, EventDispatcher dispatcher) {
+		this.settings = settings;
+		this.dispatcher = dispatcher;
+		this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(settings.getBatchMaxLinger());
+		Set<String> flows = new HashSet<String>();
+		if (settings.isBatchingEnabled() && settings.getBatchedFlows() != null) {
+			for (String flowName : settings.getBatchedFlows().split(",")) {
+				if (!flowName.trim().isEmpty()) {
+					flows.add(flowName.trim());
+				}
+			}
+		}
+		this.batchedFlows = Collections.unmodifiableSet(flows);
+	}
+
+	/**
+	 * Start the timer that delivers batches that have waited long enough
+	 *
+	 * @param schedulerService
+	 */
+	public void start(SchedulerService schedulerService) {
+		stopped = false;
+		if (batchedFlows.isEmpty()) {
+			return;
+		}
+		long period = Math.max(1, settings.getBatchMaxLinger() / 2);
+		scheduler = schedulerService.ioScheduler();
+		lingerTask = scheduler.scheduleAtFixedRate(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the timer and deliver every pending batch
+	 */
+	public void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		stopped = true;
+		lingerTask.cancel(false);
+		scheduler.stop();
+		scheduler = null;
+		for (Batch batch : batches.values()) {
+			deliver(batch, batch.drain());
+		}
+	}
+
+	/**
+	 * @param flowName
+	 * @return true if events for flowName are delivered in batches
+	 */
+	public boolean isBatched(String flowName) {
+		return batchedFlows.contains(flowName);
+	}
+
+	/**
+	 * Add an event to the batch of its handler flow, delivering the batch if it
+	 * is full
+	 *
+	 * @param flow
+	 * @param attributes
+	 * @param content
+	 * @param location
+	 */
+	public void add(Flow flow, Map<String, String> attributes, Object content, ComponentLocation location) {
+		Object value = FlowEvents.materialize(content);
+		EventRecord record = new EventRecord(attributes, value);
+		long bytes = (long) attributes.size() * ESTIMATED_ENTRY_BYTES + estimateSize(value);
+
+		Batch batch = batches.computeIfAbsent(flow.getName(), name -> new Batch(flow, location));
+		deliver(batch, batch.add(record, bytes));
+		if (stopped) {
+			// stop() may have drained the batch before the record was added
+			deliver(batch, batch.drain());
+		}
+	}
+
+	private void flushExpired() {
+		long now = System.nanoTime();
+		for (Batch batch : batches.values()) {
+			try {
+				deliver(batch, batch.drainIfOlderThan(now - maxLingerNanos));
+			} catch (RuntimeException e) {
+				LOGGER.error("Error delivering batch to " + batch.flow.getName(), e);
+			}
+		}
+	}
+
+	private void deliver(Batch batch, List<EventRecord> records) {
+		if (records == null || records.isEmpty()) {
+			return;
+		}
+		AttributesMap attributes = AttributesMap.builder()
+				.put("batchSize", String.valueOf(records.size()))
+				.build();
+		dispatcher.dispatch(batch.flow, FlowEvents.create(batch.flow, attributes, records, batch.location));
+	}
+
+	private long estimateSize(Object value) {
+		if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		}
+		if (value instanceof String) {
+			return 2L * ((String) value).length();
+		}
+		return value == null ? 0 : ESTIMATED_CONTENT_BYTES;
+	}
+
+	/*
+	 * The pending events of one handler flow
+	 */
+	private final class Batch {
+		private final Flow flow;
+		private final ComponentLocation location;
+		private List<EventRecord> records = new ArrayList<EventRecord>();
+		private long bytes;
+		private long firstAddedAt;
+
+		private Batch(Flow flow, ComponentLocation location) {
+			this.flow = flow;
+			this.location = location;
+		}
+
+		/*
+		 * Returns the records to deliver if the batch is full, null otherwise
+		 */
+		private synchronized List<EventRecord> add(EventRecord record, long size) {
+			if (records.isEmpty()) {
+				firstAddedAt = System.nanoTime();
+			}
+			records.add(record);
+			bytes += size;
+			if (records.size() >= settings.getBatchMaxSize() || bytes >= settings.getBatchMaxBytes()) {
+				return drain();
+			}
+			return null;
+		}
+
+		private synchronized List<EventRecord> drainIfOlderThan(long threshold) {
+			if (records.isEmpty() || firstAddedAt - threshold > 0) {
+				return null;
+			}
+			return drain();
+		}
+
+		private synchronized List<EventRecord> drain() {
+			List<EventRecord> drained = records;
+			records = new ArrayList<EventRecord>();
+			bytes = 0;
+			return drained;
+		}
+	}
+}
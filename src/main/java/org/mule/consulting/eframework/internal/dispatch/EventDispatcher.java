@@ -0,0 +1,263 @@
+package org.mule.consulting.eframework.internal.dispatch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.api.DispatcherOverflowPolicy;
+import org.mule.consulting.eframework.internal.spool.EventSpool;
+import org.mule.runtime.api.exception.MuleException;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerConfig;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.core.api.event.CoreEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers nonBlockingMode events to their handler flows.
+ *
+ * When disabled, events are handed to flow.execute() as they arrive. When
+ * enabled, events are placed on a bounded queue that a fixed number of workers
+ * drain by processing each event to completion, so at most
+ * queueCapacity + workers events are in flight. A full queue is handled
+ * according to the configured DispatcherOverflowPolicy.
+ *
+ * Events of the flows kept by the EventSpool go to the spool instead when
+ * the queue is full, when their flow fails and when they are still queued at
+ * stop; the overflow policy only applies if the spool cannot take them.
+ */
+public class EventDispatcher {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventDispatcher.class);
+
+	private static final long POLL_INTERVAL_MILLIS = 100;
+
+	private final DispatcherSettings settings;
+	private final BlockingQueue<DispatchTask> queue;
+	private final EventSpool spool;
+
+	private final LongAdder dispatched = new LongAdder();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder droppedOldest = new LongAdder();
+	private final LongAdder droppedNewest = new LongAdder();
+	private final LongAdder processedSynchronously = new LongAdder();
+	private final LongAdder spooled = new LongAdder();
+
+	private volatile boolean running;
+	private Scheduler scheduler;
+
+	/**
+	 * @param settings
+	 * @param spool
+	 * @throws IllegalArgumentException
+	 *             if the dispatcher is enabled without workers or queue
+	 *             capacity
+	 */
+	public EventDispatcher(DispatcherSettings settings, EventSpool spool) {
+		if (settings.isDispatcherEnabled() && settings.getDispatcherWorkers() < 1) {
+			throw new IllegalArgumentException(
+					"dispatcherWorkers must be at least 1 when dispatcherEnabled is true, was "
+							+ settings.getDispatcherWorkers());
+		}
+		if (settings.isDispatcherEnabled() && settings.getDispatcherQueueCapacity() < 1) {
+			throw new IllegalArgumentException(
+					"dispatcherQueueCapacity must be at least 1 when dispatcherEnabled is true, was "
+							+ settings.getDispatcherQueueCapacity());
+		}
+		this.settings = settings;
+		this.spool = spool;
+		this.queue = settings.isDispatcherEnabled()
+				? new ArrayBlockingQueue<DispatchTask>(settings.getDispatcherQueueCapacity())
+				: null;
+	}
+
+	/**
+	 * Start the workers, if the dispatcher is enabled
+	 *
+	 * @param schedulerService
+	 */
+	public void start(SchedulerService schedulerService) {
+		if (queue == null) {
+			return;
+		}
+		int workers = settings.getDispatcherWorkers();
+		scheduler = schedulerService.customScheduler(SchedulerConfig.config()
+				.withMaxConcurrentTasks(workers)
+				.withName("eframework-dispatcher"));
+		running = true;
+		for (int i = 0; i < workers; i++) {
+			scheduler.submit(this::drain);
+		}
+	}
+
+	/**
+	 * Stop accepting queued work and give the workers up to the shutdown
+	 * timeout to deliver the events already queued
+	 */
+	public void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getDispatcherShutdownTimeout());
+		while (!queue.isEmpty() && System.nanoTime() - deadline < 0) {
+			try {
+				Thread.sleep(POLL_INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		running = false;
+		int lost = 0;
+		DispatchTask task;
+		while ((task = queue.poll()) != null) {
+			if (!spool(task)) {
+				lost++;
+			}
+		}
+		if (lost > 0) {
+			LOGGER.warn(lost + " queued eframework events were not delivered before shutdown");
+		}
+		scheduler.stop();
+		scheduler = null;
+	}
+
+	/**
+	 * Deliver an event to its handler flow without waiting for the flow to
+	 * complete (unless the overflow policy requires it)
+	 *
+	 * @param flow
+	 * @param event
+	 */
+	public void dispatch(Flow flow, CoreEvent event) {
+		dispatched.increment();
+		if (queue == null || !running) {
+			execute(flow, event);
+			return;
+		}
+		DispatchTask task = new DispatchTask(flow, event);
+		if (queue.offer(task) || spool(task)) {
+			return;
+		}
+		DispatcherOverflowPolicy policy = settings.getDispatcherOverflowPolicy();
+		switch (policy) {
+		case BLOCK:
+			try {
+				queue.put(task);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				droppedNewest.increment();
+			}
+			break;
+		case DROP_OLDEST:
+			while (!queue.offer(task)) {
+				if (queue.poll() != null) {
+					droppedOldest.increment();
+				}
+			}
+			break;
+		case DROP_NEWEST:
+			droppedNewest.increment();
+			break;
+		case SYNCHRONOUS:
+		default:
+			processedSynchronously.increment();
+			process(task);
+			break;
+		}
+	}
+
+	/**
+	 * @return queue depth and delivery counters, keyed by name
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("queueDepth", queue == null ? 0L : (long) queue.size());
+		statistics.put("queueCapacity", queue == null ? 0L : (long) settings.getDispatcherQueueCapacity());
+		statistics.put("dispatched", dispatched.sum());
+		statistics.put("delivered", delivered.sum());
+		statistics.put("failed", failed.sum());
+		statistics.put("droppedOldest", droppedOldest.sum());
+		statistics.put("droppedNewest", droppedNewest.sum());
+		statistics.put("processedSynchronously", processedSynchronously.sum());
+		statistics.put("spooled", spooled.sum());
+		return statistics;
+	}
+
+	private void drain() {
+		while (running) {
+			try {
+				DispatchTask task = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if (task != null) {
+					process(task);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void process(DispatchTask task) {
+		try {
+			task.flow.process(task.event);
+			delivered.increment();
+		} catch (MuleException | RuntimeException ex) {
+			failed.increment();
+			if (spool(task)) {
+				LOGGER.error("Error during " + task.flow.getName() + ", the event is spooled for replay", ex);
+			} else {
+				LOGGER.error("Error during " + task.flow.getName(), ex);
+			}
+		}
+	}
+
+	/*
+	 * Start the flow without waiting, an event of a spooled flow is spooled if
+	 * the flow rejects or fails it
+	 */
+	private void execute(Flow flow, CoreEvent event) {
+		if (!spool.isSpooled(flow.getName())) {
+			flow.execute(event);
+			return;
+		}
+		DispatchTask task = new DispatchTask(flow, event);
+		try {
+			flow.execute(event).whenComplete((result, error) -> {
+				if (error != null) {
+					failed.increment();
+					spool(task);
+				}
+			});
+		} catch (RuntimeException e) {
+			failed.increment();
+			if (!spool(task)) {
+				throw e;
+			}
+		}
+	}
+
+	private boolean spool(DispatchTask task) {
+		if (spool.spool(task.flow, task.event)) {
+			spooled.increment();
+			return true;
+		}
+		return false;
+	}
+
+	private static final class DispatchTask {
+		private final Flow flow;
+		private final CoreEvent event;
+
+		private DispatchTask(Flow flow, CoreEvent event) {
+			this.flow = flow;
+			this.event = event;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.mule.consulting.eframework.internal.execution;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.consulting.eframework.api.BlockingExecutionMode;
+import org.mule.consulting.eframework.api.BulkheadTimeoutPolicy;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of where the handler flows of blocking events run.
+ */
+public class BlockingExecutionSettings {
+
+	@Parameter
+	@Optional(defaultValue = "CALLER")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Blocking Execution", order = 1)
+	@Summary("Run the handler flows of blocking events on the calling thread, or on virtual threads (Java 21)")
+	private BlockingExecutionMode blockingExecutionMode;
+
+	@Parameter
+	@Optional(defaultValue = "256")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Blocking Execution", order = 2)
+	@Summary("Maximum number of handler flows running on virtual threads at the same time")
+	private int blockingConcurrency;
+
+	@Parameter
+	@Optional(defaultValue = "30000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Blocking Execution", order = 3)
+	@Summary("Milliseconds an operation waits for a virtual thread and for its handler flow, 0 to wait without limit")
+	private long blockingTimeout;
+
+	@Parameter
+	@Optional(defaultValue = "SKIP")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Blocking Execution", order = 4)
+	@Summary("What an operation does when its flow gets no virtual thread or misses blockingTimeout: SKIP, ERROR or ASYNC")
+	private BulkheadTimeoutPolicy blockingTimeoutPolicy;
+
+	@Parameter
+	@Optional(defaultValue = "false")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Blocking Execution", order = 5)
+	@Summary("Raise FlowFailed when the handler flow of a blocking event fails, instead of only logging the error")
+	private boolean raiseFlowErrors;
+
+	public BlockingExecutionMode getBlockingExecutionMode() {
+		return blockingExecutionMode;
+	}
+
+	public int getBlockingConcurrency() {
+		return blockingConcurrency;
+	}
+
+	public long getBlockingTimeout() {
+		return blockingTimeout;
+	}
+
+	public BulkheadTimeoutPolicy getBlockingTimeoutPolicy() {
+		return blockingTimeoutPolicy;
+	}
+
+	public boolean isRaiseFlowErrors() {
+		return raiseFlowErrors;
+	}
+
+	public void setBlockingExecutionMode(BlockingExecutionMode blockingExecutionMode) {
+		this.blockingExecutionMode = blockingExecutionMode;
+	}
+
+	public void setBlockingConcurrency(int blockingConcurrency) {
+		this.blockingConcurrency = blockingConcurrency;
+	}
+
+	public void setBlockingTimeout(long blockingTimeout) {
+		this.blockingTimeout = blockingTimeout;
+	}
+
+	public void setBlockingTimeoutPolicy(BulkheadTimeoutPolicy blockingTimeoutPolicy) {
+		this.blockingTimeoutPolicy = blockingTimeoutPolicy;
+	}
+
+	public void setRaiseFlowErrors(boolean raiseFlowErrors) {
+		this.raiseFlowErrors = raiseFlowErrors;
+	}
+}
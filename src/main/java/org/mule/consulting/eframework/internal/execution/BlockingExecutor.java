@@ -0,0 +1,261 @@
+package org.mule.consulting.eframework.internal.execution;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.mule.consulting.eframework.api.BlockingExecutionMode;
+import org.mule.consulting.eframework.api.BulkheadTimeoutPolicy;
+import org.mule.runtime.api.exception.MuleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the handler flows of blocking events.
+ *
+ * In CALLER mode a flow runs on the thread of the operation, as it always
+ * did. In VIRTUAL_THREADS mode it runs on a virtual thread while the
+ * operation waits, so the I/O of the flow does not hold a thread of the Mule
+ * pools for longer than blockingTimeout. At most blockingConcurrency flows
+ * run at the same time. An operation that gets no permit, or whose flow does
+ * not complete, within blockingTimeout applies blockingTimeoutPolicy like a
+ * bulkhead; the flow keeps running, and holds its permit, until it completes.
+ *
+ * Virtual threads are created through reflection so the connector still
+ * runs on Java 8. Without them the flows run on the calling thread.
+ */
+public class BlockingExecutor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BlockingExecutor.class);
+
+	/**
+	 * A handler flow invocation
+	 */
+	public interface FlowCall {
+		void process() throws MuleException;
+	}
+
+	private final boolean virtualThreads;
+	private final int concurrency;
+	private final long timeout;
+	private final long timeoutNanos;
+	private final BulkheadTimeoutPolicy timeoutPolicy;
+	private final boolean raiseFlowErrors;
+	private final Semaphore permits;
+	private final Supplier<ExecutorService> executorFactory;
+
+	private final LongAdder executed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+
+	private volatile ExecutorService executor;
+
+	public BlockingExecutor(BlockingExecutionSettings settings) {
+		this(settings, BlockingExecutor::newVirtualThreadExecutor);
+	}
+
+	BlockingExecutor(BlockingExecutionSettings settings, Supplier<ExecutorService> executorFactory) {
+		this.virtualThreads = settings.getBlockingExecutionMode() == BlockingExecutionMode.VIRTUAL_THREADS;
+		this.timeout = Math.max(0, settings.getBlockingTimeout());
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.timeoutPolicy = settings.getBlockingTimeoutPolicy() == null ? BulkheadTimeoutPolicy.SKIP
+				: settings.getBlockingTimeoutPolicy();
+		this.raiseFlowErrors = settings.isRaiseFlowErrors();
+		this.concurrency = Math.max(1, settings.getBlockingConcurrency());
+		this.permits = new Semaphore(concurrency);
+		this.executorFactory = executorFactory;
+	}
+
+	/**
+	 * Create the virtual thread executor, if VIRTUAL_THREADS is configured
+	 */
+	public void start() {
+		if (!virtualThreads) {
+			return;
+		}
+		executor = executorFactory.get();
+		if (executor == null) {
+			LOGGER.warn("Virtual threads need a Java 21 runtime, blocking events run on the calling thread");
+		}
+	}
+
+	/**
+	 * Stop accepting flows, the running ones complete
+	 */
+	public void stop() {
+		ExecutorService current = executor;
+		executor = null;
+		if (current != null) {
+			current.shutdown();
+		}
+	}
+
+	/**
+	 * @return true if handler flows run on virtual threads
+	 */
+	public boolean isEnabled() {
+		return executor != null;
+	}
+
+	/**
+	 * @return blockingTimeout in milliseconds
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return what an operation does with a flow that got no virtual thread
+	 *         or missed blockingTimeout
+	 */
+	public BulkheadTimeoutPolicy getTimeoutPolicy() {
+		return timeoutPolicy;
+	}
+
+	/**
+	 * @return true if a failed handler flow raises FlowFailed rather than
+	 *         being logged
+	 */
+	public boolean isRaiseFlowErrors() {
+		return raiseFlowErrors;
+	}
+
+	/*
+	 * The virtual thread executor, null unless started in VIRTUAL_THREADS mode
+	 */
+	ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Run the flow and wait for it
+	 *
+	 * @param flowName
+	 *            for logging
+	 * @param call
+	 * @return COMPLETED, REJECTED if the flow did not get a virtual thread
+	 *         or TIMEOUT if it did not complete within blockingTimeout
+	 * @throws MuleException
+	 *             thrown by the flow
+	 */
+	public Bulkhead.Outcome execute(String flowName, FlowCall call) throws MuleException {
+		ExecutorService current = executor;
+		if (current == null) {
+			call.process();
+			return Bulkhead.Outcome.COMPLETED;
+		}
+		long deadline = System.nanoTime() + timeoutNanos;
+		if (!acquire(timeoutNanos)) {
+			rejected.increment();
+			LOGGER.warn("No virtual thread available within blockingTimeout for " + flowName);
+			return Bulkhead.Outcome.REJECTED;
+		}
+		Future<?> future;
+		try {
+			future = current.submit(() -> {
+				try {
+					call.process();
+					return null;
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			call.process();
+			return Bulkhead.Outcome.COMPLETED;
+		}
+		try {
+			if (timeoutNanos == 0) {
+				future.get();
+			} else {
+				future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			}
+			executed.increment();
+			return Bulkhead.Outcome.COMPLETED;
+		} catch (TimeoutException e) {
+			timedOut.increment();
+			LOGGER.warn(flowName + " did not complete within blockingTimeout");
+			return Bulkhead.Outcome.TIMEOUT;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Bulkhead.Outcome.TIMEOUT;
+		} catch (ExecutionException e) {
+			executed.increment();
+			throw rethrow(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the number of flows running on virtual threads, and how many
+	 *         completed, got no permit and timed out
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("running", (long) (executor == null ? 0 : concurrency - permits.availablePermits()));
+		statistics.put("executed", executed.sum());
+		statistics.put("rejected", rejected.sum());
+		statistics.put("timedOut", timedOut.sum());
+		return statistics;
+	}
+
+	/*
+	 * A timeout of 0 waits without limit
+	 */
+	private boolean acquire(long nanos) {
+		try {
+			if (nanos == 0) {
+				permits.acquire();
+				return true;
+			}
+			return permits.tryAcquire(nanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/*
+	 * The flow throws MuleException or unchecked exceptions only
+	 */
+	static MuleException rethrow(Throwable cause) throws MuleException {
+		if (cause instanceof MuleException) {
+			throw (MuleException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new IllegalStateException(cause);
+	}
+
+	/*
+	 * The Java 21 API is looked up by reflection, a runtime without it gets
+	 * null
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "eframework-blocking-",
+					0L);
+			ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
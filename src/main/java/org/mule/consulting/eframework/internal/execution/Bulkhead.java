@@ -0,0 +1,202 @@
+package org.mule.consulting.eframework.internal.execution;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.api.BulkheadTimeoutPolicy;
+import org.mule.consulting.eframework.api.FlowBulkhead;
+import org.mule.consulting.eframework.internal.execution.BlockingExecutor.FlowCall;
+import org.mule.runtime.api.exception.MuleException;
+
+/**
+ * The blocking calls of one handler flow.
+ *
+ * A call runs when one of maxConcurrentCalls permits is free, or waits for
+ * one if fewer than maxQueuedCalls calls are waiting already; otherwise it
+ * is rejected. With a timeout, the flow runs on another thread and the
+ * caller waits for it until the deadline, counted from the start of the
+ * call. A flow that misses its deadline is not interrupted: it keeps its
+ * permit until it completes, so a hanging flow fills its bulkhead and
+ * further calls fail fast instead of piling up.
+ */
+public class Bulkhead {
+
+	/**
+	 * How a call ended: REJECTED and QUEUE_TIMEOUT calls did not start their
+	 * flow, a TIMEOUT call's flow is still running
+	 */
+	public enum Outcome {
+		COMPLETED, REJECTED, QUEUE_TIMEOUT, TIMEOUT
+	}
+
+	private final String flowName;
+	private final int maxConcurrentCalls;
+	private final int maxQueuedCalls;
+	private final long timeout;
+	private final long timeoutNanos;
+	private final BulkheadTimeoutPolicy timeoutPolicy;
+	private final Semaphore permits;
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+	private final LongAdder downgraded = new LongAdder();
+
+	private volatile ExecutorService executor;
+
+	Bulkhead(FlowBulkhead settings) {
+		this.flowName = settings.getFlowName().trim();
+		this.maxConcurrentCalls = Math.max(1, settings.getMaxConcurrentCalls());
+		this.maxQueuedCalls = Math.max(0, settings.getMaxQueuedCalls());
+		this.timeout = Math.max(0, settings.getTimeout());
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.timeoutPolicy = settings.getTimeoutPolicy() == null ? BulkheadTimeoutPolicy.SKIP
+				: settings.getTimeoutPolicy();
+		this.permits = new Semaphore(maxConcurrentCalls);
+	}
+
+	public String getFlowName() {
+		return flowName;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public BulkheadTimeoutPolicy getTimeoutPolicy() {
+		return timeoutPolicy;
+	}
+
+	/**
+	 * Run the flow within the limits of the bulkhead and wait for it
+	 *
+	 * @param call
+	 * @return how the call ended
+	 * @throws MuleException
+	 *             thrown by the flow
+	 */
+	public Outcome execute(FlowCall call) throws MuleException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		if (!permits.tryAcquire()) {
+			if (queued.incrementAndGet() > maxQueuedCalls) {
+				queued.decrementAndGet();
+				rejected.increment();
+				return Outcome.REJECTED;
+			}
+			boolean acquired;
+			try {
+				acquired = acquire();
+			} finally {
+				queued.decrementAndGet();
+			}
+			if (!acquired) {
+				timedOut.increment();
+				return Outcome.QUEUE_TIMEOUT;
+			}
+		}
+		ExecutorService current = executor;
+		if (timeoutNanos == 0 || current == null) {
+			return runOnCaller(call);
+		}
+		Future<?> future;
+		try {
+			future = current.submit(() -> {
+				try {
+					call.process();
+					return null;
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return runOnCaller(call);
+		}
+		try {
+			future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			completed.increment();
+			return Outcome.COMPLETED;
+		} catch (TimeoutException e) {
+			timedOut.increment();
+			return Outcome.TIMEOUT;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			timedOut.increment();
+			return Outcome.TIMEOUT;
+		} catch (ExecutionException e) {
+			completed.increment();
+			throw BlockingExecutor.rethrow(e.getCause());
+		}
+	}
+
+	/**
+	 * Count a call the ASYNC timeoutPolicy continues in non-blocking mode
+	 *
+	 * @param outcome
+	 * @return true if the event has to be sent to its flow in non-blocking
+	 *         mode, false for a TIMEOUT call whose flow already keeps running
+	 *         in the background
+	 */
+	public boolean downgrade(Outcome outcome) {
+		downgraded.increment();
+		return outcome != Outcome.TIMEOUT;
+	}
+
+	/**
+	 * @return the number of running and waiting calls, and how many completed,
+	 *         were rejected, timed out and were downgraded to non-blocking
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("running", (long) (maxConcurrentCalls - permits.availablePermits()));
+		statistics.put("queued", (long) queued.get());
+		statistics.put("completed", completed.sum());
+		statistics.put("rejected", rejected.sum());
+		statistics.put("timedOut", timedOut.sum());
+		statistics.put("downgraded", downgraded.sum());
+		return statistics;
+	}
+
+	/*
+	 * Only needed with a timeout, the caller runs the flow otherwise
+	 */
+	void setExecutor(ExecutorService executor) {
+		this.executor = timeoutNanos == 0 ? null : executor;
+	}
+
+	boolean hasTimeout() {
+		return timeoutNanos > 0;
+	}
+
+	private boolean acquire() {
+		try {
+			if (timeoutNanos == 0) {
+				permits.acquire();
+				return true;
+			}
+			return permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private Outcome runOnCaller(FlowCall call) throws MuleException {
+		try {
+			call.process();
+			return Outcome.COMPLETED;
+		} finally {
+			completed.increment();
+			permits.release();
+		}
+	}
+}
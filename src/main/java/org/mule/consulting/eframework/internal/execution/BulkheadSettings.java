@@ -0,0 +1,35 @@
+package org.mule.consulting.eframework.internal.execution;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.List;
+
+import org.mule.consulting.eframework.api.FlowBulkhead;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.NullSafe;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the bulkheads around the blocking calls of handler flows.
+ */
+public class BulkheadSettings {
+
+	@Parameter
+	@Optional
+	@NullSafe
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Bulkheads", order = 1)
+	@Summary("Concurrency limit, queue length and deadline of the blocking calls per handler flow")
+	private List<FlowBulkhead> flowBulkheads;
+
+	public List<FlowBulkhead> getFlowBulkheads() {
+		return flowBulkheads;
+	}
+
+	public void setFlowBulkheads(List<FlowBulkhead> flowBulkheads) {
+		this.flowBulkheads = flowBulkheads;
+	}
+}
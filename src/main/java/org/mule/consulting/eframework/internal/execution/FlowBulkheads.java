@@ -0,0 +1,94 @@
+package org.mule.consulting.eframework.internal.execution;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.mule.consulting.eframework.api.FlowBulkhead;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bulkheads of the handler flows that have one. The blocking calls of
+ * other flows go through the BlockingExecutor.
+ *
+ * Flows of bulkheads with a timeout run on the virtual threads of the
+ * BlockingExecutor when it has them, otherwise on an io scheduler that is
+ * only started for such bulkheads.
+ */
+public class FlowBulkheads {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FlowBulkheads.class);
+
+	private final Map<String, Bulkhead> bulkheads;
+
+	private Scheduler scheduler;
+
+	public FlowBulkheads(BulkheadSettings settings) {
+		Map<String, Bulkhead> map = new HashMap<String, Bulkhead>();
+		if (settings.getFlowBulkheads() != null) {
+			for (FlowBulkhead flowBulkhead : settings.getFlowBulkheads()) {
+				String flowName = flowBulkhead.getFlowName();
+				if (flowName == null || flowName.trim().isEmpty()) {
+					LOGGER.warn("Ignoring a bulkhead without flowName");
+				} else if (map.putIfAbsent(flowName.trim(), new Bulkhead(flowBulkhead)) != null) {
+					LOGGER.warn("Ignoring the second bulkhead for " + flowName);
+				}
+			}
+		}
+		this.bulkheads = map;
+	}
+
+	/**
+	 * Provide the bulkheads with a timeout with the threads their flows run on
+	 *
+	 * @param schedulerService
+	 * @param blockingExecutor
+	 *            started before
+	 */
+	public void start(SchedulerService schedulerService, BlockingExecutor blockingExecutor) {
+		if (bulkheads.values().stream().noneMatch(Bulkhead::hasTimeout)) {
+			return;
+		}
+		ExecutorService executor = blockingExecutor.getExecutor();
+		if (executor == null) {
+			scheduler = schedulerService.ioScheduler();
+			executor = scheduler;
+		}
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			bulkhead.setExecutor(executor);
+		}
+	}
+
+	public void stop() {
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			bulkhead.setExecutor(null);
+		}
+		if (scheduler != null) {
+			scheduler.stop();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @param flowName
+	 * @return the bulkhead of the flow, null if it has none
+	 */
+	public Bulkhead get(String flowName) {
+		return bulkheads.isEmpty() ? null : bulkheads.get(flowName);
+	}
+
+	/**
+	 * @return the statistics of each bulkhead, keyed by flow name
+	 */
+	public Map<String, Map<String, Long>> getStatistics() {
+		Map<String, Map<String, Long>> statistics = new LinkedHashMap<String, Map<String, Long>>();
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			statistics.put(bulkhead.getFlowName(), bulkhead.getStatistics());
+		}
+		return statistics;
+	}
+}
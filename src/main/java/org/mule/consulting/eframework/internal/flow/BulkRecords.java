@@ -0,0 +1,93 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the records passed to the bulk operations. A record is a Map with
+ * optional entries: attributes (a Map, its values are converted to String),
+ * content, and the fields an operation lets a record override, such as
+ * eventStatus or recordDescriptor.
+ */
+public final class BulkRecords {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkRecords.class);
+
+	public static final String ATTRIBUTES = "attributes";
+	public static final String CONTENT = "content";
+
+	private BulkRecords() {
+	}
+
+	/**
+	 * @param record
+	 *            may be null
+	 * @return the attributes entry of record, empty if it has none
+	 */
+	public static AttributesMap attributes(Map<String, ?> record) {
+		Object value = record == null ? null : record.get(ATTRIBUTES);
+		if (!(value instanceof Map) || ((Map<?, ?>) value).isEmpty()) {
+			return AttributesMap.EMPTY;
+		}
+		Map<String, String> attributes = new TreeMap<String, String>();
+		for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+			if (entry.getKey() != null && entry.getValue() != null) {
+				attributes.put(entry.getKey().toString(), entry.getValue().toString());
+			}
+		}
+		return AttributesMap.copyOf(attributes);
+	}
+
+	/**
+	 * @param record
+	 *            may be null
+	 * @param materialize
+	 *            read streamed content into memory, for records delivered
+	 *            after the operation completes
+	 * @return the content entry of record
+	 */
+	public static Object content(Map<String, ?> record, boolean materialize) {
+		Object content = record == null ? null : record.get(CONTENT);
+		return materialize ? FlowEvents.materialize(content) : content;
+	}
+
+	/**
+	 * @param record
+	 *            may be null
+	 * @param name
+	 * @param defaultValue
+	 * @return the entry name of record as a String, defaultValue if it has
+	 *         none
+	 */
+	public static String field(Map<String, ?> record, String name, String defaultValue) {
+		Object value = record == null ? null : record.get(name);
+		return value == null ? defaultValue : value.toString();
+	}
+
+	/**
+	 * @param record
+	 *            may be null
+	 * @param name
+	 * @param type
+	 * @param defaultValue
+	 * @return the constant of type the entry name of record names, ignoring
+	 *         case, defaultValue if it has none or names no constant of type
+	 */
+	public static <E extends Enum<E>> E constant(Map<String, ?> record, String name, Class<E> type, E defaultValue) {
+		String value = field(record, name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		for (E constant : type.getEnumConstants()) {
+			if (constant.name().equalsIgnoreCase(value.trim())) {
+				return constant;
+			}
+		}
+		LOGGER.warn("Unknown " + name + " " + value + " in a bulk record, using " + defaultValue);
+		return defaultValue;
+	}
+}
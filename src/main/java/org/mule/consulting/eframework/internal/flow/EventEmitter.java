@@ -0,0 +1,21 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import java.util.Map;
+
+import org.mule.runtime.api.component.location.ComponentLocation;
+
+/**
+ * Delivers an event that the connector generates by itself (summaries,
+ * reports) to a handler flow, without waiting for the flow to complete.
+ */
+public interface EventEmitter {
+
+	/**
+	 * @param flowName
+	 * @param attributes
+	 * @param content
+	 * @param location
+	 *            of the operation the event originates from, may be null
+	 */
+	void emit(String flowName, Map<String, String> attributes, Object content, ComponentLocation location);
+}
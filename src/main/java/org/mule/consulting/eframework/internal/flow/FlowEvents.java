@@ -0,0 +1,107 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.message.Message;
+import org.mule.runtime.api.streaming.bytes.CursorStream;
+import org.mule.runtime.api.streaming.bytes.CursorStreamProvider;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.core.api.event.CoreEvent;
+import org.mule.runtime.core.api.event.EventContextFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the events that are handed to eframework handler flows.
+ */
+public final class FlowEvents {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FlowEvents.class);
+
+	private FlowEvents() {
+	}
+
+	/**
+	 * Create a new event for flow with content as payload and the event
+	 * attributes as message attributes
+	 * 
+	 * @param flow
+	 * @param attributes
+	 * @param content
+	 * @param location
+	 * @return
+	 */
+	public static CoreEvent create(Flow flow, Object attributes, Object content, ComponentLocation location) {
+		Message msg = Message.builder().value(content).attributesValue(attributes).build();
+
+		return CoreEvent.builder(EventContextFactory.create(flow, location)).message(msg).build();
+	}
+
+	/**
+	 * Read streamed content into memory, for events delivered after the
+	 * originating event (and its stream) has completed. A repeatable stream
+	 * is read from its start and left at its position, a non-repeatable one
+	 * is consumed.
+	 * 
+	 * @param content
+	 * @return the bytes of a stream, content itself otherwise and null if the
+	 *         stream cannot be read
+	 */
+	public static Object materialize(Object content) {
+		InputStream stream = null;
+		try {
+			if (content instanceof CursorStream) {
+				return readFromStart((CursorStream) content);
+			} else if (content instanceof CursorStreamProvider) {
+				stream = ((CursorStreamProvider) content).openCursor();
+			} else if (content instanceof InputStream) {
+				stream = (InputStream) content;
+			} else {
+				return content;
+			}
+			return readAll(stream);
+		} catch (IOException e) {
+			LOGGER.error("Unable to read event content", e);
+			return null;
+		} finally {
+			if (content instanceof CursorStreamProvider && stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					LOGGER.debug("Unable to close cursor", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read a repeatable stream, which is how a repeatable payload usually
+	 * reaches an operation, from its start without moving its position
+	 * 
+	 * @param cursor
+	 * @return the bytes of the stream
+	 * @throws IOException
+	 */
+	public static byte[] readFromStart(CursorStream cursor) throws IOException {
+		long position = cursor.getPosition();
+		cursor.seek(0);
+		try {
+			return readAll(cursor);
+		} finally {
+			cursor.seek(position);
+		}
+	}
+
+	private static byte[] readAll(InputStream stream) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int read;
+		while ((read = stream.read(chunk)) != -1) {
+			buffer.write(chunk, 0, read);
+		}
+		return buffer.toByteArray();
+	}
+}
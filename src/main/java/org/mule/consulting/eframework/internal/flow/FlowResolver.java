@@ -0,0 +1,101 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.runtime.api.artifact.Registry;
+import org.mule.runtime.core.api.construct.Flow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves eframework handler flows by name and caches the result, so the
+ * per-event path is a single map read instead of a Registry lookup.
+ * 
+ * Flows that are not deployed are cached as well (negative cache) and are only
+ * looked up again once missingFlowRetryMillis has elapsed. Instead of logging
+ * a warning per event, the first miss is logged and further misses are counted
+ * and reported when the entry is re-checked.
+ */
+public class FlowResolver {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FlowResolver.class);
+
+	private final Registry registry;
+	private final long missingFlowRetryNanos;
+	private final ConcurrentHashMap<String, ResolvedFlow> cache = new ConcurrentHashMap<>();
+	private final LongAdder suppressedWarnings = new LongAdder();
+
+	public FlowResolver(Registry registry, long missingFlowRetryMillis) {
+		this.registry = registry;
+		this.missingFlowRetryNanos = TimeUnit.MILLISECONDS.toNanos(missingFlowRetryMillis);
+	}
+
+	/**
+	 * Return the flow registered under flowName, or null if it does not exist
+	 * 
+	 * @param flowName
+	 * @return
+	 */
+	public Flow lookup(String flowName) {
+		ResolvedFlow resolved = cache.get(flowName);
+		if (resolved != null && resolved.flow != null) {
+			return resolved.flow;
+		}
+		if (resolved == null || resolved.isExpired(System.nanoTime())) {
+			resolved = cache.compute(flowName, (name, previous) -> {
+				if (previous != null && (previous.flow != null || !previous.isExpired(System.nanoTime()))) {
+					return previous; // another thread re-resolved it in the meantime
+				}
+				return resolve(name, previous);
+			});
+			return resolved.flow;
+		}
+		resolved.suppressed.incrementAndGet();
+		suppressedWarnings.increment();
+		return null;
+	}
+
+	/**
+	 * Drop every cached entry, positive and negative
+	 */
+	public void invalidate() {
+		cache.clear();
+	}
+
+	/**
+	 * @return the number of missing-flow warnings that were not logged
+	 */
+	public long getSuppressedWarningCount() {
+		return suppressedWarnings.sum();
+	}
+
+	private ResolvedFlow resolve(String flowName, ResolvedFlow previous) {
+		Flow flow = (Flow) registry.lookupByName(flowName).orElse(null);
+		if (flow == null) {
+			if (previous == null) {
+				LOGGER.warn(flowName + " does not exist, further warnings are suppressed");
+			} else if (previous.suppressed.get() > 0) {
+				LOGGER.warn(flowName + " does not exist: " + previous.suppressed.get() + " events skipped since last check");
+			}
+		}
+		return new ResolvedFlow(flow, System.nanoTime() + missingFlowRetryNanos);
+	}
+
+	private static final class ResolvedFlow {
+		private final Flow flow;
+		private final long expiresAt;
+		private final AtomicLong suppressed = new AtomicLong();
+
+		private ResolvedFlow(Flow flow, long expiresAt) {
+			this.flow = flow;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package org.mule.consulting.eframework.internal.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters and latency histograms per operation and per handler flow. Per
+ * operation: calls, calls that raised an error and the time the operation
+ * took, including the native circuit breaker operations that do not call a
+ * flow. Per handler flow, for every event the operations hand to a flow:
+ * events emitted non-blocking, events added to a batch, blocking calls and
+ * their latency, calls to flows that do not exist and MuleExceptions
+ * swallowed on the blocking path. Counters are LongAdders, so concurrent
+ * operations do not contend on them.
+ *
+ * The metrics are registered as an MXBean named
+ * org.mule.consulting.eframework:type=Metrics,applicationId=...
+ */
+public class EframeworkMetrics implements EframeworkMetricsMXBean {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EframeworkMetrics.class);
+
+	private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+	private final ConcurrentHashMap<String, FlowMetrics> flows = new ConcurrentHashMap<String, FlowMetrics>();
+
+	private ObjectName objectName;
+
+	/**
+	 * @param operationName
+	 *            the operation alias
+	 * @return the metrics of operationName
+	 */
+	public OperationMetrics operation(String operationName) {
+		OperationMetrics metrics = operations.get(operationName);
+		return metrics != null ? metrics
+				: operations.computeIfAbsent(operationName, name -> new OperationMetrics());
+	}
+
+	/**
+	 * @param flowName
+	 * @return the metrics of flowName
+	 */
+	public FlowMetrics flow(String flowName) {
+		FlowMetrics metrics = flows.get(flowName);
+		return metrics != null ? metrics : flows.computeIfAbsent(flowName, name -> new FlowMetrics());
+	}
+
+	/**
+	 * Register with the platform MBean server
+	 *
+	 * @param applicationId
+	 */
+	public void register(String applicationId) {
+		try {
+			ObjectName name = new ObjectName("org.mule.consulting.eframework:type=Metrics,applicationId="
+					+ ObjectName.quote(String.valueOf(applicationId)));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				LOGGER.warn("eframework metrics are already registered as " + name);
+				return;
+			}
+			server.registerMBean(this, name);
+			objectName = name;
+		} catch (JMException e) {
+			LOGGER.warn("Unable to register eframework metrics with JMX", e);
+		}
+	}
+
+	public void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			LOGGER.debug("Unable to unregister eframework metrics", e);
+		}
+		objectName = null;
+	}
+
+	/**
+	 * @return counters and latencies keyed by operation and by handler flow,
+	 *         plus totals
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> operationSnapshots = new TreeMap<String, Object>();
+		for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+			Map<String, Object> operationSnapshot = new LinkedHashMap<String, Object>(entry.getValue().counters());
+			Map<String, Object> latency = entry.getValue().latency.snapshot();
+			if (latency != null) {
+				operationSnapshot.put("latency", latency);
+			}
+			operationSnapshots.put(entry.getKey(), operationSnapshot);
+		}
+		Map<String, Object> flowSnapshots = new TreeMap<String, Object>();
+		for (Map.Entry<String, FlowMetrics> entry : flows.entrySet()) {
+			Map<String, Object> flowSnapshot = new LinkedHashMap<String, Object>(entry.getValue().counters());
+			Map<String, Object> latency = entry.getValue().latency.snapshot();
+			if (latency != null) {
+				flowSnapshot.put("latency", latency);
+			}
+			flowSnapshots.put(entry.getKey(), flowSnapshot);
+		}
+		Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+		snapshot.put("missingFlowCalls", getMissingFlowCalls());
+		snapshot.put("failedCalls", getFailedCalls());
+		snapshot.put("operations", operationSnapshots);
+		snapshot.put("flows", flowSnapshots);
+		return snapshot;
+	}
+
+	@Override
+	public Map<String, Map<String, Long>> getCounters() {
+		Map<String, Map<String, Long>> counters = new TreeMap<String, Map<String, Long>>();
+		for (Map.Entry<String, FlowMetrics> entry : flows.entrySet()) {
+			counters.put(entry.getKey(), entry.getValue().counters());
+		}
+		return counters;
+	}
+
+	@Override
+	public Map<String, Map<String, Double>> getLatencies() {
+		Map<String, Map<String, Double>> latencies = new TreeMap<String, Map<String, Double>>();
+		for (Map.Entry<String, FlowMetrics> entry : flows.entrySet()) {
+			putLatency(latencies, entry.getKey(), entry.getValue().latency);
+		}
+		return latencies;
+	}
+
+	@Override
+	public Map<String, Map<String, Long>> getOperationCounters() {
+		Map<String, Map<String, Long>> counters = new TreeMap<String, Map<String, Long>>();
+		for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+			counters.put(entry.getKey(), entry.getValue().counters());
+		}
+		return counters;
+	}
+
+	@Override
+	public Map<String, Map<String, Double>> getOperationLatencies() {
+		Map<String, Map<String, Double>> latencies = new TreeMap<String, Map<String, Double>>();
+		for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+			putLatency(latencies, entry.getKey(), entry.getValue().latency);
+		}
+		return latencies;
+	}
+
+	/*
+	 * JMX open types only take Double values
+	 */
+	private static void putLatency(Map<String, Map<String, Double>> latencies, String key,
+			LatencyHistogram histogram) {
+		Map<String, Object> latency = histogram.snapshot();
+		if (latency != null) {
+			Map<String, Double> values = new LinkedHashMap<String, Double>();
+			for (Map.Entry<String, Object> value : latency.entrySet()) {
+				values.put(value.getKey(), ((Number) value.getValue()).doubleValue());
+			}
+			latencies.put(key, values);
+		}
+	}
+
+	@Override
+	public long getMissingFlowCalls() {
+		long total = 0;
+		for (FlowMetrics metrics : flows.values()) {
+			total += metrics.missing.sum();
+		}
+		return total;
+	}
+
+	@Override
+	public long getFailedCalls() {
+		long total = 0;
+		for (FlowMetrics metrics : flows.values()) {
+			total += metrics.failed.sum();
+		}
+		return total;
+	}
+
+	@Override
+	public void reset() {
+		operations.clear();
+		flows.clear();
+	}
+
+	/**
+	 * The counters of one operation
+	 */
+	public static final class OperationMetrics {
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		/**
+		 * The operation returned or raised an error
+		 *
+		 * @param durationNanos
+		 * @param raised
+		 *            true if the operation raised an error, including the
+		 *            CircuitBreakerOpen error of an open breaker
+		 */
+		public void completed(long durationNanos, boolean raised) {
+			calls.increment();
+			latency.record(durationNanos);
+			if (raised) {
+				errors.increment();
+			}
+		}
+
+		private Map<String, Long> counters() {
+			Map<String, Long> counters = new LinkedHashMap<String, Long>();
+			counters.put("calls", calls.sum());
+			counters.put("errors", errors.sum());
+			return counters;
+		}
+	}
+
+	/**
+	 * The counters of one handler flow
+	 */
+	public static final class FlowMetrics {
+		private final LongAdder emitted = new LongAdder();
+		private final LongAdder batched = new LongAdder();
+		private final LongAdder processed = new LongAdder();
+		private final LongAdder missing = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		/**
+		 * An event was handed to the dispatcher
+		 */
+		public void emitted() {
+			emitted.increment();
+		}
+
+		/**
+		 * An event was added to a batch
+		 */
+		public void batched() {
+			batched.increment();
+		}
+
+		/**
+		 * Events of a bulk operation were handed to the dispatcher as one
+		 * batch
+		 *
+		 * @param count
+		 */
+		public void batched(int count) {
+			batched.add(count);
+		}
+
+		/**
+		 * The flow does not exist, so the event was dropped
+		 */
+		public void missing() {
+			missing.increment();
+		}
+
+		/**
+		 * A blocking call completed
+		 *
+		 * @param durationNanos
+		 * @param success
+		 *            false if the flow raised an error that was swallowed
+		 */
+		public void processed(long durationNanos, boolean success) {
+			processed.increment();
+			latency.record(durationNanos);
+			if (!success) {
+				failed.increment();
+			}
+		}
+
+		private Map<String, Long> counters() {
+			Map<String, Long> counters = new LinkedHashMap<String, Long>();
+			counters.put("emitted", emitted.sum());
+			counters.put("batched", batched.sum());
+			counters.put("processed", processed.sum());
+			counters.put("missing", missing.sum());
+			counters.put("failed", failed.sum());
+			return counters;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package org.mule.consulting.eframework.internal.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the eframework metrics of one configuration.
+ */
+public interface EframeworkMetricsMXBean {
+
+	/**
+	 * @return counters (emitted, batched, processed, missing, failed) keyed by
+	 *         handler flow
+	 */
+	Map<String, Map<String, Long>> getCounters();
+
+	/**
+	 * @return blocking call latency (count, mean, p50, p90, p99, max in
+	 *         milliseconds) keyed by handler flow
+	 */
+	Map<String, Map<String, Double>> getLatencies();
+
+	/**
+	 * @return counters (calls, errors) keyed by operation
+	 */
+	Map<String, Map<String, Long>> getOperationCounters();
+
+	/**
+	 * @return operation latency (count, mean, p50, p90, p99, max in
+	 *         milliseconds) keyed by operation
+	 */
+	Map<String, Map<String, Double>> getOperationLatencies();
+
+	long getMissingFlowCalls();
+
+	long getFailedCalls();
+
+	void reset();
+}
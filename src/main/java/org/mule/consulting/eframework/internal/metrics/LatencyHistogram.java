@@ -0,0 +1,111 @@
+package org.mule.consulting.eframework.internal.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of durations in microseconds, in the style
+ * of HdrHistogram: every power of two is split in 16 linear sub-buckets, so a
+ * percentile is reported within about 6% of the recorded value, from 1
+ * microsecond up to about 12 days. Recording is two atomic increments and
+ * never allocates.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BINS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray bins = new AtomicLongArray(BINS);
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param durationNanos
+	 */
+	public void record(long durationNanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, durationNanos));
+		bins.incrementAndGet(bin(micros));
+		totalMicros.add(micros);
+		maxMicros.accumulate(micros);
+	}
+
+	/**
+	 * @return count, mean and the p50, p90, p99 and max in milliseconds, null
+	 *         if nothing was recorded
+	 */
+	public Map<String, Object> snapshot() {
+		return summarize(false);
+	}
+
+	/**
+	 * Summarize and reset the histogram
+	 *
+	 * @return count, mean and the p50, p90, p99 and max in milliseconds, null
+	 *         if nothing was recorded
+	 */
+	public Map<String, Object> drain() {
+		return summarize(true);
+	}
+
+	private Map<String, Object> summarize(boolean reset) {
+		long[] counts = new long[BINS];
+		long total = 0;
+		for (int bin = 0; bin < BINS; bin++) {
+			counts[bin] = reset ? bins.getAndSet(bin, 0) : bins.get(bin);
+			total += counts[bin];
+		}
+		long sum = reset ? totalMicros.sumThenReset() : totalMicros.sum();
+		long max = reset ? maxMicros.getThenReset() : maxMicros.get();
+		if (total == 0) {
+			return null;
+		}
+		Map<String, Object> summary = new LinkedHashMap<String, Object>();
+		summary.put("count", total);
+		summary.put("meanMillis", sum / 1000.0 / total);
+		summary.put("p50Millis", percentile(counts, total, 50));
+		summary.put("p90Millis", percentile(counts, total, 90));
+		summary.put("p99Millis", percentile(counts, total, 99));
+		summary.put("maxMillis", max / 1000.0);
+		return summary;
+	}
+
+	private static int bin(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/*
+	 * Highest value, in milliseconds, that falls in bin
+	 */
+	private static double upperBound(int bin) {
+		if (bin < SUB_BUCKETS) {
+			return bin / 1000.0;
+		}
+		int shift = bin / SUB_BUCKETS - 1;
+		long subBucket = bin % SUB_BUCKETS;
+		return (((SUB_BUCKETS + subBucket + 1) << shift) - 1) / 1000.0;
+	}
+
+	private static double percentile(long[] counts, long total, double percentile) {
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int bin = 0; bin < BINS; bin++) {
+			seen += counts[bin];
+			if (seen >= target) {
+				return upperBound(bin);
+			}
+		}
+		return upperBound(BINS - 1);
+	}
+}
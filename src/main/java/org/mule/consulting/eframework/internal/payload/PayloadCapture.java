@@ -0,0 +1,204 @@
+package org.mule.consulting.eframework.internal.payload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.mule.consulting.eframework.api.PayloadCaptureMode;
+import org.mule.runtime.api.streaming.bytes.CursorStream;
+import org.mule.runtime.api.streaming.bytes.CursorStreamProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the PayloadPreview of a payload in a single pass with bounded memory:
+ * the first payloadPreviewPrefix bytes are kept, the last payloadPreviewSuffix
+ * bytes are kept in a ring buffer, and size and hash are computed as the
+ * bytes go by.
+ *
+ * Repeatable streams are read from their start, through a new cursor of a
+ * CursorStreamProvider or by seeking a CursorStream back to where it was, so
+ * the caller's position is left untouched. A non-repeatable InputStream cannot be read without
+ * consuming it, so only its type is reported. When neither the suffix nor the
+ * hash is wanted, reading stops after the prefix.
+ */
+public class PayloadCapture {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PayloadCapture.class);
+
+	private static final String TRUNCATION_MARKER = "...";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final boolean enabled;
+	private final int prefixBytes;
+	private final int suffixBytes;
+	private final String hashAlgorithm;
+
+	public PayloadCapture(PayloadSettings settings) {
+		this.enabled = settings.getPayloadCaptureMode() == PayloadCaptureMode.PREVIEW;
+		this.prefixBytes = Math.max(0, settings.getPayloadPreviewPrefix());
+		this.suffixBytes = Math.max(0, settings.getPayloadPreviewSuffix());
+		this.hashAlgorithm = hashAlgorithm(settings.getPayloadHashAlgorithm());
+	}
+
+	/**
+	 * @return true if the payload log flows receive previews
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param content
+	 * @return the preview of content, never consuming a stream
+	 */
+	public PayloadPreview capture(Object content) {
+		if (content == null) {
+			return new PayloadPreview("", 0, null, false);
+		}
+		if (content instanceof CursorStream) {
+			return capture((CursorStream) content);
+		}
+		if (content instanceof CursorStreamProvider) {
+			try (InputStream cursor = ((CursorStreamProvider) content).openCursor()) {
+				return read(cursor);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("Unable to read payload for logging", e);
+				return new PayloadPreview("", -1, null, true);
+			}
+		}
+		if (content instanceof InputStream) {
+			return new PayloadPreview("[non-repeatable stream " + content.getClass().getName() + "]", -1, null,
+					true);
+		}
+		byte[] bytes = content instanceof byte[] ? (byte[]) content
+				: String.valueOf(content).getBytes(StandardCharsets.UTF_8);
+		try {
+			return read(new ByteArrayInputStream(bytes));
+		} catch (IOException e) {
+			// not thrown by a ByteArrayInputStream
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * A repeatable payload usually reaches the operation as a CursorStream
+	 */
+	private PayloadPreview capture(CursorStream cursor) {
+		try {
+			long position = cursor.getPosition();
+			cursor.seek(0);
+			try {
+				return read(cursor);
+			} finally {
+				cursor.seek(position);
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Unable to read payload for logging", e);
+			return new PayloadPreview("", -1, null, true);
+		}
+	}
+
+	private PayloadPreview read(InputStream in) throws IOException {
+		MessageDigest digest = hashAlgorithm == null ? null : newDigest();
+		boolean scan = digest != null || suffixBytes > 0;
+
+		byte[] prefix = new byte[prefixBytes];
+		int prefixLength = 0;
+		while (prefixLength < prefixBytes) {
+			int read = in.read(prefix, prefixLength, prefixBytes - prefixLength);
+			if (read == -1) {
+				break;
+			}
+			prefixLength += read;
+		}
+		if (digest != null) {
+			digest.update(prefix, 0, prefixLength);
+		}
+		if (prefixLength < prefixBytes) {
+			return preview(prefix, prefixLength, null, 0, 0, prefixLength, digest);
+		}
+		if (!scan) {
+			boolean more = in.read() != -1;
+			return preview(prefix, prefixLength, null, 0, 0, more ? -1 : prefixLength, null);
+		}
+
+		byte[] ring = new byte[suffixBytes];
+		int ringEnd = 0;
+		long rest = 0;
+		byte[] chunk = new byte[8192];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			if (digest != null) {
+				digest.update(chunk, 0, read);
+			}
+			rest += read;
+			for (int offset = Math.max(0, read - suffixBytes); offset < read && suffixBytes > 0;) {
+				int length = Math.min(read - offset, suffixBytes - ringEnd);
+				System.arraycopy(chunk, offset, ring, ringEnd, length);
+				offset += length;
+				ringEnd = (ringEnd + length) % suffixBytes;
+			}
+		}
+		return preview(prefix, prefixLength, ring, ringEnd, rest, prefixLength + rest, digest);
+	}
+
+	/*
+	 * The ring holds min(rest, suffixBytes) bytes, ending at ringEnd
+	 */
+	private PayloadPreview preview(byte[] prefix, int prefixLength, byte[] ring, int ringEnd, long rest, long size,
+			MessageDigest digest) {
+		int suffixLength = (int) Math.min(rest, suffixBytes);
+		boolean truncated = size < 0 || rest > suffixLength;
+		byte[] bytes = new byte[prefixLength + suffixLength];
+		System.arraycopy(prefix, 0, bytes, 0, prefixLength);
+		if (suffixLength > 0) {
+			int start = Math.floorMod(ringEnd - suffixLength, suffixBytes);
+			int first = Math.min(suffixLength, suffixBytes - start);
+			System.arraycopy(ring, start, bytes, prefixLength, first);
+			System.arraycopy(ring, 0, bytes, prefixLength + first, suffixLength - first);
+		}
+		String preview;
+		if (truncated) {
+			preview = new String(bytes, 0, prefixLength, StandardCharsets.UTF_8) + TRUNCATION_MARKER
+					+ new String(bytes, prefixLength, suffixLength, StandardCharsets.UTF_8);
+		} else {
+			preview = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return new PayloadPreview(preview, size, digest == null ? null : hex(digest.digest()), truncated);
+	}
+
+	private MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(hashAlgorithm);
+		} catch (NoSuchAlgorithmException e) {
+			// checked in the constructor
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hashAlgorithm(String algorithm) {
+		if (algorithm == null || algorithm.trim().isEmpty() || "NONE".equalsIgnoreCase(algorithm.trim())) {
+			return null;
+		}
+		try {
+			MessageDigest.getInstance(algorithm.trim());
+			return algorithm.trim();
+		} catch (NoSuchAlgorithmException e) {
+			LOGGER.warn("Unknown payloadHashAlgorithm " + algorithm + ", payloads are not hashed");
+			return null;
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
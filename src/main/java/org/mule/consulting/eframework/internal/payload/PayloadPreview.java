@@ -0,0 +1,44 @@
+package org.mule.consulting.eframework.internal.payload;
+
+/**
+ * Bounded view of a payload: its first and last bytes, its size and hash.
+ */
+public final class PayloadPreview {
+
+	private final String preview;
+	private final long size;
+	private final String hash;
+	private final boolean truncated;
+
+	PayloadPreview(String preview, long size, String hash, boolean truncated) {
+		this.preview = preview;
+		this.size = size;
+		this.hash = hash;
+		this.truncated = truncated;
+	}
+
+	/**
+	 * @return the payload, or its prefix and suffix if it was truncated
+	 */
+	public String getPreview() {
+		return preview;
+	}
+
+	/**
+	 * @return size in bytes, -1 if not known
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return hex encoded hash of the whole payload, null if not computed
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+}
@@ -0,0 +1,76 @@
+package org.mule.consulting.eframework.internal.payload;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.consulting.eframework.api.PayloadCaptureMode;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of payload capture for the payload log operations.
+ */
+public class PayloadSettings {
+
+	@Parameter
+	@Optional(defaultValue = "FULL")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Payload Logging", order = 1)
+	@Summary("Pass the whole payload, or a bounded preview with its size and hash, to the payload log flows")
+	private PayloadCaptureMode payloadCaptureMode;
+
+	@Parameter
+	@Optional(defaultValue = "4096")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Payload Logging", order = 2)
+	@Summary("Bytes from the start of the payload kept in the preview")
+	private int payloadPreviewPrefix;
+
+	@Parameter
+	@Optional(defaultValue = "1024")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Payload Logging", order = 3)
+	@Summary("Bytes from the end of the payload kept in the preview")
+	private int payloadPreviewSuffix;
+
+	@Parameter
+	@Optional(defaultValue = "SHA-256")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Payload Logging", order = 4)
+	@Summary("MessageDigest algorithm of the payload hash, NONE to skip hashing")
+	private String payloadHashAlgorithm;
+
+	public PayloadCaptureMode getPayloadCaptureMode() {
+		return payloadCaptureMode;
+	}
+
+	public int getPayloadPreviewPrefix() {
+		return payloadPreviewPrefix;
+	}
+
+	public int getPayloadPreviewSuffix() {
+		return payloadPreviewSuffix;
+	}
+
+	public String getPayloadHashAlgorithm() {
+		return payloadHashAlgorithm;
+	}
+
+	public void setPayloadCaptureMode(PayloadCaptureMode payloadCaptureMode) {
+		this.payloadCaptureMode = payloadCaptureMode;
+	}
+
+	public void setPayloadPreviewPrefix(int payloadPreviewPrefix) {
+		this.payloadPreviewPrefix = payloadPreviewPrefix;
+	}
+
+	public void setPayloadPreviewSuffix(int payloadPreviewSuffix) {
+		this.payloadPreviewSuffix = payloadPreviewSuffix;
+	}
+
+	public void setPayloadHashAlgorithm(String payloadHashAlgorithm) {
+		this.payloadHashAlgorithm = payloadHashAlgorithm;
+	}
+}
@@ -0,0 +1,90 @@
+package org.mule.consulting.eframework.internal.policy;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the coalescing of repeated transaction events.
+ */
+public class DeduplicationSettings {
+
+	@Parameter
+	@Optional(defaultValue = "false")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Deduplication", order = 1)
+	@Summary("Forward the first of identical events within a window and then one rollup with the number of repeats")
+	private boolean deduplicationEnabled;
+
+	@Parameter
+	@Optional(defaultValue = "eframework.errorTransactionFlow,eframework.notificationFlow")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Deduplication", order = 2)
+	@Summary("Comma separated names of the handler flows whose events are deduplicated")
+	private String deduplicatedFlows;
+
+	@Parameter
+	@Optional(defaultValue = "transactionType,transactionStatus")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Deduplication", order = 3)
+	@Summary("Comma separated attributes whose values identify repeated events")
+	private String deduplicationKeys;
+
+	@Parameter
+	@Optional(defaultValue = "60000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Deduplication", order = 4)
+	@Summary("Milliseconds after the first occurrence during which repeats are counted instead of forwarded")
+	private long deduplicationWindow;
+
+	@Parameter
+	@Optional(defaultValue = "10000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Deduplication", order = 5)
+	@Summary("Maximum number of open windows, events of other keys are forwarded as they are")
+	private int maxDeduplicationWindows;
+
+	public boolean isDeduplicationEnabled() {
+		return deduplicationEnabled;
+	}
+
+	public String getDeduplicatedFlows() {
+		return deduplicatedFlows;
+	}
+
+	public String getDeduplicationKeys() {
+		return deduplicationKeys;
+	}
+
+	public long getDeduplicationWindow() {
+		return deduplicationWindow;
+	}
+
+	public int getMaxDeduplicationWindows() {
+		return maxDeduplicationWindows;
+	}
+
+	public void setDeduplicationEnabled(boolean deduplicationEnabled) {
+		this.deduplicationEnabled = deduplicationEnabled;
+	}
+
+	public void setDeduplicatedFlows(String deduplicatedFlows) {
+		this.deduplicatedFlows = deduplicatedFlows;
+	}
+
+	public void setDeduplicationKeys(String deduplicationKeys) {
+		this.deduplicationKeys = deduplicationKeys;
+	}
+
+	public void setDeduplicationWindow(long deduplicationWindow) {
+		this.deduplicationWindow = deduplicationWindow;
+	}
+
+	public void setMaxDeduplicationWindows(int maxDeduplicationWindows) {
+		this.maxDeduplicationWindows = maxDeduplicationWindows;
+	}
+}
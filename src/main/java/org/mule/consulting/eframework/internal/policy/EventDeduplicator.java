@@ -0,0 +1,230 @@
+package org.mule.consulting.eframework.internal.policy;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.flow.EventEmitter;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces repeated transaction events of the deduplicated flows.
+ *
+ * Events are identical when they go to the same flow with the same values of
+ * the deduplicationKeys attributes. The first one opens a window and is
+ * forwarded; repeats within deduplicationWindow are only counted. When the
+ * window closes, one rollup event with the attributes of the first
+ * occurrence, duplicateCount and duplicateWindow (in milliseconds) is sent
+ * to the same flow, without content. At most maxDeduplicationWindows are
+ * open at a time, events of other keys are forwarded as they are. A window
+ * counter is closed before its window is removed, so a repeat is either in
+ * the rollup or opens the next window.
+ */
+public class EventDeduplicator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventDeduplicator.class);
+
+	private static final char SEPARATOR = '\u0000';
+
+	private final Set<String> flows;
+	private final String[] keys;
+	private final long windowMillis;
+	private final long windowNanos;
+	private final int maxWindows;
+	private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+	private final LongAdder forwarded = new LongAdder();
+	private final LongAdder suppressed = new LongAdder();
+	private final LongAdder rollups = new LongAdder();
+	private final LongAdder untracked = new LongAdder();
+
+	private EventEmitter emitter;
+	private Scheduler scheduler;
+	private ScheduledFuture<?> sweepTask;
+
+	public EventDeduplicator(DeduplicationSettings settings) {
+		Set<String> names = new HashSet<String>();
+		if (settings.isDeduplicationEnabled() && settings.getDeduplicatedFlows() != null) {
+			for (String flowName : settings.getDeduplicatedFlows().split(",")) {
+				if (!flowName.trim().isEmpty()) {
+					names.add(flowName.trim());
+				}
+			}
+		}
+		this.flows = Collections.unmodifiableSet(names);
+		String configuredKeys = settings.getDeduplicationKeys() == null ? "" : settings.getDeduplicationKeys();
+		this.keys = configuredKeys.trim().isEmpty() ? new String[0] : configuredKeys.trim().split("\\s*,\\s*");
+		this.windowMillis = Math.max(1, settings.getDeduplicationWindow());
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.maxWindows = settings.getMaxDeduplicationWindows();
+	}
+
+	/**
+	 * Start closing windows, if any flow is deduplicated
+	 *
+	 * @param schedulerService
+	 * @param emitter
+	 *            receives the rollups
+	 */
+	public void start(SchedulerService schedulerService, EventEmitter emitter) {
+		this.emitter = emitter;
+		if (flows.isEmpty()) {
+			return;
+		}
+		long period = Math.max(10, windowMillis / 4);
+		scheduler = schedulerService.ioScheduler();
+		sweepTask = scheduler.scheduleAtFixedRate(() -> sweep(System.nanoTime(), false), period, period,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop, closing every open window
+	 */
+	public void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		sweepTask.cancel(false);
+		scheduler.stop();
+		scheduler = null;
+		sweep(System.nanoTime(), true);
+	}
+
+	/**
+	 * Decide whether an event is forwarded, counting it if it is a repeat
+	 *
+	 * @param flowName
+	 * @param attributes
+	 *            of the event, kept for the rollup if it opens a window
+	 * @param location
+	 * @return true if the event must be forwarded
+	 */
+	public boolean admit(String flowName, Map<String, String> attributes, ComponentLocation location) {
+		if (!flows.contains(flowName)) {
+			return true;
+		}
+		String key = key(flowName, attributes);
+		while (true) {
+			Window window = windows.get(key);
+			if (window == null) {
+				if (windows.size() >= maxWindows) {
+					untracked.increment();
+					return true;
+				}
+				window = windows.putIfAbsent(key, new Window(flowName, attributes, location, System.nanoTime()));
+				if (window == null) {
+					forwarded.increment();
+					return true;
+				}
+			}
+			if (window.repeat()) {
+				suppressed.increment();
+				return false;
+			}
+			windows.remove(key, window); // closed by a sweep, open the next one
+		}
+	}
+
+	/**
+	 * @return open windows and event counters, keyed by name
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("openWindows", (long) windows.size());
+		statistics.put("forwarded", forwarded.sum());
+		statistics.put("suppressed", suppressed.sum());
+		statistics.put("rollups", rollups.sum());
+		statistics.put("untracked", untracked.sum());
+		return statistics;
+	}
+
+	/**
+	 * Close the windows that are over, or all of them, sending a rollup for
+	 * those that counted repeats
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 * @param all
+	 */
+	void sweep(long now, boolean all) {
+		for (Map.Entry<String, Window> entry : windows.entrySet()) {
+			Window window = entry.getValue();
+			if (!all && now - window.openedAt < windowNanos) {
+				continue;
+			}
+			long repeats = window.close();
+			windows.remove(entry.getKey(), window);
+			if (repeats > 0) {
+				rollup(window, repeats);
+			}
+		}
+	}
+
+	private void rollup(Window window, long repeats) {
+		if (emitter == null) {
+			return;
+		}
+		try {
+			AttributesMap attributes = AttributesMap.copyOf(window.attributes).with("duplicateCount",
+					String.valueOf(repeats), "duplicateWindow", String.valueOf(windowMillis));
+			emitter.emit(window.flowName, attributes, null, window.location);
+			rollups.increment();
+		} catch (RuntimeException e) {
+			LOGGER.error("Error sending the rollup of repeated events to " + window.flowName, e);
+		}
+	}
+
+	private String key(String flowName, Map<String, String> attributes) {
+		StringBuilder key = new StringBuilder(flowName);
+		for (String name : keys) {
+			key.append(SEPARATOR).append(attributes.get(name));
+		}
+		return key.toString();
+	}
+
+	/*
+	 * The first occurrence of a key and the repeats counted since, -1 once
+	 * closed
+	 */
+	private static final class Window {
+		private final String flowName;
+		private final Map<String, String> attributes;
+		private final ComponentLocation location;
+		private final long openedAt;
+		private final AtomicLong repeats = new AtomicLong();
+
+		private Window(String flowName, Map<String, String> attributes, ComponentLocation location, long openedAt) {
+			this.flowName = flowName;
+			this.attributes = attributes;
+			this.location = location;
+			this.openedAt = openedAt;
+		}
+
+		private boolean repeat() {
+			long current;
+			do {
+				current = repeats.get();
+				if (current < 0) {
+					return false;
+				}
+			} while (!repeats.compareAndSet(current, current + 1));
+			return true;
+		}
+
+		private long close() {
+			return repeats.getAndSet(-1);
+		}
+	}
+}
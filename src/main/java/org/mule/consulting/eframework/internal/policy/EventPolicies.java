@@ -0,0 +1,243 @@
+package org.mule.consulting.eframework.internal.policy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.api.EventPolicy;
+import org.mule.consulting.eframework.api.SamplingStrategy;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.flow.EventEmitter;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which progress and system events are emitted, according to the
+ * first EventPolicy that matches their flow, eventType, stage and status.
+ *
+ * The matching policy is resolved once per combination and cached, after
+ * which a decision is a map lookup plus a counter or token bucket update.
+ * Events held back are counted per combination, and every
+ * suppressedReportInterval one SUPPRESSED event per combination reports the
+ * counts to the same handler flow, so totals can still be reconciled.
+ */
+public class EventPolicies {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventPolicies.class);
+
+	private static final String ANY = "*";
+	private static final String NO_RECORD_DESCRIPTOR = "none";
+
+	private final List<EventPolicy> policies;
+	private final long reportInterval;
+	private final String applicationId;
+	private final ConcurrentHashMap<String, PolicyState> states = new ConcurrentHashMap<String, PolicyState>();
+
+	private EventEmitter emitter;
+	private Scheduler scheduler;
+	private ScheduledFuture<?> reportTask;
+
+	public EventPolicies(EventPolicySettings settings, String applicationId) {
+		List<EventPolicy> configured = settings.getEventPolicies();
+		this.policies = configured == null ? Collections.<EventPolicy>emptyList()
+				: Collections.unmodifiableList(new ArrayList<EventPolicy>(configured));
+		this.reportInterval = settings.getSuppressedReportInterval();
+		this.applicationId = applicationId;
+	}
+
+	/**
+	 * Start reporting suppressed events, if any policy is configured
+	 *
+	 * @param schedulerService
+	 * @param emitter
+	 */
+	public void start(SchedulerService schedulerService, EventEmitter emitter) {
+		this.emitter = emitter;
+		if (policies.isEmpty() || reportInterval <= 0) {
+			return;
+		}
+		scheduler = schedulerService.ioScheduler();
+		reportTask = scheduler.scheduleAtFixedRate(this::report, reportInterval, reportInterval,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop reporting, after reporting what was suppressed since the last report
+	 */
+	public void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		reportTask.cancel(false);
+		scheduler.stop();
+		scheduler = null;
+		report();
+	}
+
+	/**
+	 * @return false if no policy is configured, so every event is emitted
+	 */
+	public boolean isEnabled() {
+		return !policies.isEmpty();
+	}
+
+	/**
+	 * Decide whether an event is emitted, counting it if it is not
+	 *
+	 * @param flowName
+	 * @param eventType
+	 * @param stage
+	 *            null for system events
+	 * @param status
+	 * @param recordDescriptor
+	 *            null if the event has none
+	 * @param location
+	 * @return true if the event must be emitted
+	 */
+	public boolean admit(String flowName, String eventType, String stage, String status, String recordDescriptor,
+			ComponentLocation location) {
+		if (policies.isEmpty()) {
+			return true;
+		}
+		String key = flowName + '|' + eventType + '|' + stage + '|' + status;
+		PolicyState state = states.computeIfAbsent(key, k -> new PolicyState(flowName, eventType, stage, status,
+				match(eventType, stage, status)));
+		return state.admit(recordDescriptor, location, System.nanoTime());
+	}
+
+	/**
+	 * @return events held back since the last report, keyed by
+	 *         flow|eventType|stage|status
+	 */
+	public Map<String, Long> getSuppressedCounts() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, PolicyState> entry : states.entrySet()) {
+			long suppressed = entry.getValue().sampledOut.sum() + entry.getValue().rateLimited.sum();
+			if (suppressed > 0) {
+				counts.put(entry.getKey(), suppressed);
+			}
+		}
+		return counts;
+	}
+
+	private EventPolicy match(String eventType, String stage, String status) {
+		for (EventPolicy policy : policies) {
+			if (matches(policy.getEventType(), eventType) && matches(policy.getStage(), stage)
+					&& matches(policy.getStatus(), status)) {
+				return policy;
+			}
+		}
+		return null;
+	}
+
+	private static boolean matches(String pattern, String value) {
+		return pattern == null || ANY.equals(pattern) || pattern.equalsIgnoreCase(value);
+	}
+
+	private void report() {
+		for (PolicyState state : states.values()) {
+			long sampledOut = state.sampledOut.sumThenReset();
+			long rateLimited = state.rateLimited.sumThenReset();
+			if (sampledOut + rateLimited == 0 || emitter == null) {
+				continue;
+			}
+			AttributesMap.Builder builder = AttributesMap.builder()
+					.put("applicationId", applicationId)
+					.put("eventType", state.eventType)
+					.put("eventStatus", "SUPPRESSED")
+					.put("suppressedStatus", state.status)
+					.put("suppressedCount", String.valueOf(sampledOut + rateLimited))
+					.put("sampledOut", String.valueOf(sampledOut))
+					.put("rateLimited", String.valueOf(rateLimited))
+					.put("eventMsg", "Suppressed " + (sampledOut + rateLimited) + " " + state.eventType + " events");
+			if (state.stage != null) {
+				builder.put("stage", state.stage);
+			}
+			try {
+				emitter.emit(state.flowName, builder.build(), null, state.location);
+			} catch (RuntimeException e) {
+				LOGGER.error("Error reporting suppressed events to " + state.flowName, e);
+			}
+		}
+	}
+
+	/*
+	 * Mix the bits of the hash so that sampling by modulo is uniform
+	 */
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/*
+	 * The policy and counters of one flow|eventType|stage|status combination
+	 */
+	private static final class PolicyState {
+		private final String flowName;
+		private final String eventType;
+		private final String stage;
+		private final String status;
+		private final EventPolicy policy;
+		private final boolean exempt;
+		private final TokenBucket bucket;
+		private final AtomicLong sequence = new AtomicLong();
+		private final LongAdder sampledOut = new LongAdder();
+		private final LongAdder rateLimited = new LongAdder();
+		private volatile ComponentLocation location;
+
+		private PolicyState(String flowName, String eventType, String stage, String status, EventPolicy policy) {
+			this.flowName = flowName;
+			this.eventType = eventType;
+			this.stage = stage;
+			this.status = status;
+			this.policy = policy;
+			String upperStatus = status == null ? "" : status.toUpperCase(Locale.ROOT);
+			this.exempt = policy == null || (policy.isAlwaysEmitFailures()
+					&& (upperStatus.contains("FAILURE") || upperStatus.contains("ERROR")));
+			this.bucket = !exempt && policy.getRateLimit() > 0
+					? new TokenBucket(policy.getRateLimit(), policy.getBurst())
+					: null;
+		}
+
+		private boolean admit(String recordDescriptor, ComponentLocation location, long now) {
+			if (exempt) {
+				return true;
+			}
+			int sampleRate = policy.getSampleRate();
+			if (sampleRate > 1 && !sampled(sampleRate, recordDescriptor)) {
+				sampledOut.increment();
+				this.location = location;
+				return false;
+			}
+			if (bucket != null && !bucket.tryAcquire(now)) {
+				rateLimited.increment();
+				this.location = location;
+				return false;
+			}
+			return true;
+		}
+
+		private boolean sampled(int sampleRate, String recordDescriptor) {
+			if (policy.getSampleBy() == SamplingStrategy.RECORD_DESCRIPTOR && recordDescriptor != null
+					&& !NO_RECORD_DESCRIPTOR.equals(recordDescriptor)) {
+				return Math.floorMod(mix(recordDescriptor.hashCode()), sampleRate) == 0;
+			}
+			return sequence.getAndIncrement() % sampleRate == 0;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.mule.consulting.eframework.internal.policy;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.List;
+
+import org.mule.consulting.eframework.api.EventPolicy;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.NullSafe;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of sampling and rate limiting for progress and system events.
+ */
+public class EventPolicySettings {
+
+	@Parameter
+	@Optional
+	@NullSafe
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Event Policies", order = 1)
+	@Summary("Sampling and rate limits for progress and system events, the first matching policy applies")
+	private List<EventPolicy> eventPolicies;
+
+	@Parameter
+	@Optional(defaultValue = "60000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Event Policies", order = 2)
+	@Summary("Milliseconds between the SUPPRESSED events that report how many events a policy held back")
+	private long suppressedReportInterval;
+
+	public List<EventPolicy> getEventPolicies() {
+		return eventPolicies;
+	}
+
+	public long getSuppressedReportInterval() {
+		return suppressedReportInterval;
+	}
+
+	public void setEventPolicies(List<EventPolicy> eventPolicies) {
+		this.eventPolicies = eventPolicies;
+	}
+
+	public void setSuppressedReportInterval(long suppressedReportInterval) {
+		this.suppressedReportInterval = suppressedReportInterval;
+	}
+}
@@ -0,0 +1,44 @@
+package org.mule.consulting.eframework.internal.policy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as the theoretical arrival time of the next
+ * event (GCRA): an event is allowed when it would not push that time more than
+ * burst intervals ahead of now.
+ */
+public class TokenBucket {
+
+	private final long intervalNanos;
+	private final long toleranceNanos;
+	private final AtomicLong nextArrival = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * @param ratePerSecond
+	 *            sustained events per second
+	 * @param burst
+	 *            events allowed at once above the sustained rate
+	 */
+	public TokenBucket(double ratePerSecond, int burst) {
+		this.intervalNanos = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+		this.toleranceNanos = intervalNanos * Math.max(0, burst);
+	}
+
+	/**
+	 * @param now
+	 *            System.nanoTime()
+	 * @return true if the event may be emitted
+	 */
+	public boolean tryAcquire(long now) {
+		while (true) {
+			long arrival = nextArrival.get();
+			long start = arrival == Long.MIN_VALUE || arrival - now < 0 ? now : arrival;
+			if (start - now > toleranceNanos) {
+				return false;
+			}
+			if (nextArrival.compareAndSet(arrival, start + intervalNanos)) {
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.mule.consulting.eframework.internal.progress;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of progress aggregation.
+ */
+public class ProgressAggregationSettings {
+
+	@Parameter
+	@Optional(defaultValue = "false")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Progress Aggregation", order = 1)
+	@Summary("Count progress events in the connector and send periodic summaries instead of one event per call")
+	private boolean progressAggregationEnabled;
+
+	@Parameter
+	@Optional(defaultValue = "60000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Progress Aggregation", order = 2)
+	@Summary("Milliseconds between progress summaries")
+	private long progressSummaryInterval;
+
+	@Parameter
+	@Optional(defaultValue = "100000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Progress Aggregation", order = 3)
+	@Summary("Maximum number of recordDescriptors tracked for stage to stage latencies")
+	private int progressTrackedRecords;
+
+	@Parameter
+	@Optional(defaultValue = "600000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Progress Aggregation", order = 4)
+	@Summary("Milliseconds after its last stage that a record is no longer tracked")
+	private long progressRecordTtl;
+
+	@Parameter
+	@Optional(defaultValue = "WRITE_TGT,ACK_INT,ACK_EVT")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Progress Aggregation", order = 5)
+	@Summary("Comma separated stages after which a record is no longer tracked")
+	private String progressFinalStages;
+
+	public boolean isProgressAggregationEnabled() {
+		return progressAggregationEnabled;
+	}
+
+	public long getProgressSummaryInterval() {
+		return progressSummaryInterval;
+	}
+
+	public int getProgressTrackedRecords() {
+		return progressTrackedRecords;
+	}
+
+	public long getProgressRecordTtl() {
+		return progressRecordTtl;
+	}
+
+	public String getProgressFinalStages() {
+		return progressFinalStages;
+	}
+
+	public void setProgressAggregationEnabled(boolean progressAggregationEnabled) {
+		this.progressAggregationEnabled = progressAggregationEnabled;
+	}
+
+	public void setProgressSummaryInterval(long progressSummaryInterval) {
+		this.progressSummaryInterval = progressSummaryInterval;
+	}
+
+	public void setProgressTrackedRecords(int progressTrackedRecords) {
+		this.progressTrackedRecords = progressTrackedRecords;
+	}
+
+	public void setProgressRecordTtl(long progressRecordTtl) {
+		this.progressRecordTtl = progressRecordTtl;
+	}
+
+	public void setProgressFinalStages(String progressFinalStages) {
+		this.progressFinalStages = progressFinalStages;
+	}
+}
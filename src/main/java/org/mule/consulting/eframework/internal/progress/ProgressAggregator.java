@@ -0,0 +1,290 @@
+package org.mule.consulting.eframework.internal.progress;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.api.ProgressStage;
+import org.mule.consulting.eframework.api.ProgressStatus;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.flow.EventEmitter;
+import org.mule.consulting.eframework.internal.metrics.LatencyHistogram;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts progress events per (flow, ProgressStage, ProgressStatus) and
+ * measures the time a record takes from one stage to the next, then sends a
+ * summary per flow to the progress flow every progressSummaryInterval and
+ * whenever summarize() is called.
+ *
+ * Counting is one atomic increment in a per-flow array. Stage to stage
+ * latencies need the last stage of each recordDescriptor, which is kept per
+ * flow for at most progressTrackedRecords records in all. A record is dropped
+ * when it reaches one of the progressFinalStages, when a stage ends with a
+ * failure or SKIPPED status, or progressRecordTtl after its last stage.
+ */
+public class ProgressAggregator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProgressAggregator.class);
+
+	private static final ProgressStage[] STAGES = ProgressStage.values();
+	private static final ProgressStatus[] STATUSES = ProgressStatus.values();
+	private static final String NO_RECORD_DESCRIPTOR = "none";
+
+	private final ProgressAggregationSettings settings;
+	private final String applicationId;
+	private final String progressFlowName;
+	private final long recordTtlNanos;
+	private final boolean[] finalStages = new boolean[STAGES.length];
+	private final ConcurrentHashMap<String, FlowProgress> flows = new ConcurrentHashMap<String, FlowProgress>();
+	private final AtomicInteger trackedRecords = new AtomicInteger();
+	private final LongAdder untrackedRecords = new LongAdder();
+
+	private EventEmitter emitter;
+	private Scheduler scheduler;
+	private ScheduledFuture<?> summaryTask;
+
+	public ProgressAggregator(ProgressAggregationSettings settings, String applicationId, String progressFlowName) {
+		this.settings = settings;
+		this.applicationId = applicationId;
+		this.progressFlowName = progressFlowName;
+		this.recordTtlNanos = TimeUnit.MILLISECONDS.toNanos(settings.getProgressRecordTtl());
+		if (settings.getProgressFinalStages() != null) {
+			for (String stage : settings.getProgressFinalStages().split(",")) {
+				if (stage.trim().isEmpty()) {
+					continue;
+				}
+				try {
+					finalStages[ProgressStage.valueOf(stage.trim().toUpperCase()).ordinal()] = true;
+				} catch (IllegalArgumentException e) {
+					LOGGER.warn("Unknown stage " + stage.trim() + " in progressFinalStages, ignored");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start sending periodic summaries, if aggregation is enabled
+	 *
+	 * @param schedulerService
+	 * @param emitter
+	 */
+	public void start(SchedulerService schedulerService, EventEmitter emitter) {
+		this.emitter = emitter;
+		long interval = settings.getProgressSummaryInterval();
+		if (!isEnabled() || interval <= 0) {
+			return;
+		}
+		scheduler = schedulerService.ioScheduler();
+		summaryTask = scheduler.scheduleAtFixedRate(this::summarizeQuietly, interval, interval,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the periodic summaries and send what was counted since the last one
+	 */
+	public void stop() {
+		if (scheduler != null) {
+			summaryTask.cancel(false);
+			scheduler.stop();
+			scheduler = null;
+		}
+		if (isEnabled()) {
+			summarizeQuietly();
+		}
+	}
+
+	public boolean isEnabled() {
+		return settings.isProgressAggregationEnabled();
+	}
+
+	/**
+	 * Count a progress event
+	 *
+	 * @param stage
+	 * @param status
+	 * @param recordDescriptor
+	 * @param location
+	 */
+	public void record(ProgressStage stage, ProgressStatus status, String recordDescriptor,
+			ComponentLocation location) {
+		String flowName = location == null ? "unknown" : location.getRootContainerName();
+		FlowProgress progress = flows.get(flowName);
+		if (progress == null) {
+			progress = flows.computeIfAbsent(flowName, name -> new FlowProgress(location));
+		}
+		progress.counts.incrementAndGet(stage.ordinal() * STATUSES.length + status.ordinal());
+
+		if (recordDescriptor == null || NO_RECORD_DESCRIPTOR.equals(recordDescriptor)) {
+			return;
+		}
+		long now = System.nanoTime();
+		RecordMark previous;
+		if (finalStages[stage.ordinal()] || isFinal(status)) {
+			previous = progress.records.remove(recordDescriptor);
+			if (previous != null) {
+				trackedRecords.decrementAndGet();
+			}
+		} else {
+			RecordMark mark = new RecordMark(stage, now);
+			if (trackedRecords.get() < settings.getProgressTrackedRecords()) {
+				previous = progress.records.put(recordDescriptor, mark);
+				if (previous == null) {
+					trackedRecords.incrementAndGet();
+				}
+			} else {
+				previous = progress.records.replace(recordDescriptor, mark);
+				if (previous == null) {
+					untrackedRecords.increment();
+				}
+			}
+		}
+		if (previous != null && previous.stage != stage) {
+			progress.latency(previous.stage, stage).record(now - previous.nanos);
+		}
+	}
+
+	/*
+	 * A record that failed or was skipped goes no further
+	 */
+	private static boolean isFinal(ProgressStatus status) {
+		switch (status) {
+		case FAILURE:
+		case SKIPPED:
+		case SYSTEM_FAILURE:
+		case DATA_FAILURE:
+		case ENDPT_FAILURE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Send a summary of each flow to the progress flow and reset the counters
+	 *
+	 * @return the summaries that were sent
+	 */
+	public synchronized List<Map<String, Object>> summarize() {
+		long now = System.nanoTime();
+		for (FlowProgress progress : flows.values()) {
+			for (Map.Entry<String, RecordMark> record : progress.records.entrySet()) {
+				if (now - record.getValue().nanos > recordTtlNanos
+						&& progress.records.remove(record.getKey(), record.getValue())) {
+					trackedRecords.decrementAndGet();
+				}
+			}
+		}
+		List<Map<String, Object>> summaries = new ArrayList<Map<String, Object>>();
+		for (Map.Entry<String, FlowProgress> entry : flows.entrySet()) {
+			Map<String, Object> summary = entry.getValue().drain(now);
+			if (summary == null) {
+				continue;
+			}
+			summaries.add(summary);
+			if (emitter != null) {
+				AttributesMap attributes = AttributesMap.builder()
+						.put("applicationId", applicationId)
+						.put("eventType", "PROGRESS")
+						.put("eventStatus", "SUMMARY")
+						.put("event.flow", entry.getKey())
+						.put("intervalMillis", String.valueOf(summary.get("intervalMillis")))
+						.put("trackedRecords", String.valueOf(entry.getValue().records.size()))
+						.put("untrackedRecords", String.valueOf(untrackedRecords.sumThenReset()))
+						.build();
+				emitter.emit(progressFlowName, attributes, summary, entry.getValue().location);
+			}
+		}
+		return summaries;
+	}
+
+	private void summarizeQuietly() {
+		try {
+			summarize();
+		} catch (RuntimeException e) {
+			LOGGER.error("Error sending progress summary", e);
+		}
+	}
+
+	/*
+	 * The stage a record reached last
+	 */
+	private static final class RecordMark {
+		private final ProgressStage stage;
+		private final long nanos;
+
+		private RecordMark(ProgressStage stage, long nanos) {
+			this.stage = stage;
+			this.nanos = nanos;
+		}
+	}
+
+	/*
+	 * Counters, stage to stage latencies and tracked records of one flow
+	 */
+	private static final class FlowProgress {
+		private final ComponentLocation location;
+		private final ConcurrentHashMap<String, RecordMark> records = new ConcurrentHashMap<String, RecordMark>();
+		private final AtomicLongArray counts = new AtomicLongArray(STAGES.length * STATUSES.length);
+		private final ConcurrentHashMap<Integer, LatencyHistogram> latencies = new ConcurrentHashMap<Integer, LatencyHistogram>();
+		private long intervalStart = System.nanoTime();
+
+		private FlowProgress(ComponentLocation location) {
+			this.location = location;
+		}
+
+		private LatencyHistogram latency(ProgressStage from, ProgressStage to) {
+			return latencies.computeIfAbsent(from.ordinal() * STAGES.length + to.ordinal(),
+					transition -> new LatencyHistogram());
+		}
+
+		/*
+		 * Returns null if nothing happened since the last summary
+		 */
+		private Map<String, Object> drain(long now) {
+			Map<String, Map<String, Long>> stages = new LinkedHashMap<String, Map<String, Long>>();
+			long total = 0;
+			for (int stage = 0; stage < STAGES.length; stage++) {
+				for (int status = 0; status < STATUSES.length; status++) {
+					long count = counts.getAndSet(stage * STATUSES.length + status, 0);
+					if (count > 0) {
+						stages.computeIfAbsent(STAGES[stage].toString(), name -> new LinkedHashMap<String, Long>())
+								.put(STATUSES[status].toString(), count);
+						total += count;
+					}
+				}
+			}
+			Map<String, Object> transitions = new LinkedHashMap<String, Object>();
+			for (Map.Entry<Integer, LatencyHistogram> entry : latencies.entrySet()) {
+				Map<String, Object> latency = entry.getValue().drain();
+				if (latency != null) {
+					transitions.put(STAGES[entry.getKey() / STAGES.length] + "->"
+							+ STAGES[entry.getKey() % STAGES.length], latency);
+				}
+			}
+			long intervalNanos = now - intervalStart;
+			intervalStart = now;
+			if (total == 0 && transitions.isEmpty()) {
+				return null;
+			}
+			Map<String, Object> summary = new LinkedHashMap<String, Object>();
+			summary.put("flow", location == null ? "unknown" : location.getRootContainerName());
+			summary.put("intervalMillis", TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+			summary.put("events", total);
+			summary.put("stages", stages);
+			summary.put("latencies", transitions);
+			return summary;
+		}
+	}
+}
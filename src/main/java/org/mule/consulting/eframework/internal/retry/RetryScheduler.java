@@ -0,0 +1,335 @@
+package org.mule.consulting.eframework.internal.retry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.api.RetryPolicy;
+import org.mule.consulting.eframework.internal.flow.EventEmitter;
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.consulting.eframework.internal.flow.FlowResolver;
+import org.mule.runtime.api.component.location.ComponentLocation;
+import org.mule.runtime.api.exception.MuleException;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.core.api.construct.Flow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers retry events to the retry flow after a backoff, and retries them
+ * while the flow fails.
+ *
+ * Pending retries wait in a TimerWheel, advanced every retryTickDuration by
+ * one timer task, so they hold memory but no thread. When a retry is due it
+ * is processed on an io thread; if the retry flow fails, the next attempt is
+ * scheduled with the backoff of the first RetryPolicy matching its
+ * transactionType. The attempt number travels in the retryAttempt attribute,
+ * so a retry flow that sends a new retry event for the same transaction
+ * continues the count. An event past maxAttempts goes to the error flow with
+ * retryExhausted=true. At most maxPendingRetries are pending; schedule()
+ * refuses more, and the caller delivers them immediately. Once stop() has
+ * drained the wheel, attempts that fail are delivered again right away
+ * instead of being queued on a wheel nobody advances.
+ */
+public class RetryScheduler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RetryScheduler.class);
+
+	public static final String ATTEMPT_KEY = "retryAttempt";
+	public static final String EXHAUSTED_KEY = "retryExhausted";
+
+	private static final String ANY = "*";
+	private static final int WHEEL_SIZE = 512;
+	private static final RetryPolicy DEFAULT_POLICY = new RetryPolicy();
+
+	private final boolean enabled;
+	private final List<RetryPolicy> policies;
+	private final int maxPending;
+	private final long tickDuration;
+	private final String retryFlowName;
+	private final String errorFlowName;
+	private final ConcurrentHashMap<String, RetryPolicy> resolved = new ConcurrentHashMap<String, RetryPolicy>();
+	private final ConcurrentHashMap<String, AtomicInteger> pendingByType = new ConcurrentHashMap<String, AtomicInteger>();
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final LongAdder scheduled = new LongAdder();
+	private final LongAdder attempts = new LongAdder();
+	private final LongAdder succeeded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder exhausted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	private volatile TimerWheel<Retry> wheel;
+	private volatile boolean stopped;
+	private FlowResolver flowResolver;
+	private EventEmitter emitter;
+	private Scheduler scheduler;
+	private ScheduledFuture<?> tickTask;
+
+	/**
+	 * @param settings
+	 * @param retryFlowName
+	 * @param errorFlowName
+	 *            receives the events whose attempts are exhausted
+	 */
+	public RetryScheduler(RetrySettings settings, String retryFlowName, String errorFlowName) {
+		this.enabled = settings.isRetrySchedulingEnabled();
+		List<RetryPolicy> configured = settings.getRetryPolicies();
+		this.policies = configured == null ? Collections.<RetryPolicy>emptyList()
+				: Collections.unmodifiableList(new ArrayList<RetryPolicy>(configured));
+		this.maxPending = settings.getMaxPendingRetries();
+		this.tickDuration = Math.max(1, settings.getRetryTickDuration());
+		this.retryFlowName = retryFlowName;
+		this.errorFlowName = errorFlowName;
+	}
+
+	/**
+	 * Start the timer, if scheduling is enabled
+	 *
+	 * @param schedulerService
+	 * @param flowResolver
+	 * @param emitter
+	 */
+	public void start(SchedulerService schedulerService, FlowResolver flowResolver, EventEmitter emitter) {
+		if (!enabled) {
+			return;
+		}
+		this.flowResolver = flowResolver;
+		this.emitter = emitter;
+		wheel = new TimerWheel<Retry>(TimeUnit.MILLISECONDS.toNanos(tickDuration), WHEEL_SIZE, System.nanoTime());
+		stopped = false;
+		scheduler = schedulerService.ioScheduler();
+		tickTask = scheduler.scheduleAtFixedRate(this::tick, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the timer and deliver the pending retries now, without waiting for
+	 * their backoff
+	 */
+	public void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		tickTask.cancel(false);
+		scheduler.stop();
+		scheduler = null;
+		List<Retry> remaining;
+		synchronized (this) {
+			stopped = true;
+			remaining = wheel.clear();
+		}
+		if (!remaining.isEmpty()) {
+			LOGGER.info("Delivering " + remaining.size() + " pending retries before shutdown");
+		}
+		for (Retry retry : remaining) {
+			deliver(retry);
+		}
+	}
+
+	/**
+	 * @return true if retry events are scheduled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Schedule the next attempt of a retry event
+	 *
+	 * @param transactionType
+	 * @param attributes
+	 *            mutable, retryAttempt is put before every attempt
+	 * @param content
+	 *            streams are read into memory
+	 * @param location
+	 * @return false if the retry could not be scheduled and should be
+	 *         delivered now
+	 */
+	public boolean schedule(String transactionType, Map<String, String> attributes, Object content,
+			ComponentLocation location) {
+		if (wheel == null || stopped) {
+			return false;
+		}
+		if (pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			rejected.increment();
+			return false;
+		}
+		String type = String.valueOf(transactionType);
+		pendingByType.computeIfAbsent(type, key -> new AtomicInteger()).incrementAndGet();
+		Retry retry = new Retry(type, policy(type), attributes, FlowEvents.materialize(content), location,
+				previousAttempt(attributes));
+		scheduled.increment();
+		next(retry);
+		return true;
+	}
+
+	/**
+	 * @return retry counters and the pending retries per transactionType
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("pending", pending.get());
+		statistics.put("scheduled", scheduled.sum());
+		statistics.put("attempts", attempts.sum());
+		statistics.put("succeeded", succeeded.sum());
+		statistics.put("failed", failed.sum());
+		statistics.put("exhausted", exhausted.sum());
+		statistics.put("rejected", rejected.sum());
+		Map<String, Integer> byType = new TreeMap<String, Integer>();
+		for (Map.Entry<String, AtomicInteger> entry : pendingByType.entrySet()) {
+			if (entry.getValue().get() > 0) {
+				byType.put(entry.getKey(), entry.getValue().get());
+			}
+		}
+		statistics.put("pendingByTransactionType", byType);
+		return statistics;
+	}
+
+	/**
+	 * @param policy
+	 * @param attempt
+	 *            starting at 1
+	 * @return the delay before attempt, in milliseconds, before jitter
+	 */
+	static long backoff(RetryPolicy policy, int attempt) {
+		double delay = policy.getInitialDelay() * Math.pow(policy.getMultiplier(), attempt - 1);
+		return (long) Math.max(0, Math.min(delay, policy.getMaxDelay()));
+	}
+
+	/*
+	 * Schedule the next attempt, or hand the event to the error flow once the
+	 * attempts are exhausted
+	 */
+	private void next(Retry retry) {
+		retry.attempt++;
+		if (retry.attempt > retry.policy.getMaxAttempts()) {
+			finished(retry);
+			exhausted.increment();
+			retry.attributes.put(EXHAUSTED_KEY, "true");
+			emitter.emit(errorFlowName, retry.attributes, retry.content, retry.location);
+			return;
+		}
+		long delay = backoff(retry.policy, retry.attempt);
+		double jitter = Math.max(0, Math.min(1, retry.policy.getJitter()));
+		if (jitter > 0 && delay > 0) {
+			delay -= (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+		}
+		enqueue(retry, TimeUnit.MILLISECONDS.toNanos(delay));
+	}
+
+	/*
+	 * Queue the retry on the wheel, or deliver it now if stop() has already
+	 * drained the wheel
+	 */
+	private void enqueue(Retry retry, long delayNanos) {
+		synchronized (this) {
+			if (!stopped) {
+				wheel.schedule(retry, delayNanos, System.nanoTime());
+				return;
+			}
+		}
+		deliver(retry);
+	}
+
+	private void deliver(Retry retry) {
+		finished(retry);
+		emitter.emit(retryFlowName, retry.attributes, retry.content, retry.location);
+	}
+
+	private void tick() {
+		List<Retry> due;
+		synchronized (this) {
+			due = wheel.advance(System.nanoTime());
+		}
+		for (Retry retry : due) {
+			try {
+				scheduler.submit(() -> attempt(retry));
+			} catch (RuntimeException e) {
+				// the scheduler is stopping, stop() delivers what is left
+				enqueue(retry, 0);
+			}
+		}
+	}
+
+	private void attempt(Retry retry) {
+		Flow flow = flowResolver.lookup(retryFlowName);
+		if (flow == null) {
+			finished(retry);
+			return;
+		}
+		attempts.increment();
+		retry.attributes.put(ATTEMPT_KEY, String.valueOf(retry.attempt));
+		try {
+			flow.process(FlowEvents.create(flow, retry.attributes, retry.content, retry.location));
+			succeeded.increment();
+			finished(retry);
+		} catch (MuleException | RuntimeException e) {
+			failed.increment();
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Retry " + retry.attempt + " of " + retry.transactionType + " failed", e);
+			}
+			next(retry);
+		}
+	}
+
+	private void finished(Retry retry) {
+		pending.decrementAndGet();
+		pendingByType.get(retry.transactionType).decrementAndGet();
+	}
+
+	private RetryPolicy policy(String transactionType) {
+		return resolved.computeIfAbsent(transactionType, type -> {
+			for (RetryPolicy policy : policies) {
+				if (ANY.equals(policy.getTransactionType()) || type.equals(policy.getTransactionType())) {
+					return policy;
+				}
+			}
+			return DEFAULT_POLICY;
+		});
+	}
+
+	private static int previousAttempt(Map<String, String> attributes) {
+		String attempt = attributes.get(ATTEMPT_KEY);
+		if (attempt == null) {
+			return 0;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(attempt.trim()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/*
+	 * A retry event and the attempt it is at
+	 */
+	private static final class Retry {
+		private final String transactionType;
+		private final RetryPolicy policy;
+		private final Map<String, String> attributes;
+		private final Object content;
+		private final ComponentLocation location;
+		private int attempt;
+
+		private Retry(String transactionType, RetryPolicy policy, Map<String, String> attributes, Object content,
+				ComponentLocation location, int attempt) {
+			this.transactionType = transactionType;
+			this.policy = policy;
+			this.attributes = attributes;
+			this.content = content;
+			this.location = location;
+			this.attempt = attempt;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.mule.consulting.eframework.internal.retry;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.List;
+
+import org.mule.consulting.eframework.api.RetryPolicy;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.NullSafe;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the retry scheduler used by sendRetryEvent.
+ */
+public class RetrySettings {
+
+	@Parameter
+	@Optional(defaultValue = "false")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Retry", order = 1)
+	@Summary("Deliver retry events after a backoff and retry them while the retry flow fails, instead of immediately")
+	private boolean retrySchedulingEnabled;
+
+	@Parameter
+	@Optional
+	@NullSafe
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Retry", order = 2)
+	@Summary("Backoff per transactionType, the first matching policy applies")
+	private List<RetryPolicy> retryPolicies;
+
+	@Parameter
+	@Optional(defaultValue = "10000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Retry", order = 3)
+	@Summary("Maximum number of pending retries, further retry events are delivered immediately")
+	private int maxPendingRetries;
+
+	@Parameter
+	@Optional(defaultValue = "100")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Retry", order = 4)
+	@Summary("Resolution in milliseconds of the retry timer")
+	private long retryTickDuration;
+
+	public boolean isRetrySchedulingEnabled() {
+		return retrySchedulingEnabled;
+	}
+
+	public List<RetryPolicy> getRetryPolicies() {
+		return retryPolicies;
+	}
+
+	public int getMaxPendingRetries() {
+		return maxPendingRetries;
+	}
+
+	public long getRetryTickDuration() {
+		return retryTickDuration;
+	}
+
+	public void setRetrySchedulingEnabled(boolean retrySchedulingEnabled) {
+		this.retrySchedulingEnabled = retrySchedulingEnabled;
+	}
+
+	public void setRetryPolicies(List<RetryPolicy> retryPolicies) {
+		this.retryPolicies = retryPolicies;
+	}
+
+	public void setMaxPendingRetries(int maxPendingRetries) {
+		this.maxPendingRetries = maxPendingRetries;
+	}
+
+	public void setRetryTickDuration(long retryTickDuration) {
+		this.retryTickDuration = retryTickDuration;
+	}
+}
@@ -0,0 +1,126 @@
+package org.mule.consulting.eframework.internal.retry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel: a ring of wheelSize buckets, each covering one tick.
+ *
+ * schedule() may be called from any thread and only queues the task. A
+ * single thread calls advance() about once per tick; it moves the queued
+ * tasks into the bucket of their deadline tick and returns the tasks of the
+ * buckets it passes whose deadline has come. Tasks further away than one
+ * turn of the wheel stay in their bucket until the turn their deadline falls
+ * in, so scheduling and expiring are O(1) whatever the number of pending
+ * tasks, and no thread waits for any of them. Deadlines are rounded up to
+ * the next tick.
+ *
+ * @param <T>
+ */
+public class TimerWheel<T> {
+
+	private final long tickNanos;
+	private final long startNanos;
+	private final int mask;
+	private final List<Entry<T>>[] buckets;
+	private final ConcurrentLinkedQueue<Entry<T>> incoming = new ConcurrentLinkedQueue<Entry<T>>();
+	private long tick;
+
+	/**
+	 * @param tickNanos
+	 * @param wheelSize
+	 *            rounded up to a power of two
+	 * @param now
+	 *            System.nanoTime()
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(long tickNanos, int wheelSize, long now) {
+		this.tickNanos = Math.max(1, tickNanos);
+		this.startNanos = now;
+		int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+		this.mask = size - 1;
+		this.buckets = (List<Entry<T>>[]) new List<?>[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new ArrayList<Entry<T>>();
+		}
+	}
+
+	/**
+	 * @param task
+	 * @param delayNanos
+	 * @param now
+	 *            System.nanoTime()
+	 */
+	public void schedule(T task, long delayNanos, long now) {
+		long deadline = now + Math.max(0, delayNanos) - startNanos;
+		incoming.add(new Entry<T>(task, (deadline + tickNanos - 1) / tickNanos));
+	}
+
+	/**
+	 * Move the wheel up to now, only ever called by one thread at a time
+	 *
+	 * @param now
+	 *            System.nanoTime()
+	 * @return the tasks whose deadline has come, in no particular order
+	 */
+	public List<T> advance(long now) {
+		long target = (now - startNanos) / tickNanos;
+		List<T> expired = new ArrayList<T>();
+		Entry<T> entry;
+		while ((entry = incoming.poll()) != null) {
+			if (entry.deadlineTick <= tick) {
+				expired.add(entry.task);
+			} else {
+				buckets[(int) (entry.deadlineTick & mask)].add(entry);
+			}
+		}
+		for (long t = Math.max(tick + 1, target - mask); t <= target; t++) {
+			List<Entry<T>> bucket = buckets[(int) (t & mask)];
+			if (bucket.isEmpty()) {
+				continue;
+			}
+			for (Iterator<Entry<T>> iterator = bucket.iterator(); iterator.hasNext();) {
+				entry = iterator.next();
+				if (entry.deadlineTick <= t) {
+					expired.add(entry.task);
+					iterator.remove();
+				}
+			}
+		}
+		tick = Math.max(tick, target);
+		return expired;
+	}
+
+	/**
+	 * Remove every pending task, only ever called by the thread that calls
+	 * advance()
+	 *
+	 * @return
+	 */
+	public List<T> clear() {
+		List<T> pending = new ArrayList<T>();
+		Entry<T> entry;
+		while ((entry = incoming.poll()) != null) {
+			pending.add(entry.task);
+		}
+		for (List<Entry<T>> bucket : buckets) {
+			for (Entry<T> bucketEntry : bucket) {
+				pending.add(bucketEntry.task);
+			}
+			bucket.clear();
+		}
+		return pending;
+	}
+
+	private static final class Entry<T> {
+		private final T task;
+		private final long deadlineTick;
+
+		private Entry(T task, long deadlineTick) {
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+}
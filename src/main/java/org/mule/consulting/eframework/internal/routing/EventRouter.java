@@ -0,0 +1,302 @@
+package org.mule.consulting.eframework.internal.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.mule.consulting.eframework.api.EventRoute;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the flows an event is delivered to from the EventRoutes.
+ *
+ * The routes are compiled once: per handler flow, an array of the routes for
+ * that flow followed by the "*" routes, each with its conditions as attribute
+ * name and value set. Events of a flow without routes get a shared single
+ * element list without matching anything. Every matching route adds its
+ * target flows, and the handler flow keeps the event unless a matching route
+ * excludes it.
+ *
+ * fanOut() delivers a blocking event to its flows in parallel on io threads,
+ * the calling thread taking the first flow, and returns when all of them
+ * completed. A flow raising an exception, such as a full bulkhead or a
+ * timeout, fails the fan-out as it would fail a single delivery, whichever
+ * thread delivered it.
+ */
+public class EventRouter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventRouter.class);
+
+	private static final String ANY = "*";
+	private static final Route[] NO_ROUTES = new Route[0];
+
+	private final Map<String, Route[]> routesByFlow;
+	private final Route[] anyRoutes;
+	private final boolean parallel;
+	private final ConcurrentHashMap<String, List<String>> unrouted = new ConcurrentHashMap<String, List<String>>();
+
+	private final LongAdder routed = new LongAdder();
+	private final LongAdder fannedOut = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	private Scheduler scheduler;
+
+	public EventRouter(RoutingSettings settings) {
+		List<Route> any = new ArrayList<Route>();
+		Map<String, List<Route>> byFlow = new LinkedHashMap<String, List<Route>>();
+		if (settings.getEventRoutes() != null) {
+			for (EventRoute eventRoute : settings.getEventRoutes()) {
+				Route route = Route.compile(eventRoute);
+				if (route == null) {
+					continue;
+				}
+				String flowName = eventRoute.getFlowName() == null ? ANY : eventRoute.getFlowName().trim();
+				if (ANY.equals(flowName)) {
+					any.add(route);
+					for (List<Route> routes : byFlow.values()) {
+						routes.add(route);
+					}
+				} else {
+					byFlow.computeIfAbsent(flowName, name -> new ArrayList<Route>(any)).add(route);
+				}
+			}
+		}
+		Map<String, Route[]> compiled = new HashMap<String, Route[]>();
+		for (Map.Entry<String, List<Route>> entry : byFlow.entrySet()) {
+			compiled.put(entry.getKey(), entry.getValue().toArray(NO_ROUTES));
+		}
+		this.routesByFlow = compiled;
+		this.anyRoutes = any.toArray(NO_ROUTES);
+		this.parallel = settings.isParallelFanOut();
+	}
+
+	/**
+	 * Start the io scheduler of parallel fan-out, if any route is configured
+	 *
+	 * @param schedulerService
+	 */
+	public void start(SchedulerService schedulerService) {
+		if (parallel && isEnabled()) {
+			scheduler = schedulerService.ioScheduler();
+		}
+	}
+
+	public void stop() {
+		if (scheduler != null) {
+			scheduler.stop();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return false if no route is configured, so every event goes to its
+	 *         handler flow only
+	 */
+	public boolean isEnabled() {
+		return anyRoutes.length > 0 || !routesByFlow.isEmpty();
+	}
+
+	/**
+	 * @param flowName
+	 *            the handler flow of the event
+	 * @param attributes
+	 * @return the flows the event is delivered to, in route order, the
+	 *         handler flow first when it keeps the event
+	 */
+	public List<String> route(String flowName, Map<String, String> attributes) {
+		Route[] routes = routesByFlow.get(flowName);
+		if (routes == null) {
+			routes = anyRoutes;
+		}
+		List<String> targets = null;
+		boolean includeDefault = true;
+		for (Route route : routes) {
+			if (!route.matches(attributes)) {
+				continue;
+			}
+			if (targets == null) {
+				targets = new ArrayList<String>(4);
+			}
+			for (String target : route.targets) {
+				if (!targets.contains(target)) {
+					targets.add(target);
+				}
+			}
+			includeDefault &= route.includeDefault;
+		}
+		if (targets == null) {
+			return unrouted(flowName);
+		}
+		if (includeDefault && !targets.contains(flowName)) {
+			targets.add(0, flowName);
+		}
+		routed.increment();
+		return targets;
+	}
+
+	/**
+	 * Deliver to every target, in parallel when parallelFanOut is set, and
+	 * wait for all of them
+	 *
+	 * @param targets
+	 * @param delivery
+	 *            called once per target
+	 * @throws RuntimeException
+	 *             the one the first target raised, or else the first one
+	 *             another delivery raised, once all of them completed
+	 */
+	public void fanOut(List<String> targets, Consumer<String> delivery) {
+		Scheduler current = scheduler;
+		if (targets.size() == 1 || current == null) {
+			for (String target : targets) {
+				delivery.accept(target);
+			}
+			return;
+		}
+		fannedOut.increment();
+		List<Future<?>> futures = new ArrayList<Future<?>>(targets.size() - 1);
+		RuntimeException error = null;
+		for (int i = 1; i < targets.size(); i++) {
+			String target = targets.get(i);
+			try {
+				futures.add(current.submit(() -> delivery.accept(target)));
+			} catch (RejectedExecutionException e) {
+				error = deliver(target, delivery, error);
+			}
+		}
+		RuntimeException first = deliver(targets.get(0), delivery, null);
+		error = first != null ? first : error;
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				failed.increment();
+				if (error == null) {
+					error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+							: new IllegalStateException("Error delivering a routed event", e.getCause());
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/*
+	 * Deliver on the calling thread, returning error or else the exception the
+	 * delivery raised
+	 */
+	private RuntimeException deliver(String target, Consumer<String> delivery, RuntimeException error) {
+		try {
+			delivery.accept(target);
+		} catch (RuntimeException e) {
+			failed.increment();
+			return error == null ? e : error;
+		}
+		return error;
+	}
+
+	/**
+	 * @return the number of routed events, parallel fan-outs and failed
+	 *         deliveries of parallel fan-outs
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("routed", routed.sum());
+		statistics.put("fannedOut", fannedOut.sum());
+		statistics.put("failed", failed.sum());
+		return statistics;
+	}
+
+	/*
+	 * The flow names are the handler flow constants and configured targets, so
+	 * the cache stays small
+	 */
+	private List<String> unrouted(String flowName) {
+		List<String> targets = unrouted.get(flowName);
+		return targets != null ? targets : unrouted.computeIfAbsent(flowName, Collections::singletonList);
+	}
+
+	/*
+	 * A compiled EventRoute
+	 */
+	private static final class Route {
+		private final String[] conditionKeys;
+		private final Set<String>[] conditionValues;
+		private final List<String> targets;
+		private final boolean includeDefault;
+
+		private Route(String[] conditionKeys, Set<String>[] conditionValues, List<String> targets,
+				boolean includeDefault) {
+			this.conditionKeys = conditionKeys;
+			this.conditionValues = conditionValues;
+			this.targets = targets;
+			this.includeDefault = includeDefault;
+		}
+
+		/*
+		 * Returns null for a route without target flows
+		 */
+		@SuppressWarnings("unchecked")
+		private static Route compile(EventRoute route) {
+			List<String> targets = split(route.getTargetFlows());
+			if (targets.isEmpty()) {
+				LOGGER.warn("Ignoring the route for " + route.getFlowName() + " without targetFlows");
+				return null;
+			}
+			Map<String, String> conditions = route.getConditions() == null ? Collections.<String, String>emptyMap()
+					: route.getConditions();
+			String[] keys = new String[conditions.size()];
+			Set<String>[] values = (Set<String>[]) new Set<?>[conditions.size()];
+			int i = 0;
+			for (Map.Entry<String, String> condition : conditions.entrySet()) {
+				keys[i] = condition.getKey();
+				List<String> accepted = split(condition.getValue());
+				values[i++] = accepted.contains(ANY) ? null : new HashSet<String>(accepted);
+			}
+			return new Route(keys, values, Collections.unmodifiableList(targets), route.isIncludeDefault());
+		}
+
+		/*
+		 * A null value set accepts any value, but the attribute must be present
+		 */
+		private boolean matches(Map<String, String> attributes) {
+			for (int i = 0; i < conditionKeys.length; i++) {
+				String value = attributes.get(conditionKeys[i]);
+				if (value == null || (conditionValues[i] != null && !conditionValues[i].contains(value))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static List<String> split(String names) {
+			List<String> list = new ArrayList<String>();
+			if (names != null) {
+				for (String name : names.split(",")) {
+					if (!name.trim().isEmpty()) {
+						list.add(name.trim());
+					}
+				}
+			}
+			return list;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.mule.consulting.eframework.internal.routing;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import java.util.List;
+
+import org.mule.consulting.eframework.api.EventRoute;
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.NullSafe;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the routing of events to additional handler flows.
+ */
+public class RoutingSettings {
+
+	@Parameter
+	@Optional
+	@NullSafe
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Routing", order = 1)
+	@Summary("Additional flows per handler flow and attribute values, every matching route applies")
+	private List<EventRoute> eventRoutes;
+
+	@Parameter
+	@Optional(defaultValue = "true")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Routing", order = 2)
+	@Summary("Call the flows of a blocking event in parallel rather than one after the other")
+	private boolean parallelFanOut;
+
+	public List<EventRoute> getEventRoutes() {
+		return eventRoutes;
+	}
+
+	public boolean isParallelFanOut() {
+		return parallelFanOut;
+	}
+
+	public void setEventRoutes(List<EventRoute> eventRoutes) {
+		this.eventRoutes = eventRoutes;
+	}
+
+	public void setParallelFanOut(boolean parallelFanOut) {
+		this.parallelFanOut = parallelFanOut;
+	}
+}
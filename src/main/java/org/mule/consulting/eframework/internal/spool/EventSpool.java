@@ -0,0 +1,266 @@
+package org.mule.consulting.eframework.internal.spool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.consulting.eframework.internal.flow.FlowResolver;
+import org.mule.runtime.api.exception.MuleException;
+import org.mule.runtime.api.message.Message;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.core.api.event.CoreEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps nonBlockingMode events that could not be delivered in a SegmentSpool
+ * and replays them to their handler flow in the background.
+ *
+ * The dispatcher spools an event of a spooled flow when its queue is full,
+ * when the flow fails on it and when it stops with events still queued. The
+ * replayer processes at most spoolReplayRate events per second, one at a
+ * time, and events left at shutdown are replayed after the next start.
+ *
+ * An event its flow fails on goes to the back of the spool with one more
+ * attempt and ends the run, so a failing flow is retried on the next run
+ * without holding back the events of other flows. After
+ * spoolMaxReplayAttempts the event is dropped. An event whose flow does not
+ * exist goes to the back without counting an attempt. Either event stays
+ * first, as before, only while the spool has no room to take it again.
+ */
+public class EventSpool {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventSpool.class);
+
+	private final SpoolSettings settings;
+	private final Set<String> spooledFlows;
+	private final SegmentSpool spool;
+	private final SpoolClassFilter classFilter;
+	private final int maxAttempts;
+
+	private final LongAdder spooled = new LongAdder();
+	private final LongAdder failedToSpool = new LongAdder();
+	private final LongAdder replayed = new LongAdder();
+	private final LongAdder replayFailures = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+	private final LongAdder requeued = new LongAdder();
+	private final LongAdder deadLettered = new LongAdder();
+
+	private FlowResolver flowResolver;
+	private Scheduler scheduler;
+	private ScheduledFuture<?> replayTask;
+	private boolean replayFailing;
+
+	/**
+	 * @param settings
+	 * @param directory
+	 *            only used when the spool is enabled
+	 * @throws IOException
+	 *             if the spool files cannot be opened
+	 */
+	public EventSpool(SpoolSettings settings, Path directory) throws IOException {
+		this.settings = settings;
+		Set<String> flows = new HashSet<String>();
+		if (settings.isSpoolEnabled() && settings.getSpooledFlows() != null) {
+			for (String flowName : settings.getSpooledFlows().split(",")) {
+				if (!flowName.trim().isEmpty()) {
+					flows.add(flowName.trim());
+				}
+			}
+		}
+		this.spooledFlows = Collections.unmodifiableSet(flows);
+		this.spool = flows.isEmpty() ? null
+				: new SegmentSpool(directory, settings.getSpoolSegmentSize(), settings.getSpoolMaxSegments());
+		this.classFilter = new SpoolClassFilter(settings.getSpoolAllowedClasses());
+		this.maxAttempts = Math.max(1, settings.getSpoolMaxReplayAttempts());
+	}
+
+	/**
+	 * Start replaying spooled events, including those left by a previous run
+	 *
+	 * @param schedulerService
+	 * @param flowResolver
+	 */
+	public void start(SchedulerService schedulerService, FlowResolver flowResolver) {
+		if (spool == null) {
+			return;
+		}
+		this.flowResolver = flowResolver;
+		long interval = Math.max(1, settings.getSpoolReplayInterval());
+		scheduler = schedulerService.ioScheduler();
+		replayTask = scheduler.scheduleWithFixedDelay(this::replay, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop replaying and close the spool files, the events they hold are
+	 * replayed after the next start
+	 */
+	public void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		replayTask.cancel(false);
+		scheduler.stop();
+		scheduler = null;
+		try {
+			spool.close();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to close the event spool", e);
+		}
+	}
+
+	/**
+	 * @param flowName
+	 * @return true if undelivered events for flowName are spooled
+	 */
+	public boolean isSpooled(String flowName) {
+		return spooledFlows.contains(flowName);
+	}
+
+	/**
+	 * Keep an event for later delivery to flow
+	 *
+	 * @param flow
+	 * @param event
+	 * @return false if the flow is not spooled or the event could not be
+	 *         kept, the caller then handles it as it would without a spool
+	 */
+	public boolean spool(Flow flow, CoreEvent event) {
+		if (!isSpooled(flow.getName())) {
+			return false;
+		}
+		Message message = event.getMessage();
+		try {
+			SpoolRecord record = new SpoolRecord(flow.getName(), attributes(message.getAttributes().getValue()),
+					message.getPayload().getValue());
+			if (spool.append(record.encode(classFilter))) {
+				spooled.increment();
+				return true;
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Unable to spool an event for " + flow.getName(), e);
+		}
+		failedToSpool.increment();
+		return false;
+	}
+
+	/**
+	 * @return spool and replay counters, keyed by name
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		if (spool != null) {
+			statistics.putAll(spool.getStatistics());
+		}
+		statistics.put("spooled", spooled.sum());
+		statistics.put("failedToSpool", failedToSpool.sum());
+		statistics.put("replayed", replayed.sum());
+		statistics.put("replayFailures", replayFailures.sum());
+		statistics.put("discarded", discarded.sum());
+		statistics.put("requeued", requeued.sum());
+		statistics.put("deadLettered", deadLettered.sum());
+		return statistics;
+	}
+
+	/**
+	 * Replay up to one interval's worth of events, stopping at the first one
+	 * that fails or once every pending event belongs to a missing flow
+	 */
+	void replay() {
+		long budget = Math.max(1, (long) settings.getSpoolReplayRate() * settings.getSpoolReplayInterval() / 1000);
+		long skipped = 0;
+		for (long i = 0; i < budget; i++) {
+			byte[] bytes = spool.peek();
+			if (bytes == null) {
+				return;
+			}
+			SpoolRecord record;
+			try {
+				record = SpoolRecord.decode(bytes, classFilter);
+			} catch (IOException e) {
+				LOGGER.warn("Discarding a spooled event that cannot be read", e);
+				discarded.increment();
+				spool.commit();
+				continue;
+			}
+			Flow flow = flowResolver.lookup(record.getFlowName());
+			if (flow == null) {
+				if (++skipped >= spool.size() || !requeue(bytes, record.getAttempts())) {
+					return;
+				}
+				continue;
+			}
+			skipped = 0;
+			try {
+				flow.process(FlowEvents.create(flow, record.getAttributes(), record.getContent(), flow.getLocation()));
+				spool.commit();
+				replayed.increment();
+				recovered();
+			} catch (MuleException | RuntimeException e) {
+				replayFailures.increment();
+				int attempts = record.getAttempts() + 1;
+				if (attempts >= maxAttempts) {
+					deadLettered.increment();
+					LOGGER.error("Dropping a spooled event for " + record.getFlowName() + " after " + attempts
+							+ " failed attempts", e);
+					spool.commit();
+				} else {
+					requeue(bytes, attempts);
+				}
+				failed(record.getFlowName(), e);
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Move the peeked record to the back of the spool, it stays first if the
+	 * spool has no room for it
+	 */
+	private boolean requeue(byte[] bytes, int attempts) {
+		try {
+			if (spool.append(SpoolRecord.withAttempts(bytes, attempts))) {
+				spool.commit();
+				requeued.increment();
+				return true;
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Unable to move a spooled event to the back of the spool", e);
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, String> attributes(Object attributes) {
+		return attributes instanceof Map ? (Map<String, String>) attributes : null;
+	}
+
+	/*
+	 * Log the first failure of a run, a flow that keeps failing is retried
+	 * every interval
+	 */
+	private void failed(String flowName, Exception e) {
+		if (!replayFailing) {
+			replayFailing = true;
+			LOGGER.warn("Unable to replay spooled events to " + flowName + ", retrying every "
+					+ settings.getSpoolReplayInterval() + " ms", e);
+		}
+	}
+
+	private void recovered() {
+		if (replayFailing) {
+			replayFailing = false;
+			LOGGER.info("Replaying spooled events again, " + spool.size() + " pending");
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package org.mule.consulting.eframework.internal.spool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only queue of byte records kept in memory-mapped segment files.
+ *
+ * Every record is written as its length, the CRC32 of its bytes and the bytes
+ * themselves. A segment is a file of segmentSize bytes, a new one is started
+ * when a record does not fit in the current one, and at most maxSegments
+ * exist at a time, after which append() refuses records. The reader position
+ * is kept in a mapped checkpoint file, and a segment is deleted once it has
+ * been read to the end.
+ *
+ * Writes land in the page cache, so they survive a restart of the runtime;
+ * segments are forced to disk when they are full and on close. On open the
+ * last segment is scanned and ends at the first record whose length or CRC
+ * does not check out, which drops a record torn by a crash. A bad record in
+ * an older segment skips the rest of that segment.
+ *
+ * All methods are synchronized, a call copies one record in or out of the
+ * mapped file.
+ */
+public class SegmentSpool implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SegmentSpool.class);
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".spool";
+	private static final String CHECKPOINT_FILE = "checkpoint";
+	private static final int HEADER_BYTES = 8;
+
+	private final Path directory;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+	private final FileChannel checkpointChannel;
+	private final MappedByteBuffer checkpoint;
+
+	private Segment writeSegment;
+	private long readSegment;
+	private int readPosition;
+	private int peekedBytes = -1;
+	private long pending;
+	private long appended;
+	private long rejected;
+	private long corrupted;
+	private boolean closed;
+
+	/**
+	 * Open the spool in directory, recovering the records left by a previous
+	 * run
+	 *
+	 * @param directory
+	 *            created if missing
+	 * @param segmentSize
+	 *            bytes per segment file
+	 * @param maxSegments
+	 * @throws IOException
+	 */
+	public SegmentSpool(Path directory, int segmentSize, int maxSegments) throws IOException {
+		this.directory = directory;
+		this.segmentSize = Math.max(HEADER_BYTES * 2, segmentSize);
+		this.maxSegments = Math.max(1, maxSegments);
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				long id = segmentId(file);
+				if (id >= 0) {
+					segments.put(id, Segment.map(file, id, Math.max(Files.size(file), this.segmentSize)));
+				}
+			}
+		}
+		checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 12);
+		recover();
+	}
+
+	/**
+	 * Append a record
+	 *
+	 * @param record
+	 * @return false if the spool is full or closed, or the record is larger
+	 *         than a segment
+	 * @throws IOException
+	 *             if a new segment file cannot be created
+	 */
+	public synchronized boolean append(byte[] record) throws IOException {
+		if (closed) {
+			return false;
+		}
+		int size = HEADER_BYTES + record.length;
+		if (size > segmentSize) {
+			rejected++;
+			return false;
+		}
+		if (writeSegment.position + size > writeSegment.buffer.capacity()) {
+			if (segments.size() >= maxSegments) {
+				rejected++;
+				return false;
+			}
+			writeSegment.buffer.force();
+			writeSegment = newSegment(writeSegment.id + 1);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+		MappedByteBuffer buffer = writeSegment.buffer;
+		int position = writeSegment.position;
+		buffer.position(position + HEADER_BYTES);
+		buffer.put(record);
+		buffer.putInt(position + 4, (int) crc.getValue());
+		buffer.putInt(position, record.length);
+		if (position + size + 4 <= buffer.capacity()) {
+			buffer.putInt(position + size, 0); // a scan stops here, whatever an earlier run left behind
+		}
+		writeSegment.position = position + size;
+		pending++;
+		appended++;
+		return true;
+	}
+
+	/**
+	 * Return the oldest record without removing it, the same record is
+	 * returned until commit() is called
+	 *
+	 * @return null if the spool is empty or closed
+	 */
+	public synchronized byte[] peek() {
+		while (!closed) {
+			Segment segment = segments.get(readSegment);
+			if (segment == writeSegment && readPosition >= segment.position) {
+				peekedBytes = -1;
+				return null;
+			}
+			int length = segment.lengthAt(readPosition);
+			if (length > 0) {
+				byte[] record = segment.recordAt(readPosition, length);
+				if (record != null) {
+					peekedBytes = HEADER_BYTES + length;
+					return record;
+				}
+				corrupted++;
+				LOGGER.warn("Skipping the rest of spool segment " + segment.file + " after a bad record at "
+						+ readPosition);
+			}
+			if (segment == writeSegment) {
+				// only reached if the write segment was damaged after recovery
+				peekedBytes = -1;
+				return null;
+			}
+			nextSegment();
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the record returned by the last peek()
+	 */
+	public synchronized void commit() {
+		if (closed || peekedBytes < 0) {
+			return;
+		}
+		readPosition += peekedBytes;
+		peekedBytes = -1;
+		pending--;
+		Segment segment = segments.get(readSegment);
+		if (segment != writeSegment && segment.lengthAt(readPosition) == 0) {
+			nextSegment();
+		}
+		saveCheckpoint();
+	}
+
+	/**
+	 * @return number of records not yet committed
+	 */
+	public synchronized long size() {
+		return pending;
+	}
+
+	/**
+	 * @return record and segment counters, keyed by name
+	 */
+	public synchronized Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("pending", pending);
+		statistics.put("segments", (long) segments.size());
+		statistics.put("appended", appended);
+		statistics.put("rejected", rejected);
+		statistics.put("corrupted", corrupted);
+		return statistics;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		saveCheckpoint();
+		checkpoint.force();
+		for (Segment segment : segments.values()) {
+			segment.buffer.force();
+			segment.channel.close();
+		}
+		segments.clear();
+		checkpointChannel.close();
+	}
+
+	/*
+	 * Find the read position from the checkpoint and the write position by
+	 * scanning the last segment, counting the records in between
+	 */
+	private void recover() throws IOException {
+		if (segments.isEmpty()) {
+			writeSegment = newSegment(0);
+		} else {
+			writeSegment = segments.lastEntry().getValue();
+		}
+		writeSegment.position = writeSegment.scan(0, Integer.MAX_VALUE)[0];
+
+		long savedSegment = checkpoint.getLong(0);
+		int savedPosition = checkpoint.getInt(8);
+		if (segments.containsKey(savedSegment)) {
+			readSegment = savedSegment;
+			readPosition = savedPosition;
+		} else {
+			readSegment = segments.firstKey();
+			readPosition = 0;
+		}
+		for (Long id : new ArrayList<Long>(segments.headMap(readSegment).keySet())) {
+			delete(segments.remove(id));
+		}
+		for (Segment segment : segments.tailMap(readSegment, true).values()) {
+			int from = segment.id == readSegment ? readPosition : 0;
+			int to = segment == writeSegment ? segment.position : Integer.MAX_VALUE;
+			if (from > to) {
+				readPosition = to;
+				from = to;
+			}
+			pending += segment.scan(from, to)[1];
+		}
+		if (pending > 0) {
+			LOGGER.info("Recovered " + pending + " spooled events in " + directory);
+		}
+	}
+
+	private void nextSegment() {
+		Segment finished = segments.remove(readSegment);
+		readSegment = segments.higherKey(readSegment);
+		readPosition = 0;
+		saveCheckpoint();
+		delete(finished);
+	}
+
+	private void saveCheckpoint() {
+		checkpoint.putLong(0, readSegment);
+		checkpoint.putInt(8, readPosition);
+	}
+
+	private Segment newSegment(long id) throws IOException {
+		Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+		Segment segment = Segment.map(file, id, segmentSize);
+		segments.put(id, segment);
+		return segment;
+	}
+
+	private void delete(Segment segment) {
+		try {
+			segment.channel.close();
+			Files.deleteIfExists(segment.file);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to delete spool segment " + segment.file, e);
+		}
+	}
+
+	private static long segmentId(Path file) {
+		String name = file.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * One mapped segment file, position is only maintained for the write
+	 * segment
+	 */
+	private static final class Segment {
+		private final Path file;
+		private final long id;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private int position;
+
+		private Segment(Path file, long id, FileChannel channel, MappedByteBuffer buffer) {
+			this.file = file;
+			this.id = id;
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+
+		private static Segment map(Path file, long id, long size) throws IOException {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				return new Segment(file, id, channel,
+						channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, Integer.MAX_VALUE)));
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		/*
+		 * Length of the record at position, 0 at the end of the written data
+		 * and -1 if the header cannot be right
+		 */
+		private int lengthAt(int position) {
+			if (position + HEADER_BYTES > buffer.capacity()) {
+				return 0;
+			}
+			int length = buffer.getInt(position);
+			if (length < 0 || length > buffer.capacity() - position - HEADER_BYTES) {
+				return -1;
+			}
+			return length;
+		}
+
+		/*
+		 * The record at position, null if its CRC does not match
+		 */
+		private byte[] recordAt(int position, int length) {
+			byte[] record = new byte[length];
+			ByteBuffer view = buffer.duplicate();
+			view.position(position + HEADER_BYTES);
+			view.get(record);
+			CRC32 crc = new CRC32();
+			crc.update(record, 0, length);
+			return (int) crc.getValue() == buffer.getInt(position + 4) ? record : null;
+		}
+
+		/*
+		 * Walk the valid records from position "from" up to "to", returns the
+		 * end position and the number of records
+		 */
+		private int[] scan(int from, int to) {
+			int position = from;
+			int records = 0;
+			while (position < to) {
+				int length = lengthAt(position);
+				if (length <= 0 || recordAt(position, length) == null) {
+					break;
+				}
+				position += HEADER_BYTES + length;
+				records++;
+			}
+			return new int[] { position, records };
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package org.mule.consulting.eframework.internal.spool;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The classes spooled content may be deserialized to: the values of
+ * java.lang, java.util, java.time and java.math, plus the classes and
+ * packages of spoolAllowedClasses. Anything else, including proxies, is
+ * refused, so a tampered spool file cannot instantiate arbitrary classes.
+ */
+final class SpoolClassFilter {
+
+	private static final List<String> JAVA_LANG = Arrays.asList("java.lang.String", "java.lang.Boolean",
+			"java.lang.Character", "java.lang.Number", "java.lang.Byte", "java.lang.Short", "java.lang.Integer",
+			"java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Enum");
+	private static final List<String> PACKAGES = Arrays.asList("java.util", "java.time", "java.math");
+
+	static final SpoolClassFilter DEFAULT = new SpoolClassFilter(null);
+
+	private final Set<String> classes = new HashSet<String>(JAVA_LANG);
+	private final Set<String> packages = new HashSet<String>(PACKAGES);
+
+	/**
+	 * @param allowed
+	 *            comma separated class names, or package names ending in .*,
+	 *            may be null
+	 */
+	SpoolClassFilter(String allowed) {
+		for (String name : allowed == null ? Collections.<String>emptyList() : Arrays.asList(allowed.split(","))) {
+			name = name.trim();
+			if (name.endsWith(".*")) {
+				packages.add(name.substring(0, name.length() - 2));
+			} else if (!name.isEmpty()) {
+				classes.add(name);
+			}
+		}
+	}
+
+	/**
+	 * @param className
+	 *            as in an ObjectStreamClass, arrays included
+	 * @return true if instances may be deserialized
+	 */
+	boolean allows(String className) {
+		String name = className;
+		while (name.startsWith("[")) {
+			name = name.substring(1);
+		}
+		if (name.length() == 1) {
+			return true; // primitive array
+		}
+		if (name.startsWith("L") && name.endsWith(";")) {
+			name = name.substring(1, name.length() - 1);
+		}
+		if (classes.contains(name)) {
+			return true;
+		}
+		int dot = name.lastIndexOf('.');
+		return dot > 0 && packages.contains(name.substring(0, dot));
+	}
+}
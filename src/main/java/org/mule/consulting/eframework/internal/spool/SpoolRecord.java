@@ -0,0 +1,335 @@
+package org.mule.consulting.eframework.internal.spool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.mule.consulting.eframework.api.EventRecord;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.runtime.api.streaming.bytes.CursorStream;
+import org.mule.runtime.api.streaming.bytes.CursorStreamProvider;
+
+/**
+ * An event as kept in the spool: the name of its handler flow, the number of
+ * failed replay attempts, its attributes and its content.
+ *
+ * Content is written as a String, as bytes (byte arrays and repeatable
+ * streams), as a list of records (a batch), with Java serialization for other
+ * Serializable values of the classes a SpoolClassFilter allows and as its
+ * String value otherwise. A non-repeatable
+ * stream cannot be read again once the flow has consumed it, so only its type
+ * is kept, the same way payload previews report it.
+ */
+public class SpoolRecord {
+
+	private static final int VERSION = 2;
+	private static final int VERSION_WITHOUT_ATTEMPTS = 1;
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int BYTES = 2;
+	private static final int RECORDS = 3;
+	private static final int SERIALIZED = 4;
+
+	private final String flowName;
+	private final Map<String, String> attributes;
+	private final Object content;
+	private final int attempts;
+
+	public SpoolRecord(String flowName, Map<String, String> attributes, Object content) {
+		this(flowName, attributes, content, 0);
+	}
+
+	private SpoolRecord(String flowName, Map<String, String> attributes, Object content, int attempts) {
+		this.flowName = flowName;
+		this.attributes = attributes;
+		this.content = content;
+		this.attempts = attempts;
+	}
+
+	public String getFlowName() {
+		return flowName;
+	}
+
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	public Object getContent() {
+		return content;
+	}
+
+	/**
+	 * @return the number of times the flow failed on this record
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return the bytes stored in the spool
+	 * @throws IOException
+	 *             if a stream cannot be read or a value cannot be serialized
+	 */
+	public byte[] encode() throws IOException {
+		return encode(SpoolClassFilter.DEFAULT);
+	}
+
+	/**
+	 * @param filter
+	 *            Serializable content of other classes is kept as its String
+	 *            value
+	 * @return the bytes stored in the spool
+	 * @throws IOException
+	 *             if a stream cannot be read or a value cannot be serialized
+	 */
+	byte[] encode(SpoolClassFilter filter) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(VERSION);
+		out.writeInt(attempts);
+		writeString(out, flowName);
+		writeAttributes(out, attributes);
+		writeContent(out, content, filter);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param bytes
+	 *            as returned by encode()
+	 * @return
+	 * @throws IOException
+	 *             if the bytes are not a record of a known version
+	 */
+	public static SpoolRecord decode(byte[] bytes) throws IOException {
+		return decode(bytes, SpoolClassFilter.DEFAULT);
+	}
+
+	/**
+	 * @param bytes
+	 *            as returned by encode()
+	 * @param filter
+	 *            the classes serialized content may be restored to
+	 * @return
+	 * @throws IOException
+	 *             if the bytes are not a record of a known version, or hold
+	 *             content of a class the filter refuses
+	 */
+	static SpoolRecord decode(byte[] bytes, SpoolClassFilter filter) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		int version = in.readUnsignedByte();
+		if (version != VERSION && version != VERSION_WITHOUT_ATTEMPTS) {
+			throw new IOException("Unknown spool record version " + version);
+		}
+		int attempts = version == VERSION ? in.readInt() : 0;
+		String flowName = readString(in);
+		Map<String, String> attributes = readAttributes(in);
+		return new SpoolRecord(flowName, attributes, readContent(in, filter), attempts);
+	}
+
+	/**
+	 * Set the attempts of an encoded record without decoding its content
+	 *
+	 * @param bytes
+	 *            as returned by encode()
+	 * @param attempts
+	 * @return the encoded record with attempts
+	 */
+	static byte[] withAttempts(byte[] bytes, int attempts) {
+		int offset = bytes[0] == VERSION ? 5 : 1;
+		ByteBuffer record = ByteBuffer.allocate(bytes.length - offset + 5);
+		record.put((byte) VERSION).putInt(attempts).put(bytes, offset, bytes.length - offset);
+		return record.array();
+	}
+
+	private static void writeAttributes(DataOutputStream out, Map<String, String> attributes) throws IOException {
+		if (attributes == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(attributes.size());
+		for (Map.Entry<String, String> entry : attributes.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static Map<String, String> readAttributes(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		AttributesMap.Builder builder = AttributesMap.builder();
+		for (int i = 0; i < size; i++) {
+			builder.put(readString(in), readString(in));
+		}
+		return builder.build();
+	}
+
+	private static void writeContent(DataOutputStream out, Object content, SpoolClassFilter filter)
+			throws IOException {
+		if (content == null) {
+			out.writeByte(NULL);
+		} else if (content instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) content);
+		} else if (content instanceof byte[]) {
+			out.writeByte(BYTES);
+			writeBytes(out, (byte[]) content);
+		} else if (content instanceof CursorStream) {
+			out.writeByte(BYTES);
+			writeBytes(out, FlowEvents.readFromStart((CursorStream) content));
+		} else if (content instanceof CursorStreamProvider) {
+			out.writeByte(BYTES);
+			try (InputStream cursor = ((CursorStreamProvider) content).openCursor()) {
+				writeBytes(out, readAll(cursor));
+			}
+		} else if (content instanceof InputStream) {
+			out.writeByte(STRING);
+			writeString(out, "[non-repeatable stream " + content.getClass().getName() + "]");
+		} else if (content instanceof List && isRecords((List<?>) content)) {
+			List<?> records = (List<?>) content;
+			out.writeByte(RECORDS);
+			out.writeInt(records.size());
+			for (Object record : records) {
+				writeAttributes(out, ((EventRecord) record).getAttributes());
+				writeContent(out, ((EventRecord) record).getContent(), filter);
+			}
+		} else if (content instanceof Serializable && filter.allows(content.getClass().getName())) {
+			out.writeByte(SERIALIZED);
+			ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+			try (ObjectOutputStream objects = new ObjectOutputStream(serialized)) {
+				objects.writeObject(content);
+			}
+			writeBytes(out, serialized.toByteArray());
+		} else {
+			out.writeByte(STRING);
+			writeString(out, String.valueOf(content));
+		}
+	}
+
+	private static Object readContent(DataInputStream in, SpoolClassFilter filter) throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case BYTES:
+			return readBytes(in);
+		case RECORDS:
+			int size = in.readInt();
+			List<EventRecord> records = new ArrayList<EventRecord>(size);
+			for (int i = 0; i < size; i++) {
+				Map<String, String> attributes = readAttributes(in);
+				records.add(new EventRecord(attributes, readContent(in, filter)));
+			}
+			return records;
+		case SERIALIZED:
+			try (ObjectInputStream objects = new ContextObjectInputStream(readBytes(in), filter)) {
+				return objects.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unable to restore spooled content", e);
+			}
+		default:
+			throw new IOException("Unknown spooled content type " + type);
+		}
+	}
+
+	private static boolean isRecords(List<?> list) {
+		for (Object element : list) {
+			if (!(element instanceof EventRecord)) {
+				return false;
+			}
+		}
+		return !list.isEmpty();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = readBytes(in);
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > in.available()) {
+			throw new IOException("Spool record is truncated");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			buffer.write(chunk, 0, read);
+		}
+		return buffer.toByteArray();
+	}
+
+	/*
+	 * Resolves the classes the filter allows through the application class
+	 * loader rather than the extension's
+	 */
+	private static final class ContextObjectInputStream extends ObjectInputStream {
+
+		private final SpoolClassFilter filter;
+
+		private ContextObjectInputStream(byte[] bytes, SpoolClassFilter filter) throws IOException {
+			super(new ByteArrayInputStream(bytes));
+			this.filter = filter;
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+			throw new InvalidClassException("Spooled content cannot be a proxy");
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+			if (!filter.allows(descriptor.getName())) {
+				throw new InvalidClassException(descriptor.getName(), "not allowed in spooled content");
+			}
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			if (loader != null) {
+				try {
+					return Class.forName(descriptor.getName(), false, loader);
+				} catch (ClassNotFoundException e) {
+					// fall back to the default resolution
+				}
+			}
+			return super.resolveClass(descriptor);
+		}
+	}
+}
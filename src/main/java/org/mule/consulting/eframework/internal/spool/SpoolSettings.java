@@ -0,0 +1,151 @@
+package org.mule.consulting.eframework.internal.spool;
+
+import static org.mule.runtime.api.meta.ExpressionSupport.NOT_SUPPORTED;
+
+import org.mule.runtime.extension.api.annotation.Expression;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+/**
+ * Configuration of the local spool for nonBlockingMode events that their
+ * handler flow could not take.
+ */
+public class SpoolSettings {
+
+	@Parameter
+	@Optional(defaultValue = "false")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 1)
+	@Summary("Keep non-blocking events that find the dispatcher full or whose handler flow fails in local files and replay them later")
+	private boolean spoolEnabled;
+
+	@Parameter
+	@Optional
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 2)
+	@Summary("Directory of the spool files, required when the spool is enabled")
+	private String spoolDirectory;
+
+	@Parameter
+	@Optional(defaultValue = "eframework.auditLogFlow,eframework.errorTransactionFlow")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 3)
+	@Summary("Comma separated names of the handler flows whose events are spooled")
+	private String spooledFlows;
+
+	@Parameter
+	@Optional(defaultValue = "16777216")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 4)
+	@Summary("Size in bytes of a spool file")
+	private int spoolSegmentSize;
+
+	@Parameter
+	@Optional(defaultValue = "64")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 5)
+	@Summary("Maximum number of spool files, events are no longer spooled when they are all full")
+	private int spoolMaxSegments;
+
+	@Parameter
+	@Optional(defaultValue = "100")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 6)
+	@Summary("Maximum number of spooled events replayed per second")
+	private int spoolReplayRate;
+
+	@Parameter
+	@Optional(defaultValue = "1000")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 7)
+	@Summary("Milliseconds between replay runs, a run stops at the first event its flow fails")
+	private long spoolReplayInterval;
+
+	@Parameter
+	@Optional(defaultValue = "10")
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 8)
+	@Summary("Number of times a flow may fail on a spooled event before the event is dropped")
+	private int spoolMaxReplayAttempts;
+
+	@Parameter
+	@Optional
+	@Expression(NOT_SUPPORTED)
+	@Placement(tab = "Spool", order = 9)
+	@Summary("Comma separated classes, or packages ending in .*, of spooled Serializable content besides java.lang, java.util, java.time and java.math values")
+	private String spoolAllowedClasses;
+
+	public boolean isSpoolEnabled() {
+		return spoolEnabled;
+	}
+
+	public String getSpoolDirectory() {
+		return spoolDirectory;
+	}
+
+	public String getSpooledFlows() {
+		return spooledFlows;
+	}
+
+	public int getSpoolSegmentSize() {
+		return spoolSegmentSize;
+	}
+
+	public int getSpoolMaxSegments() {
+		return spoolMaxSegments;
+	}
+
+	public int getSpoolReplayRate() {
+		return spoolReplayRate;
+	}
+
+	public long getSpoolReplayInterval() {
+		return spoolReplayInterval;
+	}
+
+	public int getSpoolMaxReplayAttempts() {
+		return spoolMaxReplayAttempts;
+	}
+
+	public String getSpoolAllowedClasses() {
+		return spoolAllowedClasses;
+	}
+
+	public void setSpoolEnabled(boolean spoolEnabled) {
+		this.spoolEnabled = spoolEnabled;
+	}
+
+	public void setSpoolDirectory(String spoolDirectory) {
+		this.spoolDirectory = spoolDirectory;
+	}
+
+	public void setSpooledFlows(String spooledFlows) {
+		this.spooledFlows = spooledFlows;
+	}
+
+	public void setSpoolSegmentSize(int spoolSegmentSize) {
+		this.spoolSegmentSize = spoolSegmentSize;
+	}
+
+	public void setSpoolMaxSegments(int spoolMaxSegments) {
+		this.spoolMaxSegments = spoolMaxSegments;
+	}
+
+	public void setSpoolReplayRate(int spoolReplayRate) {
+		this.spoolReplayRate = spoolReplayRate;
+	}
+
+	public void setSpoolReplayInterval(long spoolReplayInterval) {
+		this.spoolReplayInterval = spoolReplayInterval;
+	}
+
+	public void setSpoolMaxReplayAttempts(int spoolMaxReplayAttempts) {
+		this.spoolMaxReplayAttempts = spoolMaxReplayAttempts;
+	}
+
+	public void setSpoolAllowedClasses(String spoolAllowedClasses) {
+		this.spoolAllowedClasses = spoolAllowedClasses;
+	}
+}
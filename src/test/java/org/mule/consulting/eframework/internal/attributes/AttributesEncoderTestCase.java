@@ -0,0 +1,57 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class AttributesEncoderTestCase {
+
+	private AttributesMap base() {
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("transactionType", "ORDER");
+		map.put("transactionStatus", "RECEIVED");
+		map.put("customerId", null);
+		return AttributesMap.copyOf(map);
+	}
+
+	@Test
+	public void plainMapRoundTrips() throws IOException {
+		assertThat(AttributesEncoder.decode(AttributesEncoder.encode(base())), is((Map<String, String>) base()));
+		assertThat(AttributesEncoder.decode(AttributesEncoder.encode(null)).isEmpty(), is(true));
+	}
+
+	@Test
+	public void messageIsEncodedWithoutFormattingIt() throws IOException {
+		LazyMessageAttributes attributes = new LazyMessageAttributes(base(), "transactionMsg", "AUDIT: ");
+
+		byte[] encoded = AttributesEncoder.encode(attributes);
+
+		TreeMap<String, String> expected = new TreeMap<String, String>(base());
+		expected.put("transactionMsg", "AUDIT: ");
+		assertThat(AttributesEncoder.decode(encoded), is((Map<String, String>) expected));
+		assertThat(attributes.isMessageFormatted(), is(false));
+		assertThat(AttributesEncoder.encode(attributes), is(sameInstance(encoded)));
+	}
+
+	@Test
+	public void putEntriesAreEncoded() throws IOException {
+		LazyMessageAttributes attributes = new LazyMessageAttributes(base(), "transactionMsg", "AUDIT: ");
+		byte[] before = AttributesEncoder.encode(attributes);
+
+		attributes.put("stage", "READ");
+		attributes.put("transactionMsg", "replaced");
+
+		assertThat(AttributesEncoder.encode(attributes), is(not(sameInstance(before))));
+		Map<String, String> decoded = AttributesEncoder.decode(AttributesEncoder.encode(attributes));
+		assertThat(decoded.get("stage"), is("READ"));
+		assertThat(decoded.get("transactionMsg"), is("replaced"));
+	}
+}
@@ -0,0 +1,105 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class AttributesMapTestCase {
+
+	private Map<String, String> unsorted(int size) {
+		Map<String, String> map = new HashMap<String, String>();
+		for (int i = size; i > 0; i--) {
+			map.put("key" + i, "value" + i);
+		}
+		return map;
+	}
+
+	private void assertSameAs(Map<String, String> actual, TreeMap<String, String> expected) {
+		assertThat(actual.size(), is(expected.size()));
+		assertThat(new ArrayList<Map.Entry<String, String>>(actual.entrySet()),
+				is(new ArrayList<Map.Entry<String, String>>(expected.entrySet())));
+		assertThat(actual.equals(expected), is(true));
+		assertThat(actual.hashCode(), is(expected.hashCode()));
+	}
+
+	@Test
+	public void copyOfSortsLikeTreeMap() {
+		assertSameAs(AttributesMap.copyOf(unsorted(20)), new TreeMap<String, String>(unsorted(20)));
+		assertSameAs(AttributesMap.copyOf(null), new TreeMap<String, String>());
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void copyOfConvertsValuesThatAreNotStrings() {
+		Map raw = new HashMap();
+		raw.put("transactionType", "ORDER");
+		raw.put("recordCount", 42);
+		raw.put("retry", Boolean.TRUE);
+		raw.put("reason", null);
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		expected.put("transactionType", "ORDER");
+		expected.put("recordCount", "42");
+		expected.put("retry", "true");
+		expected.put("reason", null);
+
+		assertSameAs(AttributesMap.copyOf(raw), expected);
+		assertSameAs(AttributesMap.copyOf(new TreeMap(raw)), expected);
+		assertThat(AttributesMap.copyOf(raw).get("recordCount"), is("42"));
+	}
+
+	@Test
+	public void withAddsAndReplacesEntries() {
+		TreeMap<String, String> expected = new TreeMap<String, String>(unsorted(5));
+		AttributesMap map = AttributesMap.copyOf(unsorted(5));
+
+		expected.put("key0", "first");
+		expected.put("key3", "replaced");
+		expected.put("zzz", "last");
+		AttributesMap updated = map.with("key0", "first").with("key3", "replaced").with("zzz", "last");
+
+		assertSameAs(updated, expected);
+		assertSameAs(map, new TreeMap<String, String>(unsorted(5)));
+		assertThat(updated.with("key3", "replaced"), is(sameInstance(updated)));
+	}
+
+	@Test
+	public void withTwoEntriesMatchesTwoCalls() {
+		AttributesMap map = AttributesMap.copyOf(unsorted(5));
+
+		assertSameAs(map.with("zzz", "last", "key0", "first"),
+				new TreeMap<String, String>(map.with("key0", "first").with("zzz", "last")));
+		assertSameAs(map.with("key3", "replaced", "key3", "again"),
+				new TreeMap<String, String>(map.with("key3", "again")));
+	}
+
+	@Test
+	public void withAllMergesAndRightSideWins() {
+		Map<String, String> other = new HashMap<String, String>();
+		other.put("key2", "other");
+		other.put("applicationId", "appId");
+		other.put("key99", null);
+
+		TreeMap<String, String> expected = new TreeMap<String, String>(unsorted(10));
+		expected.putAll(other);
+
+		assertSameAs(AttributesMap.copyOf(unsorted(10)).withAll(other), expected);
+		assertSameAs(AttributesMap.EMPTY.withAll(other), new TreeMap<String, String>(other));
+	}
+
+	@Test
+	public void builderKeepsLastValueForDuplicateKeys() {
+		AttributesMap map = AttributesMap.builder().put("b", "1").put("a", "2").put("b", "3").build();
+
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		expected.put("a", "2");
+		expected.put("b", "3");
+		assertSameAs(map, expected);
+	}
+}
@@ -0,0 +1,60 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class LazyMessageAttributesTestCase {
+
+	private TreeMap<String, String> base() {
+		TreeMap<String, String> base = new TreeMap<String, String>();
+		base.put("applicationId", "appId");
+		base.put("transactionType", "ORDER");
+		base.put("x-transaction-id", "1234");
+		return base;
+	}
+
+	@Test
+	public void messageIsFormattedOnlyWhenRead() {
+		LazyMessageAttributes attributes = new LazyMessageAttributes(AttributesMap.copyOf(base()), "transactionMsg", "AUDIT: ");
+		assertThat(attributes.get("transactionType"), is("ORDER"));
+		assertThat(attributes.isMessageFormatted(), is(false));
+
+		assertThat(attributes.get("transactionMsg"), is(MessageFormatter.format("AUDIT: ", base())));
+		assertThat(attributes.isMessageFormatted(), is(true));
+	}
+
+	@Test
+	public void matchesEagerlyFormattedTreeMap() {
+		TreeMap<String, String> eager = base();
+		eager.put("eventMsg", MessageFormatter.format("Progress none", eager));
+		eager.put("stage", "READ");
+		eager.put("applicationId", "overridden");
+
+		LazyMessageAttributes attributes = new LazyMessageAttributes(AttributesMap.copyOf(base()), "eventMsg", "Progress none");
+		attributes.put("stage", "READ");
+		attributes.put("applicationId", "overridden");
+
+		assertThat(attributes.size(), is(eager.size()));
+		assertThat(new ArrayList<String>(attributes.keySet()), is(new ArrayList<String>(eager.keySet())));
+		assertThat(attributes.equals(eager), is(true));
+	}
+
+	@Test
+	public void messageKeyAlreadyInBaseIsFormattedFromBase() {
+		TreeMap<String, String> base = base();
+		base.put("transactionMsg", "previous");
+		TreeMap<String, String> eager = new TreeMap<String, String>(base);
+		eager.put("transactionMsg", MessageFormatter.format("ERROR: ", base));
+
+		Map<String, String> attributes = new LazyMessageAttributes(AttributesMap.copyOf(base), "transactionMsg", "ERROR: ");
+
+		assertThat(attributes.size(), is(eager.size()));
+		assertThat(attributes.equals(eager), is(true));
+	}
+}
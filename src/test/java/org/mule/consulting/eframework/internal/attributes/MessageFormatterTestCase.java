@@ -0,0 +1,50 @@
+package org.mule.consulting.eframework.internal.attributes;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class MessageFormatterTestCase {
+
+	private static String repeat(char c, int times) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void fragmentsMatchTheObjectWriter() {
+		Map<String, String> properties = new TreeMap<String, String>();
+		properties.put("applicationId", "app");
+		properties.put("quote\"key", "back\\slash");
+		properties.put("controls", "\b\t\n\f\r\u0001\u001f end");
+		properties.put("unicode", "caf\u00e9 \u2603 \ud83d\ude00 </script>");
+		properties.put("empty", "");
+		properties.put("missing", null);
+		properties.put("long", repeat('x', 2000));
+
+		String expected = MessageFormatter.format("AUDIT: ", properties);
+
+		assertThat(MessageFormatter.format("AUDIT: ", AttributesMap.copyOf(properties)), is(expected));
+		assertThat(MessageFormatter.format("AUDIT: ", AttributesMap.EMPTY),
+				is(MessageFormatter.format("AUDIT: ", new TreeMap<String, String>())));
+	}
+
+	@Test
+	public void unchangedEntriesAreReused() {
+		JsonFragments fragments = new JsonFragments();
+		String value = "value";
+
+		String first = fragments.fragment("transactionType", value);
+
+		assertThat(fragments.fragment("transactionType", value), sameInstance(first));
+		assertThat(fragments.fragment("transactionType", new String(value)), is(first));
+	}
+}
@@ -0,0 +1,167 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.CircuitBreakerState;
+
+public class CircuitBreakerTestCase {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private CircuitBreakerSettings settings() {
+		CircuitBreakerSettings settings = new CircuitBreakerSettings();
+		settings.setFailureThreshold(3);
+		settings.setFailureWindow(10000);
+		settings.setWindowBuckets(10);
+		settings.setOpenDuration(1000);
+		settings.setHalfOpenProbes(2);
+		settings.setFailureRateThreshold(50);
+		settings.setLatencyPercentile(99);
+		settings.setSlowCallDuration(5000);
+		settings.setMinimumCalls(10);
+		return settings;
+	}
+
+	@Test
+	public void manualBreakerStaysOpenUntilClosed() {
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", false, settings());
+		long now = System.nanoTime();
+
+		assertThat(breaker.tryAcquire(now), is(true));
+		assertThat(breaker.open(now), is(true));
+		assertThat(breaker.open(now), is(false));
+		assertThat(breaker.tryAcquire(now + 10 * SECOND), is(false));
+
+		assertThat(breaker.close(), is(true));
+		assertThat(breaker.tryAcquire(now), is(true));
+	}
+
+	@Test
+	public void automaticBreakerOpensAtThresholdAndProbesAfterOpenDuration() {
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", true, settings());
+		long now = System.nanoTime();
+
+		assertThat(breaker.recordFailure(now), is(false));
+		assertThat(breaker.recordFailure(now), is(false));
+		assertThat(breaker.recordFailure(now), is(true));
+		assertThat(breaker.getState(), is(CircuitBreakerState.OPEN));
+		assertThat(breaker.tryAcquire(now), is(false));
+
+		long later = now + 2 * SECOND;
+		assertThat(breaker.tryAcquire(later), is(true));
+		assertThat(breaker.getState(), is(CircuitBreakerState.HALF_OPEN));
+		assertThat(breaker.tryAcquire(later), is(true));
+		assertThat(breaker.tryAcquire(later), is(false));
+
+		assertThat(breaker.recordFailure(later), is(true));
+		assertThat(breaker.getState(), is(CircuitBreakerState.OPEN));
+		assertThat(breaker.tryAcquire(later), is(false));
+	}
+
+	@Test
+	public void probesThatNeverReportDoNotHoldTheBreakerHalfOpen() {
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", true, settings());
+		long now = System.nanoTime();
+		breaker.open(now);
+
+		long halfOpen = now + 2 * SECOND;
+		assertThat(breaker.tryAcquire(halfOpen), is(true));
+		assertThat(breaker.tryAcquire(halfOpen), is(true));
+		assertThat(breaker.tryAcquire(halfOpen + 500 * MILLISECOND), is(false));
+		assertThat(breaker.getState(), is(CircuitBreakerState.HALF_OPEN));
+
+		long expired = halfOpen + 2 * SECOND;
+		assertThat(breaker.tryAcquire(expired), is(false));
+		assertThat(breaker.getState(), is(CircuitBreakerState.OPEN));
+
+		long probing = expired + 2 * SECOND;
+		assertThat(breaker.tryAcquire(probing), is(true));
+		assertThat(breaker.recordOutcome(true, MILLISECOND, probing), is(nullValue()));
+		assertThat(breaker.tryAcquire(probing), is(true));
+		assertThat(breaker.recordOutcome(true, MILLISECOND, probing), is(CircuitBreakerState.CLOSED));
+	}
+
+	@Test
+	public void failuresOutsideTheWindowAreForgotten() {
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", true, settings());
+		long now = System.nanoTime();
+
+		assertThat(breaker.recordFailure(now), is(false));
+		assertThat(breaker.recordFailure(now), is(false));
+		assertThat(breaker.recordFailure(now + 20 * SECOND), is(false));
+		assertThat(breaker.getState(), is(CircuitBreakerState.CLOSED));
+	}
+
+	@Test
+	public void failureRateOpensOnceMinimumCallsAreRecorded() {
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", true, settings());
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(breaker.recordOutcome(true, MILLISECOND, now), is(nullValue()));
+		}
+		for (int i = 0; i < 4; i++) {
+			assertThat(breaker.recordOutcome(false, MILLISECOND, now), is(nullValue()));
+		}
+		assertThat(breaker.recordOutcome(false, MILLISECOND, now), is(CircuitBreakerState.OPEN));
+
+		long later = now + 2 * SECOND;
+		assertThat(breaker.tryAcquire(later), is(true));
+		assertThat(breaker.recordOutcome(true, MILLISECOND, later), is(nullValue()));
+		assertThat(breaker.recordOutcome(true, MILLISECOND, later), is(CircuitBreakerState.CLOSED));
+	}
+
+	@Test
+	public void latencyPercentileOpensTheBreaker() {
+		CircuitBreakerSettings settings = settings();
+		settings.setFailureRateThreshold(0);
+		settings.setLatencyThreshold(1000);
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", true, settings);
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 9; i++) {
+			assertThat(breaker.recordOutcome(true, 2 * SECOND, now), is(nullValue()));
+		}
+		assertThat(breaker.recordOutcome(true, 2 * SECOND, now), is(CircuitBreakerState.OPEN));
+	}
+
+	@Test
+	public void latenciesJustUnderTheThresholdDoNotOpenTheBreaker() {
+		CircuitBreakerSettings settings = settings();
+		settings.setFailureRateThreshold(0);
+		settings.setLatencyThreshold(1000);
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", true, settings);
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 20; i++) {
+			assertThat(breaker.recordOutcome(true, 950 * MILLISECOND, now), is(nullValue()));
+		}
+		long percentile = (Long) breaker.getStatistics(now).get("latencyPercentile");
+		assertThat(percentile >= 950 && percentile < 1000, is(true));
+		assertThat(breaker.getState(), is(CircuitBreakerState.CLOSED));
+	}
+
+	@Test
+	public void resetBreakerTripsAgain() {
+		CircuitBreaker breaker = new CircuitBreaker("ORDER", true, settings());
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 9; i++) {
+			breaker.recordOutcome(false, MILLISECOND, now);
+		}
+		assertThat(breaker.recordOutcome(false, MILLISECOND, now), is(CircuitBreakerState.OPEN));
+		assertThat(breaker.recordOutcome(false, MILLISECOND, now), is(nullValue()));
+
+		assertThat(breaker.close(), is(true));
+		for (int i = 0; i < 9; i++) {
+			assertThat(breaker.recordOutcome(false, MILLISECOND, now), is(nullValue()));
+		}
+		assertThat(breaker.recordOutcome(false, MILLISECOND, now), is(CircuitBreakerState.OPEN));
+	}
+}
@@ -0,0 +1,140 @@
+package org.mule.consulting.eframework.internal.breaker;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.CircuitBreakerMode;
+import org.mule.consulting.eframework.api.CircuitBreakerState;
+import org.mule.runtime.api.lock.LockFactory;
+import org.mule.runtime.api.store.ObjectStore;
+import org.mule.runtime.api.store.ObjectStoreException;
+
+public class SharedStateSynchronizerTestCase {
+
+	private CircuitBreakerSettings settings() {
+		CircuitBreakerSettings settings = new CircuitBreakerSettings();
+		settings.setCircuitBreakerMode(CircuitBreakerMode.NATIVE);
+		settings.setFailureThreshold(1);
+		settings.setFailureWindow(10000);
+		settings.setWindowBuckets(10);
+		settings.setOpenDuration(30000);
+		settings.setHalfOpenProbes(1);
+		return settings;
+	}
+
+	@Test
+	public void tripsAndResetsReachOtherNodesOnRefresh() {
+		SharedStateStore store = new InMemorySharedStateStore();
+		SharedStateSynchronizer first = new SharedStateSynchronizer(store, 1000);
+		SharedStateSynchronizer second = new SharedStateSynchronizer(store, 1000);
+		CircuitBreakers firstNode = new CircuitBreakers(settings(), first);
+		CircuitBreakers secondNode = new CircuitBreakers(settings(), second);
+
+		firstNode.manual("ORDER").open(System.nanoTime());
+		firstNode.automatic("ORDER").recordFailure(System.nanoTime());
+		assertThat(secondNode.manual("ORDER").getState(), is(CircuitBreakerState.CLOSED));
+
+		first.refresh();
+		second.refresh();
+		assertThat(secondNode.manual("ORDER").getState(), is(CircuitBreakerState.OPEN));
+		assertThat(secondNode.automatic("ORDER").getState(), is(CircuitBreakerState.OPEN));
+		assertThat(secondNode.automatic("ORDER").tryAcquire(System.nanoTime()), is(false));
+
+		secondNode.manual("ORDER").close();
+		second.refresh();
+		first.refresh();
+		assertThat(firstNode.manual("ORDER").getState(), is(CircuitBreakerState.CLOSED));
+		assertThat(firstNode.automatic("ORDER").getState(), is(CircuitBreakerState.OPEN));
+	}
+
+	@Test
+	public void fileStoreKeepsTheMostRecentTransition() throws IOException {
+		Path directory = Files.createTempDirectory("eframework");
+		try {
+			FileSharedStateStore store = new FileSharedStateStore(directory.resolve("breakers.properties"));
+			store.mergeAll(Collections.singletonMap("manual:ORDER",
+					new SharedBreakerState(CircuitBreakerState.OPEN, 2000)));
+			store.mergeAll(Collections.singletonMap("manual:ORDER",
+					new SharedBreakerState(CircuitBreakerState.CLOSED, 1000)));
+
+			SharedBreakerState stored = store.readAll().get("manual:ORDER");
+			assertThat(stored.getState(), is(CircuitBreakerState.OPEN));
+			assertThat(stored.getChangedAt(), is(2000L));
+		} finally {
+			for (Path file : Files.newDirectoryStream(directory)) {
+				Files.delete(file);
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void objectStoreKeepsTheMostRecentTransitionOfConcurrentNodes() throws Exception {
+		Map<String, ReentrantLock> locks = new ConcurrentHashMap<String, ReentrantLock>();
+		LockFactory lockFactory = lockId -> locks.computeIfAbsent(lockId, id -> new ReentrantLock());
+		ObjectStoreSharedStateStore store = new ObjectStoreSharedStateStore(objectStore(), lockFactory, "breakers:");
+		ExecutorService nodes = Executors.newFixedThreadPool(4);
+		List<Future<?>> merges = new ArrayList<Future<?>>();
+		try {
+			for (long changedAt = 1; changedAt <= 2000; changedAt++) {
+				SharedBreakerState state = new SharedBreakerState(
+						changedAt % 2 == 0 ? CircuitBreakerState.OPEN : CircuitBreakerState.CLOSED, changedAt);
+				merges.add(nodes.submit(() -> {
+					store.mergeAll(Collections.singletonMap("manual:ORDER", state));
+					return null;
+				}));
+			}
+			for (Future<?> merge : merges) {
+				merge.get(5, TimeUnit.SECONDS);
+			}
+		} finally {
+			nodes.shutdownNow();
+		}
+
+		assertThat(store.readAll().get("manual:ORDER").getChangedAt(), is(2000L));
+	}
+
+	/*
+	 * Like a Mule object store, store fails on a key that is already there
+	 */
+	@SuppressWarnings("unchecked")
+	private static ObjectStore<String> objectStore() {
+		Map<String, String> entries = new ConcurrentHashMap<String, String>();
+		return (ObjectStore<String>) Proxy.newProxyInstance(ObjectStore.class.getClassLoader(),
+				new Class<?>[] { ObjectStore.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "contains":
+						return entries.containsKey(args[0]);
+					case "retrieve":
+						return entries.get(args[0]);
+					case "remove":
+						return entries.remove(args[0]);
+					case "store":
+						if (entries.putIfAbsent((String) args[0], (String) args[1]) != null) {
+							throw new ObjectStoreException();
+						}
+						return null;
+					case "retrieveAll":
+						return entries;
+					default:
+						return null;
+					}
+				});
+	}
+}
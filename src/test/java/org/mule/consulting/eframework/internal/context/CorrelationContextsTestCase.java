@@ -0,0 +1,144 @@
+package org.mule.consulting.eframework.internal.context;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.CorrelationContextScope;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+import org.mule.runtime.extension.api.runtime.parameter.CorrelationInfo;
+
+public class CorrelationContextsTestCase {
+
+	private CorrelationContexts contexts(int maxContexts) {
+		CorrelationContextSettings settings = new CorrelationContextSettings();
+		settings.setCorrelationContextTtl(1000);
+		settings.setMaxCorrelationContexts(maxContexts);
+		return new CorrelationContexts(settings);
+	}
+
+	@Test
+	public void propertiesAreMergedIncrementally() {
+		CorrelationContexts contexts = contexts(10);
+		contexts.merge("c1", Collections.singletonMap("x-transaction-id", "T1"));
+		contexts.merge("c1", Collections.singletonMap("customerId", "C1"));
+
+		AttributesMap properties = contexts.get("c1");
+
+		assertThat(properties.size(), is(2));
+		assertThat(contexts.get("c2").isEmpty(), is(true));
+		assertThat(contexts.withContext("c1", AttributesMap.EMPTY), sameInstance((Map<String, String>) properties));
+	}
+
+	@Test
+	public void operationAttributesWinOverTheContext() {
+		CorrelationContexts contexts = contexts(10);
+		contexts.merge("c1", Collections.singletonMap("customerId", "C1"));
+
+		Map<String, String> attributes = contexts.withContext("c1", Collections.singletonMap("customerId", "C2"));
+
+		assertThat(attributes.get("customerId"), is("C2"));
+		assertThat(contexts.withContext("c2", attributes), sameInstance(attributes));
+	}
+
+	@Test
+	public void idleContextsAreEvicted() {
+		CorrelationContexts contexts = contexts(10);
+		contexts.merge("c1", Collections.singletonMap("customerId", "C1"));
+
+		contexts.evictIdle(System.nanoTime());
+		assertThat(contexts.get("c1").isEmpty(), is(false));
+
+		contexts.evictIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(2));
+		assertThat(contexts.get("c1").isEmpty(), is(true));
+		assertThat(contexts.getStatistics().get("evicted"), is(1L));
+	}
+
+	@Test
+	public void leastRecentlyUsedContextsMakeRoomForNewOnes() throws InterruptedException {
+		CorrelationContexts contexts = contexts(10);
+		for (int i = 0; i < 10; i++) {
+			contexts.merge("c" + i, Collections.singletonMap("customerId", "C" + i));
+			Thread.sleep(1);
+		}
+		contexts.get("c0");
+
+		AttributesMap properties = contexts.merge("c10", Collections.singletonMap("customerId", "C10"));
+
+		assertThat(properties.get("customerId"), is("C10"));
+		assertThat(contexts.get("c10").get("customerId"), is("C10"));
+		assertThat(contexts.get("c0").isEmpty(), is(false));
+		assertThat(contexts.get("c1").isEmpty(), is(true));
+		assertThat(contexts.getStatistics().get("contexts"), is(10L));
+		assertThat(contexts.getStatistics().get("displaced"), is(1L));
+	}
+
+	@Test
+	public void concurrentEventsWithTheSameCorrelationIdKeepTheirOwnContext() throws Exception {
+		CorrelationContexts contexts = contexts(10);
+		ExecutorService requests = Executors.newFixedThreadPool(2);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> isolated = new ArrayList<Future<Boolean>>();
+		for (String eventId : Arrays.asList("e1", "e2")) {
+			String key = contexts.key(correlationInfo(eventId, "shared"));
+			isolated.add(requests.submit(() -> {
+				start.await();
+				boolean own = true;
+				for (int i = 0; i < 1000; i++) {
+					contexts.merge(key, Collections.singletonMap("customerId", eventId + "-" + i));
+					own &= contexts.get(key).get("customerId").equals(eventId + "-" + i);
+				}
+				return own;
+			}));
+		}
+		start.countDown();
+
+		try {
+			assertThat(isolated.get(0).get(5, TimeUnit.SECONDS), is(true));
+			assertThat(isolated.get(1).get(5, TimeUnit.SECONDS), is(true));
+		} finally {
+			requests.shutdownNow();
+		}
+		assertThat(contexts.getStatistics().get("contexts"), is(2L));
+	}
+
+	@Test
+	public void correlationIdScopeSharesTheContext() {
+		CorrelationContextSettings settings = new CorrelationContextSettings();
+		settings.setCorrelationContextTtl(1000);
+		settings.setMaxCorrelationContexts(10);
+		settings.setCorrelationContextScope(CorrelationContextScope.CORRELATION_ID);
+		CorrelationContexts contexts = new CorrelationContexts(settings);
+
+		assertThat(contexts.key(correlationInfo("e1", "shared")), is("shared"));
+		assertThat(contexts.key(correlationInfo("e2", null)), is("e2"));
+		assertThat(contexts(10).key(correlationInfo("e1", "shared")), is("e1"));
+	}
+
+	private static CorrelationInfo correlationInfo(String eventId, String correlationId) {
+		return (CorrelationInfo) Proxy.newProxyInstance(CorrelationInfo.class.getClassLoader(),
+				new Class<?>[] { CorrelationInfo.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getEventId":
+						return eventId;
+					case "getCorrelationId":
+						return correlationId;
+					default:
+						return null;
+					}
+				});
+	}
+}
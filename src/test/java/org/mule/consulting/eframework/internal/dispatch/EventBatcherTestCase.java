@@ -0,0 +1,166 @@
+package org.mule.consulting.eframework.internal.dispatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.EventRecord;
+import org.mule.consulting.eframework.internal.flow.TestCursors;
+import org.mule.consulting.eframework.internal.flow.TestFlows;
+import org.mule.consulting.eframework.internal.spool.EventSpool;
+import org.mule.consulting.eframework.internal.spool.SpoolSettings;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.api.streaming.bytes.CursorStream;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.core.api.event.CoreEvent;
+
+public class EventBatcherTestCase {
+
+	private static final String AUDIT_FLOW = "eframework.auditLogFlow";
+
+	private final List<CoreEvent> batches = new ArrayList<CoreEvent>();
+	private final Flow audit = TestFlows.flow(AUDIT_FLOW, batches::add);
+	private Runnable lingerTask;
+
+	private EventBatcher batcher(int maxSize, long maxBytes, long maxLinger) throws Exception {
+		BatchingSettings settings = new BatchingSettings();
+		settings.setBatchingEnabled(true);
+		settings.setBatchedFlows(AUDIT_FLOW);
+		settings.setBatchMaxSize(maxSize);
+		settings.setBatchMaxBytes(maxBytes);
+		settings.setBatchMaxLinger(maxLinger);
+		EventDispatcher dispatcher = new EventDispatcher(new DispatcherSettings(),
+				new EventSpool(new SpoolSettings(), null));
+		EventBatcher batcher = new EventBatcher(settings, dispatcher);
+		batcher.start(schedulerService());
+		return batcher;
+	}
+
+	/*
+	 * The linger timer is run by the tests
+	 */
+	private SchedulerService schedulerService() {
+		ScheduledFuture<?> future = (ScheduledFuture<?>) Proxy.newProxyInstance(
+				ScheduledFuture.class.getClassLoader(), new Class<?>[] { ScheduledFuture.class },
+				(proxy, method, args) -> method.getReturnType() == boolean.class ? false : null);
+		Scheduler scheduler = (Scheduler) Proxy.newProxyInstance(Scheduler.class.getClassLoader(),
+				new Class<?>[] { Scheduler.class }, (proxy, method, args) -> {
+					if ("scheduleAtFixedRate".equals(method.getName())) {
+						lingerTask = (Runnable) args[0];
+						return future;
+					}
+					return null;
+				});
+		return (SchedulerService) Proxy.newProxyInstance(SchedulerService.class.getClassLoader(),
+				new Class<?>[] { SchedulerService.class }, (proxy, method, args) -> scheduler);
+	}
+
+	private void add(EventBatcher batcher, String id, Object content) {
+		batcher.add(audit, Collections.singletonMap("x-record-id", id), content, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<EventRecord> records(int batch) {
+		return (List<EventRecord>) batches.get(batch).getMessage().getPayload().getValue();
+	}
+
+	private Map<?, ?> attributes(int batch) {
+		return (Map<?, ?>) batches.get(batch).getMessage().getAttributes().getValue();
+	}
+
+	@Test
+	public void fullBatchIsDeliveredAsAListOfRecords() throws Exception {
+		EventBatcher batcher = batcher(3, 1048576, 60000);
+
+		add(batcher, "1", "one");
+		add(batcher, "2", "two");
+		assertThat(batches.isEmpty(), is(true));
+		add(batcher, "3", "three");
+
+		assertThat(batches.size(), is(1));
+		assertThat(attributes(0).get("batchSize"), is((Object) "3"));
+		assertThat(records(0).size(), is(3));
+		assertThat(records(0).get(1).getAttributes().get("x-record-id"), is("2"));
+		assertThat(records(0).get(1).getContent(), is((Object) "two"));
+		assertThat(batcher.isBatched(AUDIT_FLOW), is(true));
+		assertThat(batcher.isBatched("eframework.errorTransactionFlow"), is(false));
+	}
+
+	@Test
+	public void batchIsDeliveredOnceItsEstimatedSizeIsReached() throws Exception {
+		EventBatcher batcher = batcher(100, 1000, 60000);
+		char[] text = new char[300];
+		Arrays.fill(text, 'x');
+
+		add(batcher, "1", new String(text));
+		assertThat(batches.isEmpty(), is(true));
+		add(batcher, "2", new String(text));
+
+		assertThat(batches.size(), is(1));
+		assertThat(records(0).size(), is(2));
+	}
+
+	@Test
+	public void lingeringBatchIsDeliveredByTheTimer() throws Exception {
+		EventBatcher batcher = batcher(100, 1048576, 20);
+		add(batcher, "1", "one");
+
+		lingerTask.run();
+		assertThat(batches.isEmpty(), is(true));
+		Thread.sleep(50);
+		lingerTask.run();
+
+		assertThat(batches.size(), is(1));
+		assertThat(records(0).size(), is(1));
+		lingerTask.run();
+		assertThat(batches.size(), is(1));
+	}
+
+	@Test
+	public void stopDeliversPendingBatchesWithStreamsRead() throws Exception {
+		EventBatcher batcher = batcher(100, 1048576, 60000);
+		add(batcher, "1", new ByteArrayInputStream("streamed".getBytes(StandardCharsets.UTF_8)));
+		add(batcher, "2", null);
+
+		batcher.stop();
+
+		assertThat(batches.size(), is(1));
+		assertThat(new String((byte[]) records(0).get(0).getContent(), StandardCharsets.UTF_8), is("streamed"));
+		assertThat(records(0).get(1).getContent(), is((Object) null));
+	}
+
+	@Test
+	public void eventAddedAfterStopIsDeliveredRightAway() throws Exception {
+		EventBatcher batcher = batcher(100, 1048576, 60000);
+		add(batcher, "1", "one");
+		batcher.stop();
+
+		add(batcher, "2", "two");
+
+		assertThat(batches.size(), is(2));
+		assertThat(records(1).size(), is(1));
+		assertThat(records(1).get(0).getContent(), is((Object) "two"));
+	}
+
+	@Test
+	public void cursorStreamIsReadFromItsStart() throws Exception {
+		EventBatcher batcher = batcher(1, 1048576, 60000);
+		CursorStream stream = TestCursors.stream("streamed".getBytes(StandardCharsets.UTF_8));
+		stream.skip(3);
+		add(batcher, "1", stream);
+
+		assertThat(new String((byte[]) records(0).get(0).getContent(), StandardCharsets.UTF_8), is("streamed"));
+		assertThat(stream.getPosition(), is(3L));
+	}
+}
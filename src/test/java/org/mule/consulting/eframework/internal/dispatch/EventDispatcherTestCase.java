@@ -0,0 +1,248 @@
+package org.mule.consulting.eframework.internal.dispatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mule.consulting.eframework.api.DispatcherOverflowPolicy;
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.consulting.eframework.internal.flow.TestFlows;
+import org.mule.consulting.eframework.internal.spool.EventSpool;
+import org.mule.consulting.eframework.internal.spool.SpoolSettings;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.core.api.construct.Flow;
+
+public class EventDispatcherTestCase {
+
+	private static final String AUDIT_FLOW = "eframework.auditLogFlow";
+
+	private final List<Object> delivered = new CopyOnWriteArrayList<Object>();
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final ExecutorService workers = Executors.newCachedThreadPool();
+
+	/*
+	 * Event "1" holds the single worker until release, so the next event
+	 * fills the queue and the one after that overflows
+	 */
+	private final Flow audit = TestFlows.flow(AUDIT_FLOW, event -> {
+		Object payload = event.getMessage().getPayload().getValue();
+		if ("1".equals(payload)) {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		delivered.add(payload);
+	});
+
+	private EventDispatcher dispatcher(DispatcherOverflowPolicy policy, long shutdownTimeout) throws Exception {
+		DispatcherSettings settings = new DispatcherSettings();
+		settings.setDispatcherEnabled(true);
+		settings.setDispatcherWorkers(1);
+		settings.setDispatcherQueueCapacity(1);
+		settings.setDispatcherOverflowPolicy(policy);
+		settings.setDispatcherShutdownTimeout(shutdownTimeout);
+		EventDispatcher dispatcher = new EventDispatcher(settings, new EventSpool(new SpoolSettings(), null));
+		dispatcher.start(schedulerService());
+		return dispatcher;
+	}
+
+	/*
+	 * A custom scheduler running the dispatcher workers on the test executor
+	 */
+	private SchedulerService schedulerService() {
+		Scheduler scheduler = (Scheduler) Proxy.newProxyInstance(Scheduler.class.getClassLoader(),
+				new Class<?>[] { Scheduler.class }, (proxy, method, args) -> {
+					if ("stop".equals(method.getName())) {
+						workers.shutdown();
+						return null;
+					}
+					return method.invoke(workers, args);
+				});
+		return (SchedulerService) Proxy.newProxyInstance(SchedulerService.class.getClassLoader(),
+				new Class<?>[] { SchedulerService.class }, (proxy, method, args) -> scheduler);
+	}
+
+	@After
+	public void stop() {
+		release.countDown();
+		workers.shutdownNow();
+	}
+
+	private void dispatch(EventDispatcher dispatcher, String payload) {
+		dispatcher.dispatch(audit, FlowEvents.create(audit, Collections.emptyMap(), payload, null));
+	}
+
+	/*
+	 * Dispatch "1", wait for the worker to take it, then queue "2"
+	 */
+	private void fillQueue(EventDispatcher dispatcher) throws InterruptedException {
+		dispatch(dispatcher, "1");
+		assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+		dispatch(dispatcher, "2");
+		assertThat(dispatcher.getStatistics().get("queueDepth"), is(1L));
+	}
+
+	private long statistic(EventDispatcher dispatcher, String name) {
+		return dispatcher.getStatistics().get(name);
+	}
+
+	private void awaitDelivered(EventDispatcher dispatcher, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (statistic(dispatcher, "delivered") < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void blockWaitsForRoomInTheQueue() throws Exception {
+		EventDispatcher dispatcher = dispatcher(DispatcherOverflowPolicy.BLOCK, 5000);
+		fillQueue(dispatcher);
+
+		Thread caller = new Thread(() -> dispatch(dispatcher, "3"));
+		caller.start();
+		caller.join(100);
+		assertThat(caller.isAlive(), is(true));
+		release.countDown();
+		caller.join(5000);
+		awaitDelivered(dispatcher, 3);
+
+		assertThat(delivered, is((Object) Arrays.asList("1", "2", "3")));
+		assertThat(statistic(dispatcher, "droppedNewest"), is(0L));
+	}
+
+	@Test
+	public void blockCountsAnInterruptedCallerAsDroppedNewest() throws Exception {
+		EventDispatcher dispatcher = dispatcher(DispatcherOverflowPolicy.BLOCK, 5000);
+		fillQueue(dispatcher);
+		AtomicBoolean stillInterrupted = new AtomicBoolean();
+
+		Thread caller = new Thread(() -> {
+			dispatch(dispatcher, "3");
+			stillInterrupted.set(Thread.currentThread().isInterrupted());
+		});
+		caller.start();
+		while (caller.getState() != Thread.State.WAITING && caller.isAlive()) {
+			Thread.sleep(5);
+		}
+		caller.interrupt();
+		caller.join(5000);
+
+		assertThat(stillInterrupted.get(), is(true));
+		assertThat(statistic(dispatcher, "droppedNewest"), is(1L));
+		release.countDown();
+		awaitDelivered(dispatcher, 2);
+		assertThat(delivered, is((Object) Arrays.asList("1", "2")));
+	}
+
+	@Test
+	public void dropOldestReplacesTheQueuedEvent() throws Exception {
+		EventDispatcher dispatcher = dispatcher(DispatcherOverflowPolicy.DROP_OLDEST, 5000);
+		fillQueue(dispatcher);
+
+		dispatch(dispatcher, "3");
+		release.countDown();
+		awaitDelivered(dispatcher, 2);
+
+		assertThat(delivered, is((Object) Arrays.asList("1", "3")));
+		assertThat(statistic(dispatcher, "droppedOldest"), is(1L));
+	}
+
+	@Test
+	public void dropNewestDiscardsTheOverflowingEvent() throws Exception {
+		EventDispatcher dispatcher = dispatcher(DispatcherOverflowPolicy.DROP_NEWEST, 5000);
+		fillQueue(dispatcher);
+
+		dispatch(dispatcher, "3");
+		release.countDown();
+		awaitDelivered(dispatcher, 2);
+
+		assertThat(delivered, is((Object) Arrays.asList("1", "2")));
+		assertThat(statistic(dispatcher, "droppedNewest"), is(1L));
+	}
+
+	@Test
+	public void synchronousProcessesTheOverflowingEventOnTheCaller() throws Exception {
+		EventDispatcher dispatcher = dispatcher(DispatcherOverflowPolicy.SYNCHRONOUS, 5000);
+		fillQueue(dispatcher);
+
+		dispatch(dispatcher, "3");
+		assertThat(delivered, is((Object) Arrays.asList("3")));
+		release.countDown();
+		awaitDelivered(dispatcher, 3);
+
+		assertThat(statistic(dispatcher, "processedSynchronously"), is(1L));
+		assertThat(statistic(dispatcher, "dispatched"), is(3L));
+	}
+
+	@Test
+	public void stopDrainsTheQueueWithinTheShutdownTimeout() throws Exception {
+		EventDispatcher dispatcher = dispatcher(DispatcherOverflowPolicy.BLOCK, 5000);
+		fillQueue(dispatcher);
+
+		workers.submit(() -> {
+			Thread.sleep(50);
+			release.countDown();
+			return null;
+		});
+		dispatcher.stop();
+		assertThat(workers.awaitTermination(5, TimeUnit.SECONDS), is(true));
+
+		assertThat(delivered, is((Object) Arrays.asList("1", "2")));
+		assertThat(statistic(dispatcher, "delivered"), is(2L));
+	}
+
+	@Test
+	public void eventsStillQueuedAfterTheShutdownTimeoutAreNotDelivered() throws Exception {
+		EventDispatcher dispatcher = dispatcher(DispatcherOverflowPolicy.BLOCK, 50);
+		fillQueue(dispatcher);
+
+		dispatcher.stop();
+		release.countDown();
+		assertThat(workers.awaitTermination(5, TimeUnit.SECONDS), is(true));
+
+		assertThat(delivered, is((Object) Arrays.asList("1")));
+		assertThat(statistic(dispatcher, "queueDepth"), is(0L));
+	}
+
+	@Test
+	public void enabledDispatcherRequiresWorkersAndQueueCapacity() throws Exception {
+		DispatcherSettings settings = new DispatcherSettings();
+		settings.setDispatcherEnabled(true);
+		settings.setDispatcherWorkers(0);
+		settings.setDispatcherQueueCapacity(1);
+		try {
+			new EventDispatcher(settings, new EventSpool(new SpoolSettings(), null));
+			fail("a dispatcher without workers was created");
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(),
+					is("dispatcherWorkers must be at least 1 when dispatcherEnabled is true, was 0"));
+		}
+		settings.setDispatcherWorkers(1);
+		settings.setDispatcherQueueCapacity(0);
+		try {
+			new EventDispatcher(settings, new EventSpool(new SpoolSettings(), null));
+			fail("a dispatcher without queue capacity was created");
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(),
+					is("dispatcherQueueCapacity must be at least 1 when dispatcherEnabled is true, was 0"));
+		}
+	}
+}
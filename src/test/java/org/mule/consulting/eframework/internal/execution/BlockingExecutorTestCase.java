@@ -0,0 +1,118 @@
+package org.mule.consulting.eframework.internal.execution;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mule.consulting.eframework.api.BlockingExecutionMode;
+import org.mule.consulting.eframework.api.BulkheadTimeoutPolicy;
+import org.mule.runtime.api.exception.DefaultMuleException;
+import org.mule.runtime.api.exception.MuleException;
+
+public class BlockingExecutorTestCase {
+
+	private static final String FLOW = "eframework.auditTransactionFlow";
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private BlockingExecutor executor;
+
+	/*
+	 * Platform threads stand in for virtual threads, which the build JDK may
+	 * not have
+	 */
+	private BlockingExecutor executor(BlockingExecutionMode mode, int concurrency, long timeout) {
+		BlockingExecutionSettings settings = new BlockingExecutionSettings();
+		settings.setBlockingExecutionMode(mode);
+		settings.setBlockingConcurrency(concurrency);
+		settings.setBlockingTimeout(timeout);
+		executor = new BlockingExecutor(settings, Executors::newCachedThreadPool);
+		executor.start();
+		return executor;
+	}
+
+	@After
+	public void stop() {
+		release.countDown();
+		executor.stop();
+	}
+
+	@Test
+	public void callerModeRunsOnTheCallingThread() throws MuleException {
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+
+		assertThat(executor(BlockingExecutionMode.CALLER, 1, 100).execute(FLOW, () -> thread.set(Thread.currentThread())),
+				is(Bulkhead.Outcome.COMPLETED));
+
+		assertThat(thread.get(), sameInstance(Thread.currentThread()));
+		assertThat(executor.isEnabled(), is(false));
+	}
+
+	@Test
+	public void virtualThreadModeWaitsForTheFlow() throws MuleException {
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+
+		assertThat(executor(BlockingExecutionMode.VIRTUAL_THREADS, 1, 1000).execute(FLOW,
+				() -> thread.set(Thread.currentThread())), is(Bulkhead.Outcome.COMPLETED));
+
+		assertThat(thread.get(), not(sameInstance(Thread.currentThread())));
+		assertThat(executor.getStatistics().get("executed"), is(1L));
+	}
+
+	@Test(expected = DefaultMuleException.class)
+	public void flowErrorsReachTheCaller() throws MuleException {
+		executor(BlockingExecutionMode.VIRTUAL_THREADS, 1, 1000).execute(FLOW, () -> {
+			throw new DefaultMuleException("flow failed");
+		});
+	}
+
+	@Test
+	public void slowFlowTimesOutAndKeepsItsPermit() throws Exception {
+		executor(BlockingExecutionMode.VIRTUAL_THREADS, 1, 50);
+
+		assertThat(executor.execute(FLOW, this::awaitRelease), is(Bulkhead.Outcome.TIMEOUT));
+		assertThat(executor.getStatistics().get("timedOut"), is(1L));
+		assertThat(executor.getStatistics().get("running"), is(1L));
+
+		assertThat(executor.execute(FLOW, () -> {
+		}), is(Bulkhead.Outcome.REJECTED));
+		assertThat(executor.getStatistics().get("rejected"), is(1L));
+
+		release.countDown();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (executor.getStatistics().get("running") > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(executor.execute(FLOW, () -> {
+		}), is(Bulkhead.Outcome.COMPLETED));
+	}
+
+	@Test
+	public void timeoutPolicyDefaultsToSkip() {
+		assertThat(executor(BlockingExecutionMode.VIRTUAL_THREADS, 1, 50).getTimeoutPolicy(),
+				is(BulkheadTimeoutPolicy.SKIP));
+
+		BlockingExecutionSettings settings = new BlockingExecutionSettings();
+		settings.setBlockingTimeoutPolicy(BulkheadTimeoutPolicy.ERROR);
+		settings.setRaiseFlowErrors(true);
+		BlockingExecutor configured = new BlockingExecutor(settings, Executors::newCachedThreadPool);
+		assertThat(configured.getTimeoutPolicy(), is(BulkheadTimeoutPolicy.ERROR));
+		assertThat(configured.isRaiseFlowErrors(), is(true));
+	}
+
+	private void awaitRelease() {
+		try {
+			release.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
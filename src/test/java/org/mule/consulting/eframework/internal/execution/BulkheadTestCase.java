@@ -0,0 +1,114 @@
+package org.mule.consulting.eframework.internal.execution;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mule.consulting.eframework.api.FlowBulkhead;
+import org.mule.consulting.eframework.internal.execution.Bulkhead.Outcome;
+
+public class BulkheadTestCase {
+
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final ExecutorService callers = Executors.newCachedThreadPool();
+	private final ExecutorService flows = Executors.newCachedThreadPool();
+
+	private Bulkhead bulkhead(int maxQueuedCalls, long timeout) {
+		FlowBulkhead settings = new FlowBulkhead();
+		settings.setFlowName("eframework.circuitbreaker-check-breaker");
+		settings.setMaxConcurrentCalls(1);
+		settings.setMaxQueuedCalls(maxQueuedCalls);
+		settings.setTimeout(timeout);
+		Bulkhead bulkhead = new Bulkhead(settings);
+		bulkhead.setExecutor(flows);
+		return bulkhead;
+	}
+
+	@After
+	public void stop() {
+		release.countDown();
+		callers.shutdownNow();
+		flows.shutdownNow();
+	}
+
+	@Test
+	public void fullBulkheadRejectsWithoutWaiting() throws Exception {
+		Bulkhead bulkhead = bulkhead(0, 0);
+		Future<Outcome> running = callers.submit(() -> bulkhead.execute(this::hang));
+		assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+		assertThat(bulkhead.execute(() -> {
+		}), is(Outcome.REJECTED));
+		assertThat(bulkhead.getStatistics().get("rejected"), is(1L));
+
+		release.countDown();
+		assertThat(running.get(5, TimeUnit.SECONDS), is(Outcome.COMPLETED));
+		assertThat(bulkhead.getStatistics().get("running"), is(0L));
+	}
+
+	@Test
+	public void queuedCallRunsWhenAPermitIsFree() throws Exception {
+		Bulkhead bulkhead = bulkhead(1, 0);
+		callers.submit(() -> bulkhead.execute(this::hang));
+		assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+		Future<Outcome> queued = callers.submit(() -> bulkhead.execute(() -> {
+		}));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (bulkhead.getStatistics().get("queued") == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(bulkhead.execute(() -> {
+		}), is(Outcome.REJECTED));
+
+		release.countDown();
+		assertThat(queued.get(5, TimeUnit.SECONDS), is(Outcome.COMPLETED));
+	}
+
+	@Test
+	public void hangingFlowTimesOutAndFillsTheBulkhead() throws Exception {
+		Bulkhead bulkhead = bulkhead(1, 50);
+
+		assertThat(bulkhead.execute(this::hang), is(Outcome.TIMEOUT));
+		assertThat(bulkhead.execute(() -> {
+		}), is(Outcome.QUEUE_TIMEOUT));
+		assertThat(bulkhead.getStatistics().get("timedOut"), is(2L));
+		assertThat(bulkhead.getStatistics().get("running"), is(1L));
+	}
+
+	@Test
+	public void asyncLeavesATimedOutFlowRunningAndCountsItDowngraded() throws Exception {
+		Bulkhead bulkhead = bulkhead(1, 50);
+		CountDownLatch finished = new CountDownLatch(1);
+
+		Outcome timedOut = bulkhead.execute(() -> {
+			hang();
+			finished.countDown();
+		});
+		Outcome queueTimedOut = bulkhead.execute(() -> {
+		});
+
+		assertThat(bulkhead.downgrade(timedOut), is(false));
+		assertThat(bulkhead.downgrade(queueTimedOut), is(true));
+		assertThat(bulkhead.getStatistics().get("downgraded"), is(2L));
+		release.countDown();
+		assertThat(finished.await(5, TimeUnit.SECONDS), is(true));
+	}
+
+	private void hang() {
+		started.countDown();
+		try {
+			release.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.ProgressStatus;
+import org.mule.consulting.eframework.internal.attributes.AttributesMap;
+
+public class BulkRecordsTestCase {
+
+	@Test
+	public void attributeValuesAreConvertedToStrings() {
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put("x-record-id", 42);
+		attributes.put("customerId", "C1");
+		attributes.put("ignored", null);
+		Map<String, Object> record = new HashMap<String, Object>();
+		record.put(BulkRecords.ATTRIBUTES, attributes);
+
+		AttributesMap converted = BulkRecords.attributes(record);
+
+		assertThat(converted.size(), is(2));
+		assertThat(converted.get("x-record-id"), is("42"));
+		assertThat(BulkRecords.attributes(new HashMap<String, Object>()), is(AttributesMap.EMPTY));
+	}
+
+	@Test
+	public void streamedContentIsReadWhenMaterialized() {
+		Map<String, Object> record = new HashMap<String, Object>();
+		record.put(BulkRecords.CONTENT, new ByteArrayInputStream("payload".getBytes(StandardCharsets.UTF_8)));
+
+		byte[] content = (byte[]) BulkRecords.content(record, true);
+
+		assertThat(new String(content, StandardCharsets.UTF_8), is("payload"));
+		assertThat(BulkRecords.content(null, true), is(nullValue()));
+		assertThat(BulkRecords.field(record, "eventStatus", "SUCCESS"), is("SUCCESS"));
+	}
+
+	@Test
+	public void constantsIgnoreCaseAndFallBackToTheDefault() {
+		Map<String, Object> record = new HashMap<String, Object>();
+
+		assertThat(BulkRecords.constant(record, "eventStatus", ProgressStatus.class, ProgressStatus.SUCCESS),
+				is(ProgressStatus.SUCCESS));
+		record.put("eventStatus", " data_Failure ");
+		assertThat(BulkRecords.constant(record, "eventStatus", ProgressStatus.class, ProgressStatus.SUCCESS),
+				is(ProgressStatus.DATA_FAILURE));
+		record.put("eventStatus", "failed");
+		assertThat(BulkRecords.constant(record, "eventStatus", ProgressStatus.class, ProgressStatus.SUCCESS),
+				is(ProgressStatus.SUCCESS));
+	}
+}
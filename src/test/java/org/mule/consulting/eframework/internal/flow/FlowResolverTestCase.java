@@ -0,0 +1,92 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mule.runtime.api.artifact.Registry;
+import org.mule.runtime.core.api.construct.Flow;
+
+public class FlowResolverTestCase {
+
+	private static final String AUDIT_FLOW = "eframework.auditLogFlow";
+
+	private final Map<String, Flow> flows = new HashMap<String, Flow>();
+	private final AtomicInteger lookups = new AtomicInteger();
+	private final Flow audit = TestFlows.flow(AUDIT_FLOW, event -> {
+	});
+
+	/*
+	 * Counts the registry lookups behind the cache
+	 */
+	private FlowResolver resolver(long missingFlowRetryMillis) {
+		Registry flowRegistry = TestFlows.registry(flows);
+		Registry registry = (Registry) Proxy.newProxyInstance(Registry.class.getClassLoader(),
+				new Class<?>[] { Registry.class }, (proxy, method, args) -> {
+					lookups.incrementAndGet();
+					return method.invoke(flowRegistry, args);
+				});
+		return new FlowResolver(registry, missingFlowRetryMillis);
+	}
+
+	@Test
+	public void deployedFlowIsLookedUpOnce() {
+		flows.put(AUDIT_FLOW, audit);
+		FlowResolver resolver = resolver(60000);
+
+		assertThat(resolver.lookup(AUDIT_FLOW), is(sameInstance(audit)));
+		assertThat(resolver.lookup(AUDIT_FLOW), is(sameInstance(audit)));
+		assertThat(lookups.get(), is(1));
+	}
+
+	@Test
+	public void missingFlowIsCachedAndFurtherWarningsCounted() {
+		FlowResolver resolver = resolver(60000);
+
+		assertThat(resolver.lookup(AUDIT_FLOW), is(nullValue()));
+		flows.put(AUDIT_FLOW, audit);
+		assertThat(resolver.lookup(AUDIT_FLOW), is(nullValue()));
+		assertThat(resolver.lookup(AUDIT_FLOW), is(nullValue()));
+
+		assertThat(lookups.get(), is(1));
+		assertThat(resolver.getSuppressedWarningCount(), is(2L));
+	}
+
+	@Test
+	public void missingFlowIsLookedUpAgainAfterTheRetryInterval() throws InterruptedException {
+		FlowResolver resolver = resolver(20);
+
+		assertThat(resolver.lookup(AUDIT_FLOW), is(nullValue()));
+		flows.put(AUDIT_FLOW, audit);
+		Thread.sleep(40);
+
+		assertThat(resolver.lookup(AUDIT_FLOW), is(sameInstance(audit)));
+		assertThat(lookups.get(), is(2));
+		assertThat(resolver.getSuppressedWarningCount(), is(0L));
+	}
+
+	@Test
+	public void invalidateDropsPositiveAndNegativeEntries() {
+		flows.put(AUDIT_FLOW, audit);
+		FlowResolver resolver = resolver(60000);
+		resolver.lookup(AUDIT_FLOW);
+		resolver.lookup("eframework.errorTransactionFlow");
+		Flow errors = TestFlows.flow("eframework.errorTransactionFlow", event -> {
+		});
+		flows.put("eframework.errorTransactionFlow", errors);
+		flows.remove(AUDIT_FLOW);
+
+		resolver.invalidate();
+
+		assertThat(resolver.lookup(AUDIT_FLOW), is(nullValue()));
+		assertThat(resolver.lookup("eframework.errorTransactionFlow"), is(sameInstance(errors)));
+		assertThat(lookups.get(), is(4));
+	}
+}
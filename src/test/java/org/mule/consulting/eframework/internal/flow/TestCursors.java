@@ -0,0 +1,84 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import org.mule.runtime.api.streaming.bytes.CursorStream;
+import org.mule.runtime.api.streaming.bytes.CursorStreamProvider;
+
+/**
+ * In memory repeatable streams, the way a repeatable payload reaches an
+ * operation.
+ */
+public final class TestCursors {
+
+	private TestCursors() {
+	}
+
+	/**
+	 * @param bytes
+	 * @return a cursor over bytes, at position 0
+	 */
+	public static CursorStream stream(byte[] bytes) {
+		return new CursorStream() {
+			private int position;
+			private boolean released;
+
+			@Override
+			public int read() {
+				return position < bytes.length ? bytes[position++] & 0xff : -1;
+			}
+
+			@Override
+			public long getPosition() {
+				return position;
+			}
+
+			@Override
+			public void seek(long position) {
+				this.position = (int) position;
+			}
+
+			@Override
+			public void release() {
+				released = true;
+			}
+
+			@Override
+			public boolean isReleased() {
+				return released;
+			}
+
+			@Override
+			public CursorStreamProvider getProvider() {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * @param bytes
+	 * @return a provider opening a new cursor over bytes on every call
+	 */
+	public static CursorStreamProvider provider(byte[] bytes) {
+		return new CursorStreamProvider() {
+			private boolean closed;
+
+			@Override
+			public CursorStream openCursor() {
+				return stream(bytes);
+			}
+
+			@Override
+			public void close() {
+				closed = true;
+			}
+
+			@Override
+			public void releaseResources() {
+			}
+
+			@Override
+			public boolean isClosed() {
+				return closed;
+			}
+		};
+	}
+}
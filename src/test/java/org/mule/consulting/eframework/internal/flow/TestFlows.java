@@ -0,0 +1,81 @@
+package org.mule.consulting.eframework.internal.flow;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.mule.runtime.api.artifact.Registry;
+import org.mule.runtime.api.event.Event;
+import org.mule.runtime.api.exception.MuleException;
+import org.mule.runtime.core.api.construct.Flow;
+import org.mule.runtime.core.api.event.CoreEvent;
+
+/**
+ * Flows and registries built with java.lang.reflect.Proxy, for the tests of
+ * the components that hand events to handler flows.
+ */
+public final class TestFlows {
+
+	/**
+	 * What a test flow does with an event
+	 */
+	public interface Handler {
+		void handle(CoreEvent event) throws MuleException;
+	}
+
+	private TestFlows() {
+	}
+
+	/**
+	 * @param name
+	 * @param handler
+	 *            receives every event the flow processes, process throws and
+	 *            execute completes exceptionally with what it throws
+	 * @return a flow running handler on the calling thread
+	 */
+	public static Flow flow(String name, Handler handler) {
+		return (Flow) Proxy.newProxyInstance(Flow.class.getClassLoader(), new Class<?>[] { Flow.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getName":
+						return name;
+					case "process":
+						handler.handle((CoreEvent) args[0]);
+						return args[0];
+					case "execute":
+						CompletableFuture<Event> result = new CompletableFuture<Event>();
+						try {
+							handler.handle((CoreEvent) args[0]);
+							result.complete((Event) args[0]);
+						} catch (MuleException | RuntimeException e) {
+							result.completeExceptionally(e);
+						}
+						return result;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "Flow " + name;
+					default:
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * @param flows
+	 *            keyed by name, the map may change while the registry is used
+	 * @return a registry that only looks up flows by name
+	 */
+	public static Registry registry(Map<String, Flow> flows) {
+		return (Registry) Proxy.newProxyInstance(Registry.class.getClassLoader(), new Class<?>[] { Registry.class },
+				(proxy, method, args) -> {
+					if ("lookupByName".equals(method.getName())) {
+						return Optional.ofNullable(flows.get((String) args[0]));
+					}
+					return null;
+				});
+	}
+}
@@ -0,0 +1,68 @@
+package org.mule.consulting.eframework.internal.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class EframeworkMetricsTestCase {
+
+	@Test
+	public void histogramPercentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int millis = 1; millis <= 1000; millis++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+
+		Map<String, Object> summary = histogram.drain();
+		assertThat(summary.get("count"), is(1000L));
+		assertThat(Math.abs((Double) summary.get("p50Millis") - 500) <= 500 * 0.07, is(true));
+		assertThat(Math.abs((Double) summary.get("p99Millis") - 990) <= 990 * 0.07, is(true));
+		assertThat(summary.get("maxMillis"), is(1000.0));
+		assertThat(histogram.drain(), is(nullValue()));
+	}
+
+	@Test
+	public void countersAreExposedThroughJmx() throws Exception {
+		EframeworkMetrics metrics = new EframeworkMetrics();
+		metrics.flow("eframework.auditLogFlow").emitted();
+		metrics.flow("eframework.auditLogFlow").processed(TimeUnit.MILLISECONDS.toNanos(5), false);
+		metrics.flow("eframework.errorTransactionFlow").missing();
+
+		metrics.register("metrics-test");
+		try {
+			ObjectName name = new ObjectName(
+					"org.mule.consulting.eframework:type=Metrics,applicationId=" + ObjectName.quote("metrics-test"));
+			assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "MissingFlowCalls"), is(1L));
+			assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "FailedCalls"), is(1L));
+		} finally {
+			metrics.unregister();
+		}
+		assertThat(metrics.getCounters().get("eframework.auditLogFlow").get("emitted"), is(1L));
+	}
+
+	@Test
+	public void operationsSharingAFlowAreCountedApart() {
+		EframeworkMetrics metrics = new EframeworkMetrics();
+		metrics.operation("sendAuditEvent").completed(TimeUnit.MILLISECONDS.toNanos(2), false);
+		metrics.operation("sendAuditEvents").completed(TimeUnit.MILLISECONDS.toNanos(40), false);
+		metrics.operation("circuitBreakerCheck").completed(TimeUnit.MICROSECONDS.toNanos(20), true);
+
+		Map<String, Map<String, Long>> counters = metrics.getOperationCounters();
+		assertThat(counters.get("sendAuditEvent").get("calls"), is(1L));
+		assertThat(counters.get("sendAuditEvents").get("calls"), is(1L));
+		assertThat(counters.get("circuitBreakerCheck").get("errors"), is(1L));
+		assertThat(metrics.getOperationLatencies().get("sendAuditEvents").get("maxMillis"), is(40.0));
+		assertThat(((Map<?, ?>) metrics.snapshot().get("operations")).size(), is(3));
+
+		metrics.reset();
+		assertThat(metrics.getOperationCounters().isEmpty(), is(true));
+	}
+}
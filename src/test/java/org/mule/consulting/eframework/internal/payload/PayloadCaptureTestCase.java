@@ -0,0 +1,80 @@
+package org.mule.consulting.eframework.internal.payload;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.PayloadCaptureMode;
+import org.mule.consulting.eframework.internal.flow.TestCursors;
+import org.mule.runtime.api.streaming.bytes.CursorStream;
+
+public class PayloadCaptureTestCase {
+
+	private PayloadCapture capture(int prefix, int suffix, String hashAlgorithm) {
+		PayloadSettings settings = new PayloadSettings();
+		settings.setPayloadCaptureMode(PayloadCaptureMode.PREVIEW);
+		settings.setPayloadPreviewPrefix(prefix);
+		settings.setPayloadPreviewSuffix(suffix);
+		settings.setPayloadHashAlgorithm(hashAlgorithm);
+		return new PayloadCapture(settings);
+	}
+
+	@Test
+	public void smallPayloadIsKeptWhole() {
+		PayloadPreview preview = capture(4, 4, "SHA-256").capture("abcdef");
+
+		assertThat(preview.getPreview(), is("abcdef"));
+		assertThat(preview.getSize(), is(6L));
+		assertThat(preview.isTruncated(), is(false));
+		assertThat(preview.getHash(), is("bef57ec7f53a6d40beb640a780a639c83bc29ac8a9816f1fc6c5c6dcd93c4721"));
+	}
+
+	@Test
+	public void largePayloadKeepsPrefixAndSuffix() {
+		StringBuilder payload = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			payload.append((char) ('a' + i % 26));
+		}
+		PayloadPreview preview = capture(5, 3, "NONE").capture(payload.toString().getBytes());
+
+		assertThat(preview.getPreview(), is("abcde...nop"));
+		assertThat(preview.getSize(), is(10000L));
+		assertThat(preview.isTruncated(), is(true));
+		assertThat(preview.getHash(), is(nullValue()));
+	}
+
+	@Test
+	public void nonRepeatableStreamIsNotConsumed() throws Exception {
+		InputStream stream = new ByteArrayInputStream("abc".getBytes());
+		PayloadPreview preview = capture(2, 2, "SHA-256").capture(stream);
+
+		assertThat(preview.getSize(), is(-1L));
+		assertThat(stream.read(), is((int) 'a'));
+	}
+
+	@Test
+	public void cursorStreamIsReadFromItsStartAndLeftWhereItWas() throws Exception {
+		CursorStream stream = TestCursors.stream("abcdef".getBytes());
+		stream.read();
+		PayloadPreview preview = capture(2, 2, "SHA-256").capture(stream);
+
+		assertThat(preview.getPreview(), is("ab...ef"));
+		assertThat(preview.getSize(), is(6L));
+		assertThat(preview.getHash(), is("bef57ec7f53a6d40beb640a780a639c83bc29ac8a9816f1fc6c5c6dcd93c4721"));
+		assertThat(stream.getPosition(), is(1L));
+		assertThat(stream.read(), is((int) 'b'));
+	}
+
+	@Test
+	public void cursorStreamProviderIsReadThroughANewCursor() {
+		PayloadPreview preview = capture(4, 4, "NONE").capture(TestCursors.provider("abcdef".getBytes()));
+
+		assertThat(preview.getPreview(), is("abcdef"));
+		assertThat(preview.getSize(), is(6L));
+		assertThat(preview.isTruncated(), is(false));
+	}
+}
@@ -0,0 +1,99 @@
+package org.mule.consulting.eframework.internal.policy;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+
+public class EventDeduplicatorTestCase {
+
+	private static final String FLOW = "eframework.errorTransactionFlow";
+
+	private final List<Map<String, String>> rollups = new ArrayList<Map<String, String>>();
+
+	private EventDeduplicator deduplicator(int maxWindows) {
+		DeduplicationSettings settings = new DeduplicationSettings();
+		settings.setDeduplicationEnabled(true);
+		settings.setDeduplicatedFlows(FLOW);
+		settings.setDeduplicationKeys("transactionType, transactionStatus");
+		settings.setDeduplicationWindow(1000);
+		settings.setMaxDeduplicationWindows(maxWindows);
+		EventDeduplicator deduplicator = new EventDeduplicator(settings);
+		deduplicator.start(schedulerService(), (flowName, attributes, content, location) -> rollups.add(attributes));
+		return deduplicator;
+	}
+
+	/*
+	 * The sweep is driven by the tests, the scheduler only has to accept the
+	 * task
+	 */
+	private static SchedulerService schedulerService() {
+		Scheduler scheduler = (Scheduler) Proxy.newProxyInstance(Scheduler.class.getClassLoader(),
+				new Class<?>[] { Scheduler.class }, (proxy, method, args) -> null);
+		return (SchedulerService) Proxy.newProxyInstance(SchedulerService.class.getClassLoader(),
+				new Class<?>[] { SchedulerService.class }, (proxy, method, args) -> scheduler);
+	}
+
+	private static Map<String, String> event(String type, String status, String id) {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("transactionType", type);
+		attributes.put("transactionStatus", status);
+		attributes.put("correlationId", id);
+		return attributes;
+	}
+
+	@Test
+	public void firstOccurrenceIsForwardedAndRepeatsRolledUp() {
+		EventDeduplicator deduplicator = deduplicator(100);
+
+		assertThat(deduplicator.admit(FLOW, event("ORDER", "TIMEOUT", "1"), null), is(true));
+		for (int i = 2; i <= 50; i++) {
+			assertThat(deduplicator.admit(FLOW, event("ORDER", "TIMEOUT", String.valueOf(i)), null), is(false));
+		}
+		assertThat(deduplicator.admit(FLOW, event("ORDER", "REJECTED", "51"), null), is(true));
+		assertThat(deduplicator.admit("eframework.auditFlow", event("ORDER", "TIMEOUT", "52"), null), is(true));
+
+		deduplicator.sweep(System.nanoTime() + TimeUnit.SECONDS.toNanos(2), false);
+
+		assertThat(rollups.size(), is(1));
+		assertThat(rollups.get(0).get("correlationId"), is("1"));
+		assertThat(rollups.get(0).get("duplicateCount"), is("49"));
+		assertThat(rollups.get(0).get("duplicateWindow"), is("1000"));
+		assertThat(deduplicator.admit(FLOW, event("ORDER", "TIMEOUT", "53"), null), is(true));
+		assertThat(deduplicator.getStatistics().get("suppressed"), is(49L));
+	}
+
+	@Test
+	public void openWindowsStayInTheirWindowAndAreClosedOnStop() {
+		EventDeduplicator deduplicator = deduplicator(100);
+		deduplicator.admit(FLOW, event("ORDER", "TIMEOUT", "1"), null);
+		deduplicator.admit(FLOW, event("ORDER", "TIMEOUT", "2"), null);
+
+		deduplicator.sweep(System.nanoTime(), false);
+		assertThat(rollups.isEmpty(), is(true));
+
+		deduplicator.sweep(System.nanoTime(), true);
+		assertThat(rollups.size(), is(1));
+		assertThat(deduplicator.getStatistics().get("openWindows"), is(0L));
+	}
+
+	@Test
+	public void keysBeyondCapacityAreForwarded() {
+		EventDeduplicator deduplicator = deduplicator(2);
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(deduplicator.admit(FLOW, event("TYPE-" + i, "FAILED", "1"), null), is(true));
+		}
+		assertThat(deduplicator.admit(FLOW, event("TYPE-0", "FAILED", "2"), null), is(false));
+		assertThat(deduplicator.getStatistics().get("untracked"), is(8L));
+	}
+}
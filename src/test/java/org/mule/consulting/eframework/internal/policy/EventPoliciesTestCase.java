@@ -0,0 +1,80 @@
+package org.mule.consulting.eframework.internal.policy;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.EventPolicy;
+import org.mule.consulting.eframework.api.SamplingStrategy;
+
+public class EventPoliciesTestCase {
+
+	private static final String FLOW = "eframework.progressFlow";
+
+	private EventPolicy policy(String stage, int sampleRate, SamplingStrategy sampleBy, double rateLimit) {
+		EventPolicy policy = new EventPolicy();
+		policy.setEventType("PROGRESS");
+		policy.setStage(stage);
+		policy.setStatus("*");
+		policy.setSampleRate(sampleRate);
+		policy.setSampleBy(sampleBy);
+		policy.setRateLimit(rateLimit);
+		policy.setAlwaysEmitFailures(true);
+		return policy;
+	}
+
+	private EventPolicies policies(EventPolicy... policies) {
+		EventPolicySettings settings = new EventPolicySettings();
+		settings.setEventPolicies(Arrays.asList(policies));
+		return new EventPolicies(settings, "app");
+	}
+
+	private int admitted(EventPolicies policies, String stage, String status, int events) {
+		int admitted = 0;
+		for (int i = 0; i < events; i++) {
+			if (policies.admit(FLOW, "PROGRESS", stage, status, "record-" + i, null)) {
+				admitted++;
+			}
+		}
+		return admitted;
+	}
+
+	@Test
+	public void countSamplingKeepsOneInN() {
+		EventPolicies policies = policies(policy("READ", 10, SamplingStrategy.COUNT, 0));
+
+		assertThat(admitted(policies, "READ", "SUCCESS", 1000), is(100));
+		assertThat(admitted(policies, "WRITE", "SUCCESS", 1000), is(1000));
+		assertThat(policies.getSuppressedCounts().get(FLOW + "|PROGRESS|READ|SUCCESS"), is(900L));
+	}
+
+	@Test
+	public void failuresAreAlwaysEmitted() {
+		EventPolicies policies = policies(policy("*", 1000, SamplingStrategy.COUNT, 1));
+
+		assertThat(admitted(policies, "READ", "DATA_FAILURE", 100), is(100));
+	}
+
+	@Test
+	public void descriptorSamplingKeepsEveryStageOfASampledRecord() {
+		EventPolicies policies = policies(policy("*", 4, SamplingStrategy.RECORD_DESCRIPTOR, 0));
+
+		for (int i = 0; i < 100; i++) {
+			String record = "record-" + i;
+			boolean read = policies.admit(FLOW, "PROGRESS", "READ", "SUCCESS", record, null);
+			boolean write = policies.admit(FLOW, "PROGRESS", "WRITE", "SUCCESS", record, null);
+			assertThat(read, is(write));
+		}
+	}
+
+	@Test
+	public void rateLimitAllowsTheBurstOnly() {
+		EventPolicy policy = policy("*", 1, SamplingStrategy.COUNT, 0.001);
+		policy.setBurst(4);
+		EventPolicies policies = policies(policy);
+
+		assertThat(admitted(policies, "READ", "SUCCESS", 100), is(5));
+	}
+}
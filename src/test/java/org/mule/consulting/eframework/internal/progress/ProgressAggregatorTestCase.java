@@ -0,0 +1,88 @@
+package org.mule.consulting.eframework.internal.progress;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.ProgressStage;
+import org.mule.consulting.eframework.api.ProgressStatus;
+import org.mule.runtime.api.component.location.ComponentLocation;
+
+public class ProgressAggregatorTestCase {
+
+	private ProgressAggregator aggregator() {
+		ProgressAggregationSettings settings = new ProgressAggregationSettings();
+		settings.setProgressAggregationEnabled(true);
+		settings.setProgressTrackedRecords(100);
+		settings.setProgressRecordTtl(60000);
+		settings.setProgressFinalStages("WRITE_TGT,ACK_INT,ACK_EVT");
+		return new ProgressAggregator(settings, "app", "eframework.progressFlow");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void countsStagesAndLatenciesPerInterval() {
+		ProgressAggregator aggregator = aggregator();
+		for (int i = 0; i < 10; i++) {
+			aggregator.record(ProgressStage.READ, ProgressStatus.SUCCESS, "record-" + i, null);
+			aggregator.record(ProgressStage.WRITE, i < 8 ? ProgressStatus.SUCCESS : ProgressStatus.DATA_FAILURE,
+					"record-" + i, null);
+		}
+
+		List<Map<String, Object>> summaries = aggregator.summarize();
+		assertThat(summaries.size(), is(1));
+		Map<String, Object> summary = summaries.get(0);
+		assertThat(summary.get("events"), is(20L));
+		Map<String, Map<String, Long>> stages = (Map<String, Map<String, Long>>) summary.get("stages");
+		assertThat(stages.get("READ").get("SUCCESS"), is(10L));
+		assertThat(stages.get("WRITE").get("SUCCESS"), is(8L));
+		assertThat(stages.get("WRITE").get("DATA_FAILURE"), is(2L));
+		Map<String, Map<String, Object>> latencies = (Map<String, Map<String, Object>>) summary.get("latencies");
+		assertThat(latencies.get("READ->WRITE").get("count"), is(10L));
+
+		assertThat(aggregator.summarize().isEmpty(), is(true));
+	}
+
+	@Test
+	public void recordsAreTrackedPerFlowUntilTheirFinalStage() {
+		ProgressAggregator aggregator = aggregator();
+		aggregator.record(ProgressStage.READ, ProgressStatus.SUCCESS, "record-1", location("orders"));
+		aggregator.record(ProgressStage.READ, ProgressStatus.SUCCESS, "record-1", location("invoices"));
+		aggregator.record(ProgressStage.READ, ProgressStatus.SUCCESS, "record-2", location("orders"));
+		aggregator.record(ProgressStage.WRITE_TGT, ProgressStatus.SUCCESS, "record-1", location("orders"));
+		aggregator.record(ProgressStage.VALIDATE, ProgressStatus.DATA_FAILURE, "record-2", location("orders"));
+
+		Map<String, Map<String, Object>> latencies = latencies(aggregator);
+		assertThat(latencies.get("orders").get("READ->WRITE_TGT"), is(notNullValue()));
+		assertThat(latencies.get("orders").get("READ->VALIDATE"), is(notNullValue()));
+		assertThat(latencies.get("invoices").isEmpty(), is(true));
+
+		aggregator.record(ProgressStage.WRITE_TGT, ProgressStatus.SUCCESS, "record-1", location("invoices"));
+		aggregator.record(ProgressStage.WRITE, ProgressStatus.SUCCESS, "record-1", location("orders"));
+		latencies = latencies(aggregator);
+		assertThat(latencies.get("invoices").keySet(), is(Collections.singleton("READ->WRITE_TGT")));
+		assertThat(latencies.get("orders").isEmpty(), is(true));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Map<String, Object>> latencies(ProgressAggregator aggregator) {
+		Map<String, Map<String, Object>> latencies = new HashMap<String, Map<String, Object>>();
+		for (Map<String, Object> summary : aggregator.summarize()) {
+			latencies.put((String) summary.get("flow"), (Map<String, Object>) summary.get("latencies"));
+		}
+		return latencies;
+	}
+
+	private static ComponentLocation location(String flowName) {
+		return (ComponentLocation) Proxy.newProxyInstance(ComponentLocation.class.getClassLoader(),
+				new Class<?>[] { ComponentLocation.class },
+				(proxy, method, args) -> "getRootContainerName".equals(method.getName()) ? flowName : null);
+	}
+}
@@ -0,0 +1,241 @@
+package org.mule.consulting.eframework.internal.retry;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.RetryPolicy;
+import org.mule.consulting.eframework.internal.flow.FlowResolver;
+import org.mule.consulting.eframework.internal.flow.TestFlows;
+import org.mule.runtime.api.exception.DefaultMuleException;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.core.api.construct.Flow;
+
+public class RetrySchedulerTestCase {
+
+	private static final long TICK = 100;
+	private static final String RETRY_FLOW = "eframework.retryTransactionFlow";
+	private static final String ERROR_FLOW = "eframework.errorTransactionFlow";
+
+	private final Map<String, Flow> flows = new HashMap<String, Flow>();
+	private final List<String> attempts = new CopyOnWriteArrayList<String>();
+	private final List<String> emitted = new CopyOnWriteArrayList<String>();
+	private Runnable tick;
+
+	/*
+	 * Retries are due one tick after they are scheduled, and every attempt
+	 * fails until failures reaches 0
+	 */
+	private RetryScheduler retryScheduler(int maxAttempts, long initialDelay, int maxPending, int failures) {
+		int[] remaining = { failures };
+		flows.put(RETRY_FLOW, TestFlows.flow(RETRY_FLOW, event -> {
+			attempts.add(((Map<?, ?>) event.getMessage().getAttributes().getValue()).get(RetryScheduler.ATTEMPT_KEY)
+					.toString());
+			if (remaining[0]-- > 0) {
+				throw new DefaultMuleException("retry flow failed");
+			}
+		}));
+		RetryPolicy policy = new RetryPolicy();
+		policy.setMaxAttempts(maxAttempts);
+		policy.setInitialDelay(initialDelay);
+		policy.setJitter(0);
+		RetrySettings settings = new RetrySettings();
+		settings.setRetrySchedulingEnabled(true);
+		settings.setRetryPolicies(Collections.singletonList(policy));
+		settings.setMaxPendingRetries(maxPending);
+		settings.setRetryTickDuration(1);
+		RetryScheduler retryScheduler = new RetryScheduler(settings, RETRY_FLOW, ERROR_FLOW);
+		retryScheduler.start(schedulerService(), new FlowResolver(TestFlows.registry(flows), 0),
+				(flowName, attributes, content, location) -> emitted
+						.add(flowName + " " + attributes.get(RetryScheduler.EXHAUSTED_KEY)));
+		return retryScheduler;
+	}
+
+	/*
+	 * The tests run the timer task, and attempts run on the thread that
+	 * submits them
+	 */
+	private SchedulerService schedulerService() {
+		ScheduledFuture<?> future = (ScheduledFuture<?>) Proxy.newProxyInstance(
+				ScheduledFuture.class.getClassLoader(), new Class<?>[] { ScheduledFuture.class },
+				(proxy, method, args) -> method.getReturnType() == boolean.class ? false : null);
+		Scheduler scheduler = (Scheduler) Proxy.newProxyInstance(Scheduler.class.getClassLoader(),
+				new Class<?>[] { Scheduler.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "scheduleAtFixedRate":
+						tick = (Runnable) args[0];
+						return future;
+					case "submit":
+						((Runnable) args[0]).run();
+						return null;
+					default:
+						return null;
+					}
+				});
+		return (SchedulerService) Proxy.newProxyInstance(SchedulerService.class.getClassLoader(),
+				new Class<?>[] { SchedulerService.class }, (proxy, method, args) -> scheduler);
+	}
+
+	private void tickUntil(BooleanSupplier done) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!done.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(2);
+			tick.run();
+		}
+		assertThat(done.getAsBoolean(), is(true));
+	}
+
+	private static Map<String, String> retryAttributes() {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("transactionType", "ORDER");
+		return attributes;
+	}
+
+	private static Object statistic(RetryScheduler retryScheduler, String name) {
+		return retryScheduler.getStatistics().get(name);
+	}
+
+	@Test
+	public void tasksExpireAtTheirTick() {
+		TimerWheel<String> wheel = new TimerWheel<String>(TICK, 8, 0);
+		wheel.schedule("now", 0, 0);
+		wheel.schedule("soon", 250, 0);
+		wheel.schedule("later", 2500, 0);
+
+		assertThat(wheel.advance(0), is(Collections.singletonList("now")));
+		assertThat(wheel.advance(200).isEmpty(), is(true));
+		assertThat(wheel.advance(300), is(Collections.singletonList("soon")));
+		assertThat(wheel.advance(2400).isEmpty(), is(true));
+		assertThat(wheel.advance(2500), is(Collections.singletonList("later")));
+	}
+
+	@Test
+	public void lateAdvanceExpiresEverythingDue() {
+		TimerWheel<String> wheel = new TimerWheel<String>(TICK, 8, 0);
+		wheel.advance(0);
+		wheel.schedule("a", 300, 0);
+		wheel.schedule("b", 1700, 0);
+		wheel.schedule("c", 5000, 0);
+		wheel.advance(100);
+
+		List<String> expired = wheel.advance(4000);
+		Collections.sort(expired);
+
+		assertThat(expired, is(Arrays.asList("a", "b")));
+		assertThat(wheel.clear(), is(Collections.singletonList("c")));
+	}
+
+	@Test
+	public void backoffGrowsUpToMaxDelay() {
+		RetryPolicy policy = new RetryPolicy();
+		policy.setInitialDelay(1000);
+		policy.setMultiplier(3);
+		policy.setMaxDelay(20000);
+
+		assertThat(RetryScheduler.backoff(policy, 1), is(1000L));
+		assertThat(RetryScheduler.backoff(policy, 2), is(3000L));
+		assertThat(RetryScheduler.backoff(policy, 3), is(9000L));
+		assertThat(RetryScheduler.backoff(policy, 4), is(20000L));
+		assertThat(RetryScheduler.backoff(policy, 60), is(20000L));
+	}
+
+	@Test
+	public void failedAttemptIsScheduledAgain() throws InterruptedException {
+		RetryScheduler retryScheduler = retryScheduler(3, 0, 10, 1);
+
+		assertThat(retryScheduler.schedule("ORDER", retryAttributes(), "order", null), is(true));
+		tickUntil(() -> attempts.size() == 2);
+
+		assertThat(attempts, is(Arrays.asList("1", "2")));
+		assertThat(statistic(retryScheduler, "failed"), is((Object) 1L));
+		assertThat(statistic(retryScheduler, "succeeded"), is((Object) 1L));
+		assertThat(statistic(retryScheduler, "pending"), is((Object) 0));
+		assertThat(emitted.isEmpty(), is(true));
+	}
+
+	@Test
+	public void exhaustedRetryGoesToTheErrorFlow() throws InterruptedException {
+		RetryScheduler retryScheduler = retryScheduler(2, 0, 10, Integer.MAX_VALUE);
+
+		retryScheduler.schedule("ORDER", retryAttributes(), "order", null);
+		tickUntil(() -> !emitted.isEmpty());
+
+		assertThat(attempts, is(Arrays.asList("1", "2")));
+		assertThat(emitted, is(Collections.singletonList(ERROR_FLOW + " true")));
+		assertThat(statistic(retryScheduler, "exhausted"), is((Object) 1L));
+		assertThat(statistic(retryScheduler, "pending"), is((Object) 0));
+	}
+
+	@Test
+	public void retriesBeyondMaxPendingRetriesAreRefused() {
+		RetryScheduler retryScheduler = retryScheduler(3, 60000, 1, 0);
+
+		assertThat(retryScheduler.schedule("ORDER", retryAttributes(), "first", null), is(true));
+		assertThat(retryScheduler.schedule("ORDER", retryAttributes(), "second", null), is(false));
+
+		assertThat(statistic(retryScheduler, "rejected"), is((Object) 1L));
+		assertThat(statistic(retryScheduler, "pending"), is((Object) 1));
+	}
+
+	@Test
+	public void stopDeliversThePendingRetriesAndRefusesNewOnes() {
+		RetryScheduler retryScheduler = retryScheduler(3, 60000, 10, 0);
+		retryScheduler.schedule("ORDER", retryAttributes(), "first", null);
+		retryScheduler.schedule("INVOICE", retryAttributes(), "second", null);
+
+		retryScheduler.stop();
+
+		assertThat(emitted, is(Arrays.asList(RETRY_FLOW + " null", RETRY_FLOW + " null")));
+		assertThat(statistic(retryScheduler, "pending"), is((Object) 0));
+		assertThat(retryScheduler.schedule("ORDER", retryAttributes(), "third", null), is(false));
+	}
+
+	@Test
+	public void attemptFailingAfterStopIsDeliveredRightAway() throws Exception {
+		CountDownLatch attempting = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		RetryScheduler retryScheduler = retryScheduler(3, 0, 10, 0);
+		flows.put(RETRY_FLOW, TestFlows.flow(RETRY_FLOW, event -> {
+			attempting.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new DefaultMuleException("retry flow failed");
+		}));
+		retryScheduler.schedule("ORDER", retryAttributes(), "order", null);
+		List<Throwable> errors = new ArrayList<Throwable>();
+		Thread timer = new Thread(() -> {
+			try {
+				tickUntil(() -> attempting.getCount() == 0);
+			} catch (InterruptedException | AssertionError e) {
+				errors.add(e);
+			}
+		});
+		timer.start();
+		assertThat(attempting.await(5, TimeUnit.SECONDS), is(true));
+
+		retryScheduler.stop();
+		release.countDown();
+		timer.join(5000);
+
+		assertThat(errors.isEmpty(), is(true));
+		assertThat(emitted, is(Collections.singletonList(RETRY_FLOW + " null")));
+		assertThat(statistic(retryScheduler, "pending"), is((Object) 0));
+	}
+}
@@ -0,0 +1,156 @@
+package org.mule.consulting.eframework.internal.routing;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.mule.consulting.eframework.api.EventRoute;
+import org.mule.consulting.eframework.api.error.BulkheadFullException;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+
+public class EventRouterTestCase {
+
+	private static final String ERROR_FLOW = "eframework.errorTransactionFlow";
+
+	private EventRoute route(String flowName, String targetFlows, boolean includeDefault, String... conditions) {
+		EventRoute route = new EventRoute();
+		route.setFlowName(flowName);
+		route.setTargetFlows(targetFlows);
+		route.setIncludeDefault(includeDefault);
+		Map<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < conditions.length; i += 2) {
+			map.put(conditions[i], conditions[i + 1]);
+		}
+		route.setConditions(map);
+		return route;
+	}
+
+	private EventRouter router(EventRoute... routes) {
+		RoutingSettings settings = new RoutingSettings();
+		settings.setEventRoutes(Arrays.asList(routes));
+		return new EventRouter(settings);
+	}
+
+	private static Map<String, String> attributes(String type, String status) {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("transactionType", type);
+		attributes.put("transactionStatus", status);
+		return attributes;
+	}
+
+	@Test
+	public void matchingRoutesAddTheirTargets() {
+		EventRouter router = router(route(ERROR_FLOW, "alertFlow", true, "transactionStatus", "FATAL, TIMEOUT"),
+				route("*", "dataLakeFlow", true));
+
+		assertThat(router.route(ERROR_FLOW, attributes("ORDER", "TIMEOUT")),
+				is(Arrays.asList(ERROR_FLOW, "alertFlow", "dataLakeFlow")));
+		assertThat(router.route(ERROR_FLOW, attributes("ORDER", "REJECTED")),
+				is(Arrays.asList(ERROR_FLOW, "dataLakeFlow")));
+		assertThat(router.route("eframework.auditLogFlow", attributes("ORDER", "TIMEOUT")),
+				is(Arrays.asList("eframework.auditLogFlow", "dataLakeFlow")));
+	}
+
+	@Test
+	public void routeCanReplaceTheHandlerFlow() {
+		EventRouter router = router(route(ERROR_FLOW, "alertFlow,pagerFlow", false, "transactionType", "*"));
+
+		assertThat(router.route(ERROR_FLOW, attributes("ORDER", "FAILED")),
+				is(Arrays.asList("alertFlow", "pagerFlow")));
+		assertThat(router.route(ERROR_FLOW, new HashMap<String, String>()),
+				is(Collections.singletonList(ERROR_FLOW)));
+		assertThat(router.getStatistics().get("routed"), is(1L));
+	}
+
+	@Test
+	public void fanOutWithoutSchedulerDeliversInOrder() {
+		EventRouter router = router(route("*", "a", true));
+		List<String> delivered = new ArrayList<String>();
+
+		router.fanOut(Arrays.asList("x", "a", "b"), delivered::add);
+
+		assertThat(delivered, is(Arrays.asList("x", "a", "b")));
+	}
+
+	@Test
+	public void parallelFanOutRaisesTheErrorOfAnyTargetOnceAllCompleted() throws Exception {
+		RoutingSettings settings = new RoutingSettings();
+		settings.setEventRoutes(Arrays.asList(route("*", "a,b", true)));
+		settings.setParallelFanOut(true);
+		EventRouter router = new EventRouter(settings);
+		ExecutorService io = Executors.newCachedThreadPool();
+		router.start(schedulerService(io));
+		List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+		try {
+			router.fanOut(Arrays.asList("x", "a", "b"), target -> {
+				if ("a".equals(target)) {
+					throw new BulkheadFullException("The bulkhead of a is full");
+				}
+				delivered.add(target);
+			});
+			fail("the error of target a was swallowed");
+		} catch (BulkheadFullException e) {
+			assertThat(e.getMessage(), is("The bulkhead of a is full"));
+		} finally {
+			io.shutdownNow();
+		}
+
+		assertThat(delivered.size(), is(2));
+		assertThat(router.getStatistics().get("failed"), is(1L));
+	}
+
+	@Test
+	public void parallelFanOutRaisesAnyRuntimeExceptionOnceAllCompleted() throws Exception {
+		RoutingSettings settings = new RoutingSettings();
+		settings.setEventRoutes(Arrays.asList(route("*", "a,b", true)));
+		settings.setParallelFanOut(true);
+		EventRouter router = new EventRouter(settings);
+		ExecutorService io = Executors.newCachedThreadPool();
+		router.start(schedulerService(io));
+		List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+		try {
+			router.fanOut(Arrays.asList("x", "a", "b"), target -> {
+				if ("x".equals(target) || "b".equals(target)) {
+					throw new IllegalArgumentException("Cannot deliver to " + target);
+				}
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				delivered.add(target);
+			});
+			fail("the errors of targets x and b were swallowed");
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Cannot deliver to x"));
+		} finally {
+			io.shutdownNow();
+		}
+
+		assertThat(delivered, is(Arrays.asList("a")));
+		assertThat(router.getStatistics().get("failed"), is(2L));
+	}
+
+	/*
+	 * An io scheduler running the submitted deliveries on executor
+	 */
+	private static SchedulerService schedulerService(ExecutorService executor) {
+		Scheduler scheduler = (Scheduler) Proxy.newProxyInstance(Scheduler.class.getClassLoader(),
+				new Class<?>[] { Scheduler.class }, (proxy, method, args) -> "stop".equals(method.getName()) ? null
+						: method.invoke(executor, args));
+		return (SchedulerService) Proxy.newProxyInstance(SchedulerService.class.getClassLoader(),
+				new Class<?>[] { SchedulerService.class }, (proxy, method, args) -> scheduler);
+	}
+}
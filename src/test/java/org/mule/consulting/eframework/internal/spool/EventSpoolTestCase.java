@@ -0,0 +1,117 @@
+package org.mule.consulting.eframework.internal.spool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mule.consulting.eframework.internal.flow.FlowEvents;
+import org.mule.consulting.eframework.internal.flow.FlowResolver;
+import org.mule.consulting.eframework.internal.flow.TestFlows;
+import org.mule.runtime.api.exception.DefaultMuleException;
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.runtime.core.api.construct.Flow;
+
+public class EventSpoolTestCase {
+
+	private static final String AUDIT_FLOW = "eframework.auditLogFlow";
+	private static final String POISON_FLOW = "poisonFlow";
+	private static final String LATER_FLOW = "laterFlow";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Map<String, Flow> flows = new HashMap<String, Flow>();
+	private final List<Object> delivered = new ArrayList<Object>();
+
+	private EventSpool spool(int maxAttempts) throws IOException {
+		SpoolSettings settings = new SpoolSettings();
+		settings.setSpoolEnabled(true);
+		settings.setSpooledFlows(AUDIT_FLOW + "," + POISON_FLOW + "," + LATER_FLOW);
+		settings.setSpoolSegmentSize(4096);
+		settings.setSpoolMaxSegments(4);
+		settings.setSpoolReplayRate(100);
+		settings.setSpoolReplayInterval(1000);
+		settings.setSpoolMaxReplayAttempts(maxAttempts);
+		EventSpool spool = new EventSpool(settings, folder.getRoot().toPath());
+		spool.start(schedulerService(), new FlowResolver(TestFlows.registry(flows), 0));
+		return spool;
+	}
+
+	/*
+	 * Replay is driven by the tests, the scheduler only has to accept the
+	 * task
+	 */
+	private static SchedulerService schedulerService() {
+		Scheduler scheduler = (Scheduler) Proxy.newProxyInstance(Scheduler.class.getClassLoader(),
+				new Class<?>[] { Scheduler.class }, (proxy, method, args) -> null);
+		return (SchedulerService) Proxy.newProxyInstance(SchedulerService.class.getClassLoader(),
+				new Class<?>[] { SchedulerService.class }, (proxy, method, args) -> scheduler);
+	}
+
+	private Flow deliveringFlow(String name) {
+		return TestFlows.flow(name, event -> delivered.add(event.getMessage().getPayload().getValue()));
+	}
+
+	private static void spool(EventSpool spool, Flow flow, String content) {
+		assertThat(spool.spool(flow, FlowEvents.create(flow, new HashMap<String, String>(), content, null)), is(true));
+	}
+
+	@Test
+	public void failingEventIsRetriedBehindTheOthersThenDropped() throws IOException {
+		Flow poison = TestFlows.flow(POISON_FLOW, event -> {
+			throw new DefaultMuleException("cannot process");
+		});
+		Flow audit = deliveringFlow(AUDIT_FLOW);
+		flows.put(POISON_FLOW, poison);
+		flows.put(AUDIT_FLOW, audit);
+		EventSpool spool = spool(3);
+		spool(spool, poison, "poison");
+		spool(spool, audit, "first");
+		spool(spool, audit, "second");
+
+		spool.replay();
+		assertThat(delivered.isEmpty(), is(true));
+		spool.replay();
+		assertThat(delivered, is((Object) Arrays.asList("first", "second")));
+		spool.replay();
+		spool.replay();
+
+		Map<String, Long> statistics = spool.getStatistics();
+		assertThat(statistics.get("replayed"), is(2L));
+		assertThat(statistics.get("replayFailures"), is(3L));
+		assertThat(statistics.get("requeued"), is(2L));
+		assertThat(statistics.get("deadLettered"), is(1L));
+		assertThat(statistics.get("pending"), is(0L));
+	}
+
+	@Test
+	public void eventsOfAMissingFlowDoNotHoldBackTheOthers() throws IOException {
+		Flow later = deliveringFlow(LATER_FLOW);
+		Flow audit = deliveringFlow(AUDIT_FLOW);
+		flows.put(AUDIT_FLOW, audit);
+		EventSpool spool = spool(3);
+		spool(spool, later, "later");
+		spool(spool, audit, "audit");
+
+		spool.replay();
+		assertThat(delivered, is((Object) Arrays.asList("audit")));
+		assertThat(spool.getStatistics().get("pending"), is(1L));
+
+		flows.put(LATER_FLOW, later);
+		spool.replay();
+		assertThat(delivered, is((Object) Arrays.asList("audit", "later")));
+		assertThat(spool.getStatistics().get("requeued"), is(1L));
+		assertThat(spool.getStatistics().get("replayFailures"), is(0L));
+	}
+}
@@ -0,0 +1,185 @@
+package org.mule.consulting.eframework.internal.spool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mule.consulting.eframework.api.EventRecord;
+
+public class SegmentSpoolTestCase {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String string(byte[] value) {
+		return value == null ? null : new String(value, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void recordsComeOutInOrderUntilCommitted() throws IOException {
+		try (SegmentSpool spool = new SegmentSpool(folder.getRoot().toPath(), 1024, 4)) {
+			spool.append(bytes("first"));
+			spool.append(bytes("second"));
+
+			assertThat(string(spool.peek()), is("first"));
+			assertThat(string(spool.peek()), is("first"));
+			spool.commit();
+			assertThat(string(spool.peek()), is("second"));
+			spool.commit();
+			assertThat(spool.peek(), is(nullValue()));
+			assertThat(spool.size(), is(0L));
+		}
+	}
+
+	@Test
+	public void pendingRecordsSurviveReopen() throws IOException {
+		try (SegmentSpool spool = new SegmentSpool(folder.getRoot().toPath(), 64, 8)) {
+			for (int i = 0; i < 10; i++) {
+				assertThat(spool.append(bytes("record" + i)), is(true));
+			}
+			for (int i = 0; i < 4; i++) {
+				spool.peek();
+				spool.commit();
+			}
+		}
+		try (SegmentSpool spool = new SegmentSpool(folder.getRoot().toPath(), 64, 8)) {
+			assertThat(spool.size(), is(6L));
+			for (int i = 4; i < 10; i++) {
+				assertThat(string(spool.peek()), is("record" + i));
+				spool.commit();
+			}
+			assertThat(spool.peek(), is(nullValue()));
+			assertThat(spool.getStatistics().get("segments"), is(1L));
+		}
+	}
+
+	@Test
+	public void tornRecordIsDroppedOnReopen() throws IOException {
+		try (SegmentSpool spool = new SegmentSpool(folder.getRoot().toPath(), 1024, 4)) {
+			spool.append(bytes("kept"));
+			spool.append(bytes("torn"));
+		}
+		File segment = folder.getRoot().listFiles((dir, name) -> name.startsWith("segment-"))[0];
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.seek(8 + 4 + 8);
+			file.write('x');
+		}
+		try (SegmentSpool spool = new SegmentSpool(folder.getRoot().toPath(), 1024, 4)) {
+			assertThat(spool.size(), is(1L));
+			assertThat(string(spool.peek()), is("kept"));
+			spool.commit();
+			spool.append(bytes("after"));
+			assertThat(string(spool.peek()), is("after"));
+		}
+	}
+
+	@Test
+	public void fullSpoolRefusesRecords() throws IOException {
+		try (SegmentSpool spool = new SegmentSpool(folder.getRoot().toPath(), 32, 2)) {
+			assertThat(spool.append(new byte[40]), is(false));
+			assertThat(spool.append(new byte[20]), is(true));
+			assertThat(spool.append(new byte[20]), is(true));
+			assertThat(spool.append(new byte[20]), is(false));
+			spool.peek();
+			spool.commit();
+			assertThat(spool.append(new byte[20]), is(true));
+			assertThat(spool.getStatistics().get("rejected"), is(2L));
+		}
+	}
+
+	@Test
+	public void recordKeepsAttributesAndContent() throws IOException {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("transactionType", "ORDER");
+		attributes.put("transactionMsg", null);
+		List<EventRecord> batch = Arrays.asList(new EventRecord(attributes, "one"),
+				new EventRecord(Collections.<String, String> emptyMap(), bytes("two")));
+
+		SpoolRecord record = SpoolRecord.decode(new SpoolRecord("eframework.auditLogFlow", attributes, batch).encode());
+
+		assertThat(record.getFlowName(), is("eframework.auditLogFlow"));
+		assertThat(record.getAttributes(), is(attributes));
+		List<?> content = (List<?>) record.getContent();
+		assertThat(((EventRecord) content.get(0)).getContent(), is((Object) "one"));
+		assertThat(((EventRecord) content.get(0)).getAttributes(), is(attributes));
+		assertThat(string((byte[]) ((EventRecord) content.get(1)).getContent()), is("two"));
+		assertThat(SpoolRecord.decode(new SpoolRecord("flow", null, 42L).encode()).getContent(), is((Object) 42L));
+	}
+
+	@Test
+	public void onlyAllowedClassesAreDeserialized() throws IOException {
+		SpoolClassFilter allowTestClasses = new SpoolClassFilter("org.mule.consulting.eframework.internal.spool.*");
+		byte[] encoded = new SpoolRecord("flow", null, new Payload("order-1")).encode(allowTestClasses);
+
+		assertThat(SpoolRecord.decode(encoded, allowTestClasses).getContent(), is((Object) new Payload("order-1")));
+		try {
+			SpoolRecord.decode(encoded);
+			fail("a class outside of the allow-list was deserialized");
+		} catch (InvalidClassException e) {
+			assertThat(e.getMessage().contains(Payload.class.getName()), is(true));
+		}
+		assertThat(SpoolRecord.decode(new SpoolRecord("flow", null, new Payload("order-2")).encode()).getContent(),
+				is((Object) "Payload order-2"));
+	}
+
+	@Test
+	public void attemptsAreSetWithoutDecodingAndOldRecordsStillRead() throws IOException {
+		byte[] encoded = new SpoolRecord("flow", null, "content").encode();
+		byte[] versionOne = new byte[encoded.length - 4];
+		versionOne[0] = 1;
+		System.arraycopy(encoded, 5, versionOne, 1, encoded.length - 5);
+
+		assertThat(SpoolRecord.decode(encoded).getAttempts(), is(0));
+		assertThat(SpoolRecord.decode(versionOne).getContent(), is((Object) "content"));
+		assertThat(SpoolRecord.decode(SpoolRecord.withAttempts(encoded, 3)).getAttempts(), is(3));
+		SpoolRecord upgraded = SpoolRecord.decode(SpoolRecord.withAttempts(versionOne, 2));
+		assertThat(upgraded.getAttempts(), is(2));
+		assertThat(upgraded.getContent(), is((Object) "content"));
+	}
+
+	private static final class Payload implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String id;
+
+		Payload(String id) {
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Payload && ((Payload) other).id.equals(id);
+		}
+
+		@Override
+		public int hashCode() {
+			return id.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "Payload " + id;
+		}
+	}
+}